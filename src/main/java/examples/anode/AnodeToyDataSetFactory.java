@@ -1,11 +1,15 @@
 package examples.anode;
 
 import com.beust.jcommander.Parameter;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import org.deeplearning4j.datasets.iterator.AsyncMultiDataSetIterator;
+import org.deeplearning4j.datasets.iterator.MultiDataSetWrapperIterator;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiDataSet;
 import org.nd4j.linalg.dataset.ViewIterator;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
@@ -13,7 +17,12 @@ import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.ops.transforms.Transforms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import util.data.MappedMultiDataSetCache;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.stream.IntStream;
 
 /**
@@ -37,51 +46,109 @@ public class AnodeToyDataSetFactory {
     @Parameter(names = "-separable", description = "A separable data set is created if present")
     private boolean separable = false;
 
+    @Parameter(names = "-datasetCache", description = "If set, training batches will be generated in parallel before " +
+            "training and read from a memory mapped file with this name")
+    private String datasetCache = null;
+
+    @Parameter(names = "-dataSeed", description = "Random seed for generating data")
+    private long seed = 123;
+
     private static final double r1 = 0.5;
     private static final double r2 = 1.0;
     private static final double r3 = 1.5;
 
     /**
-     * Hold {@link DataSetIterator}s for training and test
+     * Hold {@link DataSetIterator}s for training and test. Closing it releases resources used by the iterators, e.g. a
+     * data set cache.
      */
     @AllArgsConstructor
     @Getter
-    static class DataSetIters {
+    static class DataSetIters implements Closeable {
         private final DataSetIterator train;
         private final DataSetIterator test;
         private final String name;
+        @Getter(AccessLevel.NONE)
+        private final Closeable resources;
+
+        @Override
+        public void close() throws IOException {
+            resources.close();
+        }
     }
 
 
     public DataSetIters create() {
-        final Random rng = Nd4j.getRandomFactory().getNewRandomInstance(123);
+        final Random rng = Nd4j.getRandomFactory().getNewRandomInstance(seed);
+        log.info("Create " + (separable ? "separable " : "non-separable ") + (use2D ? "2D" : "1D") + " data set");
+        return create(createDataSet(nrofExamples, rng));
+    }
+
+    private DataSet createDataSet(int nrofExamples, Random rng) {
         if (use2D && separable) {
-            log.info("Create separable 2D data set");
-            return create(createSeparable2D(rng));
+            return createSeparable2D(nrofExamples, rng);
         }
 
         if (separable) {
-            log.info("Create separable 1D data set");
-            return create(createSeparable1D(rng));
+            return createSeparable1D(nrofExamples, rng);
         }
 
         if (use2D) {
-            log.info("Create non-separable 2D data set");
-            return create(createNonSeparable2D(rng));
+            return createNonSeparable2D(nrofExamples, rng);
         }
 
-        log.info("Create non-separable 1D data set");
-        return create(createNonSeparable1D(rng));
+        return createNonSeparable1D(nrofExamples, rng);
     }
 
     private DataSetIters create(DataSet ds) {
+        final String name = (separable ? "separable" : "non-separable") + (use2D ? "_2D" : "_1D");
+        if (datasetCache == null) {
+            return new DataSetIters(new ViewIterator(ds, batchSize), new ViewIterator(ds, nrofExamples), name, () -> {/* Nothing to close */});
+        }
+
+        final MappedMultiDataSetCache cache = createCache();
+        final AsyncMultiDataSetIterator prefetching = (AsyncMultiDataSetIterator) cache.iterator().prefetching(2);
         return new DataSetIters(
-                new ViewIterator(ds, batchSize),
+                new MultiDataSetWrapperIterator(prefetching) {
+                    // Wrapper only knows the shapes of batches it has returned. Answer from the data set instead
+                    @Override
+                    public int inputColumns() {
+                        return ds.numInputs();
+                    }
+
+                    @Override
+                    public int totalOutcomes() {
+                        return ds.numOutcomes();
+                    }
+
+                    @Override
+                    public int batch() {
+                        return batchSize;
+                    }
+                },
                 new ViewIterator(ds, nrofExamples),
-                (separable ? "separable" : "non-separable") + (use2D ? "_2D" : "_1D"));
+                name,
+                () -> {
+                    prefetching.shutdown();
+                    cache.close();
+                });
+    }
+
+    private MappedMultiDataSetCache createCache() {
+        // All batches have the same size, meaning that the last batch may contain a few more examples than nrofExamples
+        final int nrofBatches = (nrofExamples + batchSize - 1) / batchSize;
+        log.info("Write " + nrofBatches + " training batches to " + datasetCache);
+        try {
+            return MappedMultiDataSetCache.materialize(Paths.get(datasetCache), nrofBatches, seed,
+                    (index, batchSeed) -> {
+                        final DataSet batch = createDataSet(batchSize, Nd4j.getRandomFactory().getNewRandomInstance(batchSeed));
+                        return new MultiDataSet(batch.getFeatures(), batch.getLabels());
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create data set cache!", e);
+        }
     }
 
-    private DataSet createNonSeparable1D(Random rng) {
+    private static DataSet createNonSeparable1D(int nrofExamples, Random rng) {
         final int nrofFirst = nrofExamples / 3;
         final int nrofSecond = nrofExamples - nrofFirst;
 
@@ -105,8 +172,8 @@ public class AnodeToyDataSetFactory {
         );
     }
 
-    private DataSet createNonSeparable2D(Random rng) {
-        final DataSet dists = createNonSeparable1D(rng);
+    private static DataSet createNonSeparable2D(int nrofExamples, Random rng) {
+        final DataSet dists = createNonSeparable1D(nrofExamples, rng);
 
         final INDArray theta = Nd4j.rand(dists.numExamples(), 1, 0, 2 * Math.PI, rng);
 
@@ -115,7 +182,7 @@ public class AnodeToyDataSetFactory {
                 dists.getLabels());
     }
 
-    private DataSet createSeparable1D(Random rng) {
+    private static DataSet createSeparable1D(int nrofExamples, Random rng) {
         final int nrofFirst = nrofExamples / 2;
         final int nrofSecond = nrofExamples - nrofFirst;
 
@@ -139,8 +206,8 @@ public class AnodeToyDataSetFactory {
     }
 
 
-    private DataSet createSeparable2D(Random rng) {
-        final DataSet noise = createSeparable1D(rng);
+    private static DataSet createSeparable2D(int nrofExamples, Random rng) {
+        final DataSet noise = createSeparable1D(nrofExamples, rng);
 
         final INDArray theta = Nd4j.rand(noise.numExamples(), 1, -Math.PI, Math.PI, rng);
 
@@ -153,16 +220,16 @@ public class AnodeToyDataSetFactory {
     public static void main(String[] args) {
         final AnodeToyDataSetFactory fac = new AnodeToyDataSetFactory();
 
-        final DataSet dsn1D = fac.createNonSeparable1D(Nd4j.getRandomFactory().getNewRandomInstance(666));
+        final DataSet dsn1D = createNonSeparable1D(fac.nrofExamples, Nd4j.getRandomFactory().getNewRandomInstance(666));
         PlotSteps3D.plotXYZ(dsn1D.getFeatures(), dsn1D.getLabels(), new ScatterPlot3D("1D non-separable", ""));
 
-        final DataSet dsn2D = fac.createNonSeparable2D(Nd4j.getRandomFactory().getNewRandomInstance(666));
+        final DataSet dsn2D = createNonSeparable2D(fac.nrofExamples, Nd4j.getRandomFactory().getNewRandomInstance(666));
         PlotSteps3D.plotXYZ(dsn2D.getFeatures(), dsn2D.getLabels(), new ScatterPlot3D("2D non-separable", ""));
 
-        final DataSet ds1D = fac.createSeparable1D(Nd4j.getRandomFactory().getNewRandomInstance(666));
+        final DataSet ds1D = createSeparable1D(fac.nrofExamples, Nd4j.getRandomFactory().getNewRandomInstance(666));
         PlotSteps3D.plotXYZ(ds1D.getFeatures(), ds1D.getLabels(), new ScatterPlot3D("1D separable", ""));
 
-        final DataSet ds2D = fac.createSeparable2D(Nd4j.getRandomFactory().getNewRandomInstance(666));
+        final DataSet ds2D = createSeparable2D(fac.nrofExamples, Nd4j.getRandomFactory().getNewRandomInstance(666));
         PlotSteps3D.plotXYZ(ds2D.getFeatures(), ds2D.getLabels(), new ScatterPlot3D("2D separable", ""));
     }
 }
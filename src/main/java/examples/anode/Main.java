@@ -20,6 +20,7 @@ import util.random.SeededRandomFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
@@ -151,8 +152,16 @@ class Main {
 
     void run() {
         Nd4j.getMemoryManager().setAutoGcWindow(5000);
-        for (int epoch = model.graph().getEpochCount(); epoch < nrofEpochs; epoch++) {
-            model.graph().fit(dataSetIterators.getTrain());
+        try {
+            for (int epoch = model.graph().getEpochCount(); epoch < nrofEpochs; epoch++) {
+                model.graph().fit(dataSetIterators.getTrain());
+            }
+        } finally {
+            try {
+                dataSetIterators.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close data set iterators!", e);
+            }
         }
     }
 
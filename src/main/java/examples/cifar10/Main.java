@@ -21,6 +21,7 @@ import util.plot.NoPlot;
 import util.plot.Plot;
 import util.plot.RealTimePlot;
 import util.random.SeededRandomFactory;
+import util.save.AsyncCheckpointWriter;
 
 import java.io.File;
 import java.io.IOException;
@@ -190,21 +191,25 @@ class Main {
         double bestAccuracy = 0;
 
         final Plot<Integer, Double> evalPlot = plotEvalAccuracy ? new RealTimePlot<>("Eval Accuracy", saveDir()) : new NoPlot<>();
-        for (int epoch = model.getEpochCount(); epoch < nrofEpochs; epoch++) {
-            log.info("Begin epoch " + epoch);
-            model.fit(trainIter);
-            log.info("Begin validation in epoch " + epoch);
-            final Evaluation evaluation = model.evaluate(evalIter);
-            log.info(evaluation.stats() + "\nBest accuracy so far: " + bestAccuracy);
-
-            evalPlot.plotData("Accuracy", epoch, evaluation.accuracy());
-            if (evaluation.accuracy() > bestAccuracy) {
-                bestAccuracy = evaluation.accuracy();
-                model.save(Paths.get(saveDir(), BEST_EVAL_NAME + epoch + ".zip").toFile());
-                evalPlot.plotData("Best accuracy", epoch, evaluation.accuracy());
+        try (AsyncCheckpointWriter checkpointWriter = new AsyncCheckpointWriter()) {
+            for (int epoch = model.getEpochCount(); epoch < nrofEpochs; epoch++) {
+                log.info("Begin epoch " + epoch);
+                model.fit(trainIter);
+                log.info("Begin validation in epoch " + epoch);
+                final Evaluation evaluation = model.evaluate(evalIter);
+                log.info(evaluation.stats() + "\nBest accuracy so far: " + bestAccuracy);
+
+                evalPlot.plotData("Accuracy", epoch, evaluation.accuracy());
+                final File checkpoint = Paths.get(saveDir(), CHECKPOINT_NAME).toFile();
+                if (evaluation.accuracy() > bestAccuracy) {
+                    bestAccuracy = evaluation.accuracy();
+                    checkpointWriter.save(model, checkpoint, Paths.get(saveDir(), BEST_EVAL_NAME + epoch + ".zip").toFile());
+                    evalPlot.plotData("Best accuracy", epoch, evaluation.accuracy());
+                } else {
+                    checkpointWriter.save(model, checkpoint);
+                }
+                evalPlot.storePlotData();
             }
-            evalPlot.storePlotData();
-            model.save(Paths.get(saveDir(), CHECKPOINT_NAME).toFile());
         }
     }
 
@@ -4,6 +4,9 @@ import ch.qos.logback.classic.Level;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
+import ode.solve.api.FirstOrderSolverConf;
+import ode.solve.conf.DormandPrince54Solver;
+import ode.vertex.conf.OdeVertex;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.optimize.listeners.PerformanceListener;
@@ -15,11 +18,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import util.listen.training.NanScoreWatcher;
 import util.listen.training.ZeroGrad;
+import util.save.AsyncCheckpointWriter;
 
+import javax.management.ObjectName;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -46,6 +52,10 @@ class Main {
     @Parameter(names = "-saveDir", description = "Directory to save models in")
     private String saveDir = "savedmodels";
 
+    @Parameter(names = "-jmxTolerances", description = "Set to true to expose solver tolerances through JMX so they " +
+            "can be changed during training")
+    private boolean jmxTolerances = false;
+
     @ParametersDelegate
     public DataSetIteratorFactory trainFactory = new MnistTrainDataProvider();
 
@@ -108,6 +118,25 @@ class Main {
             cnt += vertex.numParams();
         }
         log.info("Nrof parameters in model: " + cnt);
+
+        if (jmxTolerances) {
+            registerTolerances();
+        }
+    }
+
+    private void registerTolerances() {
+        for (Map.Entry<String, org.deeplearning4j.nn.conf.graph.GraphVertex> vertex : model.getConfiguration().getVertices().entrySet()) {
+            if (vertex.getValue() instanceof OdeVertex) {
+                final List<FirstOrderSolverConf> solverConfs = ((OdeVertex) vertex.getValue()).solverConfs();
+                for (int i = 0; i < solverConfs.size(); i++) {
+                    if (solverConfs.get(i) instanceof DormandPrince54Solver) {
+                        final ObjectName name = ((DormandPrince54Solver) solverConfs.get(i)).getTolerances()
+                                .register(modelName + "_" + vertex.getKey() + "_" + i);
+                        log.info("Registered solver tolerances as " + name);
+                    }
+                }
+            }
+        }
     }
 
     void addListeners() {
@@ -128,18 +157,22 @@ class Main {
 
         Nd4j.getMemoryManager().setAutoGcWindow(5000);
         double bestAccuracy = 0;
-        for (int epoch = model.getEpochCount(); epoch < nrofEpochs; epoch++) {
-            log.info("Begin epoch " + epoch);
-            model.fit(trainIter);
-            log.info("Begin validation in epoch " + epoch);
-            final Evaluation evaluation = model.evaluate(evalIter);
-            log.info(evaluation.stats() + "\nBest accuracy so far: " + bestAccuracy);
-
-            if (evaluation.accuracy() > bestAccuracy) {
-                bestAccuracy = evaluation.accuracy();
-                model.save(Paths.get(saveDir(), BEST_EVAL_NAME + epoch + ".zip").toFile());
+        try (AsyncCheckpointWriter checkpointWriter = new AsyncCheckpointWriter()) {
+            for (int epoch = model.getEpochCount(); epoch < nrofEpochs; epoch++) {
+                log.info("Begin epoch " + epoch);
+                model.fit(trainIter);
+                log.info("Begin validation in epoch " + epoch);
+                final Evaluation evaluation = model.evaluate(evalIter);
+                log.info(evaluation.stats() + "\nBest accuracy so far: " + bestAccuracy);
+
+                final File checkpoint = Paths.get(saveDir(), CHECKPOINT_NAME).toFile();
+                if (evaluation.accuracy() > bestAccuracy) {
+                    bestAccuracy = evaluation.accuracy();
+                    checkpointWriter.save(model, checkpoint, Paths.get(saveDir(), BEST_EVAL_NAME + epoch + ".zip").toFile());
+                } else {
+                    checkpointWriter.save(model, checkpoint);
+                }
             }
-            model.save(Paths.get(saveDir(), CHECKPOINT_NAME).toFile());
         }
     }
 
@@ -0,0 +1,69 @@
+package examples.spiral;
+
+import ode.solve.conf.DormandPrince54Solver;
+import ode.solve.conf.SolverConfig;
+import ode.vertex.conf.ControlledVectorFieldVertex;
+import ode.vertex.conf.OdeVertex;
+import ode.vertex.conf.helper.FixedStep;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.graph.rnn.LastTimeStepVertex;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Encoder which uses a neural controlled differential equation (https://arxiv.org/abs/2005.08926) instead of an RNN.
+ * The input series is fitted with a natural cubic spline once per batch and the hidden state is then computed by one
+ * adaptive solve instead of one RNN step per observation.
+ * <br><br>
+ * As for {@link RnnEncoderBlock}, reverse time series input is assumed. The solve therefore starts from the last time
+ * step (i.e. the first observation) and goes backwards in the spline parameter.
+ *
+ * @author Christian Skarby
+ */
+public class CdeEncoderBlock implements Block {
+
+    private final long nrofLatentDims;
+    private final long nrofHidden;
+    private final long nrofChannels;
+    private final String inputName;
+
+    public CdeEncoderBlock(long nrofLatentDims, long nrofHidden, long nrofChannels, String inputName) {
+        this.nrofLatentDims = nrofLatentDims;
+        this.nrofHidden = nrofHidden;
+        this.nrofChannels = nrofChannels;
+        this.inputName = inputName;
+    }
+
+    @Override
+    public String add(ComputationGraphConfiguration.GraphBuilder builder, String... prev) {
+        builder
+                .addVertex("encFirstObs", new LastTimeStepVertex(inputName), prev)
+                .addLayer("encZ0", new DenseLayer.Builder()
+                        .activation(new ActivationIdentity())
+                        .nOut(nrofHidden)
+                        .build(), "encFirstObs")
+                .addVertex("encCde", new OdeVertex.Builder(
+                        builder.getGlobalConfiguration(),
+                        "encCdeFc1",
+                        new DenseLayer.Builder()
+                                .nIn(nrofHidden)
+                                .nOut(nrofHidden)
+                                .activation(new ActivationTanH()).build())
+                        .addLayer("encCdeFc2", new DenseLayer.Builder()
+                                .nOut(nrofHidden * nrofChannels)
+                                .activation(new ActivationTanH()).build(), "encCdeFc1")
+                        .addControlVertex("encCdeOut", new ControlledVectorFieldVertex(), "encCdeFc2")
+                        .odeConf(new FixedStep(
+                                new DormandPrince54Solver(new SolverConfig(1e-6, 1e-3, 1e-10, 1)),
+                                Nd4j.create(new double[]{1, 0})))
+                        .build(), "encZ0", prev[0])
+                .addLayer("encOut", new DenseLayer.Builder()
+                        .activation(new ActivationIdentity())
+                        .nOut(2 * nrofLatentDims)
+                        .build(), "encCde");
+
+        return "encOut";
+    }
+}
@@ -7,15 +7,19 @@ import examples.spiral.listener.IterationHook;
 import examples.spiral.listener.PlotDecodedOutput;
 import examples.spiral.listener.SpiralPlot;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.deeplearning4j.datasets.iterator.AsyncMultiDataSetIterator;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.optimize.listeners.PerformanceListener;
 import org.jetbrains.annotations.NotNull;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import util.data.MappedMultiDataSetCache;
+import util.data.MappedMultiDataSetIterator;
 import util.listen.training.NanScoreWatcher;
 import util.listen.training.PlotActivations;
 import util.listen.training.ZeroGrad;
@@ -23,6 +27,7 @@ import util.plot.NoPlot;
 import util.plot.Plot;
 import util.plot.RealTimePlot;
 import util.random.SeededRandomFactory;
+import util.save.AsyncCheckpointWriter;
 
 import java.io.File;
 import java.io.FilenameFilter;
@@ -75,9 +80,18 @@ class Main {
     @Parameter(names = "-noPlot", description = "Set to suppress plotting of training progress and results")
     private boolean noPlot = false;
 
+    @Parameter(names = "-datasetCache", description = "If set, training batches will be generated in parallel before " +
+            "training and read from a memory mapped file with this name")
+    private String datasetCache = null;
+
+    @Parameter(names = "-nrofCachedBatches", description = "Number of training batches to generate when using a " +
+            "dataset cache. Batches are reused once all have been used for training")
+    private int nrofCachedBatches = 100;
+
     private TimeVae model;
     private String modelName;
     private SpiralIterator iterator;
+    private MappedMultiDataSetCache trainCache; // Only used if datasetCache is set
     private Plot.Factory plotBackend;
 
     public static void main(String[] args) throws IOException {
@@ -128,7 +142,7 @@ class Main {
         } else {
 
             // Else, delete all saved plots and initialize a new model
-            final File[] plotFiles = new File(saveDir).listFiles((FilenameFilter) new WildcardFileFilter("*.plt"));
+            final File[] plotFiles = new File(saveDir).listFiles((FilenameFilter) new WildcardFileFilter(new String[]{"*.plt", "*.bin"}));
             if (plotFiles != null) {
                 for (File plotFile : plotFiles) {
                     Files.delete(Paths.get(plotFile.getAbsolutePath()));
@@ -152,17 +166,21 @@ class Main {
         return Paths.get(saveDir, "spiral", modelName).toString();
     }
 
-    private void init(TimeVae model, String modelName, MultiDataSetPreProcessor preProcessor) {
+    private void init(TimeVae model, String modelName, MultiDataSetPreProcessor preProcessor) throws IOException {
         this.model = model;
         this.modelName = modelName;
 
         plotBackend = noPlot ? new NoPlot.Factory() : new RealTimePlot.Factory(saveDir());
 
         final SpiralFactory spiralFactory = new SpiralFactory(0, 0.3, 0, 6 * Math.PI, 500);
-        this.iterator = new SpiralIterator(
-                new SpiralIterator.Generator(spiralFactory, noiseSigma, nrofTimeStepsForTraining, new Random(Nd4j.getRandom().nextLong())),
-                trainBatchSize);
+        final SpiralIterator.Generator generator = new SpiralIterator.Generator(spiralFactory, noiseSigma, nrofTimeStepsForTraining, new Random(Nd4j.getRandom().nextLong()));
+        this.iterator = new SpiralIterator(generator, trainBatchSize);
         iterator.setPreProcessor(preProcessor);
+
+        if (datasetCache != null) {
+            log.info("Write " + nrofCachedBatches + " training batches to " + datasetCache);
+            this.trainCache = generator.materialize(Paths.get(datasetCache), nrofCachedBatches, trainBatchSize, Nd4j.getRandom().nextLong());
+        }
     }
 
     void addListeners() {
@@ -207,17 +225,27 @@ class Main {
 
         final Plot<Double, Double> samplePlot = plotBackend.newPlot("Reconstruction");
 
-        for (int i = trainingModel.getIterationCount(); i < nrofTrainIters; i++) {
-            trainingModel.fit(iterator.next());
+        final MultiDataSetIterator trainIterator = createTrainIterator();
+        try (AsyncCheckpointWriter checkpointWriter = new AsyncCheckpointWriter()) {
+            for (int i = trainingModel.getIterationCount(); i < nrofTrainIters; i++) {
+                trainingModel.fit(nextBatch(trainIterator));
 
 
-            if (i > 0 && i % 100 == 0) {
-                drawSample(0, samplePlot);
-                samplePlot.savePicture("_iter" + trainingModel.getIterationCount());
-            }
+                if (i > 0 && i % 100 == 0) {
+                    drawSample(0, samplePlot);
+                    samplePlot.savePicture("_iter" + trainingModel.getIterationCount());
+                }
 
-            if (i > 0 && i % saveEveryNIterations == 0) {
-                trainingModel.save(Paths.get(saveDir(), CHECKPOINT_NAME).toFile());
+                if (i > 0 && i % saveEveryNIterations == 0) {
+                    checkpointWriter.save(trainingModel, Paths.get(saveDir(), CHECKPOINT_NAME).toFile());
+                }
+            }
+        } finally {
+            if (trainIterator instanceof AsyncMultiDataSetIterator) {
+                ((AsyncMultiDataSetIterator) trainIterator).shutdown();
+            }
+            if (trainCache != null) {
+                trainCache.close();
             }
         }
 
@@ -228,6 +256,29 @@ class Main {
         }
     }
 
+    /**
+     * Create the iterator to train on. Batches from the dataset cache are read in a background thread.
+     */
+    private MultiDataSetIterator createTrainIterator() {
+        if (trainCache == null) {
+            return iterator;
+        }
+        final MappedMultiDataSetIterator cacheIterator = trainCache.iterator();
+        cacheIterator.setPreProcessor(iterator.getPreProcessor());
+        return cacheIterator.prefetching(2);
+    }
+
+    private static MultiDataSet nextBatch(MultiDataSetIterator trainIterator) {
+        // Note: AsyncMultiDataSetIterator only fetches the next batch in hasNext
+        if (!trainIterator.hasNext()) {
+            trainIterator.reset();
+            if (!trainIterator.hasNext()) {
+                throw new IllegalStateException("No training batches!");
+            }
+        }
+        return trainIterator.next();
+    }
+
     private void drawSample(final int toSample, Plot<Double, Double> reconstructionPlot) {
         log.info("Sampling model...");
 
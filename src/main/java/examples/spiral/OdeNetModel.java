@@ -29,6 +29,10 @@ class OdeNetModel implements ModelFactory {
     @Parameter(names = "-encoderNrofHidden", description = "Number of hidden units in encoder")
     private long encoderNrofHidden = 25;
 
+    @Parameter(names = "-cdeEncoder", description = "Use a neural controlled differential equation as encoder instead " +
+            "of an RNN if set")
+    private boolean cdeEncoder = false;
+
     @Parameter(names = "-latentNrofHidden", description = "Number of hidden units in latent ODE function")
     private long latentNrofHidden = 20;
 
@@ -38,7 +42,9 @@ class OdeNetModel implements ModelFactory {
     @Override
     public TimeVae createNew(long nrofSamples, double noiseSigma, long nrofLatentDims) {
 
-        final Block enc = new RnnEncoderBlock(nrofLatentDims, encoderNrofHidden, "spiral");
+        final Block enc = cdeEncoder ?
+                new CdeEncoderBlock(nrofLatentDims, encoderNrofHidden, 2, "spiral") :
+                new RnnEncoderBlock(nrofLatentDims, encoderNrofHidden, "spiral");
         final Block dec = new DenseDecoderBlock(decoderNrofHidden, 2);
         final Block ode = new LatentOdeBlock(latentNrofHidden, nrofLatentDims,
                 new InputStep(
@@ -82,7 +88,7 @@ class OdeNetModel implements ModelFactory {
 
     @Override
     public String name() {
-        return "odenet_enc" + encoderNrofHidden + "_lat" + latentNrofHidden + "_dec" + decoderNrofHidden;
+        return "odenet_" + (cdeEncoder ? "cde" : "enc") + encoderNrofHidden + "_lat" + latentNrofHidden + "_dec" + decoderNrofHidden;
     }
 
 
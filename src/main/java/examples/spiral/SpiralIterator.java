@@ -10,7 +10,10 @@ import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
 import org.nd4j.linalg.dataset.api.preprocessor.CompositeMultiDataSetPreProcessor;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
+import util.data.MappedMultiDataSetCache;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -52,6 +55,24 @@ public class SpiralIterator implements MultiDataSetIterator {
         }
 
         SpiralSet generate(int batchSize) {
+            return generate(batchSize, rng);
+        }
+
+        /**
+         * Generate batches with independent seeds in parallel and write them to a memory mapped file
+         * @param file File to write the batches to
+         * @param nrofBatches Number of batches to generate
+         * @param batchSize Size of each batch
+         * @param seed Base seed. The same seed will generate the same batches regardless of number of threads
+         * @return a {@link MappedMultiDataSetCache} with the generated batches
+         * @throws IOException if writing to the file failed
+         */
+        public MappedMultiDataSetCache materialize(Path file, int nrofBatches, int batchSize, long seed) throws IOException {
+            return MappedMultiDataSetCache.materialize(file, nrofBatches, seed,
+                    (index, batchSeed) -> generate(batchSize, new Random(batchSeed)).getMds());
+        }
+
+        private SpiralSet generate(int batchSize, Random rng) {
 
             final double sampoffset = nrofSamples / (double)factory.baseNrofSamples();
             final double samprange = 1 - 2*sampoffset;
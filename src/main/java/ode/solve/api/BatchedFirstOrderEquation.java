@@ -0,0 +1,26 @@
+package ode.solve.api;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * {@link FirstOrderEquation} which can evaluate several states in one call. Intended for equations where one call with
+ * a larger mini batch is cheaper than several calls with smaller mini batches, e.g. when <code>F</code> is a small
+ * neural network where the overhead of each call dominates.
+ * <br><br>
+ * Note that operations which depend on the whole mini batch (e.g. batch normalization in training mode) might see all
+ * states as one mini batch.
+ *
+ * @author Christian Skarby
+ */
+public interface BatchedFirstOrderEquation extends FirstOrderEquation {
+
+    /**
+     * Calculate <code>dY/dt = F(Y(t))</code> for several states in one call. Result shall be the same as calling
+     * {@link #calculateDerivative(INDArray, INDArray, INDArray)} once for each state.
+     * @param y Values of <code>Y(t)</code>, one per state
+     * @param t Values of <code>t</code>, one per state
+     * @param fy Values of <code>F(Y(t))</code>, one per state. Will be updated.
+     * @return fy, same instance as input param.
+     */
+    INDArray[] calculateDerivatives(INDArray[] y, INDArray[] t, INDArray[] fy);
+}
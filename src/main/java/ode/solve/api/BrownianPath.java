@@ -0,0 +1,20 @@
+package ode.solve.api;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * A sample path of a Brownian motion W(t). Querying the same path several times shall give the same result so that
+ * e.g. rejected steps and backwards (adjoint) solves see the same noise.
+ *
+ * @author Christian Skarby
+ */
+public interface BrownianPath {
+
+    /**
+     * Return the increment W(tEnd) - W(tStart)
+     * @param tStart Start time
+     * @param tEnd End time
+     * @return The increment of the Brownian motion
+     */
+    INDArray increment(double tStart, double tEnd);
+}
@@ -0,0 +1,20 @@
+package ode.solve.api;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Event function g(y(t), t) for which an event occurs when the sign of g changes. Evaluated per sample in a batch
+ * (i.e. along dimension 0 of y).
+ *
+ * @author Christian Skarby
+ */
+public interface EventFunction {
+
+    /**
+     * Evaluate the event function
+     * @param y State at time t
+     * @param t Time
+     * @return Value of g(y, t) with one element per sample in y
+     */
+    INDArray evaluate(INDArray y, double t);
+}
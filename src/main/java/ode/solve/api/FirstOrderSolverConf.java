@@ -20,12 +20,22 @@ public interface FirstOrderSolverConf extends Cloneable {
      */
     FirstOrderSolverConf clone();
 
+    /**
+     * Returns the number of arrays with the same size as the state which the solver allocates when solving. Used to
+     * estimate memory usage. Default is 1.
+     * @return the number of state sized arrays
+     */
+    default int nrofStateCopies() {
+        return 1;
+    }
+
 
     // TODO: Don't really like that listeners can be added to conf as it creates ambiguity as to whether they will be
     //  serialized (they wont). However, when using solvers as a part of an OdeVertex it is not straightforward to get
     //  access to the solver instance
     /**
-     * Add {@link StepListener}s which will be notified of steps taken
+     * Add {@link StepListener}s which will be notified of steps taken by all solvers instantiated from this config.
+     * Solvers get the instance returned by {@link StepListener#forSolver()}. Listeners are carried over to clones.
      * @param listeners listeners to add
      */
     void addListeners(StepListener... listeners);
@@ -1,10 +1,17 @@
 package ode.solve.api;
 
+import ode.solve.conf.SolverConfig;
 import ode.solve.impl.util.SolverState;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 /**
  * Listens to time steps taken by ODE solvers
+ * <br><br>
+ * Each call from begin to done comes from the same thread. Listeners added to a
+ * {@link FirstOrderSolverConf} are however given to every solver instantiated from it and those solvers may run
+ * concurrently, e.g. when mini batches are sharded. Listeners which keep state per solve shall therefore return a new
+ * instance from {@link #forSolver()} and listeners which are shared between solvers (i.e. which return themselves from
+ * {@link #forSolver()}) must be thread safe.
  *
  * @author Christian Skarby
  */
@@ -25,8 +32,47 @@ public interface StepListener {
      */
     void step(SolverState solverState, INDArray step, INDArray error);
 
+    /**
+     * Indicates that a step was rejected because the estimated error was too large. Only called by solvers with
+     * error control. Default implementation does nothing.
+     * @param solverState Current state of the solver, i.e. the state before the rejected step
+     * @param step Rejected step
+     * @param error Estimated error
+     */
+    default void rejected(SolverState solverState, INDArray step, INDArray error) {
+        // Do nothing
+    }
+
     /**
      * Indicates that previous step was the last step taken
      */
     void done();
+
+    /**
+     * Indicates that the solver exceeded its budget of steps or time and that the given fallback will be applied.
+     * Default implementation does nothing.
+     * @param solverState Current state of the solver
+     * @param fallback Fallback which will be applied
+     */
+    default void budgetExceeded(SolverState solverState, SolverConfig.BudgetFallback fallback) {
+        // Do nothing
+    }
+
+    /**
+     * Returns true if the solver shall terminate after the last step, e.g. because some event occurred. Solvers which
+     * are not able to terminate early may ignore this. Default implementation returns false.
+     * @return true if solver shall terminate
+     */
+    default boolean shouldTerminate() {
+        return false;
+    }
+
+    /**
+     * Returns the listener to use for one solver instance. Default implementation returns this instance, which is only
+     * appropriate for stateless or thread safe listeners.
+     * @return a listener for one solver instance
+     */
+    default StepListener forSolver() {
+        return this;
+    }
 }
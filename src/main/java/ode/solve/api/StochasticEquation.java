@@ -0,0 +1,54 @@
+package ode.solve.api;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Interface for a stochastic differential equation with diagonal noise in the Itô sense:
+ * <pre>
+ * dY = F(Y(t), t) * dt + G(Y(t), t) * dW(t)
+ * </pre>
+ * where F is the drift, G is the diffusion and W is a Brownian motion with the same shape as Y. Products are elementwise.
+ *
+ * @author Christian Skarby
+ */
+public interface StochasticEquation {
+
+    /**
+     * Calculate the drift <code>F(Y(t), t)</code>
+     * @param y Value of <code>Y(t)</code>
+     * @param t Value of <code>t</code>
+     * @param fy Will contain the drift
+     * @return fy, same instance as input param.
+     */
+    INDArray calculateDrift(INDArray y, INDArray t, INDArray fy);
+
+    /**
+     * Calculate the diffusion <code>G(Y(t), t)</code>
+     * @param y Value of <code>Y(t)</code>
+     * @param t Value of <code>t</code>
+     * @param gy Will contain the diffusion
+     * @return gy, same instance as input param.
+     */
+    INDArray calculateDiffusion(INDArray y, INDArray t, INDArray gy);
+
+    /**
+     * Create a {@link StochasticEquation} from separate drift and diffusion functions, e.g. forward passes through two
+     * different graphs.
+     * @param drift Calculates the drift
+     * @param diffusion Calculates the diffusion
+     * @return a new {@link StochasticEquation}
+     */
+    static StochasticEquation of(FirstOrderEquation drift, FirstOrderEquation diffusion) {
+        return new StochasticEquation() {
+            @Override
+            public INDArray calculateDrift(INDArray y, INDArray t, INDArray fy) {
+                return drift.calculateDerivative(y, t, fy);
+            }
+
+            @Override
+            public INDArray calculateDiffusion(INDArray y, INDArray t, INDArray gy) {
+                return diffusion.calculateDerivative(y, t, gy);
+            }
+        };
+    }
+}
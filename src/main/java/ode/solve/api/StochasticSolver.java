@@ -0,0 +1,39 @@
+package ode.solve.api;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Interface for numerical solvers of {@link StochasticEquation}s. Same as {@link FirstOrderSolver} except that a
+ * {@link BrownianPath} for the noise must be provided.
+ *
+ * @author Christian Skarby
+ */
+public interface StochasticSolver {
+
+    /**
+     * Compute estimated value of <code>Y(t1))</code> for the given sample path of the noise.
+     *
+     * @param equation     the drift and diffusion of <code>Y</code>
+     * @param brownianPath sample path of the noise. Must cover the time interval.
+     * @param t            is a vector with initial time <code>t0</code> and time <code>t1</code> for which
+     *                     <code>Y(t1)</code> is sought
+     * @param y0           is the value of </code>Y(t)<code> at <code>t = t0</code>, i.e. <code>Y(t0)</code>
+     * @param yOut         will contain the estimated value of <code>Y(t1)</code>
+     * @return yOut, same instance as input param
+     */
+    INDArray integrate(StochasticEquation equation, BrownianPath brownianPath, INDArray t, INDArray y0, INDArray yOut);
+
+    /**
+     * Add {@link StepListener}s which will be notified of steps taken
+     *
+     * @param listeners listeners to add
+     */
+    void addListener(StepListener... listeners);
+
+    /**
+     * Clear the given listeners. Clear all listeners if empty
+     *
+     * @param listeners listeners to remove
+     */
+    void clearListeners(StepListener... listeners);
+}
@@ -0,0 +1,92 @@
+package ode.solve.commons;
+
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Bulk transfer between the double[] used by commons math and the (off heap) buffers of {@link INDArray}s. Data is
+ * transferred through an nio view of the {@link DataBuffer} so that no temporary arrays are created and no JNI call is
+ * made per element. Arrays which are not contiguous in c order are handled through a (slower) temporary array.
+ * <br><br>
+ * The nio views only see host memory. Host memory is therefore synchronized with the device before it is accessed and
+ * tagged as the most recent copy after it is written so that backends with device memory (e.g. CUDA) see the same
+ * data. Both are no-ops on the CPU backend.
+ *
+ * @author Christian Skarby
+ */
+final class DoubleArrayBridge {
+
+    private DoubleArrayBridge() {
+        // No instances
+    }
+
+    /**
+     * Copy the contents of the given double[] to the given {@link INDArray}
+     * @param from Array to copy from
+     * @param to Array to copy to. Must have the same length as from
+     */
+    static void copy(double[] from, INDArray to) {
+        if (!isContiguous(to)) {
+            to.assign(Nd4j.create(from, to.shape(), 'c'));
+            return;
+        }
+
+        switch (to.data().dataType()) {
+            case DOUBLE:
+                // Rest of the buffer must be up to date on host as the whole buffer is tagged as written on host
+                Nd4j.getAffinityManager().ensureLocation(to, AffinityManager.Location.HOST);
+                final DoubleBuffer doubleBuffer = to.data().asNioDouble();
+                doubleBuffer.position((int) to.offset());
+                doubleBuffer.put(from);
+                Nd4j.getAffinityManager().tagLocation(to, AffinityManager.Location.HOST);
+                return;
+            case FLOAT:
+                Nd4j.getAffinityManager().ensureLocation(to, AffinityManager.Location.HOST);
+                final FloatBuffer floatBuffer = to.data().asNioFloat();
+                final int offset = (int) to.offset();
+                for (int i = 0; i < from.length; i++) {
+                    floatBuffer.put(offset + i, (float) from[i]);
+                }
+                Nd4j.getAffinityManager().tagLocation(to, AffinityManager.Location.HOST);
+                return;
+            default:
+                to.assign(Nd4j.create(from, to.shape(), 'c'));
+        }
+    }
+
+    /**
+     * Copy the contents of the given {@link INDArray} to the given double[]
+     * @param from Array to copy from
+     * @param to Array to copy to. Must have the same length as from
+     */
+    static void copy(INDArray from, double[] to) {
+        final INDArray source = isContiguous(from) ? from : from.dup('c');
+        Nd4j.getAffinityManager().ensureLocation(source, AffinityManager.Location.HOST);
+
+        switch (source.data().dataType()) {
+            case DOUBLE:
+                final DoubleBuffer doubleBuffer = source.data().asNioDouble();
+                doubleBuffer.position((int) source.offset());
+                doubleBuffer.get(to);
+                return;
+            case FLOAT:
+                final FloatBuffer floatBuffer = source.data().asNioFloat();
+                final int offset = (int) source.offset();
+                for (int i = 0; i < to.length; i++) {
+                    to[i] = floatBuffer.get(offset + i);
+                }
+                return;
+            default:
+                System.arraycopy(source.data().asDouble(), (int) source.offset(), to, 0, to.length);
+        }
+    }
+
+    private static boolean isContiguous(INDArray array) {
+        return array.ordering() == 'c' && array.elementWiseStride() == 1;
+    }
+}
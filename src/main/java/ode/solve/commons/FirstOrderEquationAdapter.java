@@ -15,11 +15,14 @@ import org.nd4j.linalg.factory.Nd4j;
 public class FirstOrderEquationAdapter implements FirstOrderDifferentialEquations {
 
     private final INDArray lastResult;
+    private final INDArray y;
     private final INDArray t;
     private final FirstOrderEquation wrappedEquation;
 
     public FirstOrderEquationAdapter(INDArray lastResult, FirstOrderEquation wrappedEquation) {
         this.lastResult = lastResult;
+        // Reused for every evaluation so that the state is not reallocated
+        this.y = Nd4j.create(lastResult.shape(), 'c');
         this.t = Nd4j.create(1);
         this.wrappedEquation = wrappedEquation;
     }
@@ -33,12 +36,12 @@ public class FirstOrderEquationAdapter implements FirstOrderDifferentialEquation
     public void computeDerivatives(double t, double[] y, double[] yDot) throws MaxCountExceededException, DimensionMismatchException {
         this.t.putScalar(0, t);
         // Transfer double[] y to an INDArray
-        final INDArray yArr = Nd4j.create(y).reshape(lastResult.shape());
+        DoubleArrayBridge.copy(y, this.y);
 
         // Perform desired operation
-        wrappedEquation.calculateDerivative(yArr, this.t, lastResult);
+        wrappedEquation.calculateDerivative(this.y, this.t, lastResult);
 
         // Transfer result in INDArray lastResult to double[] yOut
-        System.arraycopy(lastResult.reshape(1, lastResult.length()).toDoubleVector(), 0, yDot, 0, yDot.length);
+        DoubleArrayBridge.copy(lastResult, yDot);
     }
 }
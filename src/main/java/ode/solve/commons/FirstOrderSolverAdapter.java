@@ -26,23 +26,40 @@ public class FirstOrderSolverAdapter implements FirstOrderSolver {
         this.wrappedSolver = wrappedSolver;
     }
 
+    /**
+     * Returns the number of arrays with the same size as the state which are allocated when solving using an
+     * {@link org.apache.commons.math3.ode.nonstiff.EmbeddedRungeKuttaIntegrator} with the given number of stages.
+     * Arrays allocated by the integrator are double[] regardless of the data type and arrays which are specific to the
+     * step interpolator of the integrator are not included.
+     *
+     * @param nrofStages Number of stages of the integrator
+     * @return the number of state sized arrays
+     */
+    public static int nrofStateCopies(int nrofStages) {
+        // Copy of y0 and working state of the FirstOrderEquationAdapter and the state given to the integrator
+        final int adapterCopies = 3;
+        // One derivative per stage, initial, current and temporary state and temporary derivative. The step
+        // interpolator allocates interpolated state and derivative for both the primary and the complete state
+        final int integratorCopies = nrofStages + 4 + 4;
+        return adapterCopies + integratorCopies;
+    }
+
     @Override
     public INDArray integrate(FirstOrderEquation equation, INDArray t, INDArray y0, INDArray yOut) {
         for(StepListenerAdapter listenerAdapter: listeners.values()) {
             listenerAdapter.setShape(yOut.shape());
         }
 
-        final FirstOrderDifferentialEquations wrappedEquations = new FirstOrderEquationAdapter(y0.dup(), equation);
-        final double[] y = y0.reshape(1, y0.length()).toDoubleVector();
+        final FirstOrderDifferentialEquations wrappedEquations = new FirstOrderEquationAdapter(y0.dup('c'), equation);
+        final double[] y = new double[(int) y0.length()];
+        DoubleArrayBridge.copy(y0, y);
         wrappedSolver.integrate(wrappedEquations, t.getDouble(0), y, t.getDouble(1), y);
 
         for(StepListener listener: listeners.keySet()) {
             listener.done();
         }
 
-        for(int i = 0; i < y.length; i++) {
-            yOut.putScalar(i, y[i]);
-        }
+        DoubleArrayBridge.copy(y, yOut);
         return yOut;
     }
 
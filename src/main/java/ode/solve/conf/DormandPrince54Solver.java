@@ -6,43 +6,73 @@ import ode.solve.api.FirstOrderSolver;
 import ode.solve.api.FirstOrderSolverConf;
 import ode.solve.api.StepListener;
 import ode.solve.impl.util.AggStepListener;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
 import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 /**
  * Configuration for a {@link ode.solve.impl.DormandPrince54Solver}.
+ * <br><br>
+ * Tolerances are kept in a {@link ToleranceHolder} which is shared by all solvers instantiated from this configuration.
+ * Clones get their own holder which starts from the current tolerances of this configuration. Serialized
+ * configurations contain the current tolerances of the holder. Equality only depends on the initial configuration, not
+ * on the current tolerances of the holder.
  *
  * @author Christian Skarby
  */
 @Data
+@EqualsAndHashCode(doNotUseGetters = true)
 public class DormandPrince54Solver implements FirstOrderSolverConf {
 
+    @JsonIgnore
     private final SolverConfig config;
 
     @EqualsAndHashCode.Exclude
     private final AggStepListener listener = new AggStepListener();
 
+    @EqualsAndHashCode.Exclude
+    @JsonIgnore
+    private final ToleranceHolder tolerances;
+
     public DormandPrince54Solver() {
         this(new SolverConfig(1e-3, 1e-3, 1e-10, 100));
     }
 
     public DormandPrince54Solver(@JsonProperty("config") SolverConfig config) {
+        this(config, new ToleranceHolder(config.getAbsTol(), config.getRelTol()));
+    }
+
+    private DormandPrince54Solver(SolverConfig config, ToleranceHolder tolerances) {
         this.config = config;
+        this.tolerances = tolerances;
+    }
+
+    /**
+     * Returns the config with the current tolerances of the {@link ToleranceHolder}
+     * @return the config
+     */
+    @JsonProperty("config")
+    public SolverConfig getConfig() {
+        return config.withTolerances(tolerances.getAbsTol(), tolerances.getRelTol());
     }
 
     @Override
     public FirstOrderSolver instantiate() {
-        final ode.solve.impl.DormandPrince54Solver solver =  new ode.solve.impl.DormandPrince54Solver(config);
-        solver.addListener(listener);
+        final ode.solve.impl.DormandPrince54Solver solver =  new ode.solve.impl.DormandPrince54Solver(config, tolerances);
+        solver.addListener(listener.forSolver());
         return solver;
     }
 
     @Override
     public DormandPrince54Solver clone()  {
-        return new DormandPrince54Solver(new SolverConfig(
-                config.getAbsTol(),
-                config.getRelTol(),
-                config.getMinStep(),
-                config.getMaxStep()));
+        // SolverConfig is immutable while the holder is not
+        final DormandPrince54Solver clone = new DormandPrince54Solver(config, new ToleranceHolder(tolerances.getAbsTol(), tolerances.getRelTol()));
+        clone.addListeners(listener.listeners());
+        return clone;
+    }
+
+    @Override
+    public int nrofStateCopies() {
+        return Math.toIntExact(new ode.solve.impl.DormandPrince54Solver(config, tolerances).nrofStateCopies());
     }
 
     @Override
@@ -28,13 +28,15 @@ public class DummyIteration implements FirstOrderSolverConf {
     @Override
     public FirstOrderSolver instantiate() {
         ode.solve.impl.DummyIteration dummyIter = new ode.solve.impl.DummyIteration(() -> nrofIterations);
-        dummyIter.addListener(listener);
+        dummyIter.addListener(listener.forSolver());
         return dummyIter;
     }
 
     @Override
     public FirstOrderSolverConf clone() {
-        return new DummyIteration(nrofIterations);
+        final DummyIteration clone = new DummyIteration(nrofIterations);
+        clone.addListeners(listener.listeners());
+        return clone;
     }
 
     @Override
@@ -10,8 +10,8 @@ import ode.solve.impl.util.AggStepListener;
 import org.apache.commons.math3.ode.FirstOrderIntegrator;
 import org.apache.commons.math3.ode.nonstiff.DormandPrince54Integrator;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Generic configuration for {@link FirstOrderIntegrator}s.
@@ -21,7 +21,7 @@ import java.util.Map;
 @Data
 public class FirstOrderIntegratorConf implements FirstOrderSolverConf {
 
-    private final static Map<String, Factory> factorymap = new HashMap<>();
+    private final static Map<String, Factory> factorymap = new ConcurrentHashMap<>();
 
     private final SolverConfig config;
     private final String integratorName;
@@ -65,17 +65,19 @@ public class FirstOrderIntegratorConf implements FirstOrderSolverConf {
         } else {
             ret = new FirstOrderSolverAdapter(defaultCreate());
         }
-        ret.addListener(listener);
+        ret.addListener(listener.forSolver());
         return ret;
     }
 
     @Override
     public FirstOrderSolverConf clone() {
-        return new FirstOrderIntegratorConf(integratorName, new SolverConfig(
+        final FirstOrderIntegratorConf clone = new FirstOrderIntegratorConf(integratorName, new SolverConfig(
                 config.getAbsTol(),
                 config.getRelTol(),
                 config.getMinStep(),
                 config.getMaxStep()));
+        clone.addListeners(listener.listeners());
+        return clone;
     }
 
     private FirstOrderIntegrator defaultCreate() {
@@ -87,6 +89,12 @@ public class FirstOrderIntegratorConf implements FirstOrderSolverConf {
         }
     }
 
+    @Override
+    public int nrofStateCopies() {
+        // Integrators do not expose their tableu. Assume as many stages as the default Dormand-Prince integrator
+        return FirstOrderSolverAdapter.nrofStateCopies(ode.solve.impl.DormandPrince54Solver.butcherTableu().cMid.length);
+    }
+
     @Override
     public void addListeners(StepListener... listeners) {
         listener.addListeners(listeners);
@@ -40,6 +40,11 @@ public class NanWatchSolver implements FirstOrderSolverConf {
         return ((NanWatchSolver)obj).confToWatch.equals(confToWatch);
     }
 
+    @Override
+    public int nrofStateCopies() {
+        return confToWatch.nrofStateCopies();
+    }
+
     @Override
     public void addListeners(StepListener... listeners) {
         confToWatch.addListeners(listeners);
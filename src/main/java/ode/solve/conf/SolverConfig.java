@@ -9,16 +9,69 @@ import org.nd4j.shade.jackson.annotation.JsonProperty;
 @Data
 public class SolverConfig {
 
+    /**
+     * What to do when a solve exceeds its budget of steps or time
+     */
+    public enum BudgetFallback {
+        /**
+         * Finish the remaining time interval using a fixed number of steps without error control
+         */
+        FIXED_GRID,
+        /**
+         * Stop and return the state at the last accepted step. The solve is marked as truncated, see
+         * {@link ode.solve.impl.AdaptiveRungeKuttaSolver#isTruncated()}
+         */
+        BEST_ESTIMATE,
+        /**
+         * Throw an {@link IllegalStateException}
+         */
+        THROW
+    }
+
+    /**
+     * Number of fixed steps used to finish a solve by default when the budget is exceeded with
+     * {@link BudgetFallback#FIXED_GRID}
+     */
+    public static final int DEFAULT_NROF_FALLBACK_STEPS = 10;
+
     private final double absTol;
     private final double relTol;
     private final double minStep;
     private final double maxStep;
+    private final int maxNrofSteps;
+    private final long maxSolveTimeMs;
+    private final BudgetFallback budgetFallback;
+    private final int nrofFallbackSteps;
+
+    public SolverConfig(
+            double absoluteTolerance,
+            double relativeTolerance,
+            double minStep,
+            double maxStep) {
+        this(absoluteTolerance, relativeTolerance, minStep, maxStep, 0, 0, BudgetFallback.FIXED_GRID, DEFAULT_NROF_FALLBACK_STEPS);
+    }
 
+    /**
+     * Create a new SolverConfig
+     * @param absoluteTolerance Absolute error tolerance
+     * @param relativeTolerance Relative error tolerance
+     * @param minStep Minimum step size
+     * @param maxStep Maximum step size
+     * @param maxNrofSteps Maximum number of steps (accepted and rejected) per solve. Unlimited if 0 or less
+     * @param maxSolveTimeMs Maximum wall clock time in milliseconds per solve. Unlimited if 0 or less
+     * @param budgetFallback What to do when either maxNrofSteps or maxSolveTimeMs is exceeded
+     * @param nrofFallbackSteps Number of steps to finish the solve with if budgetFallback is
+     *                          {@link BudgetFallback#FIXED_GRID}. {@link #DEFAULT_NROF_FALLBACK_STEPS} if 0 or less
+     */
     public SolverConfig(
             @JsonProperty("absoluteTolerance") double absoluteTolerance,
             @JsonProperty("relativeTolerance") double relativeTolerance,
             @JsonProperty("minStep") double minStep,
-            @JsonProperty("maxStep") double maxStep) {
+            @JsonProperty("maxStep") double maxStep,
+            @JsonProperty("maxNrofSteps") int maxNrofSteps,
+            @JsonProperty("maxSolveTimeMs") long maxSolveTimeMs,
+            @JsonProperty("budgetFallback") BudgetFallback budgetFallback,
+            @JsonProperty("nrofFallbackSteps") int nrofFallbackSteps) {
         if(minStep >= maxStep) {
             throw new IllegalArgumentException("Max step smaller than min step! Swapped arguments? max: " + maxStep + " min " + minStep );
         }
@@ -26,6 +79,44 @@ public class SolverConfig {
         this.relTol = relativeTolerance;
         this.minStep = minStep;
         this.maxStep = maxStep;
+        this.maxNrofSteps = maxNrofSteps;
+        this.maxSolveTimeMs = maxSolveTimeMs;
+        // Null when deserializing configs from before budgets were added
+        this.budgetFallback = budgetFallback == null ? BudgetFallback.FIXED_GRID : budgetFallback;
+        this.nrofFallbackSteps = nrofFallbackSteps > 0 ? nrofFallbackSteps : DEFAULT_NROF_FALLBACK_STEPS;
     }
 
+    /**
+     * Return a copy of this config with the given tolerances
+     * @param absoluteTolerance Absolute error tolerance
+     * @param relativeTolerance Relative error tolerance
+     * @return a new SolverConfig
+     */
+    public SolverConfig withTolerances(double absoluteTolerance, double relativeTolerance) {
+        return new SolverConfig(absoluteTolerance, relativeTolerance, minStep, maxStep, maxNrofSteps, maxSolveTimeMs, budgetFallback, nrofFallbackSteps);
+    }
+
+    /**
+     * Return a copy of this config with the given budget
+     * @param maxNrofSteps Maximum number of steps (accepted and rejected) per solve. Unlimited if 0 or less
+     * @param maxSolveTimeMs Maximum wall clock time in milliseconds per solve. Unlimited if 0 or less
+     * @param budgetFallback What to do when either maxNrofSteps or maxSolveTimeMs is exceeded
+     * @return a new SolverConfig
+     */
+    public SolverConfig withBudget(int maxNrofSteps, long maxSolveTimeMs, BudgetFallback budgetFallback) {
+        return withBudget(maxNrofSteps, maxSolveTimeMs, budgetFallback, nrofFallbackSteps);
+    }
+
+    /**
+     * Return a copy of this config with the given budget
+     * @param maxNrofSteps Maximum number of steps (accepted and rejected) per solve. Unlimited if 0 or less
+     * @param maxSolveTimeMs Maximum wall clock time in milliseconds per solve. Unlimited if 0 or less
+     * @param budgetFallback What to do when either maxNrofSteps or maxSolveTimeMs is exceeded
+     * @param nrofFallbackSteps Number of steps to finish the solve with if budgetFallback is
+     *                          {@link BudgetFallback#FIXED_GRID}
+     * @return a new SolverConfig
+     */
+    public SolverConfig withBudget(int maxNrofSteps, long maxSolveTimeMs, BudgetFallback budgetFallback, int nrofFallbackSteps) {
+        return new SolverConfig(absTol, relTol, minStep, maxStep, maxNrofSteps, maxSolveTimeMs, budgetFallback, nrofFallbackSteps);
+    }
 }
@@ -0,0 +1,78 @@
+package ode.solve.conf;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Mutable holder of solver tolerances. Solvers instantiated from the same configuration share the same holder and will
+ * pick up new tolerances at the start of their next step. Typically used to loosen tolerances early in training and
+ * then tighten them as training progresses. Can be registered as an MBean so that tolerances can be changed through
+ * JMX.
+ *
+ * @author Christian Skarby
+ */
+public class ToleranceHolder implements ToleranceHolderMXBean {
+
+    private volatile double absTol;
+    private volatile double relTol;
+    private volatile long version;
+
+    public ToleranceHolder(double absTol, double relTol) {
+        this.absTol = absTol;
+        this.relTol = relTol;
+    }
+
+    @Override
+    public double getAbsTol() {
+        return absTol;
+    }
+
+    @Override
+    public synchronized void setAbsTol(double absTol) {
+        this.absTol = absTol;
+        version++;
+    }
+
+    @Override
+    public double getRelTol() {
+        return relTol;
+    }
+
+    @Override
+    public synchronized void setRelTol(double relTol) {
+        this.relTol = relTol;
+        version++;
+    }
+
+    /**
+     * Returns a number which changes every time a tolerance is changed.
+     * @return the current version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Register this holder with the platform MBean server
+     * @param name Name to register as. Must be unique among all registered holders
+     * @return the {@link ObjectName} the holder was registered as
+     */
+    public ObjectName register(String name) {
+        try {
+            final ObjectName objectName = new ObjectName("ode.solve:type=ToleranceHolder,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (MalformedObjectNameException | InstanceAlreadyExistsException | MBeanRegistrationException | NotCompliantMBeanException e) {
+            throw new IllegalArgumentException("Could not register " + name + "!", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ToleranceHolder{absTol=" + absTol + ", relTol=" + relTol + "}";
+    }
+}
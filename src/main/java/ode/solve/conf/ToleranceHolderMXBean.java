@@ -0,0 +1,17 @@
+package ode.solve.conf;
+
+/**
+ * JMX interface of {@link ToleranceHolder} so that tolerances can be changed in a running process.
+ *
+ * @author Christian Skarby
+ */
+public interface ToleranceHolderMXBean {
+
+    double getAbsTol();
+
+    void setAbsTol(double absTol);
+
+    double getRelTol();
+
+    void setRelTol(double relTol);
+}
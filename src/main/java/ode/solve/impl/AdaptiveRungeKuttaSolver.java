@@ -6,35 +6,51 @@ import ode.solve.api.StepListener;
 import ode.solve.impl.util.AggStepListener;
 import ode.solve.impl.util.ButcherTableu;
 import ode.solve.impl.util.FirstOrderEquationWithState;
+import ode.solve.impl.util.SolveBudget;
 import ode.solve.impl.util.StepPolicy;
+import ode.solve.impl.util.SolverWorkspaces;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
-import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
-import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
 /**
  * Generic adaptive step size Runge-Kutta solver. Implementation based on
  * {@link org.apache.commons.math3.ode.nonstiff.EmbeddedRungeKuttaIntegrator}.
+ * <br><br>
+ * State and derivatives are stored using the current data type while time and step size control are done in double
+ * precision. This allows for using float as data type to reduce memory (bandwidth) without destabilizing step control.
+ * Note that this is the only part which uses higher precision than the data type. In particular, the state is always
+ * accumulated in the current data type, also when it contains a parameter adjoint (see
+ * {@link ode.vertex.impl.helper.backward.AugmentedDynamics}).
+ * <br><br>
+ * Solving stops after the first accepted step for which any {@link StepListener} requests termination, see
+ * {@link StepListener#shouldTerminate()}.
+ * <br><br>
+ * Memory needed for the whole solve is allocated in one workspace while temporaries for each step are allocated in
+ * another workspace, see {@link SolverWorkspaces}.
  *
  * @author Christian Skarby
  */
 public class AdaptiveRungeKuttaSolver implements FirstOrderSolver {
 
-    final static WorkspaceConfiguration wsConf = WorkspaceConfiguration.builder()
-            .overallocationLimit(0.0)
-            .policySpill(SpillPolicy.REALLOCATE)
-            .build();
-
     private final ButcherTableu tableu;
+    private final double[] stageTimes;
     private final StepPolicy stepPolicy;
     private final MseComputation mseComputation;
+    private final SolveBudget budget;
     private final AggStepListener listener = new AggStepListener();
+    private boolean truncated = false;
 
     public AdaptiveRungeKuttaSolver(ButcherTableu tableu, StepPolicy stepPolicy, MseComputation mseComputation) {
+        this(tableu, stepPolicy, mseComputation, SolveBudget.unlimited());
+    }
+
+    public AdaptiveRungeKuttaSolver(ButcherTableu tableu, StepPolicy stepPolicy, MseComputation mseComputation, SolveBudget budget) {
         this.tableu = tableu;
+        this.stageTimes = tableu.c.toDoubleVector();
         this.stepPolicy = stepPolicy;
         this.mseComputation = mseComputation;
+        this.budget = budget;
     }
 
     /**
@@ -57,6 +73,14 @@ public class AdaptiveRungeKuttaSolver implements FirstOrderSolver {
                 final INDArray y1,
                 final INDArray h
         );
+
+        /**
+         * Returns the number of arrays with the same size as the state which are allocated when estimating the error
+         * @return the number of state sized arrays
+         */
+        default long nrofStateCopies() {
+            return 0;
+        }
     }
 
     private interface TimeLimit {
@@ -66,17 +90,17 @@ public class AdaptiveRungeKuttaSolver implements FirstOrderSolver {
     private static class TimeLimitForwards implements TimeLimit {
 
         private final double tLast;
-        private final INDArray t;
+        private final FirstOrderEquationWithState equation;
 
-        private TimeLimitForwards(double tLast, INDArray t) {
+        private TimeLimitForwards(double tLast, FirstOrderEquationWithState equation) {
             this.tLast = tLast;
-            this.t = t;
+            this.equation = equation;
         }
 
         @Override
         public boolean isLastStep(INDArray step) {
-            if (t.add(step).getDouble(0) >= tLast) {
-                step.assign(tLast - t.getDouble(0));
+            if (equation.currentTime() + step.getDouble(0) >= tLast) {
+                step.assign(tLast - equation.currentTime());
                 return true;
             }
             return false;
@@ -86,30 +110,49 @@ public class AdaptiveRungeKuttaSolver implements FirstOrderSolver {
     private static class TimeLimitBackwards implements TimeLimit {
 
         private final double tLast;
-        private final INDArray t;
+        private final FirstOrderEquationWithState equation;
 
-        private TimeLimitBackwards(double tLast, INDArray t) {
+        private TimeLimitBackwards(double tLast, FirstOrderEquationWithState equation) {
             this.tLast = tLast;
-            this.t = t;
+            this.equation = equation;
         }
 
         @Override
         public boolean isLastStep(INDArray step) {
-            if (t.add(step).getDouble(0) <= tLast) {
-                step.assign(tLast - t.getDouble(0));
+            if (equation.currentTime() + step.getDouble(0) <= tLast) {
+                step.assign(tLast - equation.currentTime());
                 return true;
             }
             return false;
         }
     }
 
+    /**
+     * Returns true if the last solve stopped before reaching the end time because its budget was exceeded with the
+     * {@link ode.solve.conf.SolverConfig.BudgetFallback#BEST_ESTIMATE} fallback. The returned state is then the state
+     * at the last accepted step.
+     * @return true if the last solve was truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the number of arrays with the same size as the state which are allocated when solving. Derived from the
+     * number of stages of the {@link ButcherTableu} and from what the {@link MseComputation} allocates.
+     * @return the number of state sized arrays
+     */
+    public long nrofStateCopies() {
+        return FirstOrderEquationWithState.nrofStateCopies(tableu.cMid.length) + mseComputation.nrofStateCopies();
+    }
+
     @Override
     public INDArray integrate(FirstOrderEquation equation, INDArray t, INDArray y0, INDArray yOut) {
         if (t.length() != 2) {
             throw new IllegalArgumentException("time must be size 2! Was: " + t);
         }
 
-        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(wsConf, this.getClass().getSimpleName())) {
+        try (MemoryWorkspace ws = SolverWorkspaces.enterSolve(this.getClass().getSimpleName())) {
 
             final FirstOrderEquationWithState equationState = new FirstOrderEquationWithState(
                     equation,
@@ -117,6 +160,7 @@ public class AdaptiveRungeKuttaSolver implements FirstOrderSolver {
                     yOut.assign(y0),
                     tableu.cMid);
 
+            truncated = false;
             listener.begin(t, y0);
 
             solve(equationState, t);
@@ -133,39 +177,92 @@ public class AdaptiveRungeKuttaSolver implements FirstOrderSolver {
         // Alg variable used for error
         final INDArray error = Nd4j.create(1);
         // Alg variable used for new steps
-        final INDArray step = stepPolicy.initializeStep(equation, t);
+        final INDArray step = Nd4j.create(1);
+        try (MemoryWorkspace ws = SolverWorkspaces.enterStep(stepWorkspaceName())) {
+            step.assign(stepPolicy.initializeStep(equation, t));
+        }
 
         // Alg variable for where next step starts
         final TimeLimit timeLimit = t.argMax().getInt(0) == 1 ?
-                new TimeLimitForwards(t.getDouble(1), equation.time()) :
-                new TimeLimitBackwards(t.getDouble(1), equation.time());
+                new TimeLimitForwards(t.getDouble(1), equation) :
+                new TimeLimitBackwards(t.getDouble(1), equation);
 
         final long stages = tableu.c.length() + 1;
 
+        final long startTime = System.nanoTime();
+        int nrofSteps = 0;
+
         // main integration loop
         boolean isLastStep;
         do {
 
-            isLastStep = timeLimit.isLastStep(step);
-            // next stages
-            for (long k = 1; k < stages; ++k) {
-                equation.step(tableu.a[(int) k - 1], step);
-                equation.calculateDerivative(k);
+            if (budget.isExceeded(nrofSteps++, startTime)) {
+                applyFallback(equation, t.getDouble(1));
+                return;
             }
-            // estimate the state at the end of the step
-            equation.step(tableu.b, step);
 
-            // estimate the error at the end of the step
-            error.assign(equation.estimateError(mseComputation));
+            try (MemoryWorkspace ws = SolverWorkspaces.enterStep(stepWorkspaceName())) {
+                isLastStep = timeLimit.isLastStep(step);
+                // next stages
+                for (long k = 1; k < stages; ++k) {
+                    equation.step(tableu.a[(int) k - 1], stageTimes[(int) k - 1], step);
+                    equation.calculateDerivative(k);
+                }
+                // estimate the state at the end of the step
+                equation.step(tableu.b, step);
 
-            isLastStep &= acceptStep(equation, step, error);
+                // estimate the error at the end of the step
+                error.assign(equation.estimateError(mseComputation));
 
-            // Take a new step. Note: Redundant operation if isLastStep is true
-            step.assign(stepPolicy.step(step, error));
+                isLastStep = acceptStep(equation, step, error) && (isLastStep || listener.shouldTerminate());
+
+                // Take a new step. Note: Redundant operation if isLastStep is true
+                step.assign(stepPolicy.step(step, error));
+            }
 
         } while (!isLastStep);
     }
 
+    private String stepWorkspaceName() {
+        return this.getClass().getSimpleName() + "Step";
+    }
+
+    private void applyFallback(FirstOrderEquationWithState equation, double tLast) {
+        listener.budgetExceeded(equation, budget.getFallback());
+        switch (budget.getFallback()) {
+            case THROW:
+                throw new IllegalStateException("Solver budget exceeded at time " + equation.currentTime() + "!");
+            case BEST_ESTIMATE:
+                // State is already at last accepted step
+                truncated = true;
+                return;
+            case FIXED_GRID:
+                finishOnFixedGrid(equation, tLast);
+        }
+    }
+
+    private void finishOnFixedGrid(FirstOrderEquationWithState equation, double tLast) {
+        final INDArray step = Nd4j.create(1);
+        final INDArray error = Nd4j.zeros(1);
+        final long stages = tableu.c.length() + 1;
+        for (int i = budget.getNrofFallbackSteps(); i > 0; i--) {
+            try (MemoryWorkspace ws = SolverWorkspaces.enterStep(stepWorkspaceName())) {
+                step.assign((tLast - equation.currentTime()) / i);
+                for (long k = 1; k < stages; ++k) {
+                    equation.step(tableu.a[(int) k - 1], stageTimes[(int) k - 1], step);
+                    equation.calculateDerivative(k);
+                }
+                equation.step(tableu.b, step);
+                equation.update();
+                listener.step(equation, step, error);
+                equation.shiftDerivative();
+                if (listener.shouldTerminate()) {
+                    return;
+                }
+            }
+        }
+    }
+
     private boolean acceptStep(FirstOrderEquationWithState equation, INDArray step, INDArray error) {
         if (error.getDouble(0) < 1.0) {
             // local error is small enough: accept the step,
@@ -177,6 +274,7 @@ public class AdaptiveRungeKuttaSolver implements FirstOrderSolver {
 
             return true;
         }
+        listener.rejected(equation, step, error);
         return false;
     }
 
@@ -0,0 +1,149 @@
+package ode.solve.impl;
+
+import ode.solve.api.BrownianPath;
+import ode.solve.api.StepListener;
+import ode.solve.api.StochasticEquation;
+import ode.solve.api.StochasticSolver;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.util.AggStepListener;
+import ode.solve.impl.util.SolveBudget;
+import ode.solve.impl.util.StateContainer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Adaptive step size stochastic Runge-Kutta solver. Each step is taken using the derivative free Milstein scheme (see
+ * {@link MilsteinSolver}) both as one full step and as two half steps. The difference between the two is used as
+ * the error estimate for step size control. Rejected steps are retried with a smaller step size using the same
+ * {@link BrownianPath}, which is why the path must be consistent when queried in arbitrary order (e.g. a
+ * {@link ode.solve.impl.util.VirtualBrownianTree}).
+ *
+ * @author Christian Skarby
+ */
+public class AdaptiveStochasticRungeKuttaSolver implements StochasticSolver {
+
+    private static final double safety = 0.9;
+    private static final double minReduction = 0.2;
+    private static final double maxGrowth = 5;
+
+    private final SolverConfig config;
+    private final SolveBudget budget;
+    private final AggStepListener listener = new AggStepListener();
+    private boolean truncated = false;
+
+    public AdaptiveStochasticRungeKuttaSolver(SolverConfig config) {
+        this.config = config;
+        this.budget = new SolveBudget(config);
+    }
+
+    @Override
+    public INDArray integrate(StochasticEquation equation, BrownianPath brownianPath, INDArray t, INDArray y0, INDArray yOut) {
+        if (t.length() != 2) {
+            throw new IllegalArgumentException("time must be size 2! Was: " + t);
+        }
+
+        final double t0 = t.getDouble(0);
+        final double t1 = t.getDouble(1);
+        final double direction = Math.signum(t1 - t0);
+        final long startTimeNanos = System.nanoTime();
+
+        final INDArray time = t.getScalar(0).dup();
+        final INDArray step = time.dup();
+        final INDArray drift = y0.dup();
+        final INDArray yFull = y0.dup();
+        final INDArray yHalf = y0.dup();
+        final INDArray driftHalf = y0.dup();
+        yOut.assign(y0);
+
+        truncated = false;
+        listener.begin(t, y0);
+
+        double tCurr = t0;
+        double h = Math.max(config.getMinStep(), Math.min(config.getMaxStep(), Math.abs(t1 - t0) / 10));
+        int nrofSteps = 0;
+        boolean noErrorControl = false;
+        while (direction * (t1 - tCurr) > 1e-12 * Math.max(1, Math.abs(t1))) {
+
+            if (!noErrorControl && budget.isExceeded(nrofSteps, startTimeNanos)) {
+                listener.budgetExceeded(new StateContainer(time, yOut, drift), budget.getFallback());
+                switch (budget.getFallback()) {
+                    case THROW:
+                        throw new IllegalStateException("Solver budget exceeded at time " + tCurr + "!");
+                    case BEST_ESTIMATE:
+                        truncated = true;
+                        listener.done();
+                        return yOut;
+                    case FIXED_GRID:
+                        noErrorControl = true;
+                        h = Math.abs(t1 - tCurr) / budget.getNrofFallbackSteps();
+                }
+            }
+            nrofSteps++;
+
+            final double hSigned = direction * Math.min(h, Math.abs(t1 - tCurr));
+            final double tMid = tCurr + hSigned / 2;
+            final double tNext = direction * (t1 - tCurr) <= h ? t1 : tCurr + hSigned;
+
+            yFull.assign(yOut);
+            time.assign(tCurr);
+            MilsteinSolver.step(equation, time, hSigned, brownianPath.increment(tCurr, tNext), yFull, drift);
+
+            yHalf.assign(yOut);
+            MilsteinSolver.step(equation, time, hSigned / 2, brownianPath.increment(tCurr, tMid), yHalf, drift);
+            time.assign(tMid);
+            MilsteinSolver.step(equation, time, hSigned / 2, brownianPath.increment(tMid, tNext), yHalf, driftHalf);
+
+            final double error = error(yOut, yFull, yHalf);
+            if (error <= 1 || noErrorControl || Math.abs(hSigned) <= config.getMinStep()) {
+                yOut.assign(yHalf);
+                tCurr = tNext;
+                time.assign(tCurr);
+                step.assign(hSigned);
+                listener.step(new StateContainer(time, yOut, drift), step, null);
+                if (listener.shouldTerminate()) {
+                    break;
+                }
+            } else {
+                step.assign(hSigned);
+                listener.rejected(new StateContainer(time.assign(tCurr), yOut, drift), step, null);
+            }
+
+            if (noErrorControl) {
+                continue;
+            }
+
+            // Strong order of the scheme is 1
+            final double factor = error == 0 ? maxGrowth : Math.max(minReduction, Math.min(maxGrowth, safety / Math.sqrt(error)));
+            h = Math.max(config.getMinStep(), Math.min(config.getMaxStep(), Math.abs(hSigned) * factor));
+        }
+
+        listener.done();
+
+        return yOut;
+    }
+
+    /**
+     * Returns true if the last solve stopped before reaching the end time because its budget was exceeded with the
+     * {@link SolverConfig.BudgetFallback#BEST_ESTIMATE} fallback
+     * @return true if the last solve was truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private double error(INDArray y, INDArray yFull, INDArray yHalf) {
+        final INDArray scale = Transforms.max(Transforms.abs(y, true), Transforms.abs(yHalf, true), false)
+                .muli(config.getRelTol()).addi(config.getAbsTol());
+        return yHalf.sub(yFull).divi(scale).amaxNumber().doubleValue();
+    }
+
+    @Override
+    public void addListener(StepListener... listeners) {
+        this.listener.addListeners(listeners);
+    }
+
+    @Override
+    public void clearListeners(StepListener... listeners) {
+        this.listener.clearListeners(listeners);
+    }
+}
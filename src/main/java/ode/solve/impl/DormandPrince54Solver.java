@@ -4,12 +4,13 @@ import ode.solve.api.FirstOrderEquation;
 import ode.solve.api.FirstOrderSolver;
 import ode.solve.api.StepListener;
 import ode.solve.conf.SolverConfig;
+import ode.solve.conf.ToleranceHolder;
 import ode.solve.impl.util.AdaptiveRungeKuttaStepPolicy;
 import ode.solve.impl.util.ButcherTableu;
+import ode.solve.impl.util.SolveBudget;
 import ode.solve.impl.util.SolverConfigINDArray;
+import ode.solve.impl.util.SolverWorkspaces;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
-import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
-import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -59,11 +60,6 @@ public class DormandPrince54Solver implements FirstOrderSolver {
         private final SolverConfigINDArray config;
         private final INDArray errorCoeffs;
 
-        final static WorkspaceConfiguration wsConf = WorkspaceConfiguration.builder()
-                .overallocationLimit(0.0)
-                .policySpill(SpillPolicy.REALLOCATE)
-                .build();
-
         public DormandPrince54Mse(SolverConfigINDArray config) {
             this(config, butcherTableuBuilder.build().bStar);
         }
@@ -82,23 +78,68 @@ public class DormandPrince54Solver implements FirstOrderSolver {
         ) {
 
             // TODO: Test remove zero row from bStar and yDotK and see if there are net gains
-            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(wsConf, this.getClass().getSimpleName())) {
+            try (MemoryWorkspace ws = SolverWorkspaces.enterStep(this.getClass().getSimpleName())) {
                 final INDArray errSum = errorCoeffs.mmul(yDotK);
                 final INDArray yScale = max(abs(y0), abs(y1), false).reshape(new long[]{1, y0.length()});
                 final INDArray tol = yScale.muli(config.getRelTol()).addi(config.getAbsTol());
                 final INDArray ratio = errSum.divi(tol).muli(h);
                 final INDArray error = ratio.muli(ratio);
-                return sqrt(error.mean()).detach();
+                // Moved to the workspace of the caller if there is one
+                return sqrt(error.mean()).leverage();
             }
         }
+
+        @Override
+        public long nrofStateCopies() {
+            // Weighted sum of derivatives and absolute values of y0 and y1. Other operations are in place
+            return 3;
+        }
+    }
+
+    /**
+     * Returns the Butcher tableu used by this solver
+     * @return the {@link ButcherTableu} for the current data type
+     */
+    public static ButcherTableu butcherTableu() {
+        return butcherTableuBuilder.build();
     }
 
     public DormandPrince54Solver(SolverConfig config) {
-        final SolverConfigINDArray configINDArray = new SolverConfigINDArray(config);
+        this(new SolverConfigINDArray(config), new SolveBudget(config));
+    }
+
+    /**
+     * Create a new solver which reads its tolerances from the given {@link ToleranceHolder}
+     * @param config Solver configuration. Tolerances are ignored
+     * @param tolerances Holder of tolerances to use
+     */
+    public DormandPrince54Solver(SolverConfig config, ToleranceHolder tolerances) {
+        this(new SolverConfigINDArray(config, tolerances), new SolveBudget(config));
+    }
+
+    private DormandPrince54Solver(SolverConfigINDArray configINDArray, SolveBudget budget) {
         solver = new AdaptiveRungeKuttaSolver(
                 butcherTableuBuilder.build(),
                 new AdaptiveRungeKuttaStepPolicy(configINDArray, 5),
-                new DormandPrince54Mse(configINDArray));
+                new DormandPrince54Mse(configINDArray),
+                budget);
+    }
+
+    /**
+     * Returns the number of arrays with the same size as the state which are allocated when solving
+     * @return the number of state sized arrays
+     */
+    public long nrofStateCopies() {
+        return solver.nrofStateCopies();
+    }
+
+    /**
+     * Returns true if the last solve stopped before reaching the end time because its budget was exceeded, see
+     * {@link AdaptiveRungeKuttaSolver#isTruncated()}
+     * @return true if the last solve was truncated
+     */
+    public boolean isTruncated() {
+        return solver.isTruncated();
     }
 
     @Override
@@ -0,0 +1,142 @@
+package ode.solve.impl;
+
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.FirstOrderSolver;
+import ode.solve.api.StepListener;
+import ode.solve.impl.util.AggStepListener;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * {@link FirstOrderSolver} which solves an ensemble of members concurrently. Each member is one element along
+ * dimension 0 of the initial state and is solved separately with its own solver, meaning that adaptive solvers take
+ * steps based on the error of each member only instead of on the worst member in the whole batch. Members are
+ * distributed over a {@link ForkJoinPool} in chunks which idle workers can steal from each other.
+ * <br><br>
+ * Note that equations will be evaluated from several threads at the same time and must therefore be thread safe. The
+ * solver of each chunk of members is given the listeners through {@link StepListener#forSolver()}, meaning that
+ * listeners which return themselves from it must be thread safe.
+ *
+ * @author Christian Skarby
+ */
+public class EnsembleSolver implements FirstOrderSolver {
+
+    private final Supplier<FirstOrderSolver> solverFactory;
+    private final ForkJoinPool pool;
+    private final int minNrofMembersPerTask;
+    private final AggStepListener listener = new AggStepListener();
+
+    /**
+     * Create a new solver which uses the common {@link ForkJoinPool}
+     * @param solverFactory Creates a solver per chunk of members
+     */
+    public EnsembleSolver(Supplier<FirstOrderSolver> solverFactory) {
+        this(solverFactory, ForkJoinPool.commonPool(), 1);
+    }
+
+    /**
+     * Create a new solver
+     * @param solverFactory Creates a solver per chunk of members
+     * @param pool Pool to run the solves in
+     * @param minNrofMembersPerTask Chunks of members will not be split further than this
+     */
+    public EnsembleSolver(Supplier<FirstOrderSolver> solverFactory, ForkJoinPool pool, int minNrofMembersPerTask) {
+        this.solverFactory = solverFactory;
+        this.pool = pool;
+        this.minNrofMembersPerTask = Math.max(1, minNrofMembersPerTask);
+    }
+
+    @Override
+    public INDArray integrate(FirstOrderEquation equation, INDArray t, INDArray y0, INDArray yOut) {
+        return integrate(member -> equation, t, y0, yOut);
+    }
+
+    /**
+     * Solve an ensemble where each member may have its own equation, e.g. to solve the same initial state for
+     * different parameters.
+     *
+     * @param equations Returns the equation for a given member. Will be called from several threads.
+     * @param t         Vector with start and end time
+     * @param y0        Initial states. One member per element in dimension 0
+     * @param yOut      Will contain the state of each member at the end time. Same shape as y0.
+     * @return yOut, same instance as input param
+     */
+    public INDArray integrate(IntFunction<FirstOrderEquation> equations, INDArray t, INDArray y0, INDArray yOut) {
+        if (!Arrays.equals(y0.shape(), yOut.shape())) {
+            throw new IllegalArgumentException("y0 and yOut must have the same shape! y0: " + Arrays.toString(y0.shape())
+                    + ", yOut: " + Arrays.toString(yOut.shape()));
+        }
+
+        final int nrofMembers = (int) y0.size(0);
+        // A few chunks per worker so that there is something to steal if some members take more steps than others
+        final int nrofChunks = pool.getParallelism() * 4;
+        final int chunkSize = Math.max(minNrofMembersPerTask, (nrofMembers + nrofChunks - 1) / nrofChunks);
+        pool.invoke(new SolveMembers(equations, t, y0, yOut, 0, nrofMembers, chunkSize));
+        return yOut;
+    }
+
+    private final class SolveMembers extends RecursiveAction {
+
+        private final IntFunction<FirstOrderEquation> equations;
+        private final INDArray t;
+        private final INDArray y0;
+        private final INDArray yOut;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+
+        private SolveMembers(IntFunction<FirstOrderEquation> equations, INDArray t, INDArray y0, INDArray yOut, int start, int end, int chunkSize) {
+            this.equations = equations;
+            this.t = t;
+            this.y0 = y0;
+            this.yOut = yOut;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > chunkSize) {
+                final int mid = start + (end - start) / 2;
+                invokeAll(
+                        new SolveMembers(equations, t, y0, yOut, start, mid, chunkSize),
+                        new SolveMembers(equations, t, y0, yOut, mid, end, chunkSize));
+                return;
+            }
+
+            final FirstOrderSolver solver = createSolver();
+            final INDArray tMember = t.dup();
+            final INDArrayIndex[] access = new INDArrayIndex[y0.rank()];
+            Arrays.fill(access, NDArrayIndex.all());
+            for (int member = start; member < end; member++) {
+                // Interval instead of point to keep the rank
+                access[0] = NDArrayIndex.interval(member, member + 1);
+                solver.integrate(equations.apply(member), tMember, y0.get(access).dup(), yOut.get(access));
+            }
+        }
+    }
+
+    private FirstOrderSolver createSolver() {
+        final FirstOrderSolver solver = solverFactory.get();
+        solver.addListener(listener.forSolver());
+        return solver;
+    }
+
+    @Override
+    public void addListener(StepListener... listeners) {
+        listener.addListeners(listeners);
+    }
+
+    @Override
+    public void clearListeners(StepListener... listeners) {
+        listener.clearListeners(listeners);
+    }
+}
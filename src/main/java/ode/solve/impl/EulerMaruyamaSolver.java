@@ -0,0 +1,67 @@
+package ode.solve.impl;
+
+import ode.solve.api.BrownianPath;
+import ode.solve.api.StepListener;
+import ode.solve.api.StochasticEquation;
+import ode.solve.api.StochasticSolver;
+import ode.solve.impl.util.AggStepListener;
+import ode.solve.impl.util.StateContainer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Euler–Maruyama method with a fixed number of equally sized steps. Strong order 0.5 and weak order 1.
+ *
+ * @author Christian Skarby
+ */
+public class EulerMaruyamaSolver implements StochasticSolver {
+
+    private final int nrofSteps;
+    private final AggStepListener listener = new AggStepListener();
+
+    public EulerMaruyamaSolver(int nrofSteps) {
+        if (nrofSteps < 1) {
+            throw new IllegalArgumentException("Must take at least one step! Got: " + nrofSteps);
+        }
+        this.nrofSteps = nrofSteps;
+    }
+
+    @Override
+    public INDArray integrate(StochasticEquation equation, BrownianPath brownianPath, INDArray t, INDArray y0, INDArray yOut) {
+        if (t.length() != 2) {
+            throw new IllegalArgumentException("time must be size 2! Was: " + t);
+        }
+
+        final double t0 = t.getDouble(0);
+        final double h = (t.getDouble(1) - t0) / nrofSteps;
+        final INDArray time = t.getScalar(0).dup();
+        final INDArray step = time.dup().assign(h);
+        final INDArray drift = y0.dup();
+        final INDArray diffusion = y0.dup();
+        yOut.assign(y0);
+
+        listener.begin(t, y0);
+
+        for (int i = 0; i < nrofSteps; i++) {
+            final double tStart = t0 + i * h;
+            equation.calculateDrift(yOut, time, drift);
+            equation.calculateDiffusion(yOut, time, diffusion);
+            yOut.addi(drift.mul(h)).addi(diffusion.muli(brownianPath.increment(tStart, tStart + h)));
+            time.assign(tStart + h);
+            listener.step(new StateContainer(time, yOut, drift), step, null);
+        }
+
+        listener.done();
+
+        return yOut;
+    }
+
+    @Override
+    public void addListener(StepListener... listeners) {
+        this.listener.addListeners(listeners);
+    }
+
+    @Override
+    public void clearListeners(StepListener... listeners) {
+        this.listener.clearListeners(listeners);
+    }
+}
@@ -0,0 +1,63 @@
+package ode.solve.impl;
+
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.FirstOrderSolver;
+import ode.solve.api.StepListener;
+import ode.solve.impl.util.AggStepListener;
+import ode.solve.impl.util.StateContainer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Explicit Euler method with a fixed number of equally sized steps. Not very accurate, but cheap and predictable which
+ * makes it useful as e.g. the coarse solver in a {@link PararealMultiStepSolver}.
+ *
+ * @author Christian Skarby
+ */
+public class EulerSolver implements FirstOrderSolver {
+
+    private final int nrofSteps;
+    private final AggStepListener listener = new AggStepListener();
+
+    public EulerSolver(int nrofSteps) {
+        if (nrofSteps < 1) {
+            throw new IllegalArgumentException("Must take at least one step! Got: " + nrofSteps);
+        }
+        this.nrofSteps = nrofSteps;
+    }
+
+    @Override
+    public INDArray integrate(FirstOrderEquation equation, INDArray t, INDArray y0, INDArray yOut) {
+        if (t.length() != 2) {
+            throw new IllegalArgumentException("time must be size 2! Was: " + t);
+        }
+
+        final double h = (t.getDouble(1) - t.getDouble(0)) / nrofSteps;
+        final INDArray time = t.getScalar(0).dup();
+        final INDArray step = time.dup().assign(h);
+        final INDArray yDot = y0.dup();
+        yOut.assign(y0);
+
+        listener.begin(t, y0);
+
+        for (int i = 0; i < nrofSteps; i++) {
+            equation.calculateDerivative(yOut, time, yDot);
+            yOut.addi(yDot.mul(h));
+            time.addi(h);
+            listener.step(new StateContainer(time, yOut, yDot), step, null);
+        }
+
+        listener.done();
+
+        return yOut;
+    }
+
+    @Override
+    public void addListener(StepListener... listeners) {
+        this.listener.addListeners(listeners);
+    }
+
+    @Override
+    public void clearListeners(StepListener... listeners) {
+        this.listener.clearListeners(listeners);
+    }
+}
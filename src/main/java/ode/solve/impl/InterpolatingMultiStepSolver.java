@@ -24,6 +24,15 @@ public class InterpolatingMultiStepSolver implements FirstOrderMultiStepSolver {
         this.solver = solver;
     }
 
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated on top of what the wrapped
+     * solver allocates, see {@link InterpolatingStepListener#nrofStateCopies()}.
+     * @return the number of state sized arrays
+     */
+    public static int nrofStateCopies() {
+        return InterpolatingStepListener.nrofStateCopies();
+    }
+
     @Override
     public INDArray integrate(FirstOrderEquation equation, INDArray t, INDArray y0, INDArray yOut) {
         if(!t.isVector()) {
@@ -0,0 +1,95 @@
+package ode.solve.impl;
+
+import ode.solve.api.BrownianPath;
+import ode.solve.api.StepListener;
+import ode.solve.api.StochasticEquation;
+import ode.solve.api.StochasticSolver;
+import ode.solve.impl.util.AggStepListener;
+import ode.solve.impl.util.StateContainer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Derivative free Milstein method (the explicit order 1.0 strong Runge-Kutta scheme from Kloeden & Platen) for
+ * diagonal noise with a fixed number of equally sized steps. The derivative of the diffusion is estimated from one extra
+ * evaluation of the diffusion per step so that no jacobian of e.g. a neural network is required.
+ *
+ * @author Christian Skarby
+ */
+public class MilsteinSolver implements StochasticSolver {
+
+    private final int nrofSteps;
+    private final AggStepListener listener = new AggStepListener();
+
+    public MilsteinSolver(int nrofSteps) {
+        if (nrofSteps < 1) {
+            throw new IllegalArgumentException("Must take at least one step! Got: " + nrofSteps);
+        }
+        this.nrofSteps = nrofSteps;
+    }
+
+    @Override
+    public INDArray integrate(StochasticEquation equation, BrownianPath brownianPath, INDArray t, INDArray y0, INDArray yOut) {
+        if (t.length() != 2) {
+            throw new IllegalArgumentException("time must be size 2! Was: " + t);
+        }
+
+        final double t0 = t.getDouble(0);
+        final double h = (t.getDouble(1) - t0) / nrofSteps;
+        final INDArray time = t.getScalar(0).dup();
+        final INDArray step = time.dup().assign(h);
+        final INDArray drift = y0.dup();
+        yOut.assign(y0);
+
+        listener.begin(t, y0);
+
+        for (int i = 0; i < nrofSteps; i++) {
+            final double tStart = t0 + i * h;
+            time.assign(tStart);
+            step(equation, time, h, brownianPath.increment(tStart, tStart + h), yOut, drift);
+            time.assign(tStart + h);
+            listener.step(new StateContainer(time, yOut, drift), step, null);
+        }
+
+        listener.done();
+
+        return yOut;
+    }
+
+    /**
+     * Take one step
+     * @param equation Equation to solve
+     * @param time Time at start of step
+     * @param h Step size
+     * @param dW Increment of the Brownian motion over the step
+     * @param y State at start of step. Will contain the state at end of step.
+     * @param drift Will contain the drift at start of step
+     */
+    static void step(StochasticEquation equation, INDArray time, double h, INDArray dW, INDArray y, INDArray drift) {
+        final double sqrtH = Math.sqrt(Math.abs(h));
+        final INDArray diffusion = y.dup();
+        equation.calculateDrift(y, time, drift);
+        equation.calculateDiffusion(y, time, diffusion);
+
+        final INDArray drifted = y.add(drift.mul(h));
+        final INDArray support = drifted.add(diffusion.mul(sqrtH));
+        final INDArray diffusionSupport = equation.calculateDiffusion(support, time, support.dup());
+
+        // (g(support) - g(y)) * (dW^2 - h) / (2 * sqrt(h))
+        final INDArray correction = diffusionSupport.subi(diffusion)
+                .muli(Transforms.pow(dW, 2, true).subi(Math.abs(h)))
+                .divi(2 * sqrtH);
+
+        y.assign(drifted.addi(diffusion.muli(dW)).addi(correction));
+    }
+
+    @Override
+    public void addListener(StepListener... listeners) {
+        this.listener.addListeners(listeners);
+    }
+
+    @Override
+    public void clearListeners(StepListener... listeners) {
+        this.listener.clearListeners(listeners);
+    }
+}
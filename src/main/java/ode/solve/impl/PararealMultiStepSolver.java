@@ -0,0 +1,199 @@
+package ode.solve.impl;
+
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.FirstOrderMultiStepSolver;
+import ode.solve.api.FirstOrderSolver;
+import ode.solve.api.StepListener;
+import ode.solve.impl.util.AggStepListener;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * {@link FirstOrderMultiStepSolver} which solves the time intervals {@code t[n], t[n+1]} in parallel using the Parareal
+ * algorithm. A cheap coarse solver predicts the state at each interval boundary after which a fine solver solves all
+ * intervals in parallel starting from the predicted states. Predictions are then corrected sequentially using the
+ * coarse solver and the process is repeated until the boundary states have converged. After k iterations the first k
+ * intervals are guaranteed to be exact (w.r.t the fine solver) so the result is never worse than what
+ * {@link SingleSteppingMultiStepSolver} would give with the fine solver.
+ * <br><br>
+ * Note that the given {@link FirstOrderEquation} will be evaluated from several threads at the same time and must
+ * therefore be thread safe. Each fine solver is given the listeners through {@link StepListener#forSolver()}, meaning
+ * that listeners which return themselves from it must be thread safe.
+ * <br><br>
+ * If the boundary states have not converged when the max number of iterations is reached the solution is returned
+ * as is and a warning is logged. Use {@link #isConverged()} to check the outcome of the last solve.
+ * <br><br>
+ * See https://en.wikipedia.org/wiki/Parareal
+ *
+ * @author Christian Skarby
+ */
+public class PararealMultiStepSolver implements FirstOrderMultiStepSolver {
+
+    private static final Logger log = LoggerFactory.getLogger(PararealMultiStepSolver.class);
+
+    private final FirstOrderSolver coarseSolver;
+    private final Supplier<FirstOrderSolver> fineSolverFactory;
+    private final Executor executor;
+    private final double tolerance;
+    private final int maxNrofIterations;
+    private final AggStepListener fineListener = new AggStepListener();
+    private boolean converged = true;
+
+    /**
+     * Create a new solver which uses a few Euler steps as coarse solver and the common {@link ForkJoinPool} to run the
+     * fine solves.
+     * @param fineSolverFactory Creates a fine solver per parallel solve
+     * @param tolerance Max absolute change of any boundary state between two iterations for the solution to be
+     *                  considered converged
+     */
+    public PararealMultiStepSolver(Supplier<FirstOrderSolver> fineSolverFactory, double tolerance) {
+        this(new EulerSolver(4), fineSolverFactory, ForkJoinPool.commonPool(), tolerance, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a new solver
+     * @param coarseSolver Solver used to predict and correct boundary states. Always called from the calling thread.
+     * @param fineSolverFactory Creates a fine solver per parallel solve
+     * @param executor Executor to run the fine solves in
+     * @param tolerance Max absolute change of any boundary state between two iterations for the solution to be
+     *                  considered converged
+     * @param maxNrofIterations Max number of corrections. Number of intervals will be used if this is larger
+     */
+    public PararealMultiStepSolver(
+            FirstOrderSolver coarseSolver,
+            Supplier<FirstOrderSolver> fineSolverFactory,
+            Executor executor,
+            double tolerance,
+            int maxNrofIterations) {
+        this.coarseSolver = coarseSolver;
+        this.fineSolverFactory = fineSolverFactory;
+        this.executor = executor;
+        this.tolerance = tolerance;
+        this.maxNrofIterations = maxNrofIterations;
+    }
+
+    @Override
+    public INDArray integrate(FirstOrderEquation equation, INDArray t, INDArray y0, INDArray yOut) {
+        if (yOut.size(0) + 1 != t.length()) {
+            throw new IllegalArgumentException("yOut must have one element less in first dimension compared to t!");
+        }
+
+        final int nrofIntervals = (int) t.length() - 1;
+        final INDArray[] tIntervals = new INDArray[nrofIntervals];
+        final INDArray[] boundaries = new INDArray[nrofIntervals + 1];
+        final INDArray[] coarse = new INDArray[nrofIntervals];
+        final INDArray[] fine = new INDArray[nrofIntervals];
+
+        final INDArrayIndex[] yOutAccess = new INDArrayIndex[yOut.rank()];
+        for (int dim = 0; dim < yOutAccess.length; dim++) {
+            yOutAccess[dim] = NDArrayIndex.all();
+        }
+
+        boundaries[0] = y0;
+        for (int interval = 0; interval < nrofIntervals; interval++) {
+            tIntervals[interval] = t.get(NDArrayIndex.interval(interval, interval + 2)).dup();
+            yOutAccess[0] = NDArrayIndex.point(interval);
+            boundaries[interval + 1] = yOut.get(yOutAccess);
+            coarse[interval] = y0.dup();
+            fine[interval] = y0.dup();
+
+            // Initial prediction
+            coarseSolver.integrate(equation, tIntervals[interval], boundaries[interval], coarse[interval]);
+            boundaries[interval + 1].assign(coarse[interval]);
+        }
+
+        final INDArray coarseNew = y0.dup();
+        final int nrofIterations = Math.min(nrofIntervals, maxNrofIterations);
+        // After as many iterations as there are intervals all boundary states are exact
+        converged = nrofIterations == nrofIntervals;
+        for (int iter = 0; iter < nrofIterations; iter++) {
+
+            // Boundary states before iter are already exact
+            solveFine(equation, tIntervals, boundaries, fine, iter);
+
+            double maxChange = 0;
+            for (int interval = iter; interval < nrofIntervals; interval++) {
+                coarseSolver.integrate(equation, tIntervals[interval], boundaries[interval], coarseNew);
+                final INDArray corrected = coarseNew.add(fine[interval]).subi(coarse[interval]);
+                coarse[interval].assign(coarseNew);
+
+                maxChange = Math.max(maxChange,
+                        Transforms.abs(corrected.sub(boundaries[interval + 1])).maxNumber().doubleValue());
+                boundaries[interval + 1].assign(corrected);
+            }
+
+            if (maxChange < tolerance) {
+                converged = true;
+                break;
+            }
+        }
+
+        if (!converged) {
+            log.warn("Boundary states did not converge within " + nrofIterations + " iterations! Only the first "
+                    + nrofIterations + " of " + nrofIntervals + " intervals are exact");
+        }
+
+        return yOut;
+    }
+
+    private void solveFine(FirstOrderEquation equation, INDArray[] tIntervals, INDArray[] boundaries, INDArray[] fine, int first) {
+        final List<CompletableFuture<Void>> fineSolves = new ArrayList<>();
+        for (int interval = first; interval < fine.length; interval++) {
+            final int current = interval;
+            final INDArray start = boundaries[interval].dup();
+            fineSolves.add(CompletableFuture.runAsync(() ->
+                            createFineSolver().integrate(equation, tIntervals[current], start, fine[current]),
+                    executor));
+        }
+
+        try {
+            CompletableFuture.allOf(fineSolves.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Fine solve failed!", e.getCause());
+        }
+    }
+
+    private FirstOrderSolver createFineSolver() {
+        final FirstOrderSolver solver = fineSolverFactory.get();
+        solver.addListener(fineListener.forSolver());
+        return solver;
+    }
+
+    /**
+     * Returns true if the boundary states of the last solve converged, either because the max change between two
+     * iterations was below the tolerance or because there were at least as many iterations as intervals.
+     * @return true if the last solve converged
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * Listeners are added to the coarse solver as is since it runs in the calling thread. Fine solvers are given the
+     * listeners through {@link StepListener#forSolver()}.
+     * @param listeners listeners to add
+     */
+    @Override
+    public void addListener(StepListener... listeners) {
+        coarseSolver.addListener(listeners);
+        fineListener.addListeners(listeners);
+    }
+
+    @Override
+    public void clearListeners(StepListener... listeners) {
+        coarseSolver.clearListeners(listeners);
+        fineListener.clearListeners(listeners);
+    }
+}
@@ -22,6 +22,15 @@ public class SingleSteppingMultiStepSolver implements FirstOrderMultiStepSolver
         this.solver = solver;
     }
 
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated on top of what the wrapped
+     * solver allocates. Solutions are written directly to the output so there are none.
+     * @return the number of state sized arrays
+     */
+    public static int nrofStateCopies() {
+        return 0;
+    }
+
     @Override
     public INDArray integrate(FirstOrderEquation equation, INDArray t, INDArray y0, INDArray yOut) {
         if(yOut.size(0) + 1 != t.length()) {
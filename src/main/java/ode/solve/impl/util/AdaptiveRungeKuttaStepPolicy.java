@@ -12,7 +12,7 @@ import static org.nd4j.linalg.ops.transforms.Transforms.*;
  */
 public class AdaptiveRungeKuttaStepPolicy implements StepPolicy {
 
-    private final static INDArray MIN_H = Nd4j.create(1).putScalar(0, 1e-6);
+    private final static double MIN_H = 1e-6;
 
     private final SolverConfigINDArray config;
     private final StepConfig stepConfig;
@@ -101,7 +101,7 @@ public class AdaptiveRungeKuttaStepPolicy implements StepPolicy {
         final INDArray yDotOnScale2 = ratio.muli(ratio).sum();
 
         final INDArray step = ((yOnScale2.getDouble(0) < 1.0e-10) || (yDotOnScale2.getDouble(0) < 1.0e-10)) ?
-                MIN_H : sqrt(yOnScale2.divi(yDotOnScale2)).muli(0.01);
+                Nd4j.create(1).putScalar(0, MIN_H) : sqrt(yOnScale2.divi(yDotOnScale2)).muli(0.01);
 
         final boolean backward = t.argMax().getInt(0) == 0;
         if (backward) {
@@ -122,7 +122,7 @@ public class AdaptiveRungeKuttaStepPolicy implements StepPolicy {
         // TODO: Should be abs(yDDotOnScale) for when negative step?
         final INDArray maxInv2 = max(sqrt(yDotOnScale2), yDDotOnScale);
         final INDArray step1 = maxInv2.getDouble(0) < 1e-15 ?
-                max(MIN_H, abs(step).muli(0.001)) :
+                max(abs(step).muli(0.001), MIN_H) :
                 pow(maxInv2.rdivi(0.01), 1d / stepConfig.order);
 
         step.assign(min(abs(step).muli(100), step1));
@@ -140,15 +140,17 @@ public class AdaptiveRungeKuttaStepPolicy implements StepPolicy {
 
     @Override
     public INDArray step(INDArray step, INDArray error) {
-        final INDArray sign = sign(step);
-        return bound(stepFactor(error).muli(step).muli(sign), config.getMaxStep(), config.getMinStep()).muli(sign);
+        // Done in double precision regardless of data type
+        final double h = step.getDouble(0);
+        final double newStep = bound(stepFactor(error.getDouble(0)) * Math.abs(h), config.getMaxStep().getDouble(0), config.getMinStep().getDouble(0));
+        return step.dup().assign(h < 0 ? -newStep : newStep);
     }
 
-    private INDArray stepFactor(INDArray error) {
-        return bound((pow(error, exp).muli(stepConfig.safety)), stepConfig.maxGrowth, stepConfig.minReduction);
+    private double stepFactor(double error) {
+        return bound(Math.pow(error, exp) * stepConfig.safety.getDouble(0), stepConfig.maxGrowth.getDouble(0), stepConfig.minReduction.getDouble(0));
     }
 
-    private static INDArray bound(INDArray var, INDArray upper, INDArray lower) {
-        return min(upper, max(lower, var));
+    private static double bound(double var, double upper, double lower) {
+        return Math.min(upper, Math.max(lower, var));
     }
 }
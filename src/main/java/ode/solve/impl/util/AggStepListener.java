@@ -1,20 +1,28 @@
 package ode.solve.impl.util;
 
 import ode.solve.api.StepListener;
+import ode.solve.conf.SolverConfig;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Aggregate of {@link StepListener}s. Main purpose is to avoid having listener loops cluttering up the real code.
+ * Listeners may be added and removed while other threads notify them.
+ * <br><br>
+ * Solver configurations give each solver they instantiate the listener returned by {@link #forSolver()}. It notifies
+ * the listeners currently in this aggregate through the instances they return from {@link StepListener#forSolver()}
+ * so that listeners which keep state per solve are not shared between concurrently running solvers.
  *
  * @author Christian Skarby
  */
 public class AggStepListener implements StepListener {
 
-    private final Collection<StepListener> listeners = new ArrayList<>();
+    private final Collection<StepListener> listeners = new CopyOnWriteArrayList<>();
 
     @Override
     public void begin(INDArray t, INDArray y0) {
@@ -30,6 +38,13 @@ public class AggStepListener implements StepListener {
         }
     }
 
+    @Override
+    public void rejected(SolverState solverState, INDArray step, INDArray error) {
+        for (StepListener listener : listeners) {
+            listener.rejected(solverState, step, error);
+        }
+    }
+
     @Override
     public void done() {
         for (StepListener listener : listeners) {
@@ -37,6 +52,40 @@ public class AggStepListener implements StepListener {
         }
     }
 
+    @Override
+    public void budgetExceeded(SolverState solverState, SolverConfig.BudgetFallback fallback) {
+        for (StepListener listener : listeners) {
+            listener.budgetExceeded(solverState, fallback);
+        }
+    }
+
+    @Override
+    public boolean shouldTerminate() {
+        boolean terminate = false;
+        for (StepListener listener : listeners) {
+            terminate |= listener.shouldTerminate();
+        }
+        return terminate;
+    }
+
+    /**
+     * Returns a listener for one solver instance which notifies the listeners of this aggregate. Listeners which are
+     * added to or removed from this aggregate afterwards are also added to or removed from the returned listener.
+     * @return a listener for one solver instance
+     */
+    @Override
+    public StepListener forSolver() {
+        return new PerSolver();
+    }
+
+    /**
+     * Returns the listeners of this aggregate
+     * @return the listeners
+     */
+    public StepListener[] listeners() {
+        return listeners.toArray(new StepListener[0]);
+    }
+
     public void addListeners(StepListener... listeners) {
         this.listeners.addAll(Arrays.asList(listeners));
     }
@@ -53,4 +102,67 @@ public class AggStepListener implements StepListener {
     public String toString() {
         return this.getClass().getName();
     }
+
+    /**
+     * View of the listeners for one solver. Only accessed from the thread the solver currently runs in.
+     */
+    private class PerSolver implements StepListener {
+
+        private final Map<StepListener, StepListener> solverListeners = new IdentityHashMap<>();
+
+        private StepListener solverListener(StepListener listener) {
+            return solverListeners.computeIfAbsent(listener, StepListener::forSolver);
+        }
+
+        @Override
+        public void begin(INDArray t, INDArray y0) {
+            // Forget about removed listeners
+            solverListeners.keySet().retainAll(listeners);
+            for (StepListener listener : listeners) {
+                solverListener(listener).begin(t, y0);
+            }
+        }
+
+        @Override
+        public void step(SolverState solverState, INDArray step, INDArray error) {
+            for (StepListener listener : listeners) {
+                solverListener(listener).step(solverState, step, error);
+            }
+        }
+
+        @Override
+        public void rejected(SolverState solverState, INDArray step, INDArray error) {
+            for (StepListener listener : listeners) {
+                solverListener(listener).rejected(solverState, step, error);
+            }
+        }
+
+        @Override
+        public void done() {
+            for (StepListener listener : listeners) {
+                solverListener(listener).done();
+            }
+        }
+
+        @Override
+        public void budgetExceeded(SolverState solverState, SolverConfig.BudgetFallback fallback) {
+            for (StepListener listener : listeners) {
+                solverListener(listener).budgetExceeded(solverState, fallback);
+            }
+        }
+
+        @Override
+        public boolean shouldTerminate() {
+            boolean terminate = false;
+            for (StepListener listener : listeners) {
+                terminate |= solverListener(listener).shouldTerminate();
+            }
+            return terminate;
+        }
+
+        @Override
+        public String toString() {
+            return AggStepListener.this.toString();
+        }
+    }
 }
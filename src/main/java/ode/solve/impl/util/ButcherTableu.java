@@ -4,8 +4,8 @@ import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Struct for representing the Butcher Tableu.
@@ -39,10 +39,11 @@ public class ButcherTableu {
     /**
      * Builder with built in cache. Why? Because tableus tend to be static and this creates problems in testcases which
      * need to use different data types. Instead of a static tableu, one needs to have a static builder so that a tableu
-     * for the correct data type is available.
+     * for the correct data type is available. The cache is safe to use from several threads, but the setters are not as
+     * they are expected to be called only once when creating the (static) builder.
      */
     public static class Builder {
-        final Map<DataBuffer.Type, ButcherTableu> cache = new HashMap<>();
+        final Map<DataBuffer.Type, ButcherTableu> cache = new ConcurrentHashMap<>();
         
         private double[][] a;
         private double[] b;
@@ -76,21 +77,18 @@ public class ButcherTableu {
         }
 
         public ButcherTableu build() {
-            ButcherTableu tableu = cache.get(Nd4j.dataType());
-            if(tableu == null) {
+            return cache.computeIfAbsent(Nd4j.dataType(), type -> {
                 final INDArray[] aArr = new INDArray[a.length];
                 for(int i = 0; i < a.length; i++) {
                     aArr[i] = Nd4j.create(a[i]);
                 }
-                tableu = new ButcherTableu(
+                return new ButcherTableu(
                         aArr,
                         Nd4j.create(b),
                         Nd4j.create(bStar),
                         Nd4j.create(c),
                         cMid);
-                cache.put(Nd4j.dataType(), tableu);
-            }
-            return  tableu;
+            });
         }
     }
     
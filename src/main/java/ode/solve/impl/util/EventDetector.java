@@ -0,0 +1,193 @@
+package ode.solve.impl.util;
+
+import ode.solve.api.EventFunction;
+import ode.solve.api.StepListener;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+
+/**
+ * Detects events, i.e. sign changes of an {@link EventFunction}, after each step taken by a solver. Time of an event is
+ * located by root-finding (Illinois method) on an {@link Interpolation} of the last step so no extra function
+ * evaluations of the {@link ode.solve.api.FirstOrderEquation} are needed.
+ * <br><br>
+ * Events are recorded per sample in the batch and only the first event of each sample is recorded. If the detector is
+ * terminal it will request the solver to stop once all samples have had an event. Note that the state returned by the
+ * solver is then the state at the end of the last step and not at the time of the event. Use {@link #getEventStates()}
+ * to get the latter.
+ *
+ * @author Christian Skarby
+ */
+public class EventDetector implements StepListener {
+
+    private final static int maxNrofIterations = 100;
+
+    private final EventFunction eventFunction;
+    private final boolean terminal;
+    private final double timeTolerance;
+
+    private double[] eventTimes = new double[0];
+    private INDArray eventStates;
+    private int nrofEvents;
+    private State state;
+
+    private final static class State {
+        private final Interpolation interpolation;
+        private final INDArrayIndex[] sampleAccess;
+        private INDArray y0;
+        private INDArray g0;
+        private double t0;
+
+        private State(long[] shape) {
+            interpolation = new Interpolation(shape);
+            sampleAccess = new INDArrayIndex[shape.length];
+            Arrays.fill(sampleAccess, NDArrayIndex.all());
+        }
+
+        private INDArrayIndex[] sample(long index) {
+            sampleAccess[0] = NDArrayIndex.point(index);
+            return sampleAccess;
+        }
+    }
+
+    /**
+     * Create a non-terminal {@link EventDetector}
+     * @param eventFunction Function for which sign changes are events
+     */
+    public EventDetector(EventFunction eventFunction) {
+        this(eventFunction, false, 1e-8);
+    }
+
+    /**
+     * Create a new {@link EventDetector}
+     * @param eventFunction Function for which sign changes are events
+     * @param terminal If true, solver will be requested to terminate once all samples have had an event
+     * @param timeTolerance Tolerance of located event times
+     */
+    public EventDetector(EventFunction eventFunction, boolean terminal, double timeTolerance) {
+        this.eventFunction = eventFunction;
+        this.terminal = terminal;
+        this.timeTolerance = timeTolerance;
+    }
+
+    @Override
+    public void begin(INDArray t, INDArray y0) {
+        state = new State(y0.shape());
+        state.t0 = t.getDouble(0);
+        state.y0 = y0.dup();
+        state.g0 = eventFunction.evaluate(y0, state.t0).dup();
+
+        eventTimes = new double[(int) y0.size(0)];
+        Arrays.fill(eventTimes, Double.NaN);
+        nrofEvents = 0;
+
+        // States must be available after the solver has closed its workspace
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            eventStates = y0.dup();
+        }
+    }
+
+    @Override
+    public void step(SolverState solverState, INDArray step, INDArray error) {
+        final double t1 = solverState.time().getDouble(0);
+        final INDArray g1 = eventFunction.evaluate(solverState.getCurrentState(), t1);
+
+        boolean isFitted = false;
+        for (int i = 0; i < eventTimes.length; i++) {
+            final double g0i = state.g0.getDouble(i);
+            final double g1i = g1.getDouble(i);
+            if (Double.isNaN(eventTimes[i]) && isSignChange(g0i, g1i)) {
+                if (!isFitted) {
+                    state.interpolation.fitCoeffs(solverState, state.y0, step);
+                    isFitted = true;
+                }
+                eventTimes[i] = findRoot(i, state.t0, t1, g0i, g1i);
+                eventStates.put(state.sample(i),
+                        state.interpolation.interpolate(state.t0, t1, eventTimes[i]).get(state.sample(i)));
+                nrofEvents++;
+            }
+        }
+
+        state.t0 = t1;
+        // Copies from begin are reused as solvers might allocate temporaries in a workspace which is reset each step
+        state.y0.assign(solverState.getCurrentState());
+        state.g0.assign(g1);
+    }
+
+    private static boolean isSignChange(double g0, double g1) {
+        return (g0 < 0 && g1 >= 0) || (g0 > 0 && g1 <= 0);
+    }
+
+    private double findRoot(int sample, double t0, double t1, double g0, double g1) {
+        double ta = t0;
+        double tb = t1;
+        double ga = g0;
+        double gb = g1;
+        int side = 0;
+        double tc = t1;
+        for (int iter = 0; iter < maxNrofIterations && Math.abs(tb - ta) > timeTolerance; iter++) {
+            tc = Math.min(Math.max(t0, t1), Math.max(Math.min(t0, t1), (ta * gb - tb * ga) / (gb - ga)));
+            final double gc = evaluate(sample, t0, t1, tc);
+            if (gc == 0) {
+                return tc;
+            }
+
+            if (Math.signum(gc) == Math.signum(gb)) {
+                tb = tc;
+                gb = gc;
+                if (side == -1) {
+                    ga /= 2;
+                }
+                side = -1;
+            } else {
+                ta = tc;
+                ga = gc;
+                if (side == 1) {
+                    gb /= 2;
+                }
+                side = 1;
+            }
+        }
+        return tc;
+    }
+
+    private double evaluate(int sample, double t0, double t1, double t) {
+        return eventFunction.evaluate(state.interpolation.interpolate(t0, t1, t), t).getDouble(sample);
+    }
+
+    @Override
+    public void done() {
+        // Samples without events get the final state
+        for (int i = 0; i < eventTimes.length; i++) {
+            if (Double.isNaN(eventTimes[i])) {
+                eventStates.put(state.sample(i), state.y0.get(state.sample(i)));
+            }
+        }
+    }
+
+    @Override
+    public boolean shouldTerminate() {
+        return terminal && eventTimes.length > 0 && nrofEvents == eventTimes.length;
+    }
+
+    /**
+     * Returns the time of the first event of each sample from the last solve. NaN for samples without any event.
+     * @return Event times, one per sample
+     */
+    public double[] getEventTimes() {
+        return eventTimes.clone();
+    }
+
+    /**
+     * Returns the state at the time of the first event of each sample from the last solve. Samples without any event
+     * have the state from the last step taken by the solver.
+     * @return Event states
+     */
+    public INDArray getEventStates() {
+        return eventStates;
+    }
+}
@@ -3,28 +3,27 @@ package ode.solve.impl.util;
 import ode.solve.api.FirstOrderEquation;
 import ode.solve.impl.AdaptiveRungeKuttaSolver;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
-import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
-import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 
 /**
- * Combines a {@link FirstOrderEquation} with the state needed to evaluate it
+ * Combines a {@link FirstOrderEquation} with the state needed to evaluate it.
+ * <br><br>
+ * The state is stored using the current data type while time is accumulated in double precision. This makes it
+ * possible to use a lower precision data type (e.g. float) for the state without time drifting away due to round off
+ * errors when many steps are taken.
  *
  * @author Christian Skarby
  */
 public class FirstOrderEquationWithState implements SolverState {
 
-    private final static WorkspaceConfiguration wsConf = WorkspaceConfiguration.builder()
-            .overallocationLimit(0.0)
-            .policySpill(SpillPolicy.REALLOCATE)
-            .build();
-
     private final FirstOrderEquation equation;
     private final INDArray time;
+    private final INDArray workingTime;
     private final State state;
     private final double[] midPointCoeffs;
+    private double currentTime;
 
     private final static class State {
         private final INDArray y; // Last value of y. May be of any shape
@@ -39,10 +38,10 @@ public class FirstOrderEquationWithState implements SolverState {
             this.timeOffset = Nd4j.zeros(1);
         }
 
-        void step(INDArray stepCoeffPerStage, INDArray step) {
+        void step(INDArray stepCoeffPerStage, double stageTime, INDArray step) {
             // yWorking = y + (stepCoeffPerStage*step) . yDot[0:startState, :]) where . is dot product
-            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(wsConf, this.getClass().getSimpleName())) {
-                timeOffset.assign(step);
+            try (MemoryWorkspace ws = SolverWorkspaces.enterStep(this.getClass().getSimpleName())) {
+                timeOffset.assign(step).muli(stageTime);
                 yWorking.assign(y);
                 yWorking.addi((stepCoeffPerStage.mul(step)).mmul(
                         yDotK.get(NDArrayIndex.interval(0, stepCoeffPerStage.length()), NDArrayIndex.all())
@@ -55,6 +54,18 @@ public class FirstOrderEquationWithState implements SolverState {
         }
     }
 
+    /**
+     * Returns the number of arrays with the same size as the state which are allocated for a solver with the given
+     * number of stages: one derivative per stage, the working state and the weighted sum of derivatives computed in
+     * each call to {@link #step(INDArray, INDArray)}.
+     *
+     * @param nrofStages Number of stages of the solver
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies(long nrofStages) {
+        return nrofStages + 2;
+    }
+
     public FirstOrderEquationWithState(
             FirstOrderEquation equation,
             INDArray time,
@@ -65,8 +76,10 @@ public class FirstOrderEquationWithState implements SolverState {
         }
         this.equation = equation;
         this.time = time;
+        this.workingTime = time.dup();
         this.state = new State(state, midPointCoeffs.length);
         this.midPointCoeffs = midPointCoeffs;
+        this.currentTime = time.getDouble(0);
 
     }
 
@@ -77,9 +90,10 @@ public class FirstOrderEquationWithState implements SolverState {
      */
     public void calculateDerivative(long stage) {
         //System.out.println("\tUpdate stage " + stage + " from " + state.getStateDot(stage));
+        workingTime.assign(currentTime + state.timeOffset.getDouble(0));
         equation.calculateDerivative(
                 state.yWorking,
-                time.add(state.timeOffset),
+                workingTime,
                 state.getStateDot(stage)); // Note, stateDot of the given stage will be updated by this operation
         //System.out.println("\tto: " + state.getStateDot(stage));
     }
@@ -115,6 +129,15 @@ public class FirstOrderEquationWithState implements SolverState {
         return time;
     }
 
+    /**
+     * Return the current time in double precision
+     *
+     * @return the current time
+     */
+    public double currentTime() {
+        return currentTime;
+    }
+
     @Override
     public double[] getInterpolationMidpoints() {
         return midPointCoeffs;
@@ -131,23 +154,35 @@ public class FirstOrderEquationWithState implements SolverState {
     }
 
     /**
-     * Update the working state by taking a step accumulated over all stages up the the given stage. The base step is
-     * weighted with the given coefficients for each stage.
+     * Update the working state by taking a full step accumulated over all stages up the the given stage. The base step
+     * is weighted with the given coefficients for each stage.
      *
      * @param stepCoeffPerStage Weights for each stage (must be of shape [1, nrofStages]
      * @param step              Base step. Must be a scalar
      */
     public void step(INDArray stepCoeffPerStage, INDArray step) {
-        state.step(stepCoeffPerStage, step);
+        step(stepCoeffPerStage, 1, step);
+    }
+
+    /**
+     * Update the working state by taking a step accumulated over all stages up the the given stage. The base step is
+     * weighted with the given coefficients for each stage. Time of the working state is set to t + stageTime * step.
+     *
+     * @param stepCoeffPerStage Weights for each stage (must be of shape [1, nrofStages]
+     * @param stageTime         Fraction of the base step at which the stage is evaluated, i.e. c_k in the butcher tableu
+     * @param step              Base step. Must be a scalar
+     */
+    public void step(INDArray stepCoeffPerStage, double stageTime, INDArray step) {
+        state.step(stepCoeffPerStage, stageTime, step);
     }
 
     /**
      * Update the current state to the working state.
      */
     public void update() {
-        time.addi(state.timeOffset);
+        currentTime += state.timeOffset.getDouble(0);
+        time.assign(currentTime);
         state.y.assign(state.yWorking);
-
     }
 
     /**
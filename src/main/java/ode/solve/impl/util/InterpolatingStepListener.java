@@ -2,7 +2,6 @@ package ode.solve.impl.util;
 
 import ode.solve.api.StepListener;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.indexing.conditions.And;
@@ -26,9 +25,24 @@ public class InterpolatingStepListener implements StepListener {
     private State state;
 
     private final class State {
-        private Interpolation interpolation = new Interpolation();
+        private final Interpolation interpolation;
         private INDArray y0;
         private INDArray t0;
+
+        private State(long[] shape) {
+            interpolation = new Interpolation(shape);
+        }
+    }
+
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated by an instance when solving:
+     * those of the {@link Interpolation} and a copy of the state at the start of each step. A scalar copy of the time
+     * at the start of each step is also allocated.
+     *
+     * @return the number of state sized arrays
+     */
+    public static int nrofStateCopies() {
+        return Interpolation.nrofStateCopies() + 1;
     }
 
     /**
@@ -57,9 +71,10 @@ public class InterpolatingStepListener implements StepListener {
 
     @Override
     public void begin(INDArray t, INDArray y0) {
-        this.state = new State();
-        this.state.t0 = t.getScalar(0);
-        this.state.y0 = y0;
+        this.state = new State(y0.shape());
+        // Copies are updated in place in each step so that no memory is allocated by the listener after this point
+        this.state.t0 = t.getScalar(0).dup();
+        this.state.y0 = y0.dup();
 
         // Edge case: The first wanted time index is the start time -> user wants the starting state to be added to output
         if (state.t0.equalsWithEps(wantedTimeInds.getScalar(0), 1e-10)) {
@@ -87,44 +102,12 @@ public class InterpolatingStepListener implements StepListener {
         );
 
         if (timeInds.sumNumber().doubleValue() > 0) {
-            fitInterpolationCoeffs(solverState, step);
+            state.interpolation.fitCoeffs(solverState, state.y0, step);
             doInterpolation(timeInds, solverState.time());
         }
 
-        state.t0 = solverState.time().dup();
-        state.y0 = solverState.getCurrentState().dup();
-    }
-
-    private void fitInterpolationCoeffs(SolverState solverState, INDArray step) {
-        final INDArray[] yDotStages = new INDArray[solverState.getInterpolationMidpoints().length];
-        for (int i = 0; i < yDotStages.length; i++) {
-            yDotStages[i] = solverState.getStateDot(i);
-        }
-
-        final INDArray state0 = state.y0;
-        final INDArray state1 = solverState.getCurrentState();
-
-        final INDArray yMid = state.y0.add(scaledDotProduct(
-                Nd4j.createUninitialized(state0.shape()),
-                solverState.getInterpolationMidpoints(),
-                yDotStages,
-                step));
-
-        state.interpolation.fitCoeffs(
-                state0,
-                state1,
-                yMid,
-                yDotStages[0],
-                yDotStages[yDotStages.length - 1],
-                step);
-    }
-
-    private INDArray scaledDotProduct(INDArray output, double[] factors, INDArray[] inputs, INDArray scale) {
-        output.assign((inputs[0].mul(factors[0])).mul(scale));
-        for (int i = 1; i < inputs.length; i++) {
-            output.addi(inputs[i].mul(factors[i]).mul(scale));
-        }
-        return output;
+        state.t0.assign(solverState.time());
+        state.y0.assign(solverState.getCurrentState());
     }
 
     private void doInterpolation(INDArray timeInds, INDArray tNew) {
@@ -134,8 +117,8 @@ public class InterpolatingStepListener implements StepListener {
         for (int i = startInd; i < stopInd; i++) {
             yInterpolAccess[0] = NDArrayIndex.point(i);
 
-            yInterpol.put(yInterpolAccess,
-                    state.interpolation.interpolate(state.t0.getDouble(0), tNew.getDouble(0), wantedTimeInds.getDouble(i)));
+            state.interpolation.interpolate(state.t0.getDouble(0), tNew.getDouble(0), wantedTimeInds.getDouble(i),
+                    yInterpol.get(yInterpolAccess));
         }
     }
 
@@ -12,12 +12,45 @@ import org.nd4j.linalg.factory.Nd4j;
  */
 public class Interpolation {
 
-    private final INDArray[] coeffs = new INDArray[5];
+    private static final int nrofCoeffs = 5;
+
+    private final INDArray[] coeffs = new INDArray[nrofCoeffs];
+    private INDArray yMid; // Midpoint estimate when fitting from a SolverState
+    private INDArray scratch; // Scaled terms of dot products are computed here to avoid allocating temporaries
+
+    /**
+     * Returns the number of arrays with the same shape as the interpolated state which are allocated by an instance:
+     * the coefficients, the midpoint estimate and a scratch array. Fitting and interpolating into a given output does
+     * not allocate anything else.
+     *
+     * @return the number of state sized arrays
+     */
+    public static int nrofStateCopies() {
+        return nrofCoeffs + 2;
+    }
+
+    /**
+     * Create a new Interpolation. Coefficients are allocated when first fitted
+     */
+    public Interpolation() {
+    }
+
+    /**
+     * Create a new Interpolation for states of the given shape. Coefficients are allocated in the current workspace
+     * (if any) which is useful when fitting happens in a workspace which is reset between fits.
+     *
+     * @param shape Shape of the state to interpolate
+     */
+    public Interpolation(long[] shape) {
+        initCoeffs(shape);
+    }
 
     private void initCoeffs(long[] shape) {
         for (int i = 0; i < coeffs.length; i++) {
             coeffs[i] = Nd4j.createUninitialized(shape);
         }
+        yMid = Nd4j.createUninitialized(shape);
+        scratch = Nd4j.createUninitialized(shape);
     }
 
     /**
@@ -44,14 +77,51 @@ public class Interpolation {
 
         dotProduct(coeffs[2], new double[]{-4 * dtdub, dtdub, -11, -5, 16}, inputs);
 
-        coeffs[3] = f0.mul(dt);
-        coeffs[4] = y0.dup();
+        coeffs[3].assign(f0).muli(dtdub);
+        coeffs[4].assign(y0);
+    }
+
+    /**
+     * Fit coefficients for a fourth order polynomial from the last step taken by a solver
+     *
+     * @param solverState State of the solver after the step was taken
+     * @param y0          State at the start of the step
+     * @param step        Taken step
+     */
+    public void fitCoeffs(SolverState solverState, INDArray y0, INDArray step) {
+        final INDArray[] yDotStages = new INDArray[solverState.getInterpolationMidpoints().length];
+        for (int i = 0; i < yDotStages.length; i++) {
+            yDotStages[i] = solverState.getStateDot(i);
+        }
+
+        if (coeffs[0] == null) {
+            initCoeffs(y0.shape());
+        }
+
+        scaledDotProduct(yMid, solverState.getInterpolationMidpoints(), yDotStages, step).addi(y0);
+
+        fitCoeffs(
+                y0,
+                solverState.getCurrentState(),
+                yMid,
+                yDotStages[0],
+                yDotStages[yDotStages.length - 1],
+                step);
+    }
+
+    private INDArray scaledDotProduct(INDArray output, double[] factors, INDArray[] inputs, INDArray scale) {
+        final double scaleDouble = scale.getDouble(0);
+        final double[] scaledFactors = new double[factors.length];
+        for (int i = 0; i < factors.length; i++) {
+            scaledFactors[i] = factors[i] * scaleDouble;
+        }
+        return dotProduct(output, scaledFactors, inputs);
     }
 
     private INDArray dotProduct(INDArray output, double[] factors, INDArray[] inputs) {
-        output.assign((inputs[0].mul(factors[0])));
+        output.assign(inputs[0]).muli(factors[0]);
         for (int i = 1; i < inputs.length; i++) {
-            output.addi(inputs[i].mul(factors[i]));
+            output.addi(scratch.assign(inputs[i]).muli(factors[i]));
         }
         return output;
     }
@@ -65,6 +135,19 @@ public class Interpolation {
      * @return Result of the interpolation
      */
     public INDArray interpolate(double t0, double t1, double t) {
+        return interpolate(t0, t1, t, Nd4j.createUninitialized(coeffs[0].shape()));
+    }
+
+    /**
+     * Evaluate interpolation of a fourth order polynomial: p = coeffs[0] * x^4 + coeffs[1] * x^3 + coeffs[2] * x^2 + coeffs[3] * x + coeffs[4]
+     *
+     * @param t0     Start of interval
+     * @param t1     End of interval
+     * @param t      Wanted time
+     * @param output Result of the interpolation is assigned to this array. Must have the same shape as the state
+     * @return output
+     */
+    public INDArray interpolate(double t0, double t1, double t, INDArray output) {
 
         if (Math.max(t0, t1) < t || Math.min(t0, t1) > t) {
             throw new IllegalArgumentException("t0 < t < t1 or t1 < t < t0 not satisfied! t0: " + t0 + ", t: " + t + ", t1: " + t1);
@@ -79,7 +162,7 @@ public class Interpolation {
             xs[i] = xs[i + 1] * x;
         }
 
-        return dotProduct(Nd4j.createUninitialized(coeffs[0].shape()), xs, coeffs);
+        return dotProduct(output, xs, coeffs);
     }
 
 }
@@ -0,0 +1,65 @@
+package ode.solve.impl.util;
+
+import ode.solve.conf.SolverConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upper bound on the number of steps and wall clock time of a single solve along with what to do when it is exceeded.
+ *
+ * @author Christian Skarby
+ */
+public class SolveBudget {
+
+    private final int maxNrofSteps;
+    private final long maxSolveTimeNanos;
+    private final SolverConfig.BudgetFallback fallback;
+    private final int nrofFallbackSteps;
+
+    /**
+     * Return a budget which is never exceeded
+     * @return a new SolveBudget
+     */
+    public static SolveBudget unlimited() {
+        return new SolveBudget(0, 0, SolverConfig.BudgetFallback.FIXED_GRID, SolverConfig.DEFAULT_NROF_FALLBACK_STEPS);
+    }
+
+    public SolveBudget(SolverConfig config) {
+        this(config.getMaxNrofSteps(), config.getMaxSolveTimeMs(), config.getBudgetFallback(), config.getNrofFallbackSteps());
+    }
+
+    public SolveBudget(int maxNrofSteps, long maxSolveTimeMs, SolverConfig.BudgetFallback fallback, int nrofFallbackSteps) {
+        this.maxNrofSteps = maxNrofSteps;
+        this.maxSolveTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxSolveTimeMs);
+        this.fallback = fallback;
+        this.nrofFallbackSteps = nrofFallbackSteps;
+    }
+
+    /**
+     * Returns true if the budget is exceeded
+     * @param nrofSteps Number of steps taken so far
+     * @param startTimeNanos Value of {@link System#nanoTime()} when solve started
+     * @return true if budget is exceeded
+     */
+    public boolean isExceeded(int nrofSteps, long startTimeNanos) {
+        return (maxNrofSteps > 0 && nrofSteps >= maxNrofSteps)
+                || (maxSolveTimeNanos > 0 && System.nanoTime() - startTimeNanos >= maxSolveTimeNanos);
+    }
+
+    /**
+     * Returns what to do when the budget is exceeded
+     * @return the {@link SolverConfig.BudgetFallback}
+     */
+    public SolverConfig.BudgetFallback getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Returns the number of fixed steps to finish the solve with when the fallback is
+     * {@link SolverConfig.BudgetFallback#FIXED_GRID}
+     * @return the number of fallback steps
+     */
+    public int getNrofFallbackSteps() {
+        return nrofFallbackSteps;
+    }
+}
@@ -1,12 +1,15 @@
 package ode.solve.impl.util;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import ode.solve.conf.SolverConfig;
+import ode.solve.conf.ToleranceHolder;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
 /**
- * Solver configuration expressed with {@link INDArray}s
+ * Solver configuration expressed with {@link INDArray}s. Tolerances may optionally be read from a
+ * {@link ToleranceHolder} in which case they are updated when the holder changes.
  *
  * @author Christian Skarby
  */
@@ -17,6 +20,10 @@ public class SolverConfigINDArray {
     private final INDArray relTol;
     private final INDArray minStep;
     private final INDArray maxStep;
+    @Getter(AccessLevel.NONE)
+    private final ToleranceHolder tolerances;
+    @Getter(AccessLevel.NONE)
+    private long toleranceVersion;
 
     public SolverConfigINDArray(SolverConfig config) {
         this(
@@ -26,11 +33,29 @@ public class SolverConfigINDArray {
                 config.getMaxStep());
     }
 
+    public SolverConfigINDArray(SolverConfig config, ToleranceHolder tolerances) {
+        this(
+                tolerances.getAbsTol(),
+                tolerances.getRelTol(),
+                config.getMinStep(),
+                config.getMaxStep(),
+                tolerances);
+    }
+
     public SolverConfigINDArray(
             double absoluteTolerance,
             double relativeTolerance,
             double minStep,
             double maxStep) {
+        this(absoluteTolerance, relativeTolerance, minStep, maxStep, null);
+    }
+
+    private SolverConfigINDArray(
+            double absoluteTolerance,
+            double relativeTolerance,
+            double minStep,
+            double maxStep,
+            ToleranceHolder tolerances) {
         if (minStep >= maxStep) {
             throw new IllegalArgumentException("Max step smaller than min step! Swapped arguments? max: " + maxStep + " min " + minStep);
         }
@@ -38,5 +63,25 @@ public class SolverConfigINDArray {
         this.relTol = Nd4j.scalar(relativeTolerance);
         this.minStep = Nd4j.scalar(minStep);
         this.maxStep = Nd4j.scalar(maxStep);
+        this.tolerances = tolerances;
+        this.toleranceVersion = tolerances == null ? 0 : tolerances.getVersion();
+    }
+
+    public INDArray getAbsTol() {
+        updateTolerances();
+        return absTol;
+    }
+
+    public INDArray getRelTol() {
+        updateTolerances();
+        return relTol;
+    }
+
+    private void updateTolerances() {
+        if (tolerances != null && tolerances.getVersion() != toleranceVersion) {
+            toleranceVersion = tolerances.getVersion();
+            absTol.assign(tolerances.getAbsTol());
+            relTol.assign(tolerances.getRelTol());
+        }
     }
 }
@@ -0,0 +1,97 @@
+package ode.solve.impl.util;
+
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Workspaces used by solvers. Memory is divided into one workspace which lives for a whole solve (e.g. stage
+ * derivatives and working state) and workspaces which live for a single step (e.g. temporaries when computing the
+ * error). Both are cyclic workspaces which learn their size during the first cycle so that no memory needs to be
+ * allocated once solving is warmed up as long as the size of the state does not increase.
+ * <br><br>
+ * Configurations can be changed through {@link #setSolveConfiguration(WorkspaceConfiguration)} and
+ * {@link #setStepConfiguration(WorkspaceConfiguration)}. Note that workspaces are created per thread the first time
+ * they are used and changing the configuration has no effect on already created workspaces.
+ *
+ * @author Christian Skarby
+ */
+public final class SolverWorkspaces {
+
+    private static volatile WorkspaceConfiguration solveConf = defaultConfiguration();
+    private static volatile WorkspaceConfiguration stepConf = defaultConfiguration();
+
+    private SolverWorkspaces() {
+        // No need to instantiate
+    }
+
+    /**
+     * Returns the default configuration for solver workspaces: Size is learned from the first cycle and workspace is
+     * grown when it turns out to be too small.
+     * @return a new {@link WorkspaceConfiguration}
+     */
+    public static WorkspaceConfiguration defaultConfiguration() {
+        return WorkspaceConfiguration.builder()
+                .initialSize(0)
+                .overallocationLimit(0.0)
+                .policyAllocation(AllocationPolicy.OVERALLOCATE)
+                .policyLearning(LearningPolicy.FIRST_LOOP)
+                .policyReset(ResetPolicy.BLOCK_LEFT)
+                .policySpill(SpillPolicy.REALLOCATE)
+                .build();
+    }
+
+    /**
+     * Set the configuration to use for workspaces which live for a whole solve
+     * @param solveConf New configuration
+     */
+    public static void setSolveConfiguration(WorkspaceConfiguration solveConf) {
+        SolverWorkspaces.solveConf = solveConf;
+    }
+
+    /**
+     * Set the configuration to use for workspaces which live for a single step
+     * @param stepConf New configuration
+     */
+    public static void setStepConfiguration(WorkspaceConfiguration stepConf) {
+        SolverWorkspaces.stepConf = stepConf;
+    }
+
+    /**
+     * Return the configuration used for workspaces which live for a whole solve
+     * @return the {@link WorkspaceConfiguration}
+     */
+    public static WorkspaceConfiguration getSolveConfiguration() {
+        return solveConf;
+    }
+
+    /**
+     * Return the configuration used for workspaces which live for a single step
+     * @return the {@link WorkspaceConfiguration}
+     */
+    public static WorkspaceConfiguration getStepConfiguration() {
+        return stepConf;
+    }
+
+    /**
+     * Activate a workspace for a whole solve
+     * @param id Id of the workspace
+     * @return the activated {@link MemoryWorkspace}
+     */
+    public static MemoryWorkspace enterSolve(String id) {
+        return Nd4j.getWorkspaceManager().getAndActivateWorkspace(solveConf, id);
+    }
+
+    /**
+     * Activate a workspace for a single step
+     * @param id Id of the workspace
+     * @return the activated {@link MemoryWorkspace}
+     */
+    public static MemoryWorkspace enterStep(String id) {
+        return Nd4j.getWorkspaceManager().getAndActivateWorkspace(stepConf, id);
+    }
+}
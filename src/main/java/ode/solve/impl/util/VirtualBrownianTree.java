@@ -0,0 +1,127 @@
+package ode.solve.impl.util;
+
+import ode.solve.api.BrownianPath;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import util.random.SeededRandomFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Virtual Brownian tree as described in https://arxiv.org/abs/2001.01328. Values of the Brownian motion are never
+ * stored. Instead, W(t) is computed by bisecting the time interval using Brownian bridges where the random seed of each
+ * node is derived from the seed of its parent. This makes any query reproducible using O(log((t1 - t0) / tolerance))
+ * memory, e.g. so that the adjoint of a stochastic differential equation can reconstruct the noise of the forward
+ * solve without having to store it.
+ * <br><br>
+ * The root seed is by default drawn from {@link Nd4j#getRandom()} so that results are reproducible when using
+ * {@link SeededRandomFactory}.
+ *
+ * @author Christian Skarby
+ */
+public class VirtualBrownianTree implements BrownianPath {
+
+    private final double tStart;
+    private final double tEnd;
+    private final long[] shape;
+    private final double tolerance;
+    private final long seed;
+    private final double[] wEnd;
+
+    /**
+     * Create a new {@link VirtualBrownianTree} with a random seed from {@link Nd4j#getRandom()}
+     * @param t0 Start of time interval
+     * @param t1 End of time interval
+     * @param shape Shape of the Brownian motion
+     * @param tolerance Time resolution. Values between nodes closer than this are linearly interpolated
+     */
+    public VirtualBrownianTree(double t0, double t1, long[] shape, double tolerance) {
+        this(t0, t1, shape, tolerance, Nd4j.getRandom().nextLong());
+    }
+
+    /**
+     * Create a new {@link VirtualBrownianTree}
+     * @param t0 Start of time interval
+     * @param t1 End of time interval
+     * @param shape Shape of the Brownian motion
+     * @param tolerance Time resolution. Values between nodes closer than this are linearly interpolated
+     * @param seed Root seed of the tree
+     */
+    public VirtualBrownianTree(double t0, double t1, long[] shape, double tolerance, long seed) {
+        this.tStart = Math.min(t0, t1);
+        this.tEnd = Math.max(t0, t1);
+        this.shape = shape.clone();
+        this.tolerance = tolerance;
+        this.seed = seed;
+        this.wEnd = gaussian(seed, Math.sqrt(tEnd - tStart));
+    }
+
+    /**
+     * Return the value W(t) where W(min(t0, t1)) = 0
+     * @param t Time
+     * @return W(t)
+     */
+    public INDArray value(double t) {
+        return Nd4j.create(search(t), shape);
+    }
+
+    @Override
+    public INDArray increment(double tStart, double tEnd) {
+        final double[] start = search(tStart);
+        final double[] end = search(tEnd);
+        for (int i = 0; i < end.length; i++) {
+            end[i] -= start[i];
+        }
+        return Nd4j.create(end, shape);
+    }
+
+    private double[] search(double t) {
+        if (t < tStart - tolerance || t > tEnd + tolerance) {
+            throw new IllegalArgumentException("Time " + t + " outside of tree interval [" + tStart + ", " + tEnd + "]!");
+        }
+
+        double ts = tStart;
+        double te = tEnd;
+        double[] ws = new double[wEnd.length];
+        double[] we = wEnd;
+        long nodeSeed = seed;
+
+        while (te - ts > tolerance) {
+            final double tm = (ts + te) / 2;
+            final double[] wm = gaussian(SeededRandomFactory.splitSeed(nodeSeed, 0), Math.sqrt((te - tm) * (tm - ts) / (te - ts)));
+            for (int i = 0; i < wm.length; i++) {
+                wm[i] += (ws[i] + we[i]) / 2;
+            }
+
+            if (t == tm) {
+                return wm;
+            } else if (t < tm) {
+                te = tm;
+                we = wm;
+                nodeSeed = SeededRandomFactory.splitSeed(nodeSeed, 1);
+            } else {
+                ts = tm;
+                ws = wm;
+                nodeSeed = SeededRandomFactory.splitSeed(nodeSeed, 2);
+            }
+        }
+
+        // Linear interpolation between nodes
+        final double x = Math.max(0, Math.min(1, (t - ts) / (te - ts)));
+        final double[] w = new double[ws.length];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = ws[i] + x * (we[i] - ws[i]);
+        }
+        return w;
+    }
+
+    private double[] gaussian(long seed, double std) {
+        final Random random = new Random(seed);
+        final double[] values = new double[(int) Arrays.stream(shape).reduce(1, (a, b) -> a * b)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = std * random.nextGaussian();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,80 @@
+package ode.vertex.conf;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.inputs.InvalidInputTypeException;
+import org.deeplearning4j.nn.conf.memory.LayerMemoryReport;
+import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Computes the matrix-vector product f(z) * dX/dt of a neural controlled differential equation. First input is the
+ * output of the vector field f(z) with size nrofChannels * nrofHidden where the elements for channel c are
+ * [c*nrofHidden, (c+1)*nrofHidden). Second input is the derivative of the control path dX/dt with size nrofChannels.
+ * Output has size nrofHidden.
+ *
+ * @author Christian Skarby
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class ControlledVectorFieldVertex extends GraphVertex {
+
+    @Override
+    public GraphVertex clone() {
+        return new ControlledVectorFieldVertex();
+    }
+
+    @Override
+    public long numParams(boolean backprop) {
+        return 0;
+    }
+
+    @Override
+    public int minVertexInputs() {
+        return 2;
+    }
+
+    @Override
+    public int maxVertexInputs() {
+        return 2;
+    }
+
+    @Override
+    public org.deeplearning4j.nn.graph.vertex.GraphVertex instantiate(ComputationGraph graph, String name, int idx, INDArray paramsView, boolean initializeParams) {
+        return new ode.vertex.impl.ControlledVectorFieldVertex(graph, name, idx);
+    }
+
+    @Override
+    public InputType getOutputType(int layerIndex, InputType... vertexInputs) throws InvalidInputTypeException {
+        if (vertexInputs.length != 2) {
+            throw new InvalidInputTypeException(this.getClass().getSimpleName() + " must have two inputs!");
+        }
+
+        for (InputType inputType : vertexInputs) {
+            if (inputType.getType() != InputType.Type.FF) {
+                throw new InvalidInputTypeException(this.getClass().getSimpleName() + " only supports feedforward input! Got: " + inputType);
+            }
+        }
+
+        final long nrofChannels = vertexInputs[1].arrayElementsPerExample();
+        if (vertexInputs[0].arrayElementsPerExample() % nrofChannels != 0) {
+            throw new InvalidInputTypeException(this.getClass().getSimpleName() + " first input size must be a multiple " +
+                    "of second input size! Got: " + vertexInputs[0] + " and " + vertexInputs[1]);
+        }
+
+        return InputType.feedForward(vertexInputs[0].arrayElementsPerExample() / nrofChannels);
+    }
+
+    @Override
+    public MemoryReport getMemoryReport(InputType... inputTypes) {
+        InputType outputType = getOutputType(-1, inputTypes);
+
+        return new LayerMemoryReport.Builder(null, ControlledVectorFieldVertex.class, inputTypes[0], outputType).standardMemory(0, 0) //No params
+                .workingMemory(0, 0, 0, 0) //No working memory in addition to activations/epsilons
+                .cacheMemory(0, 0) //No caching
+                .build();
+    }
+}
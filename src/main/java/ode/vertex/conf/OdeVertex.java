@@ -2,31 +2,46 @@ package ode.vertex.conf;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import ode.solve.api.FirstOrderSolverConf;
 import ode.solve.conf.DormandPrince54Solver;
+import ode.vertex.conf.helper.ControlPathInputFactory;
 import ode.vertex.conf.helper.GraphInputOutputFactory;
 import ode.vertex.conf.helper.NoTimeInputFactory;
 import ode.vertex.conf.helper.OdeHelper;
 import ode.vertex.conf.helper.TimeInputFactory;
+import ode.vertex.conf.helper.backward.DynamicsRegularization;
 import ode.vertex.conf.helper.backward.FixedStepAdjoint;
 import ode.vertex.conf.helper.backward.OdeHelperBackward;
 import ode.vertex.conf.helper.forward.FixedStep;
+import ode.vertex.conf.helper.forward.MultipleShooting;
 import ode.vertex.conf.helper.forward.OdeHelperForward;
 import ode.vertex.impl.gradview.GradientViewFactory;
 import ode.vertex.impl.gradview.GradientViewSelectionFromBlacklisted;
+import ode.vertex.impl.helper.InferenceCache;
 import ode.vertex.impl.helper.OdeGraphHelper;
+import ode.vertex.impl.helper.ShardedOdeGraphHelper;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.graph.GraphVertex;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.inputs.InvalidInputTypeException;
 import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.memory.LayerMemoryReport;
 import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.conf.memory.NetworkMemoryReport;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.shade.jackson.annotation.JsonProperty;
 import util.preproc.DuplicateScalarToShape;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Configuration of an ODE block. Contains a {@link ComputationGraphConfiguration} which defines the structure of the
  * learnable function {@code f = z(t)/dt} for which the {@link ode.vertex.impl.OdeVertex} will output an estimate
@@ -47,12 +62,23 @@ import util.preproc.DuplicateScalarToShape;
 @EqualsAndHashCode(callSuper = false)
 public class OdeVertex extends GraphVertex {
 
+    /**
+     * Name of the {@link MemoryReport} for solver and adjoint method buffers in {@link #getMemoryReport(InputType...)}
+     */
+    public static final String SOLVER_MEMORY_REPORT_NAME = "odeSolver";
+
     protected ComputationGraphConfiguration conf;
     protected String firstVertex;
     protected OdeHelperForward odeForwardConf;
     protected OdeHelperBackward odeBackwardConf;
     protected GraphInputOutputFactory graphInputOutputFactory;
     protected GradientViewFactory gradientViewFactory;
+    protected int nrofShards;
+    protected OdeHelperForward odeInferenceConf;
+    protected DynamicsRegularization regularization;
+    protected long inferenceCacheBytes;
+    protected boolean batchNormInferenceMode;
+    protected int shardParallelism;
 
     public OdeVertex(
             @JsonProperty("conf") ComputationGraphConfiguration conf,
@@ -60,13 +86,33 @@ public class OdeVertex extends GraphVertex {
             @JsonProperty("odeForwardConf") OdeHelperForward odeForwardConf,
             @JsonProperty("odeBackwardConf") OdeHelperBackward odeBackwardConf,
             @JsonProperty("graphInputOutputFactory") GraphInputOutputFactory graphInputOutputFactory,
-            @JsonProperty("gradientViewFactory") GradientViewFactory gradientViewFactory) {
+            @JsonProperty("gradientViewFactory") GradientViewFactory gradientViewFactory,
+            @JsonProperty("nrofShards") int nrofShards,
+            @JsonProperty("odeInferenceConf") OdeHelperForward odeInferenceConf,
+            @JsonProperty("regularization") DynamicsRegularization regularization,
+            @JsonProperty("inferenceCacheBytes") long inferenceCacheBytes,
+            @JsonProperty("batchNormInferenceMode") boolean batchNormInferenceMode,
+            @JsonProperty("shardParallelism") int shardParallelism) {
+        if (odeInferenceConf != null && odeInferenceConf.nrofTimeInputs() != odeForwardConf.nrofTimeInputs()) {
+            throw new IllegalArgumentException("Inference helper must use the same number of time inputs as forward helper! " +
+                    "Forward: " + odeForwardConf.nrofTimeInputs() + " inference: " + odeInferenceConf.nrofTimeInputs());
+        }
+        if (odeForwardConf instanceof MultipleShooting && !(graphInputOutputFactory instanceof NoTimeInputFactory)) {
+            throw new IllegalArgumentException("Multiple shooting solves all segments as one batch and requires that the ODE " +
+                    "does not depend on time! Got: " + graphInputOutputFactory);
+        }
         this.conf = conf;
         this.firstVertex = firstVertex;
         this.odeForwardConf = odeForwardConf;
         this.odeBackwardConf = odeBackwardConf;
         this.graphInputOutputFactory = graphInputOutputFactory;
         this.gradientViewFactory = gradientViewFactory;
+        this.nrofShards = nrofShards;
+        this.odeInferenceConf = odeInferenceConf;
+        this.regularization = regularization;
+        this.inferenceCacheBytes = inferenceCacheBytes;
+        this.batchNormInferenceMode = batchNormInferenceMode;
+        this.shardParallelism = shardParallelism;
     }
 
     @Override
@@ -77,7 +123,31 @@ public class OdeVertex extends GraphVertex {
                 odeForwardConf.clone(),
                 odeBackwardConf.clone(),
                 graphInputOutputFactory.clone(),
-                gradientViewFactory.clone());
+                gradientViewFactory.clone(),
+                nrofShards,
+                odeInferenceConf == null ? null : odeInferenceConf.clone(),
+                regularization == null ? null : regularization.clone(),
+                inferenceCacheBytes,
+                batchNormInferenceMode,
+                shardParallelism);
+    }
+
+    /**
+     * Returns the configurations of all solvers used by this vertex. Configurations which are used by more than one
+     * helper are only included once.
+     * @return the {@link FirstOrderSolverConf}s of the forward, backward and inference helpers
+     */
+    public List<FirstOrderSolverConf> solverConfs() {
+        final List<FirstOrderSolverConf> solverConfs = new ArrayList<>();
+        for (FirstOrderSolverConf solverConf : new FirstOrderSolverConf[]{
+                odeForwardConf.getSolverConf(),
+                odeBackwardConf.getSolverConf(),
+                odeInferenceConf == null ? null : odeInferenceConf.getSolverConf()}) {
+            if (solverConf != null && solverConfs.stream().noneMatch(conf -> conf == solverConf)) {
+                solverConfs.add(solverConf);
+            }
+        }
+        return solverConfs;
     }
 
     @Override
@@ -89,12 +159,12 @@ public class OdeVertex extends GraphVertex {
 
     @Override
     public int minVertexInputs() {
-        return conf.getVertices().get(firstVertex).minVertexInputs() + odeForwardConf.nrofTimeInputs();
+        return conf.getVertices().get(firstVertex).minVertexInputs() + odeForwardConf.nrofTimeInputs() + graphInputOutputFactory.nrofExtraInputs();
     }
 
     @Override
     public int maxVertexInputs() {
-        return conf.getVertices().get(firstVertex).maxVertexInputs() + odeForwardConf.nrofTimeInputs();
+        return conf.getVertices().get(firstVertex).maxVertexInputs() + odeForwardConf.nrofTimeInputs() + graphInputOutputFactory.nrofExtraInputs();
     }
 
     @Override
@@ -105,7 +175,64 @@ public class OdeVertex extends GraphVertex {
             INDArray paramsView,
             boolean initializeParams) {
 
-        final ComputationGraph innerGraph = new ComputationGraph(conf) {
+        final ComputationGraph innerGraph = createInnerGraph(conf);
+
+        if (initializeParams && paramsView != null) {
+            innerGraph.init(); // This will init parameters using weight initialization
+            paramsView.assign(innerGraph.params());
+        }
+
+        innerGraph.init(paramsView, false); // This does not update any parameters, just sets them
+
+        final DefaultTrainingConfig trainingConfig = new DefaultTrainingConfig(
+                innerGraph,
+                name,
+                gradientViewFactory.paramNameMapping());
+
+        if (nrofShards <= 1) {
+            return new ode.vertex.impl.OdeVertex(
+                    new ode.vertex.impl.OdeVertex.BaseGraphVertexInputs(graph, name, idx),
+                    createHelper(innerGraph),
+                    trainingConfig,
+                    createInferenceCache());
+        }
+
+        final List<OdeGraphHelper> otherShards = new ArrayList<>();
+        for (int shard = 1; shard < nrofShards; shard++) {
+            // Each shard needs its own graph as layers keep state, but parameters are shared
+            final ComputationGraph shardGraph = createInnerGraph(conf.clone());
+            shardGraph.init(paramsView, false);
+            otherShards.add(createHelper(shardGraph));
+        }
+
+        final ode.vertex.impl.helper.forward.OdeHelperForward forward = odeForwardConf.instantiate();
+        return new ode.vertex.impl.OdeVertex(
+                new ode.vertex.impl.OdeVertex.BaseGraphVertexInputs(graph, name, idx),
+                new ShardedOdeGraphHelper(
+                        forward,
+                        instantiateInference(),
+                        odeBackwardConf.instantiate(forward),
+                        graphInputOutputFactory,
+                        createOdeFunction(innerGraph),
+                        instantiateRegularization(),
+                        otherShards,
+                        createShardExecutor()),
+                trainingConfig,
+                createInferenceCache());
+    }
+
+    private Executor createShardExecutor() {
+        // Worker threads of the ForkJoinPool are daemon threads which terminate when idle so the pool does not need
+        // to be shut down
+        return shardParallelism > 0 ? new ForkJoinPool(shardParallelism) : ForkJoinPool.commonPool();
+    }
+
+    private InferenceCache createInferenceCache() {
+        return inferenceCacheBytes > 0 ? new InferenceCache(inferenceCacheBytes) : null;
+    }
+
+    private static ComputationGraph createInnerGraph(ComputationGraphConfiguration conf) {
+        return new ComputationGraph(conf) {
 
             @Override
             public void init() {
@@ -120,31 +247,33 @@ public class OdeVertex extends GraphVertex {
                 super.setBackpropGradientsViewArray(gradient);
             }
         };
+    }
 
-        if (initializeParams && paramsView != null) {
-            innerGraph.init(); // This will init parameters using weight initialization
-            paramsView.assign(innerGraph.params());
-        }
+    private OdeGraphHelper createHelper(ComputationGraph innerGraph) {
+        final ode.vertex.impl.helper.forward.OdeHelperForward forward = odeForwardConf.instantiate();
+        return new OdeGraphHelper(
+                forward,
+                instantiateInference(),
+                odeBackwardConf.instantiate(forward),
+                graphInputOutputFactory,
+                createOdeFunction(innerGraph),
+                instantiateRegularization());
+    }
 
-        innerGraph.init(paramsView, false); // This does not update any parameters, just sets them
+    private ode.vertex.impl.helper.forward.OdeHelperForward instantiateInference() {
+        return odeInferenceConf == null ? odeForwardConf.instantiate() : odeInferenceConf.instantiate();
+    }
 
-        final DefaultTrainingConfig trainingConfig = new DefaultTrainingConfig(
-                innerGraph,
-                name,
-                gradientViewFactory.paramNameMapping());
+    private ode.vertex.impl.helper.backward.DynamicsRegularization instantiateRegularization() {
+        return regularization == null ? ode.vertex.impl.helper.backward.DynamicsRegularization.none() : regularization.instantiate();
+    }
 
-        return new ode.vertex.impl.OdeVertex(
-                new ode.vertex.impl.OdeVertex.BaseGraphVertexInputs(graph, name, idx),
-                new OdeGraphHelper(
-                        odeForwardConf.instantiate(),
-                        odeBackwardConf.instantiate(),
-                        graphInputOutputFactory,
-                        new OdeGraphHelper.CompGraphAsOdeFunction(
-                                innerGraph,
-                                // Hacky handling for legacy models. To be removed...
-                                gradientViewFactory == null ? new GradientViewSelectionFromBlacklisted() : gradientViewFactory)
-                ),
-                trainingConfig);
+    private OdeGraphHelper.CompGraphAsOdeFunction createOdeFunction(ComputationGraph innerGraph) {
+        return new OdeGraphHelper.CompGraphAsOdeFunction(
+                innerGraph,
+                // Hacky handling for legacy models. To be removed...
+                gradientViewFactory == null ? new GradientViewSelectionFromBlacklisted() : gradientViewFactory,
+                batchNormInferenceMode);
     }
 
     @Override
@@ -153,9 +282,52 @@ public class OdeVertex extends GraphVertex {
         return odeForwardConf.getOutputType(conf, graphInputs);
     }
 
+    /**
+     * Returns a memory report of the internal graph plus an estimate of the arrays allocated by the solvers and the
+     * adjoint method. The latter is found under key {@link #SOLVER_MEMORY_REPORT_NAME}. Note that the estimates are
+     * based on the number of state sized arrays each helper reports. Arrays which are not proportional to the size of
+     * the state (e.g. scalars) are not included.
+     * @param inputTypes Vertex inputs
+     * @return a {@link NetworkMemoryReport}
+     */
     @Override
     public MemoryReport getMemoryReport(InputType... inputTypes) {
-        return conf.getMemoryReport(inputTypes);
+        final InputType[] graphInputs = graphInputOutputFactory.getInputType(inputTypes);
+        // Also sets nIn of layers in case this has not been done already
+        final InputType outputType = odeForwardConf.getOutputType(conf, graphInputs);
+        final NetworkMemoryReport graphReport = conf.getMemoryReport(graphInputs);
+
+        final Map<String, MemoryReport> reports = new LinkedHashMap<>(graphReport.getLayerAndVertexReports());
+        reports.put(SOLVER_MEMORY_REPORT_NAME, getSolverMemoryReport(outputType, graphInputs));
+        return new NetworkMemoryReport(reports, OdeVertex.class, "OdeVertex", inputTypes);
+    }
+
+    private MemoryReport getSolverMemoryReport(InputType outputType, InputType... graphInputs) {
+        final long stateSize = graphInputs[0].arrayElementsPerExample();
+        final long nrofParams = numParams(true);
+
+        final long forwardCopies = odeForwardConf.nrofStateCopies();
+        final long inferenceCopies = odeInferenceConf == null ? forwardCopies : odeInferenceConf.nrofStateCopies();
+        // Augmented state is [state, adjoint state, parameter adjoint, time adjoint, regularization] where the three
+        // latter do not depend on the mini batch size
+        final long augmentedCopies = odeBackwardConf.nrofAugmentedStateCopies();
+        final ode.vertex.impl.helper.backward.DynamicsRegularization dynamicsRegularization = instantiateRegularization();
+        final long fixedAugmentedSize = nrofParams
+                + odeBackwardConf.timeAdjointLength()
+                + (dynamicsRegularization.isEnabled() ? 1 : 0);
+        final long backwardCopies = odeBackwardConf.nrofStateCopies() + dynamicsRegularization.nrofStateCopies();
+
+        // Input and output types make the report include the activations and epsilons of the vertex itself
+        return new LayerMemoryReport.Builder(SOLVER_MEMORY_REPORT_NAME, OdeVertex.class, graphInputs[0], outputType)
+                .standardMemory(0, 0)
+                .workingMemory(
+                        0,
+                        stateSize * inferenceCopies,
+                        // Parameter gradients are also copied to a separate array
+                        fixedAugmentedSize * augmentedCopies + nrofParams,
+                        stateSize * (forwardCopies + backwardCopies) + 2 * stateSize * augmentedCopies)
+                .cacheMemory(0, 0)
+                .build();
     }
 
     /**
@@ -169,6 +341,12 @@ public class OdeVertex extends GraphVertex {
         private OdeHelperBackward odeBackwardConf = new FixedStepAdjoint(new DormandPrince54Solver(), Nd4j.arange(2));
         private GraphInputOutputFactory graphInputOutputFactory = new NoTimeInputFactory();
         private GradientViewFactory gradientViewFactory = new GradientViewSelectionFromBlacklisted();
+        private int nrofShards = 1;
+        private OdeHelperForward odeInferenceConf = null;
+        private DynamicsRegularization regularization = null;
+        private long inferenceCacheBytes = 0;
+        private boolean batchNormInferenceMode = false;
+        private int shardParallelism = 0;
 
         /**
          * Constructs a Builder for an {@link OdeVertex}
@@ -247,6 +425,30 @@ public class OdeVertex extends GraphVertex {
             return addVertex(name, vertex, withTime);
         }
 
+        /**
+         * Add a vertex which in addition to the given inputs also takes the derivative of the control path of a neural
+         * controlled differential equation as input. The {@link OdeVertex} must then have the initial state as first
+         * input and the series to fit the control path to as second input. Typically used with a
+         * {@link ControlledVectorFieldVertex} to compute f(z) * dX/dt.
+         *
+         * @see ControlPathInputFactory
+         * @see ComputationGraphConfiguration.GraphBuilder#addVertex(String, GraphVertex, String...)
+         */
+        public Builder addControlVertex(String name, GraphVertex vertex, String... inputs) {
+            graphInputOutputFactory(new ControlPathInputFactory());
+
+            final String controlInputName = this.toString() + "_controlInput";
+
+            if(!graphBuilder.getNetworkInputs().contains(controlInputName)) {
+                graphBuilder.addInputs(controlInputName);
+            }
+
+            final String[] withControl = new String[inputs.length + 1];
+            System.arraycopy(inputs, 0, withControl, 0, inputs.length);
+            withControl[inputs.length] = controlInputName;
+            return addVertex(name, vertex, withControl);
+        }
+
         private String[] setTimeInputs(String[] inputs) {
             graphInputOutputFactory(new TimeInputFactory());
 
@@ -284,6 +486,18 @@ public class OdeVertex extends GraphVertex {
             return this;
         }
 
+        /**
+         * Sets the {@link OdeHelperForward} to use when not training, e.g. to use a solver with looser tolerance for
+         * inference than for training. Same as for training will be used if not set.
+         *
+         * @param odeInferenceConf Configuration of forward helper to use for inference
+         * @return the Builder for fluent API
+         */
+        public Builder odeInference(OdeHelperForward odeInferenceConf) {
+            this.odeInferenceConf = odeInferenceConf;
+            return this;
+        }
+
         /**
          * Sets the {@link OdeHelperBackward} to use
          *
@@ -317,6 +531,74 @@ public class OdeVertex extends GraphVertex {
             return this;
         }
 
+        /**
+         * Sets the number of shards to split the mini batch into. Each shard is solved concurrently in its own thread
+         * with its own sequence of time steps. Parameter gradients from all shards are summed. Default is 1 which means
+         * no sharding.
+         *
+         * @param nrofShards Number of shards
+         * @return the Builder for fluent API
+         */
+        public Builder nrofShards(int nrofShards) {
+            this.nrofShards = nrofShards;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of threads to solve shards in when {@link #nrofShards(int)} is larger than 1. Each
+         * vertex instance then gets its own thread pool. Default is 0 which means that shards are solved in the common
+         * {@link ForkJoinPool}, shared with everything else in the JVM which uses it.
+         *
+         * @param shardParallelism Number of threads to solve shards in, or 0 to use the common pool
+         * @return the Builder for fluent API
+         */
+        public Builder shardParallelism(int shardParallelism) {
+            if (shardParallelism < 0) {
+                throw new IllegalArgumentException("Shard parallelism must not be negative! Got: " + shardParallelism);
+            }
+            this.shardParallelism = shardParallelism;
+            return this;
+        }
+
+        /**
+         * Sets a {@link DynamicsRegularization} to use. Penalizes dynamics which are hard to solve which typically
+         * reduces the number of function evaluations needed. Default is no regularization.
+         *
+         * @param regularization Regularization of the dynamics
+         * @return the Builder for fluent API
+         */
+        public Builder regularization(DynamicsRegularization regularization) {
+            this.regularization = regularization;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of bytes to use for caching outputs from inference. Repeated inference with the same
+         * inputs and parameters will then return the cached output instead of solving the ODE again. Default is 0
+         * which means no caching.
+         *
+         * @param maxBytes Maximum number of bytes to use for cached inputs and outputs
+         * @return the Builder for fluent API
+         */
+        public Builder inferenceCache(long maxBytes) {
+            this.inferenceCacheBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets whether layers of the internal graph shall be evaluated in inference mode when not training even if the
+         * graph contains batch normalization. Default is false as the running mean and variance are averaged over all
+         * times of the solution and typically give poor results when used for inference. Graphs without batch
+         * normalization are always evaluated in inference mode when not training.
+         *
+         * @param batchNormInferenceMode true if layers shall be evaluated in inference mode
+         * @return the Builder for fluent API
+         */
+        public Builder batchNormInferenceMode(boolean batchNormInferenceMode) {
+            this.batchNormInferenceMode = batchNormInferenceMode;
+            return this;
+        }
+
         /**
          * Build a new OdeVertex
          *
@@ -330,7 +612,13 @@ public class OdeVertex extends GraphVertex {
                     odeForwardConf,
                     odeBackwardConf,
                     graphInputOutputFactory,
-                    gradientViewFactory);
+                    gradientViewFactory,
+                    nrofShards,
+                    odeInferenceConf,
+                    regularization,
+                    inferenceCacheBytes,
+                    batchNormInferenceMode,
+                    shardParallelism);
         }
 
     }
@@ -0,0 +1,49 @@
+package ode.vertex.conf.helper;
+
+import lombok.EqualsAndHashCode;
+import ode.vertex.impl.helper.ControlPathInput;
+import ode.vertex.impl.helper.GraphInputOutput;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+
+import java.util.Arrays;
+
+/**
+ * Creates {@link ControlPathInput}. The fitted control path is cached so that the series is only fitted once per mini
+ * batch even though a {@link ControlPathInput} is created for both the forward and the backward pass.
+ *
+ * @author Christian Skarby
+ */
+@EqualsAndHashCode
+public class ControlPathInputFactory implements GraphInputOutputFactory {
+
+    @EqualsAndHashCode.Exclude
+    @JsonIgnore
+    private final ControlPathInput.FitCache fitCache = new ControlPathInput.FitCache();
+
+    @Override
+    public GraphInputOutput create(INDArray[] input) {
+        return new ControlPathInput(input, fitCache);
+    }
+
+    @Override
+    public GraphInputOutputFactory clone() {
+        return new ControlPathInputFactory();
+    }
+
+    @Override
+    public int nrofExtraInputs() {
+        return 1;
+    }
+
+    @Override
+    public InputType[] getInputType(InputType... vertexInputs) {
+        if (vertexInputs.length < 2 || vertexInputs[1].getType() != InputType.Type.RNN) {
+            throw new IllegalArgumentException("Second input must be a recurrent control path! Got: " + Arrays.toString(vertexInputs));
+        }
+        final InputType[] graphInputs = vertexInputs.clone();
+        graphInputs[1] = InputType.feedForward(((InputType.InputTypeRecurrent) vertexInputs[1]).getSize());
+        return graphInputs;
+    }
+}
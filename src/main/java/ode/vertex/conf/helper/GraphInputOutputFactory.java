@@ -29,4 +29,13 @@ public interface GraphInputOutputFactory {
      * @return InputTypes to use in graph
      */
     InputType[] getInputType(InputType ... vertexInputs);
+
+    /**
+     * Returns the number of inputs to the vertex which are not inputs to the first vertex of the graph, e.g. a series
+     * to fit a control path to.
+     * @return Number of extra inputs
+     */
+    default int nrofExtraInputs() {
+        return 0;
+    }
 }
@@ -0,0 +1,56 @@
+package ode.vertex.conf.helper;
+
+import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.conf.helper.backward.LogDensityAdjoint;
+import ode.vertex.conf.helper.backward.OdeHelperBackward;
+import ode.vertex.conf.helper.forward.OdeHelperForward;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Configuration for using an {@link ode.vertex.conf.OdeVertex} as a continuous normalizing flow (FFJORD,
+ * https://arxiv.org/abs/1810.01367). The vertex will output z(t1) concatenated with the change in log density
+ * log p(z(t1)) - log p(z(t0)) along dimension 1. The trace of the jacobian is estimated using Hutchinsons trace
+ * estimator. Only feed forward inputs and a single time step are supported.
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityStep implements OdeHelper {
+
+    private final FirstOrderSolverConf solver;
+    private final INDArray time;
+    private final double finiteDifferenceStep;
+    private final boolean batchedInference;
+
+    public LogDensityStep(FirstOrderSolverConf solver, INDArray time) {
+        this(solver, time, 1e-3);
+    }
+
+    public LogDensityStep(FirstOrderSolverConf solver, INDArray time, double finiteDifferenceStep) {
+        this(solver, time, finiteDifferenceStep, false);
+    }
+
+    /**
+     * Create a new LogDensityStep
+     * @param solver Solver to use
+     * @param time Start and stop time
+     * @param finiteDifferenceStep Step size for the finite difference estimate of the jacobian-vector product
+     * @param batchedInference If true, the perturbed and unperturbed states are evaluated as one mini batch when not
+     *                         training. See {@link ode.vertex.impl.helper.forward.LogDensityStep}
+     */
+    public LogDensityStep(FirstOrderSolverConf solver, INDArray time, double finiteDifferenceStep, boolean batchedInference) {
+        this.solver = solver;
+        this.time = time.dup();
+        this.finiteDifferenceStep = finiteDifferenceStep;
+        this.batchedInference = batchedInference;
+    }
+
+    @Override
+    public OdeHelperForward forward() {
+        return new ode.vertex.conf.helper.forward.LogDensityStep(solver, time, finiteDifferenceStep, batchedInference);
+    }
+
+    @Override
+    public OdeHelperBackward backward() {
+        return new LogDensityAdjoint(solver, time, finiteDifferenceStep);
+    }
+}
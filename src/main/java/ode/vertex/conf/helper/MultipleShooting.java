@@ -0,0 +1,61 @@
+package ode.vertex.conf.helper;
+
+import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.conf.helper.backward.MultipleShootingAdjoint;
+import ode.vertex.conf.helper.backward.OdeHelperBackward;
+import ode.vertex.conf.helper.forward.OdeHelperForward;
+import ode.vertex.impl.helper.ShootingSegments;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Configuration for using multiple shooting to solve the ODE for a fixed predefined sequence of time steps. The
+ * sequence is split into segments which are solved independently as one mini batch. This shortens the interval each
+ * solve has to cover which typically reduces the number of function evaluations and makes gradients more stable for
+ * long sequences.
+ * <br><br>
+ * Initial states of all segments but the first comes as an input to the {@code GraphVertex} housing the ODE, typically
+ * from an encoder. Shape is the same as the output but with one time step per segment but the first, e.g.
+ * [batchSize, nrofStates, nrofSegments-1] for dense layers. The mismatch between the end of each segment and the
+ * initial state of the next segment is penalized with a squared error times {@code continuityWeight}. The penalty is
+ * included in the {@code regularizationScore} of the vertex.
+ * <br><br>
+ * The ODE must not depend on time and all segments must have the same time steps relative to their start.
+ * <br><br>
+ *     Example: <br>
+ * <pre>
+ * graphBuilder.addVertex("odeVertex",
+ *     new OdeVertex.Builder("0", new DenseLayer.Builder().nOut(4).build())
+ *         .odeConf(new MultipleShooting(solverConf, Nd4j.linspace(0, 10, 21), 4, 1, 1.0)) // Refers to input "shootingStates" on the line below
+ *         .build(), "z0", "shootingStates");
+ * </pre>
+ *
+ * @author Christian Skarby
+ */
+public class MultipleShooting implements OdeHelper {
+
+    private final FirstOrderSolverConf solverConf;
+    private final INDArray time;
+    private final int nrofSegments;
+    private final int shootingInputIndex;
+    private final double continuityWeight;
+
+    public MultipleShooting(FirstOrderSolverConf solverConf, INDArray time, int nrofSegments, int shootingInputIndex, double continuityWeight) {
+        // Fail early instead of when instantiating
+        new ShootingSegments(time, nrofSegments);
+        this.solverConf = solverConf;
+        this.time = time.dup();
+        this.nrofSegments = nrofSegments;
+        this.shootingInputIndex = shootingInputIndex;
+        this.continuityWeight = continuityWeight;
+    }
+
+    @Override
+    public OdeHelperForward forward() {
+        return new ode.vertex.conf.helper.forward.MultipleShooting(solverConf, time, nrofSegments, shootingInputIndex);
+    }
+
+    @Override
+    public OdeHelperBackward backward() {
+        return new MultipleShootingAdjoint(solverConf, time, nrofSegments, shootingInputIndex, continuityWeight);
+    }
+}
@@ -0,0 +1,46 @@
+package ode.vertex.conf.helper.backward;
+
+import lombok.Data;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+/**
+ * Serializable configuration of an {@link ode.vertex.impl.helper.backward.DynamicsRegularization}. Penalizes the
+ * kinetic energy and the (estimated) Frobenius norm of the jacobian of the learned dynamics as described in
+ * https://arxiv.org/abs/2002.02798. The jacobian-vector product and thus the gradient of the jacobian term is estimated
+ * using finite differences with step size finiteDifferenceStep.
+ *
+ * @author Christian Skarby
+ */
+@Data
+public class DynamicsRegularization {
+
+    private final double kineticWeight;
+    private final double jacobianWeight;
+    private final double finiteDifferenceStep;
+
+    public DynamicsRegularization(double kineticWeight, double jacobianWeight) {
+        this(kineticWeight, jacobianWeight, 1e-3);
+    }
+
+    public DynamicsRegularization(
+            @JsonProperty("kineticWeight") double kineticWeight,
+            @JsonProperty("jacobianWeight") double jacobianWeight,
+            @JsonProperty("finiteDifferenceStep") double finiteDifferenceStep) {
+        this.kineticWeight = kineticWeight;
+        this.jacobianWeight = jacobianWeight;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+    }
+
+    /**
+     * Instantiate the regularization
+     * @return a new {@link ode.vertex.impl.helper.backward.DynamicsRegularization}
+     */
+    public ode.vertex.impl.helper.backward.DynamicsRegularization instantiate() {
+        return new ode.vertex.impl.helper.backward.DynamicsRegularization(kineticWeight, jacobianWeight, finiteDifferenceStep);
+    }
+
+    @Override
+    public DynamicsRegularization clone() {
+        return new DynamicsRegularization(kineticWeight, jacobianWeight, finiteDifferenceStep);
+    }
+}
@@ -2,6 +2,9 @@ package ode.vertex.conf.helper.backward;
 
 import lombok.Data;
 import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.impl.helper.backward.BackpropagateAdjoint;
+import ode.vertex.impl.helper.backward.MultiStepAdjoint;
+import ode.vertex.impl.helper.backward.SingleStepAdjoint;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.serde.jackson.shaded.NDArrayDeSerializer;
 import org.nd4j.serde.jackson.shaded.NDArraySerializer;
@@ -36,6 +39,18 @@ public class FixedStepAdjoint implements OdeHelperBackward {
         return new ode.vertex.impl.helper.backward.FixedStepAdjoint(solverConf.instantiate(), time);
     }
 
+    @Override
+    public long nrofAugmentedStateCopies() {
+        // Multiple time steps are solved one at a time
+        return solverConf.nrofStateCopies() + SingleStepAdjoint.nrofAugmentedStateCopies();
+    }
+
+    @Override
+    public long nrofStateCopies() {
+        final long multiStepCopies = time.length() > 2 ? MultiStepAdjoint.nrofStateCopies(time.length()) : 0;
+        return BackpropagateAdjoint.nrofStateCopies() + multiStepCopies;
+    }
+
     @Override
     public FixedStepAdjoint clone() {
         return new FixedStepAdjoint(solverConf.clone(), time.dup());
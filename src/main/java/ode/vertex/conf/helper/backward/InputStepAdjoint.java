@@ -2,6 +2,8 @@ package ode.vertex.conf.helper.backward;
 
 import lombok.Data;
 import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.impl.helper.backward.BackpropagateAdjoint;
+import ode.vertex.impl.helper.backward.SingleStepAdjoint;
 import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 /**
@@ -34,6 +36,23 @@ public class InputStepAdjoint implements OdeHelperBackward {
         return new ode.vertex.impl.helper.backward.InputStepAdjoint(solverConf.instantiate(), timeInputIndex, needTimeGradient);
     }
 
+    @Override
+    public long nrofAugmentedStateCopies() {
+        // Multiple time steps are solved one at a time
+        return solverConf.nrofStateCopies() + SingleStepAdjoint.nrofAugmentedStateCopies();
+    }
+
+    @Override
+    public long nrofStateCopies() {
+        return BackpropagateAdjoint.nrofStateCopies();
+    }
+
+    @Override
+    public long timeAdjointLength() {
+        // Gradient w.r.t start time is a scalar
+        return needTimeGradient ? 1 : 0;
+    }
+
     @Override
     public InputStepAdjoint clone() {
         return new InputStepAdjoint(solverConf.clone(), timeInputIndex);
@@ -0,0 +1,84 @@
+package ode.vertex.conf.helper.backward;
+
+import lombok.Data;
+import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.impl.helper.backward.BackpropagateLogDensityAdjoint;
+import ode.vertex.impl.helper.forward.LogDensityStep;
+import ode.vertex.impl.helper.forward.OdeHelperForward;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.serde.jackson.shaded.NDArrayDeSerializer;
+import org.nd4j.serde.jackson.shaded.NDArraySerializer;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+import org.nd4j.shade.jackson.databind.annotation.JsonDeserialize;
+import org.nd4j.shade.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Objects;
+
+/**
+ * Serializable configuration for {@link ode.vertex.impl.helper.backward.LogDensityAdjoint}
+ *
+ * @author Christian Skarby
+ */
+@Data
+public class LogDensityAdjoint implements OdeHelperBackward {
+
+    private final FirstOrderSolverConf solverConf;
+    @JsonSerialize(using = NDArraySerializer.class)
+    @JsonDeserialize(using = NDArrayDeSerializer.class)
+    private final INDArray time;
+    private final double finiteDifferenceStep;
+
+    public LogDensityAdjoint(
+            @JsonProperty("solverConf") FirstOrderSolverConf solverConf,
+            @JsonProperty("time") INDArray time,
+            @JsonProperty("finiteDifferenceStep") double finiteDifferenceStep) {
+        this.solverConf = solverConf;
+        this.time = time;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+    }
+
+    @Override
+    public ode.vertex.impl.helper.backward.OdeHelperBackward instantiate() {
+        return new ode.vertex.impl.helper.backward.LogDensityAdjoint(solverConf.instantiate(), time, finiteDifferenceStep);
+    }
+
+    @Override
+    public ode.vertex.impl.helper.backward.OdeHelperBackward instantiate(OdeHelperForward forward) {
+        if (!(forward instanceof LogDensityStep)) {
+            return instantiate();
+        }
+        // Use the same noise as the forward pass so that the gradient is the gradient of the computed log density
+        final LogDensityStep logDensityStep = (LogDensityStep) forward;
+        return new ode.vertex.impl.helper.backward.LogDensityAdjoint(solverConf.instantiate(), time, finiteDifferenceStep, logDensityStep::lastNoise);
+    }
+
+    @Override
+    public long nrofAugmentedStateCopies() {
+        return solverConf.nrofStateCopies() + ode.vertex.impl.helper.backward.LogDensityAdjoint.nrofAugmentedStateCopies();
+    }
+
+    @Override
+    public long nrofStateCopies() {
+        return ode.vertex.impl.helper.backward.LogDensityAdjoint.nrofStateCopies() + BackpropagateLogDensityAdjoint.nrofStateCopies();
+    }
+
+    @Override
+    public LogDensityAdjoint clone() {
+        return new LogDensityAdjoint(solverConf.clone(), time.dup(), finiteDifferenceStep);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LogDensityAdjoint that = (LogDensityAdjoint) o;
+        return Double.compare(that.finiteDifferenceStep, finiteDifferenceStep) == 0 &&
+                solverConf.equals(that.solverConf) &&
+                time.equals(that.time);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(solverConf, time.toString(), finiteDifferenceStep);
+    }
+}
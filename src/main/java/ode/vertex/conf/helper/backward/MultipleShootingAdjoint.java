@@ -0,0 +1,88 @@
+package ode.vertex.conf.helper.backward;
+
+import lombok.Data;
+import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.impl.helper.backward.BackpropagateAdjoint;
+import ode.vertex.impl.helper.backward.SingleStepAdjoint;
+import ode.vertex.impl.helper.ShootingSegments;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.serde.jackson.shaded.NDArrayDeSerializer;
+import org.nd4j.serde.jackson.shaded.NDArraySerializer;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+import org.nd4j.shade.jackson.databind.annotation.JsonDeserialize;
+import org.nd4j.shade.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Objects;
+
+/**
+ * Serializable configuration for {@link ode.vertex.impl.helper.backward.MultipleShootingAdjoint}
+ *
+ * @author Christian Skarby
+ */
+@Data
+public class MultipleShootingAdjoint implements OdeHelperBackward {
+
+    private final FirstOrderSolverConf solverConf;
+    @JsonSerialize(using = NDArraySerializer.class)
+    @JsonDeserialize(using = NDArrayDeSerializer.class)
+    private final INDArray time;
+    private final int nrofSegments;
+    private final int shootingInputIndex;
+    private final double continuityWeight;
+
+    public MultipleShootingAdjoint(
+            @JsonProperty("solverConf") FirstOrderSolverConf solverConf,
+            @JsonProperty("time") INDArray time,
+            @JsonProperty("nrofSegments") int nrofSegments,
+            @JsonProperty("shootingInputIndex") int shootingInputIndex,
+            @JsonProperty("continuityWeight") double continuityWeight) {
+        this.solverConf = solverConf;
+        this.time = time;
+        this.nrofSegments = nrofSegments;
+        this.shootingInputIndex = shootingInputIndex;
+        this.continuityWeight = continuityWeight;
+    }
+
+    @Override
+    public ode.vertex.impl.helper.backward.OdeHelperBackward instantiate() {
+        return new ode.vertex.impl.helper.backward.MultipleShootingAdjoint(
+                solverConf.instantiate(),
+                new ShootingSegments(time, nrofSegments),
+                shootingInputIndex,
+                continuityWeight);
+    }
+
+    @Override
+    public long nrofAugmentedStateCopies() {
+        // All segments are solved as one batch which makes the augmented state nrofSegments times larger. Overestimates
+        // the parameter adjoint which is shared between segments
+        return nrofSegments * (solverConf.nrofStateCopies() + SingleStepAdjoint.nrofAugmentedStateCopies());
+    }
+
+    @Override
+    public long nrofStateCopies() {
+        return nrofSegments * BackpropagateAdjoint.nrofStateCopies();
+    }
+
+    @Override
+    public MultipleShootingAdjoint clone() {
+        return new MultipleShootingAdjoint(solverConf.clone(), time.dup(), nrofSegments, shootingInputIndex, continuityWeight);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MultipleShootingAdjoint that = (MultipleShootingAdjoint) o;
+        return nrofSegments == that.nrofSegments &&
+                shootingInputIndex == that.shootingInputIndex &&
+                Double.compare(that.continuityWeight, continuityWeight) == 0 &&
+                solverConf.equals(that.solverConf) &&
+                time.equals(that.time);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(solverConf, time.toString(), nrofSegments, shootingInputIndex, continuityWeight);
+    }
+}
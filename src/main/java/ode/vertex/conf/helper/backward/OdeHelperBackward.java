@@ -1,5 +1,6 @@
 package ode.vertex.conf.helper.backward;
 
+import ode.solve.api.FirstOrderSolverConf;
 import org.nd4j.shade.jackson.annotation.JsonTypeInfo;
 
 /**
@@ -16,6 +17,49 @@ public interface OdeHelperBackward {
      */
     ode.vertex.impl.helper.backward.OdeHelperBackward instantiate();
 
+    /**
+     * Instantiate the helper for the backward pass of the given helper for the forward pass, e.g. so that it can reuse
+     * state from the forward pass. Default ignores the forward helper.
+     * @param forward Helper which does the forward pass
+     * @return a New {@link ode.vertex.impl.helper.backward.OdeHelperBackward}
+     */
+    default ode.vertex.impl.helper.backward.OdeHelperBackward instantiate(ode.vertex.impl.helper.forward.OdeHelperForward forward) {
+        return instantiate();
+    }
+
+    /**
+     * Returns the configuration of the solver used by the helper
+     * @return the {@link FirstOrderSolverConf}
+     */
+    FirstOrderSolverConf getSolverConf();
+
+    /**
+     * Returns the number of arrays with the same size as the augmented state (state, adjoint state, parameter adjoint
+     * and time adjoint) which are allocated when solving, including those of the solver. Used to estimate memory
+     * usage. Default is 0.
+     * @return the number of augmented state sized arrays
+     */
+    default long nrofAugmentedStateCopies() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of arrays with the same size as the state (i.e. not the augmented state) which are allocated
+     * when solving, e.g. temporaries when computing the augmented dynamics. Used to estimate memory usage. Default is 0.
+     * @return the number of state sized arrays
+     */
+    default long nrofStateCopies() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of elements of the time adjoint in the augmented state. Default is 0 (no time gradient).
+     * @return the number of elements of the time adjoint
+     */
+    default long timeAdjointLength() {
+        return 0;
+    }
+
     /**
      * Clone the configuration
      * @return a clone of the configuration
@@ -2,6 +2,10 @@ package ode.vertex.conf.helper.forward;
 
 import lombok.Data;
 import ode.solve.api.FirstOrderSolverConf;
+import ode.solve.impl.InterpolatingMultiStepSolver;
+import ode.solve.impl.SingleSteppingMultiStepSolver;
+import ode.vertex.impl.helper.forward.MultiStep;
+import ode.vertex.impl.helper.forward.SingleStep;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.inputs.InvalidInputTypeException;
@@ -47,6 +51,28 @@ public class FixedStep implements OdeHelperForward{
         return 0;
     }
 
+    @Override
+    public long nrofStateCopies() {
+        return nrofStateCopies(solverConf, time.length(), interpolateIfMultiStep);
+    }
+
+    /**
+     * Returns the number of state sized arrays allocated by a {@link ode.vertex.impl.helper.forward.FixedStep}
+     * @param solverConf Configuration of the solver
+     * @param nrofTimeSteps Number of time steps, including the first one
+     * @param interpolateIfMultiStep Whether intermediate time steps are interpolated or not
+     * @return the number of state sized arrays
+     */
+    static long nrofStateCopies(FirstOrderSolverConf solverConf, long nrofTimeSteps, boolean interpolateIfMultiStep) {
+        if (nrofTimeSteps <= 2) {
+            return solverConf.nrofStateCopies() + SingleStep.nrofStateCopies();
+        }
+        final long multiStepSolverCopies = interpolateIfMultiStep ?
+                InterpolatingMultiStepSolver.nrofStateCopies() :
+                SingleSteppingMultiStepSolver.nrofStateCopies();
+        return solverConf.nrofStateCopies() + multiStepSolverCopies + MultiStep.nrofStateCopies(nrofTimeSteps);
+    }
+
     @Override
     public FixedStep clone() {
         return new FixedStep(solverConf.clone(), time.dup(), interpolateIfMultiStep);
@@ -41,6 +41,12 @@ public class InputStep implements OdeHelperForward {
         return 1;
     }
 
+    @Override
+    public long nrofStateCopies() {
+        // Time is not known until input is given so assume single step
+        return FixedStep.nrofStateCopies(solverConf, 2, interpolateIfMultiStep);
+    }
+
     @Override
     public InputStep clone() {
         return new InputStep(solverConf.clone(), timeInputIndex, interpolateIfMultiStep);
@@ -0,0 +1,95 @@
+package ode.vertex.conf.helper.forward;
+
+import lombok.Data;
+import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.impl.helper.forward.LogDensityDynamics;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.inputs.InvalidInputTypeException;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.serde.jackson.shaded.NDArrayDeSerializer;
+import org.nd4j.serde.jackson.shaded.NDArraySerializer;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+import org.nd4j.shade.jackson.databind.annotation.JsonDeserialize;
+import org.nd4j.shade.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Objects;
+
+/**
+ * Serializable configuration for {@link ode.vertex.impl.helper.forward.LogDensityStep}
+ *
+ * @author Christian Skarby
+ */
+@Data
+public class LogDensityStep implements OdeHelperForward {
+
+    private final FirstOrderSolverConf solverConf;
+    @JsonSerialize(using = NDArraySerializer.class)
+    @JsonDeserialize(using = NDArrayDeSerializer.class)
+    private final INDArray time;
+    private final double finiteDifferenceStep;
+    private final boolean batchedInference;
+
+    public LogDensityStep(FirstOrderSolverConf solverConf, INDArray time, double finiteDifferenceStep) {
+        this(solverConf, time, finiteDifferenceStep, false);
+    }
+
+    public LogDensityStep(
+            @JsonProperty("solverConf") FirstOrderSolverConf solverConf,
+            @JsonProperty("time") INDArray time,
+            @JsonProperty("finiteDifferenceStep") double finiteDifferenceStep,
+            @JsonProperty("batchedInference") boolean batchedInference) {
+        this.solverConf = solverConf;
+        this.time = time;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+        this.batchedInference = batchedInference;
+    }
+
+    @Override
+    public ode.vertex.impl.helper.forward.OdeHelperForward instantiate() {
+        return new ode.vertex.impl.helper.forward.LogDensityStep(solverConf.instantiate(), time, finiteDifferenceStep, batchedInference);
+    }
+
+    @Override
+    public int nrofTimeInputs() {
+        return 0;
+    }
+
+    @Override
+    public long nrofStateCopies() {
+        return solverConf.nrofStateCopies()
+                + ode.vertex.impl.helper.forward.LogDensityStep.nrofStateCopies()
+                + LogDensityDynamics.nrofStateCopies();
+    }
+
+    @Override
+    public LogDensityStep clone() {
+        return new LogDensityStep(solverConf.clone(), time.dup(), finiteDifferenceStep, batchedInference);
+    }
+
+    @Override
+    public InputType getOutputType(ComputationGraphConfiguration conf, InputType... vertexInputs) throws InvalidInputTypeException {
+        final InputType output = new OutputTypeFromConfig().getOutputType(conf, vertexInputs);
+        if (output.getType() != InputType.Type.FF) {
+            throw new InvalidInputTypeException("Only feed forward input supported! Got: " + output + "!");
+        }
+        // Change in log density is concatenated to the output
+        return InputType.feedForward(output.arrayElementsPerExample() + 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LogDensityStep that = (LogDensityStep) o;
+        return Double.compare(that.finiteDifferenceStep, finiteDifferenceStep) == 0 &&
+                batchedInference == that.batchedInference &&
+                solverConf.equals(that.solverConf) &&
+                time.equals(that.time);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(solverConf, time.toString(), finiteDifferenceStep, batchedInference);
+    }
+}
@@ -0,0 +1,100 @@
+package ode.vertex.conf.helper.forward;
+
+import lombok.Data;
+import ode.solve.api.FirstOrderSolverConf;
+import ode.vertex.impl.helper.ShootingSegments;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.inputs.InvalidInputTypeException;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.serde.jackson.shaded.NDArrayDeSerializer;
+import org.nd4j.serde.jackson.shaded.NDArraySerializer;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+import org.nd4j.shade.jackson.databind.annotation.JsonDeserialize;
+import org.nd4j.shade.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Objects;
+
+/**
+ * Serializable configuration for {@link ode.vertex.impl.helper.forward.MultipleShooting}
+ *
+ * @author Christian Skarby
+ */
+@Data
+public class MultipleShooting implements OdeHelperForward {
+
+    private final FirstOrderSolverConf solverConf;
+    @JsonSerialize(using = NDArraySerializer.class)
+    @JsonDeserialize(using = NDArrayDeSerializer.class)
+    private final INDArray time;
+    private final int nrofSegments;
+    private final int shootingInputIndex;
+
+    public MultipleShooting(
+            @JsonProperty("solverConf") FirstOrderSolverConf solverConf,
+            @JsonProperty("time") INDArray time,
+            @JsonProperty("nrofSegments") int nrofSegments,
+            @JsonProperty("shootingInputIndex") int shootingInputIndex) {
+        this.solverConf = solverConf;
+        this.time = time;
+        this.nrofSegments = nrofSegments;
+        this.shootingInputIndex = shootingInputIndex;
+    }
+
+    @Override
+    public ode.vertex.impl.helper.forward.OdeHelperForward instantiate() {
+        return new ode.vertex.impl.helper.forward.MultipleShooting(
+                solverConf.instantiate(),
+                new ShootingSegments(time, nrofSegments),
+                shootingInputIndex);
+    }
+
+    @Override
+    public int nrofTimeInputs() {
+        // Initial states of segments are not input to the graph, just like time
+        return 1;
+    }
+
+    @Override
+    public long nrofStateCopies() {
+        // All segments are solved as one batch from stacked initial states. Segments of length one are stacked with
+        // their initial states. Merged output has one state per time step.
+        final long segmentLength = (time.length() - 1) / nrofSegments;
+        final long segmentCopies = 1
+                + FixedStep.nrofStateCopies(solverConf, segmentLength + 1, false)
+                + (segmentLength == 1 ? 2 : 0);
+        return nrofSegments * segmentCopies + time.length();
+    }
+
+    @Override
+    public MultipleShooting clone() {
+        return new MultipleShooting(solverConf.clone(), time.dup(), nrofSegments, shootingInputIndex);
+    }
+
+    @Override
+    public InputType getOutputType(ComputationGraphConfiguration conf, InputType... vertexInputs) throws InvalidInputTypeException {
+        if (vertexInputs.length <= shootingInputIndex) {
+            throw new InvalidInputTypeException("Shooting input index was not part of input types!!");
+        }
+
+        final InputType[] withTime = vertexInputs.clone();
+        withTime[shootingInputIndex] = InputType.inferInputType(time);
+        return new OutputTypeAddTimeAsDimension(shootingInputIndex, new OutputTypeFromConfig()).getOutputType(conf, withTime);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MultipleShooting that = (MultipleShooting) o;
+        return nrofSegments == that.nrofSegments &&
+                shootingInputIndex == that.shootingInputIndex &&
+                solverConf.equals(that.solverConf) &&
+                time.equals(that.time);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(solverConf, time.toString(), nrofSegments, shootingInputIndex);
+    }
+}
@@ -1,5 +1,6 @@
 package ode.vertex.conf.helper.forward;
 
+import ode.solve.api.FirstOrderSolverConf;
 import org.nd4j.shade.jackson.annotation.JsonTypeInfo;
 
 /**
@@ -16,12 +17,27 @@ public interface OdeHelperForward extends OutputTypeHelper {
      */
     ode.vertex.impl.helper.forward.OdeHelperForward instantiate();
 
+    /**
+     * Returns the configuration of the solver used by the helper
+     * @return the {@link FirstOrderSolverConf}
+     */
+    FirstOrderSolverConf getSolverConf();
+
     /**
      * How many time inputs are needed
      * @return the number of needed time inputs
      */
     int nrofTimeInputs();
 
+    /**
+     * Returns the number of arrays with the same size as the state (i.e. one time step of the output) which are
+     * allocated when solving, including those of the solver. Used to estimate memory usage. Default is 0.
+     * @return the number of state sized arrays
+     */
+    default long nrofStateCopies() {
+        return 0;
+    }
+
 
     /**
      * Clone the configuration
@@ -0,0 +1,92 @@
+package ode.vertex.impl;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.MaskState;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.BaseGraphVertex;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.primitives.Pair;
+
+/**
+ * Computes the matrix-vector product f(z) * dX/dt of a neural controlled differential equation. First input is the
+ * output of the vector field f(z) with size nrofChannels * nrofHidden where the elements for channel c are
+ * [c*nrofHidden, (c+1)*nrofHidden). Second input is the derivative of the control path dX/dt with size nrofChannels.
+ *
+ * @author Christian Skarby
+ */
+public class ControlledVectorFieldVertex extends BaseGraphVertex {
+
+    public ControlledVectorFieldVertex(ComputationGraph graph, String name, int vertexIndex) {
+        super(graph, name, vertexIndex, null, null);
+    }
+
+    @Override
+    public INDArray doForward(boolean training, LayerWorkspaceMgr workspaceMgr) {
+        if (!canDoForward())
+            throw new IllegalStateException("Cannot do forward pass: inputs not set");
+
+        final INDArray vectorField = getInputs()[0];
+        final INDArray controlDot = getInputs()[1];
+        final long nrofHidden = vectorField.size(1) / controlDot.size(1);
+
+        final INDArray output = workspaceMgr.create(ArrayType.ACTIVATIONS, new long[]{vectorField.size(0), nrofHidden});
+        for (long c = 0; c < controlDot.size(1); c++) {
+            output.addi(channel(vectorField, c, nrofHidden).mulColumnVector(controlDot.getColumn(c)));
+        }
+        return output;
+    }
+
+    @Override
+    public Pair<Gradient, INDArray[]> doBackward(boolean tbptt, LayerWorkspaceMgr workspaceMgr) {
+        if (!canDoBackward())
+            throw new IllegalStateException("Cannot do backward pass: errors not set");
+
+        final INDArray epsilon = getEpsilon();
+        final INDArray vectorField = getInputs()[0];
+        final INDArray controlDot = getInputs()[1];
+        final long nrofHidden = epsilon.size(1);
+
+        final INDArray epsVectorField = workspaceMgr.create(ArrayType.ACTIVATION_GRAD, vectorField.shape());
+        final INDArray epsControlDot = workspaceMgr.create(ArrayType.ACTIVATION_GRAD, controlDot.shape());
+        for (long c = 0; c < controlDot.size(1); c++) {
+            channel(epsVectorField, c, nrofHidden).assign(epsilon.mulColumnVector(controlDot.getColumn(c)));
+            epsControlDot.putColumn((int) c, epsilon.mul(channel(vectorField, c, nrofHidden)).sum(1));
+        }
+
+        return new Pair<>(null, new INDArray[]{epsVectorField, epsControlDot});
+    }
+
+    private static INDArray channel(INDArray vectorField, long channel, long nrofHidden) {
+        return vectorField.get(NDArrayIndex.all(), NDArrayIndex.interval(channel * nrofHidden, (channel + 1) * nrofHidden));
+    }
+
+    @Override
+    public boolean hasLayer() {
+        return false;
+    }
+
+    @Override
+    public Layer getLayer() {
+        return null;
+    }
+
+    @Override
+    public void setBackpropGradientsViewArray(INDArray backpropGradientsViewArray) {
+        if (backpropGradientsViewArray != null)
+            throw new IllegalArgumentException("Vertex does not have gradients; gradients view array cannot be set here");
+    }
+
+    @Override
+    public Pair<INDArray, MaskState> feedForwardMaskArrays(INDArray[] maskArrays, MaskState currentMaskState, int minibatchSize) {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "(id=" + this.getVertexIndex() + ",name=\"" + this.getVertexName() + "\")";
+    }
+}
@@ -2,6 +2,7 @@ package ode.vertex.impl;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import ode.vertex.impl.helper.InferenceCache;
 import ode.vertex.impl.helper.OdeGraphHelper;
 import ode.vertex.impl.helper.backward.OdeHelperBackward;
 import org.deeplearning4j.nn.api.Layer;
@@ -31,6 +32,7 @@ public class OdeVertex extends BaseGraphVertex {
 
     private final OdeGraphHelper odeHelper;
     private final TrainingConfig trainingConfig;
+    private final InferenceCache inferenceCache;
 
     @AllArgsConstructor
     @Getter
@@ -43,9 +45,24 @@ public class OdeVertex extends BaseGraphVertex {
     public OdeVertex(BaseGraphVertexInputs baseGraphVertexInputs,
                      OdeGraphHelper odeHelper,
                      TrainingConfig trainingConfig) {
+        this(baseGraphVertexInputs, odeHelper, trainingConfig, null);
+    }
+
+    /**
+     * Create a new OdeVertex
+     * @param baseGraphVertexInputs Inputs to {@link BaseGraphVertex}
+     * @param odeHelper Helper which does the actual forward and backward passes
+     * @param trainingConfig Training configuration
+     * @param inferenceCache Cache for outputs from inference. May be null in which case nothing is cached
+     */
+    public OdeVertex(BaseGraphVertexInputs baseGraphVertexInputs,
+                     OdeGraphHelper odeHelper,
+                     TrainingConfig trainingConfig,
+                     InferenceCache inferenceCache) {
         super(baseGraphVertexInputs.getGraph(), baseGraphVertexInputs.getName(), baseGraphVertexInputs.getVertexIndex(), null, null);
         this.trainingConfig = trainingConfig;
         this.odeHelper = odeHelper;
+        this.inferenceCache = inferenceCache;
     }
 
     @Override
@@ -68,6 +85,16 @@ public class OdeVertex extends BaseGraphVertex {
         return odeHelper.getFunction().numParams();
     }
 
+    /**
+     * Returns the integral of the regularization of the dynamics (if any) and the continuity penalty of multiple
+     * shooting (if used) from the last backward pass. Not included in the score of the model as dl4j only adds
+     * regularization from layers to it. Use {@link util.listen.training.AddOdeRegularizationScore} to add it.
+     * @return the regularization score
+     */
+    public double regularizationScore() {
+        return odeHelper.regularizationScore();
+    }
+
     @Override
     public INDArray params() {
         return odeHelper.getFunction().params();
@@ -115,9 +142,36 @@ public class OdeVertex extends BaseGraphVertex {
 
         leverageInputs(workspaceMgr);
 
-        final INDArray output = odeHelper.doForward(workspaceMgr, getInputs());
+        if (inferenceCache == null) {
+            return workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, odeHelper.doForward(workspaceMgr, getInputs(), training));
+        }
+
+        if (training) {
+            // Parameters will most likely be updated after this pass
+            inferenceCache.invalidate();
+            return workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, odeHelper.doForward(workspaceMgr, getInputs(), training));
+        }
+
+        inferenceCache.checkParameters(params());
+        // Inputs might be changed by the forward pass so key must be created before it
+        final InferenceCache.Key key = inferenceCache.createKey(getInputs());
+        final INDArray cached = inferenceCache.get(key);
+        if (cached != null) {
+            log.trace("Inference cache hit");
+            return workspaceMgr.dup(ArrayType.ACTIVATIONS, cached);
+        }
 
-        return workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, output);
+        final INDArray output = workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, odeHelper.doForward(workspaceMgr, getInputs(), training));
+        inferenceCache.put(key, output);
+        return output;
+    }
+
+    /**
+     * Returns the cache of inference outputs
+     * @return the cache or null if outputs are not cached
+     */
+    public InferenceCache getInferenceCache() {
+        return inferenceCache;
     }
 
     @Override
@@ -131,10 +185,14 @@ public class OdeVertex extends BaseGraphVertex {
                 getInputs());
 
         final INDArray[] inputGrads = gradients.getSecond();
-        final INDArray[] leveragedGrads = new INDArray[inputGrads.length];
+        final INDArray[] leveragedGrads = new INDArray[Math.max(inputGrads.length, getInputs().length)];
         for (int i = 0; i < inputGrads.length; i++) {
             leveragedGrads[i] = workspaceMgr.leverageTo(ArrayType.ACTIVATION_GRAD, inputGrads[i]);
         }
+        // Inputs which are not differentiated, e.g. the control path of a controlled differential equation
+        for (int i = inputGrads.length; i < leveragedGrads.length; i++) {
+            leveragedGrads[i] = workspaceMgr.create(ArrayType.ACTIVATION_GRAD, getInputs()[i].shape());
+        }
 
         return new Pair<>(gradients.getFirst(), leveragedGrads);
     }
@@ -1,6 +1,10 @@
 package ode.vertex.impl.gradview;
 
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 
@@ -8,18 +12,34 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * A non-contiguous view of a 1D INDArray
+ * A non-contiguous view of a 1D INDArray.
+ * <br><br>
+ * When all added views are views of the same array (e.g. the gradient view of a graph), a table of offsets of each
+ * element in the viewed array is computed the first time the view is assigned. Assignments are then done as a single
+ * gather or scatter operation instead of one operation per added view. If the elements turn out to be contiguous
+ * the view is assigned as one single array.
  *
  * @author Christian Skarby
  */
 public class NonContiguous1DView implements INDArray1DView {
 
+    /** Largest index which can be represented exactly by the float data type */
+    private static final long maxFloatIndex = 1 << 24;
+
     private final List<INDArray> view = new ArrayList<>();
     private long length = 0;
+    private AssignPlan plan;
+
+    private interface AssignPlan {
+        void assignFrom(INDArray toAssign);
+
+        void assignTo(INDArray assignTo);
+    }
 
     public void addView(INDArray viewSlice) {
         length += viewSlice.length();
         view.add(viewSlice);
+        plan = null;
     }
 
     @Override
@@ -33,11 +53,7 @@ public class NonContiguous1DView implements INDArray1DView {
             throw new IllegalArgumentException("Array toAssign must have rank 1!");
         }
 
-        long ptr = 0;
-        for(INDArray viewSlice: view) {
-            viewSlice.assign(toAssign.get(NDArrayIndex.interval(ptr, ptr + viewSlice.length())).reshape(viewSlice.shape()));
-            ptr += viewSlice.length();
-        }
+        getPlan().assignFrom(toAssign);
     }
 
     @Override
@@ -50,11 +66,7 @@ public class NonContiguous1DView implements INDArray1DView {
             throw new IllegalArgumentException("Array assignTo must have rank 1!");
         }
 
-        long ptr = 0;
-        for(INDArray viewSlice: view) {
-            assignTo.put(new INDArrayIndex[] {NDArrayIndex.interval(ptr, ptr + viewSlice.length())}, viewSlice.reshape(viewSlice.length()));
-            ptr += viewSlice.length();
-        }
+        getPlan().assignTo(assignTo);
     }
 
     @Override
@@ -67,4 +79,155 @@ public class NonContiguous1DView implements INDArray1DView {
         return view.toString();
     }
 
+    private AssignPlan getPlan() {
+        if (plan == null) {
+            plan = createPlan();
+        }
+        return plan;
+    }
+
+    private AssignPlan createPlan() {
+        if (view.isEmpty()) {
+            return new PerSlice();
+        }
+
+        final DataBuffer root = root(view.get(0).data());
+        final long maxIndex = Nd4j.dataType() == DataBuffer.Type.DOUBLE ? Integer.MAX_VALUE : maxFloatIndex;
+        if (root.length() > maxIndex || root.dataType() != Nd4j.dataType()) {
+            return new PerSlice();
+        }
+
+        final long elementSize = root.getElementSize();
+        final double[] offsets = new double[(int) length];
+        int ptr = 0;
+        for (INDArray viewSlice : view) {
+            if (root(viewSlice.data()).address() != root.address()) {
+                return new PerSlice();
+            }
+            ptr = addOffsets(offsets, ptr, (viewSlice.data().address() - root.address()) / elementSize, viewSlice);
+        }
+
+        // Plan is kept between iterations so it must not be in any workspace
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            final INDArray rootArray = Nd4j.create(root, new long[]{root.length()});
+            if (isContiguous(offsets)) {
+                return new Contiguous(rootArray.get(NDArrayIndex.interval((long) offsets[0], (long) offsets[0] + length)));
+            }
+            return new GatherScatter(rootArray, Nd4j.create(offsets, new long[]{length}));
+        }
+    }
+
+    private static DataBuffer root(DataBuffer buffer) {
+        return buffer.originalDataBuffer() == null ? buffer : buffer.originalDataBuffer();
+    }
+
+    private static int addOffsets(double[] offsets, int ptr, long offset, INDArray viewSlice) {
+        final long[] shape = viewSlice.shape();
+        final long[] stride = viewSlice.stride();
+        final long[] index = new long[shape.length];
+        for (long i = 0; i < viewSlice.length(); i++) {
+            long elementOffset = offset;
+            for (int dim = 0; dim < shape.length; dim++) {
+                elementOffset += index[dim] * stride[dim];
+            }
+            offsets[ptr++] = elementOffset;
+
+            // Increment index in c order
+            for (int dim = shape.length - 1; dim >= 0 && ++index[dim] == shape[dim]; dim--) {
+                index[dim] = 0;
+            }
+        }
+        return ptr;
+    }
+
+    private static boolean isContiguous(double[] offsets) {
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] != offsets[i - 1] + 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * All elements are contiguous in the viewed array
+     */
+    private static final class Contiguous implements AssignPlan {
+
+        private final INDArray contiguousView;
+
+        private Contiguous(INDArray contiguousView) {
+            this.contiguousView = contiguousView;
+        }
+
+        @Override
+        public void assignFrom(INDArray toAssign) {
+            contiguousView.assign(toAssign);
+        }
+
+        @Override
+        public void assignTo(INDArray assignTo) {
+            assignTo.assign(contiguousView);
+        }
+    }
+
+    /**
+     * Elements are scattered in the viewed array. Assignment is done using precomputed offsets
+     */
+    private static final class GatherScatter implements AssignPlan {
+
+        private final INDArray rootArray;
+        private final INDArray offsets;
+
+        private GatherScatter(INDArray rootArray, INDArray offsets) {
+            this.rootArray = rootArray;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public void assignFrom(INDArray toAssign) {
+            Nd4j.getExecutioner().exec(DynamicCustomOp.builder("scatter_upd")
+                    .addInputs(rootArray, offsets, toAssign.elementWiseStride() == 1 ? toAssign : toAssign.dup())
+                    .addOutputs(rootArray)
+                    .callInplace(true)
+                    .build());
+        }
+
+        @Override
+        public void assignTo(INDArray assignTo) {
+            final INDArray output = assignTo.elementWiseStride() == 1 ? assignTo : Nd4j.createUninitialized(assignTo.shape());
+            Nd4j.getExecutioner().exec(DynamicCustomOp.builder("gather")
+                    .addInputs(rootArray, offsets)
+                    .addOutputs(output)
+                    .addIntegerArguments(0)
+                    .build());
+            if (output != assignTo) {
+                assignTo.assign(output);
+            }
+        }
+    }
+
+    /**
+     * Fallback which assigns one added view at the time. Used when added views are not views of the same array
+     */
+    private final class PerSlice implements AssignPlan {
+
+        @Override
+        public void assignFrom(INDArray toAssign) {
+            long ptr = 0;
+            for(INDArray viewSlice: view) {
+                viewSlice.assign(toAssign.get(NDArrayIndex.interval(ptr, ptr + viewSlice.length())).reshape(viewSlice.shape()));
+                ptr += viewSlice.length();
+            }
+        }
+
+        @Override
+        public void assignTo(INDArray assignTo) {
+            long ptr = 0;
+            for(INDArray viewSlice: view) {
+                assignTo.put(new INDArrayIndex[] {NDArrayIndex.interval(ptr, ptr + viewSlice.length())}, viewSlice.reshape(viewSlice.length()));
+                ptr += viewSlice.length();
+            }
+        }
+    }
 }
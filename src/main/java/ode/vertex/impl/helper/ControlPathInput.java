@@ -0,0 +1,110 @@
+package ode.vertex.impl.helper;
+
+import ode.vertex.impl.helper.backward.AugmentedDynamics;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link GraphInputOutput} for neural controlled differential equations dz = f(z) * dX where X is a
+ * {@link NaturalCubicSpline} fitted to a time series. First input is the initial state z(0) and second input is the
+ * series in recurrent format. The series is fitted once when this class is created, or taken from a {@link FitCache}
+ * so that the forward and backward pass of the same mini batch share one fit, and the derivative of the spline
+ * dX/dt at the current time of the solver is given as the second input to the
+ * {@link org.deeplearning4j.nn.graph.ComputationGraph} so that it can compute f(z) * dX/dt, e.g. using a
+ * {@link ode.vertex.impl.ControlledVectorFieldVertex}.
+ * <br><br>
+ * Time in the solver is the spline parameter, i.e. the solver shall integrate between 0 and 1. No gradient w.r.t
+ * the series nor the time is computed.
+ *
+ * @author Christian Skarby
+ */
+public class ControlPathInput implements GraphInputOutput {
+
+    private final INDArray[] inputs;
+    private final NaturalCubicSpline controlPath;
+
+    /**
+     * Caches the spline fitted to the last seen series so that it can be reused as long as the series does not
+     * change, e.g. between the forward and the backward pass of one mini batch. Safe to use from several threads.
+     */
+    public static class FitCache {
+
+        private INDArray lastSeries;
+        private NaturalCubicSpline lastFit;
+
+        /**
+         * Return the spline fitted to the given series. Fitting is only done if the series is not equal to the series
+         * from the last call.
+         * @param series Time series in recurrent format
+         * @return a {@link NaturalCubicSpline} fitted to the series
+         */
+        public synchronized NaturalCubicSpline fit(INDArray series) {
+            // Exact comparison as the same series instance might have been changed since the last call
+            if (lastSeries != null && Arrays.equals(lastSeries.shape(), series.shape()) && lastSeries.equalsWithEps(series, 0)) {
+                return lastFit;
+            }
+            // Coefficients are used for the whole solve so they must not be in any workspace
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                lastFit = NaturalCubicSpline.fit(series);
+                lastSeries = series.dup();
+            }
+            return lastFit;
+        }
+    }
+
+    public ControlPathInput(INDArray[] inputs) {
+        this(inputs, new FitCache());
+    }
+
+    public ControlPathInput(INDArray[] inputs, FitCache fitCache) {
+        this(inputs, fit(inputs, fitCache));
+    }
+
+    private ControlPathInput(INDArray[] inputs, NaturalCubicSpline controlPath) {
+        this.inputs = inputs;
+        this.controlPath = controlPath;
+    }
+
+    private static NaturalCubicSpline fit(INDArray[] inputs, FitCache fitCache) {
+        if (inputs.length < 2) {
+            throw new IllegalArgumentException("Expected at least two inputs, initial state and control path! Got: " + inputs.length);
+        }
+        return fitCache.fit(inputs[1]);
+    }
+
+    @Override
+    public INDArray[] getInputsFrom(INDArray y, INDArray t) {
+        return new INDArray[]{y.reshape(inputs[0].shape()), controlPath.derivative(t.getDouble(0))};
+    }
+
+    @Override
+    public INDArray y0() {
+        return inputs[0];
+    }
+
+    @Override
+    public Pair<GraphInputOutput, INDArray> removeInput(int index) {
+        if (index < 2) {
+            throw new IllegalArgumentException("Can not remove initial state nor control path!");
+        }
+        final List<INDArray> inputsToKeep = new ArrayList<>();
+        for (int i = 0; i < inputs.length; i++) {
+            if (i != index) {
+                inputsToKeep.add(inputs[i]);
+            }
+        }
+        return new Pair<>(new ControlPathInput(inputsToKeep.toArray(new INDArray[0]), controlPath), inputs[index]);
+    }
+
+    @Override
+    public void update(List<INDArray> gradients, AugmentedDynamics augmentedDynamics) {
+        augmentedDynamics.updateZAdjoint(gradients.subList(0, 1));
+        augmentedDynamics.tAdjoint().assign(0);
+    }
+}
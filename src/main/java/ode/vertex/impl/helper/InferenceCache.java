@@ -0,0 +1,190 @@
+package ode.vertex.impl.helper;
+
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of outputs from inference passes, e.g. to skip solving the ODE for repeated
+ * queries when serving a model. Entries are keyed on the content of the input arrays (time is part of the key when it
+ * is an input, otherwise it is fixed by the configuration). Eviction is based on the total number of bytes used by
+ * cached inputs and outputs.
+ * <br><br>
+ * The cache is cleared when the parameters change. Changes through training are detected by calling
+ * {@link #invalidate()} on each training pass while other changes (e.g. setting the parameters) are detected by
+ * {@link #checkParameters(INDArray)} which compares the parameters with a copy of the parameters from the last call.
+ *
+ * @author Christian Skarby
+ */
+public class InferenceCache {
+
+    private final long maxBytes;
+    private final Map<Key, INDArray> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long nrofBytes = 0;
+    private long nrofHits = 0;
+    private long nrofMisses = 0;
+    private INDArray lastParams;
+
+    /**
+     * Key to cached outputs. Contains a copy of the inputs so that it is not affected if the inputs are changed
+     */
+    public static final class Key {
+        private final long[][] shapes;
+        private final double[][] data;
+        private final int hash;
+
+        private Key(INDArray[] inputs) {
+            shapes = new long[inputs.length][];
+            data = new double[inputs.length][];
+            for (int i = 0; i < inputs.length; i++) {
+                shapes[i] = inputs[i].shape();
+                data[i] = inputs[i].dup('c').data().asDouble();
+            }
+            hash = 31 * Arrays.deepHashCode(shapes) + Arrays.deepHashCode(data);
+        }
+
+        private long nrofBytes() {
+            return Arrays.stream(data).mapToLong(arr -> arr.length * (long) Double.BYTES).sum();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return hash == other.hash && Arrays.deepEquals(shapes, other.shapes) && Arrays.deepEquals(data, other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Create a new cache
+     * @param maxBytes Maximum number of bytes used for cached inputs and outputs
+     */
+    public InferenceCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Create a key for the given inputs
+     * @param inputs Inputs to the vertex
+     * @return a new {@link Key}
+     */
+    public Key createKey(INDArray[] inputs) {
+        return new Key(inputs);
+    }
+
+    /**
+     * Return the cached output for the given key
+     * @param key Key created from the inputs to the vertex
+     * @return The cached output or null if not in cache
+     */
+    public INDArray get(Key key) {
+        final INDArray output = entries.get(key);
+        if (output == null) {
+            nrofMisses++;
+        } else {
+            nrofHits++;
+        }
+        return output;
+    }
+
+    /**
+     * Cache the output for the given key. The output is copied so it may be changed afterwards.
+     * @param key Key created from the inputs to the vertex
+     * @param output Output from the vertex
+     */
+    public void put(Key key, INDArray output) {
+        final long entryBytes = key.nrofBytes() + output.length() * output.data().getElementSize();
+        if (entryBytes > maxBytes) {
+            return;
+        }
+
+        final INDArray copy;
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            copy = output.dup();
+        }
+
+        final INDArray prev = entries.put(key, copy);
+        if (prev != null) {
+            nrofBytes -= key.nrofBytes() + prev.length() * prev.data().getElementSize();
+        }
+        nrofBytes += entryBytes;
+
+        final Iterator<Map.Entry<Key, INDArray>> lruFirst = entries.entrySet().iterator();
+        while (nrofBytes > maxBytes && lruFirst.hasNext()) {
+            final Map.Entry<Key, INDArray> eldest = lruFirst.next();
+            nrofBytes -= eldest.getKey().nrofBytes() + eldest.getValue().length() * eldest.getValue().data().getElementSize();
+            lruFirst.remove();
+        }
+    }
+
+    /**
+     * Clear the cache if the given parameters are not the same as the last time this method was called
+     * @param params Current parameters
+     */
+    public void checkParameters(INDArray params) {
+        // Exact comparison. Cheaper alternatives like comparing sum and norm miss e.g. permutations of the parameters
+        if (lastParams != null && lastParams.equalsWithEps(params, 0)) {
+            return;
+        }
+        invalidate();
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            if (lastParams != null && Arrays.equals(lastParams.shape(), params.shape())) {
+                lastParams.assign(params);
+            } else {
+                lastParams = params.dup();
+            }
+        }
+    }
+
+    /**
+     * Remove all entries, e.g. because the parameters have changed
+     */
+    public void invalidate() {
+        entries.clear();
+        nrofBytes = 0;
+    }
+
+    /**
+     * Returns the number of bytes used by cached entries
+     * @return number of bytes
+     */
+    public long getNrofBytes() {
+        return nrofBytes;
+    }
+
+    /**
+     * Returns the number of cached entries
+     * @return number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of cache hits
+     * @return number of cache hits
+     */
+    public long getNrofHits() {
+        return nrofHits;
+    }
+
+    /**
+     * Returns the number of cache misses
+     * @return number of cache misses
+     */
+    public long getNrofMisses() {
+        return nrofMisses;
+    }
+}
@@ -0,0 +1,160 @@
+package ode.vertex.impl.helper;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Natural cubic spline interpolation of a batch of time series. Main use case is as the control path X of a neural
+ * controlled differential equation (see https://arxiv.org/abs/2005.08926).
+ * <br><br>
+ * The spline is parameterized by s in [0, 1] where observation i out of n is at s = i / (n - 1). Irregularly sampled
+ * series are supported by adding the observation times as a channel (see {@link #withTimeChannel(INDArray, INDArray)}).
+ * This way, each sample has its own time scale without having to pad all samples to a common grid.
+ * <br><br>
+ * Coefficients are computed once in the constructor so that evaluating the spline is cheap.
+ *
+ * @author Christian Skarby
+ */
+public class NaturalCubicSpline {
+
+    private final long batchSize;
+    private final long nrofChannels;
+    private final int nrofSegments;
+
+    // Coefficients of y = a + b*x + c*x^2 + d*x^3 for x in [0, 1] of each segment. Index is (batch * channel) * segment
+    private final double[] a;
+    private final double[] b;
+    private final double[] c;
+    private final double[] d;
+
+    /**
+     * Fit a natural cubic spline to the given series
+     * @param series Time series in recurrent format, i.e. shape [batchSize, nrofChannels, nrofObservations]
+     * @return a new {@link NaturalCubicSpline}
+     */
+    public static NaturalCubicSpline fit(INDArray series) {
+        if (series.rank() != 3) {
+            throw new IllegalArgumentException("Expected series of rank 3! Got shape: " + Arrays.toString(series.shape()));
+        }
+        if (series.size(2) < 2) {
+            throw new IllegalArgumentException("Need at least two observations to fit a spline! Got: " + series.size(2));
+        }
+        return new NaturalCubicSpline(series.size(0), series.size(1), (int) series.size(2), series.dup('c').data().asDouble());
+    }
+
+    /**
+     * Add observation times as the first channel of the given observations
+     * @param times Observation times of each sample, shape [batchSize, nrofObservations]
+     * @param observations Observations of each sample, shape [batchSize, nrofChannels, nrofObservations]
+     * @return Series with shape [batchSize, nrofChannels + 1, nrofObservations]
+     */
+    public static INDArray withTimeChannel(INDArray times, INDArray observations) {
+        return Nd4j.concat(1, times.reshape(times.size(0), 1, times.size(1)), observations);
+    }
+
+    private NaturalCubicSpline(long batchSize, long nrofChannels, int nrofObservations, double[] y) {
+        this.batchSize = batchSize;
+        this.nrofChannels = nrofChannels;
+        this.nrofSegments = nrofObservations - 1;
+
+        final int nrofSeries = (int) (batchSize * nrofChannels);
+        a = new double[nrofSeries * nrofSegments];
+        b = new double[nrofSeries * nrofSegments];
+        c = new double[nrofSeries * nrofSegments];
+        d = new double[nrofSeries * nrofSegments];
+
+        final double[] secondDerivs = new double[nrofObservations];
+        final double[] scratch = new double[nrofObservations];
+        for (int series = 0; series < nrofSeries; series++) {
+            final int offset = series * nrofObservations;
+            solveSecondDerivatives(y, offset, secondDerivs, scratch);
+
+            for (int i = 0; i < nrofSegments; i++) {
+                final int ind = series * nrofSegments + i;
+                final double m0 = secondDerivs[i];
+                final double m1 = secondDerivs[i + 1];
+                a[ind] = y[offset + i];
+                b[ind] = y[offset + i + 1] - y[offset + i] - (2 * m0 + m1) / 6;
+                c[ind] = m0 / 2;
+                d[ind] = (m1 - m0) / 6;
+            }
+        }
+    }
+
+    /**
+     * Solve the tridiagonal system m[i-1] + 4m[i] + m[i+1] = 6(y[i+1] - 2y[i] + y[i-1]) with m[0] = m[n-1] = 0 using
+     * the Thomas algorithm
+     */
+    private void solveSecondDerivatives(double[] y, int offset, double[] m, double[] scratch) {
+        final int n = nrofSegments + 1;
+        m[0] = 0;
+        m[n - 1] = 0;
+        // Forward sweep: scratch holds modified super diagonal
+        for (int i = 1; i < n - 1; i++) {
+            final double rhs = 6 * (y[offset + i + 1] - 2 * y[offset + i] + y[offset + i - 1]);
+            final double denom = 4 - (i > 1 ? scratch[i - 1] : 0);
+            scratch[i] = 1 / denom;
+            m[i] = (rhs - (i > 1 ? m[i - 1] : 0)) / denom;
+        }
+        // Back substitution
+        for (int i = n - 3; i >= 1; i--) {
+            m[i] -= scratch[i] * m[i + 1];
+        }
+    }
+
+    /**
+     * Return the value X(s)
+     * @param s Spline parameter in [0, 1]
+     * @return X(s) with shape [batchSize, nrofChannels]
+     */
+    public INDArray value(double s) {
+        return evaluate(s, 0);
+    }
+
+    /**
+     * Return the derivative dX/ds
+     * @param s Spline parameter in [0, 1]
+     * @return dX/ds with shape [batchSize, nrofChannels]
+     */
+    public INDArray derivative(double s) {
+        return evaluate(s, 1);
+    }
+
+    /**
+     * Return the second derivative d2X/ds2
+     * @param s Spline parameter in [0, 1]
+     * @return d2X/ds2 with shape [batchSize, nrofChannels]
+     */
+    public INDArray secondDerivative(double s) {
+        return evaluate(s, 2);
+    }
+
+    private INDArray evaluate(double s, int order) {
+        final double u = s * nrofSegments;
+        // Values outside of [0, 1] are extrapolated from first and last segment
+        final int segment = (int) Math.max(0, Math.min(nrofSegments - 1, Math.floor(u)));
+        final double x = u - segment;
+        final double scale = Math.pow(nrofSegments, order);
+
+        final double[] out = new double[(int) (batchSize * nrofChannels)];
+        for (int series = 0; series < out.length; series++) {
+            final int ind = series * nrofSegments + segment;
+            switch (order) {
+                case 0:
+                    out[series] = a[ind] + x * (b[ind] + x * (c[ind] + x * d[ind]));
+                    break;
+                case 1:
+                    out[series] = scale * (b[ind] + x * (2 * c[ind] + 3 * x * d[ind]));
+                    break;
+                case 2:
+                    out[series] = scale * (2 * c[ind] + 6 * x * d[ind]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported order: " + order);
+            }
+        }
+        return Nd4j.create(out, new long[]{batchSize, nrofChannels});
+    }
+}
@@ -4,6 +4,7 @@ import ode.vertex.conf.helper.GraphInputOutputFactory;
 import ode.vertex.impl.gradview.GradientViewFactory;
 import ode.vertex.impl.gradview.INDArray1DView;
 import ode.vertex.impl.gradview.ParameterGradientView;
+import ode.vertex.impl.helper.backward.DynamicsRegularization;
 import ode.vertex.impl.helper.backward.OdeHelperBackward;
 import ode.vertex.impl.helper.forward.OdeHelperForward;
 import org.deeplearning4j.nn.gradient.Gradient;
@@ -16,12 +17,17 @@ import org.nd4j.linalg.primitives.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Helper which jumps through the hoops so that a {@link ComputationGraph} can be seen as the function which provides
  * the derivatives for an ODE solver.
+ * <br><br>
+ * Instances keep the output of the last forward pass for use in the backward pass and shall therefore not be shared
+ * between threads. Things like ParallelWrapper and ParallelInference create one model replica per worker from the
+ * (thread safe) configuration which gives each worker its own instance.
  *
  * @author Christian Skarby
  */
@@ -30,15 +36,38 @@ public class OdeGraphHelper {
     private static final Logger log = LoggerFactory.getLogger(OdeGraphHelper.class);
 
     private final OdeHelperForward odeHelperForward;
+    private final OdeHelperForward odeHelperInference;
     private final OdeHelperBackward odeHelperBackward;
     private final GraphInputOutputFactory graphInputOutputFactory;
     private final CompGraphAsOdeFunction odeFunction;
+    private final DynamicsRegularization regularization;
 
     public OdeGraphHelper(OdeHelperForward odeHelperForward, OdeHelperBackward odeHelperBackward, GraphInputOutputFactory graphInputOutputFactory, CompGraphAsOdeFunction odeFunction) {
+        this(odeHelperForward, odeHelperForward, odeHelperBackward, graphInputOutputFactory, odeFunction);
+    }
+
+    public OdeGraphHelper(
+            OdeHelperForward odeHelperForward,
+            OdeHelperForward odeHelperInference,
+            OdeHelperBackward odeHelperBackward,
+            GraphInputOutputFactory graphInputOutputFactory,
+            CompGraphAsOdeFunction odeFunction) {
+        this(odeHelperForward, odeHelperInference, odeHelperBackward, graphInputOutputFactory, odeFunction, DynamicsRegularization.none());
+    }
+
+    public OdeGraphHelper(
+            OdeHelperForward odeHelperForward,
+            OdeHelperForward odeHelperInference,
+            OdeHelperBackward odeHelperBackward,
+            GraphInputOutputFactory graphInputOutputFactory,
+            CompGraphAsOdeFunction odeFunction,
+            DynamicsRegularization regularization) {
         this.odeHelperForward = odeHelperForward;
+        this.odeHelperInference = odeHelperInference;
         this.odeHelperBackward = odeHelperBackward;
         this.graphInputOutputFactory = graphInputOutputFactory;
         this.odeFunction = odeFunction;
+        this.regularization = regularization;
     }
 
     public static class CompGraphAsOdeFunction {
@@ -47,10 +76,26 @@ public class OdeGraphHelper {
         private ParameterGradientView parameterGradientView;
         private final ComputationGraph function;
         private final GradientViewFactory gradientViewFactory;
+        private final boolean inferenceMode;
 
         public CompGraphAsOdeFunction(ComputationGraph odeFunction, GradientViewFactory gradientViewFactory) {
+            this(odeFunction, gradientViewFactory, false);
+        }
+
+        /**
+         * Create a new CompGraphAsOdeFunction
+         * @param odeFunction Graph which computes the derivative
+         * @param gradientViewFactory Factory for the gradient view
+         * @param batchNormInferenceMode If true, layers are evaluated in inference mode when not training even if
+         *                               the graph contains batch normalization
+         */
+        public CompGraphAsOdeFunction(ComputationGraph odeFunction, GradientViewFactory gradientViewFactory, boolean batchNormInferenceMode) {
             this.function = odeFunction;
             this.gradientViewFactory = gradientViewFactory;
+            // Batch norm running mean and var are averaged over all function evaluations, i.e. over all times of the
+            // trajectory, and become messed up when used for inference. Same effect seen in original pytorch repo.
+            this.inferenceMode = batchNormInferenceMode || Arrays.stream(odeFunction.getLayers())
+                    .noneMatch(layer -> layer instanceof org.deeplearning4j.nn.layers.normalization.BatchNormalization);
         }
 
         private INDArray lastOutput() {
@@ -94,6 +139,23 @@ public class OdeGraphHelper {
         odeFunction.setLastOutput(null);
     }
 
+    /**
+     * Returns a view of the parts of the gradient view array which are actually gradients
+     * @return an {@link INDArray1DView}
+     */
+    INDArray1DView realGradients() {
+        return odeFunction.realGradients();
+    }
+
+    /**
+     * Returns the integral of the {@link DynamicsRegularization} and any other penalties added to it (e.g. continuity
+     * penalty of multiple shooting) from the last backward pass. Note that this is not included in the score of the model.
+     * @return the regularization score. 0 if no regularization is used
+     */
+    public double regularizationScore() {
+        return regularization.getScore();
+    }
+
     public Map<String, INDArray> paramTable(boolean backpropOnly) {
         return odeFunction.paramTable(backpropOnly);
     }
@@ -119,14 +181,35 @@ public class OdeGraphHelper {
 
 
     public INDArray doForward(LayerWorkspaceMgr workspaceMgr, INDArray[] inputs) {
+        return doForward(workspaceMgr, inputs, true);
+    }
+
+    /**
+     * Solve the ODE for the given inputs. When not training the inference helper is used and the output is not stored
+     * for a subsequent backward pass. Layers of the graph are also evaluated in inference mode, except when the graph
+     * contains batch normalization and inference mode has not been explicitly enabled for it.
+     *
+     * @param workspaceMgr workspace manager
+     * @param inputs Inputs to the vertex
+     * @param training true if training
+     * @return the solution of the ODE
+     */
+    public INDArray doForward(LayerWorkspaceMgr workspaceMgr, INDArray[] inputs, boolean training) {
 
         final LayerWorkspaceMgr innerWorkspaceMgr = createWorkspaceMgr(workspaceMgr, getFunction());
 
         getFunction().getConfiguration().setIterationCount(0);
-        final INDArray output = odeHelperForward.solve(getFunction(), innerWorkspaceMgr, graphInputOutputFactory.create(inputs));
+        final OdeHelperForward helper = training ? odeHelperForward : odeHelperInference;
+        final INDArray output = helper.solve(
+                getFunction(),
+                innerWorkspaceMgr,
+                graphInputOutputFactory.create(inputs),
+                training || !odeFunction.inferenceMode);
         log.debug("Nrof func eval forward " + getFunction().getIterationCount());
 
-        odeFunction.setLastOutput(output.detach());
+        if (training) {
+            odeFunction.setLastOutput(output.detach());
+        }
 
         return output;
     }
@@ -135,6 +218,22 @@ public class OdeGraphHelper {
             OdeHelperBackward.MiscPar miscPars,
             INDArray lossGradient,
             INDArray[] lastInputs) {
+        return doBackward(miscPars, lossGradient, lastInputs, batchSize(lastInputs));
+    }
+
+    /**
+     * Do a backward pass
+     * @param miscPars Misc parameters
+     * @param lossGradient Gradient of the loss w.r.t the output
+     * @param lastInputs Inputs from the last forward pass
+     * @param miniBatchSize Size of the whole mini batch which lastInputs may be a part of
+     * @return Parameter gradients and input gradients
+     */
+    Pair<Gradient, INDArray[]> doBackward(
+            OdeHelperBackward.MiscPar miscPars,
+            INDArray lossGradient,
+            INDArray[] lastInputs,
+            long miniBatchSize) {
 
         final OdeHelperBackward.InputArrays inputArrays = new OdeHelperBackward.InputArrays(
                 graphInputOutputFactory.create(lastInputs),
@@ -145,8 +244,10 @@ public class OdeGraphHelper {
 
         final OdeHelperBackward.MiscPar miscParNewWsMgr = new OdeHelperBackward.MiscPar(
                 miscPars.isUseTruncatedBackPropTroughTime(),
-                createWorkspaceMgr(miscPars.getWsMgr(), getFunction())
+                createWorkspaceMgr(miscPars.getWsMgr(), getFunction()),
+                regularization
         );
+        regularization.begin(miniBatchSize);
 
         getFunction().getConfiguration().setIterationCount(0);
         final INDArray[] gradients = odeHelperBackward.solve(getFunction(), inputArrays, miscParNewWsMgr);
@@ -155,6 +256,14 @@ public class OdeGraphHelper {
         return new Pair<>(odeFunction.parameterGradientView.allGradientsPerParam(), gradients);
     }
 
+    static long batchSize(INDArray[] inputs) {
+        long batchSize = 0;
+        for (INDArray input : inputs) {
+            batchSize = Math.max(batchSize, input.size(0));
+        }
+        return batchSize;
+    }
+
     /**
      * Changes names of  workspaces associated with certain {@link ArrayType}s in order to avoid workspace conflicts
      * due to "graph in graph".
@@ -0,0 +1,228 @@
+package ode.vertex.impl.helper;
+
+import ode.vertex.conf.helper.GraphInputOutputFactory;
+import ode.vertex.impl.gradview.INDArray1DView;
+import ode.vertex.impl.helper.backward.DynamicsRegularization;
+import ode.vertex.impl.helper.backward.OdeHelperBackward;
+import ode.vertex.impl.helper.forward.OdeHelperForward;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * {@link OdeGraphHelper} which splits the mini batch into shards along dimension 0 and solves each shard concurrently.
+ * Each shard has its own {@link org.deeplearning4j.nn.graph.ComputationGraph} which shares parameters with all other
+ * shards as well as its own ODE solvers. This means that each shard will take its own sequence of steps so that easy
+ * shards do not have to wait for hard ones.
+ * <br><br>
+ * Inputs which do not have the same size in dimension 0 as the largest input (e.g. time) are given to all shards as is.
+ * Parameter gradients from all shards are summed into the real gradient view of the first shard. Things which are not
+ * really gradients (e.g. running mean and variance of batch normalization) are taken from the first shard only. Note
+ * also that layers which compute statistics over the mini batch will do so over each shard separately.
+ *
+ * @author Christian Skarby
+ */
+public class ShardedOdeGraphHelper extends OdeGraphHelper {
+
+    private final List<OdeGraphHelper> otherShards;
+    private final Executor executor;
+    private int nrofShardsLastBackward = 1;
+
+    /**
+     * Create a new ShardedOdeGraphHelper
+     * @param odeHelperForward Forward helper for the first shard
+     * @param odeHelperInference Forward helper to use for inference for the first shard
+     * @param odeHelperBackward Backward helper for the first shard
+     * @param graphInputOutputFactory Factory for graph input and output
+     * @param odeFunction Function for the first shard
+     * @param otherShards Helpers for all other shards. Must have their own forward and backward helpers and functions
+     * @param executor Executor to run other shards in. First shard is always run in the calling thread
+     */
+    public ShardedOdeGraphHelper(
+            OdeHelperForward odeHelperForward,
+            OdeHelperForward odeHelperInference,
+            OdeHelperBackward odeHelperBackward,
+            GraphInputOutputFactory graphInputOutputFactory,
+            CompGraphAsOdeFunction odeFunction,
+            List<OdeGraphHelper> otherShards,
+            Executor executor) {
+        this(odeHelperForward, odeHelperInference, odeHelperBackward, graphInputOutputFactory, odeFunction,
+                DynamicsRegularization.none(), otherShards, executor);
+    }
+
+    /**
+     * Create a new ShardedOdeGraphHelper
+     * @param odeHelperForward Forward helper for the first shard
+     * @param odeHelperInference Forward helper to use for inference for the first shard
+     * @param odeHelperBackward Backward helper for the first shard
+     * @param graphInputOutputFactory Factory for graph input and output
+     * @param odeFunction Function for the first shard
+     * @param regularization Regularization of the dynamics for the first shard
+     * @param otherShards Helpers for all other shards. Must have their own forward and backward helpers and functions
+     * @param executor Executor to run other shards in. First shard is always run in the calling thread
+     */
+    public ShardedOdeGraphHelper(
+            OdeHelperForward odeHelperForward,
+            OdeHelperForward odeHelperInference,
+            OdeHelperBackward odeHelperBackward,
+            GraphInputOutputFactory graphInputOutputFactory,
+            CompGraphAsOdeFunction odeFunction,
+            DynamicsRegularization regularization,
+            List<OdeGraphHelper> otherShards,
+            Executor executor) {
+        super(odeHelperForward, odeHelperInference, odeHelperBackward, graphInputOutputFactory, odeFunction, regularization);
+        this.otherShards = otherShards;
+        this.executor = executor;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        otherShards.forEach(OdeGraphHelper::clear);
+    }
+
+    @Override
+    public void setBackpropGradientsViewArray(INDArray backpropGradientsViewArray) {
+        super.setBackpropGradientsViewArray(backpropGradientsViewArray);
+        for (OdeGraphHelper shard : otherShards) {
+            shard.setBackpropGradientsViewArray(Nd4j.create(backpropGradientsViewArray.shape()));
+        }
+    }
+
+    @Override
+    public INDArray doForward(LayerWorkspaceMgr workspaceMgr, INDArray[] inputs, boolean training) {
+        final List<INDArray[]> shardInputs = split(inputs, nrofShards(inputs));
+        if (shardInputs.size() == 1) {
+            return super.doForward(workspaceMgr, inputs, training);
+        }
+
+        final List<INDArray> outputs = runShards(shardInputs.size(), shard -> shard == 0 ?
+                super.doForward(LayerWorkspaceMgr.noWorkspacesImmutable(), shardInputs.get(0), training) :
+                otherShards.get(shard - 1).doForward(LayerWorkspaceMgr.noWorkspacesImmutable(), shardInputs.get(shard), training));
+
+        return Nd4j.concat(0, outputs.toArray(new INDArray[0]));
+    }
+
+    @Override
+    public Pair<Gradient, INDArray[]> doBackward(OdeHelperBackward.MiscPar miscPars, INDArray lossGradient, INDArray[] lastInputs) {
+        final int nrofShards = nrofShards(lastInputs);
+        nrofShardsLastBackward = nrofShards;
+        if (nrofShards == 1) {
+            return super.doBackward(miscPars, lossGradient, lastInputs);
+        }
+
+        final List<INDArray[]> shardInputs = split(lastInputs, nrofShards);
+        final List<INDArray[]> shardLossGradients = split(new INDArray[]{lossGradient}, nrofShards);
+        final OdeHelperBackward.MiscPar shardMiscPars = new OdeHelperBackward.MiscPar(
+                miscPars.isUseTruncatedBackPropTroughTime(),
+                LayerWorkspaceMgr.noWorkspacesImmutable());
+
+        final long batchSize = batchSize(lastInputs);
+        final List<Pair<Gradient, INDArray[]>> results = runShards(nrofShards, shard -> shard == 0 ?
+                super.doBackward(shardMiscPars, shardLossGradients.get(0)[0], shardInputs.get(0), batchSize) :
+                otherShards.get(shard - 1).doBackward(shardMiscPars, shardLossGradients.get(shard)[0], shardInputs.get(shard), batchSize));
+
+        sumParameterGradients(nrofShards);
+        return new Pair<>(results.get(0).getFirst(), mergeInputGradients(lastInputs, results));
+    }
+
+    @Override
+    public double regularizationScore() {
+        return super.regularizationScore() + otherShards.stream()
+                .limit(nrofShardsLastBackward - 1)
+                .mapToDouble(OdeGraphHelper::regularizationScore)
+                .sum();
+    }
+
+    private void sumParameterGradients(int nrofShards) {
+        final INDArray1DView firstGrad = realGradients();
+        final INDArray sum = Nd4j.zeros(firstGrad.length());
+        final INDArray shardGrad = sum.dup();
+        firstGrad.assignTo(sum);
+        for (int shard = 1; shard < nrofShards; shard++) {
+            otherShards.get(shard - 1).realGradients().assignTo(shardGrad);
+            sum.addi(shardGrad);
+        }
+        firstGrad.assignFrom(sum);
+    }
+
+    private static INDArray[] mergeInputGradients(INDArray[] inputs, List<Pair<Gradient, INDArray[]>> results) {
+        final long batchSize = batchSize(inputs);
+        final INDArray[] merged = new INDArray[results.get(0).getSecond().length];
+        for (int i = 0; i < merged.length; i++) {
+            final INDArray[] shardGrads = new INDArray[results.size()];
+            for (int shard = 0; shard < shardGrads.length; shard++) {
+                shardGrads[shard] = results.get(shard).getSecond()[i];
+            }
+
+            if (inputs[i].size(0) == batchSize) {
+                merged[i] = Nd4j.concat(0, shardGrads);
+            } else {
+                merged[i] = shardGrads[0].dup();
+                for (int shard = 1; shard < shardGrads.length; shard++) {
+                    merged[i].addi(shardGrads[shard]);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private <T> List<T> runShards(int nrofShards, IntFunction<T> shardTask) {
+        final List<CompletableFuture<T>> tasks = new ArrayList<>();
+        for (int shard = 1; shard < nrofShards; shard++) {
+            final int current = shard;
+            tasks.add(CompletableFuture.supplyAsync(() -> shardTask.apply(current), executor));
+        }
+
+        final List<T> results = new ArrayList<>();
+        results.add(shardTask.apply(0));
+        try {
+            for (CompletableFuture<T> task : tasks) {
+                results.add(task.join());
+            }
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Shard failed!", e.getCause());
+        }
+        return results;
+    }
+
+    private int nrofShards(INDArray[] inputs) {
+        return (int) Math.min(otherShards.size() + 1, batchSize(inputs));
+    }
+
+    private static List<INDArray[]> split(INDArray[] inputs, int nrofShards) {
+        final long batchSize = batchSize(inputs);
+        final List<INDArray[]> shards = new ArrayList<>();
+        long start = 0;
+        for (int shard = 0; shard < nrofShards; shard++) {
+            final long end = start + (batchSize - start) / (nrofShards - shard);
+            final INDArray[] shardInputs = new INDArray[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                shardInputs[i] = inputs[i].size(0) == batchSize ? slice(inputs[i], start, end) : inputs[i];
+            }
+            shards.add(shardInputs);
+            start = end;
+        }
+        return shards;
+    }
+
+    private static INDArray slice(INDArray array, long start, long end) {
+        final INDArrayIndex[] indexes = new INDArrayIndex[array.rank()];
+        indexes[0] = NDArrayIndex.interval(start, end);
+        for (int dim = 1; dim < indexes.length; dim++) {
+            indexes[dim] = NDArrayIndex.all();
+        }
+        return array.get(indexes).dup();
+    }
+}
@@ -0,0 +1,241 @@
+package ode.vertex.impl.helper;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Arrays;
+
+/**
+ * Splits a sequence of time steps into segments for multiple shooting. All segments must have the same time steps
+ * relative to their start so that all segments can be solved as one mini batch where the initial states of all segments
+ * are stacked along the batch dimension.
+ * <br><br>
+ * Arrays with a time dimension are handled in "time first" shape, i.e. [nrofTimeSteps, batchSize, ...]. Use
+ * {@link #toTimeFirst(INDArray)} and {@link #fromTimeFirst(INDArray)} to convert between this shape and the shape of
+ * the output from an {@link ode.vertex.impl.OdeVertex}.
+ *
+ * @author Christian Skarby
+ */
+public class ShootingSegments {
+
+    private final INDArray time;
+    private final int nrofSegments;
+    private final int segmentLength;
+
+    public ShootingSegments(INDArray time, int nrofSegments) {
+        if (!time.isVector()) {
+            throw new IllegalArgumentException("time must be a vector! Was of shape: " + Arrays.toString(time.shape()) + "!");
+        }
+        if (nrofSegments < 2) {
+            throw new IllegalArgumentException("Must have at least 2 segments! Got: " + nrofSegments);
+        }
+        final long nrofSteps = time.length() - 1;
+        if (nrofSteps % nrofSegments != 0) {
+            throw new IllegalArgumentException("Number of time steps must be divisible by number of segments! Time steps: "
+                    + nrofSteps + ", segments: " + nrofSegments);
+        }
+
+        this.time = time;
+        this.nrofSegments = nrofSegments;
+        this.segmentLength = (int) (nrofSteps / nrofSegments);
+        assertSameRelativeTime();
+    }
+
+    private void assertSameRelativeTime() {
+        for (int segment = 1; segment < nrofSegments; segment++) {
+            final double segmentStart = time.getDouble(segment * segmentLength);
+            for (int step = 1; step <= segmentLength; step++) {
+                final double expected = time.getDouble(step) - time.getDouble(0);
+                final double actual = time.getDouble(segment * segmentLength + step) - segmentStart;
+                if (Math.abs(expected - actual) > 1e-5 * Math.max(1, Math.abs(expected))) {
+                    throw new IllegalArgumentException("All segments must have the same time steps relative to their " +
+                            "start! Mismatch in segment " + segment + ": " + time);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of segments
+     * @return the number of segments
+     */
+    public int nrofSegments() {
+        return nrofSegments;
+    }
+
+    /**
+     * Returns the number of time steps in each segment
+     * @return the number of time steps in each segment
+     */
+    public int segmentLength() {
+        return segmentLength;
+    }
+
+    /**
+     * Returns the time steps of the first segment. As all segments have the same relative time steps this can be used
+     * to solve all segments when the ODE does not depend on time.
+     * @return the time steps of the first segment, including the end time
+     */
+    public INDArray segmentTime() {
+        return timeSteps(0, segmentLength);
+    }
+
+    /**
+     * Returns start and end time of the last time step of the first segment.
+     * @return start and end time of the last time step
+     */
+    public INDArray lastStepTime() {
+        return timeSteps(segmentLength - 1, segmentLength);
+    }
+
+    private INDArray timeSteps(int first, int last) {
+        final double[] steps = new double[last - first + 1];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = time.getDouble(first + i);
+        }
+        return Nd4j.create(steps);
+    }
+
+    /**
+     * Stack the initial state and the initial states of all other segments along the batch dimension
+     * @param y0 Initial state of first segment. Shape [batchSize, ...]
+     * @param shootingStates Initial states of the other segments in time first shape, i.e. [nrofSegments-1, batchSize, ...]
+     * @return Initial states of all segments. Shape [nrofSegments * batchSize, ...]
+     */
+    public INDArray stack(INDArray y0, INDArray shootingStates) {
+        return Nd4j.concat(0, y0, mergeFirstDims(shootingStates));
+    }
+
+    /**
+     * Inverse of {@link #stack(INDArray, INDArray)}
+     * @param stacked Array for all segments. Shape [nrofSegments * batchSize, ...]
+     * @return Pair of the array for the first segment (shape [batchSize, ...]) and the array for the other segments in
+     * time first shape (i.e. [nrofSegments-1, batchSize, ...])
+     */
+    public Pair<INDArray, INDArray> unstack(INDArray stacked) {
+        final long batchSize = stacked.size(0) / nrofSegments;
+        return new Pair<>(
+                stacked.get(indexer(stacked, NDArrayIndex.interval(0, batchSize))),
+                splitFirstDim(stacked.get(indexer(stacked, NDArrayIndex.interval(batchSize, stacked.size(0)))), nrofSegments - 1));
+    }
+
+    /**
+     * Split the solution of all segments into the sequence of time steps. The end of each segment except the last one
+     * is dropped as the start of the next segment is used instead.
+     * @param segments Solution of all segments in time first shape, i.e. [segmentLength + 1, nrofSegments * batchSize, ...]
+     * @return Solution for all time steps in time first shape, i.e. [nrofTimeSteps, batchSize, ...]
+     */
+    public INDArray merge(INDArray segments) {
+        final long batchSize = segments.size(1) / nrofSegments;
+        final INDArray steps = segments.get(indexer(segments, NDArrayIndex.interval(0, segmentLength)));
+        final INDArray perSegment = splitSecondDim(steps, nrofSegments);
+        final INDArray last = segments.get(indexer(segments, NDArrayIndex.interval(segmentLength, segmentLength + 1)))
+                .get(indexer(segments, NDArrayIndex.all(), NDArrayIndex.interval((nrofSegments - 1) * batchSize, nrofSegments * batchSize)));
+        return Nd4j.concat(0, mergeFirstDims(swapFirstDims(perSegment)), last);
+    }
+
+    /**
+     * Inverse of {@link #merge(INDArray)} except for the end of each segment which is not part of the input.
+     * @param timeSteps Array for all time steps in time first shape, i.e. [nrofTimeSteps, batchSize, ...]
+     * @return Array for all but the last time step of each segment in time first shape, i.e.
+     * [segmentLength, nrofSegments * batchSize, ...]
+     */
+    public INDArray split(INDArray timeSteps) {
+        final INDArray allButLast = timeSteps.get(indexer(timeSteps, NDArrayIndex.interval(0, timeSteps.size(0) - 1)));
+        return mergeSecondDims(swapFirstDims(splitFirstDim(allButLast, nrofSegments)));
+    }
+
+    /**
+     * Returns the last time step in time first shape
+     * @param timeSteps Array for all time steps in time first shape, i.e. [nrofTimeSteps, batchSize, ...]
+     * @return The last time step. Shape [batchSize, ...]
+     */
+    public static INDArray last(INDArray timeSteps) {
+        return timeSteps.get(indexer(timeSteps, NDArrayIndex.point(timeSteps.size(0) - 1)));
+    }
+
+    /**
+     * Convert an array with a time dimension to time first shape.
+     * @param array Array in the same shape as the output of an {@link ode.vertex.impl.OdeVertex}
+     * @return array in time first shape
+     */
+    public static INDArray toTimeFirst(INDArray array) {
+        switch (array.rank()) {
+            case 3: // Assume recurrent output
+                return array.permute(2, 0, 1);
+            case 5: // Assume conv 3D output
+                return array.permute(1, 0, 2, 3, 4);
+            // Should not happen as conf throws exception for other types
+            default:
+                throw new UnsupportedOperationException("Rank not supported: " + array.rank());
+        }
+    }
+
+    /**
+     * Convert an array in time first shape to the shape of the output of an {@link ode.vertex.impl.OdeVertex}.
+     * @param array Array in time first shape
+     * @return array in the same shape as the output of an {@link ode.vertex.impl.OdeVertex}
+     */
+    public static INDArray fromTimeFirst(INDArray array) {
+        switch (array.rank()) {
+            case 3: // Assume recurrent output
+                return array.permute(1, 2, 0);
+            case 5: // Assume conv 3D output
+                return array.permute(1, 0, 2, 3, 4);
+            // Should not happen as conf throws exception for other types
+            default:
+                throw new UnsupportedOperationException("Rank not supported: " + array.rank());
+        }
+    }
+
+    private static INDArrayIndex[] indexer(INDArray array, INDArrayIndex... first) {
+        final INDArrayIndex[] indexer = new INDArrayIndex[array.rank()];
+        Arrays.fill(indexer, NDArrayIndex.all());
+        System.arraycopy(first, 0, indexer, 0, first.length);
+        return indexer;
+    }
+
+    private static INDArray swapFirstDims(INDArray array) {
+        final int[] order = new int[array.rank()];
+        for (int dim = 0; dim < order.length; dim++) {
+            order[dim] = dim;
+        }
+        order[0] = 1;
+        order[1] = 0;
+        return array.permute(order);
+    }
+
+    private static INDArray mergeFirstDims(INDArray array) {
+        final long[] shape = Arrays.copyOfRange(array.shape(), 1, array.rank());
+        shape[0] *= array.size(0);
+        return array.dup('c').reshape('c', shape);
+    }
+
+    private static INDArray mergeSecondDims(INDArray array) {
+        final long[] shape = new long[array.rank() - 1];
+        shape[0] = array.size(0);
+        System.arraycopy(array.shape(), 2, shape, 1, shape.length - 1);
+        shape[1] *= array.size(1);
+        return array.dup('c').reshape('c', shape);
+    }
+
+    private static INDArray splitFirstDim(INDArray array, long size) {
+        final long[] shape = new long[array.rank() + 1];
+        shape[0] = size;
+        shape[1] = array.size(0) / size;
+        System.arraycopy(array.shape(), 1, shape, 2, array.rank() - 1);
+        return array.dup('c').reshape('c', shape);
+    }
+
+    private static INDArray splitSecondDim(INDArray array, long size) {
+        final long[] shape = new long[array.rank() + 1];
+        shape[0] = array.size(0);
+        shape[1] = size;
+        shape[2] = array.size(1) / size;
+        System.arraycopy(array.shape(), 2, shape, 3, array.rank() - 2);
+        return array.dup('c').reshape('c', shape);
+    }
+}
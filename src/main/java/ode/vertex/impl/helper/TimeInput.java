@@ -32,6 +32,22 @@ public class TimeInput implements GraphInputOutput {
         return withTime;
     }
 
+    @Override
+    public INDArray[] getStackedInputsFrom(INDArray[] y, INDArray[] t) {
+        // Time is one input for the whole mini batch so it can not differ between states
+        for (INDArray ti : t) {
+            if (ti.getDouble(0) != t[0].getDouble(0)) {
+                throw new IllegalArgumentException("All states must have the same time when time is input! Got "
+                        + ti + " and " + t[0] + "!");
+            }
+        }
+        final INDArray[] inputs = source.getStackedInputsFrom(y, t);
+        final INDArray[] withTime = new INDArray[inputs.length + 1];
+        System.arraycopy(inputs, 0, withTime, 0, inputs.length);
+        withTime[inputs.length] = t[0].reshape(1,1);
+        return withTime;
+    }
+
     @Override
     public INDArray y0() {
         return source.y0();
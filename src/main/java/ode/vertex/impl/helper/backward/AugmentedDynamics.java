@@ -8,6 +8,10 @@ import java.util.List;
 
 /**
  * Augmented Dynamics used for adjoint back propagation method from https://arxiv.org/pdf/1806.07366.pdf
+ * <br><br>
+ * All parts of the augmented state, including the parameter adjoint, are views of one flat array and are therefore
+ * stored and accumulated in the current data type ({@link org.nd4j.linalg.factory.Nd4j#dataType()}). There is no
+ * mixed precision mode where the parameter adjoint is accumulated in double while activations use float.
  *
  * @author Christian Skarby
  */
@@ -18,23 +22,42 @@ public class AugmentedDynamics {
     private final INDArray zAdjoint;
     private final INDArray paramAdjoint;
     private final INDArray tAdjoint;
+    private final INDArray regularization;
 
 
     public AugmentedDynamics(INDArray zAug, long[] zShape, long[] paramShape, long[] tShape) {
+        this(zAug, zShape, paramShape, tShape, false);
+    }
+
+    /**
+     * Create a new AugmentedDynamics
+     * @param zAug Flat augmented state
+     * @param zShape Shape of the state z
+     * @param paramShape Shape of the parameter adjoint
+     * @param tShape Shape of the time adjoint
+     * @param withRegularization If true, the last element of zAug is the integral of the {@link DynamicsRegularization}
+     */
+    public AugmentedDynamics(INDArray zAug, long[] zShape, long[] paramShape, long[] tShape, boolean withRegularization) {
         this(
                 zAug,
                 zAug.get(NDArrayIndex.interval(0, length(zShape))).reshape(zShape),
                 zAug.get(NDArrayIndex.interval(length(zShape), 2 * length(zShape))).reshape(zShape),
                 zAug.get(NDArrayIndex.interval(2 * length(zShape), 2 * length(zShape) + length(paramShape))).reshape(paramShape),
-                zAug.get(NDArrayIndex.interval(2 * length(zShape) + length(paramShape), 2 * length(zShape) + length(paramShape) + length(tShape))).reshape(tShape));
+                zAug.get(NDArrayIndex.interval(2 * length(zShape) + length(paramShape), 2 * length(zShape) + length(paramShape) + length(tShape))).reshape(tShape),
+                withRegularization ? zAug.get(NDArrayIndex.interval(zAug.length() - 1, zAug.length())) : null);
     }
 
     AugmentedDynamics(INDArray augStateFlat, INDArray z, INDArray zAdjoint, INDArray paramAdjoint, INDArray tAdjoint) {
+        this(augStateFlat, z, zAdjoint, paramAdjoint, tAdjoint, null);
+    }
+
+    AugmentedDynamics(INDArray augStateFlat, INDArray z, INDArray zAdjoint, INDArray paramAdjoint, INDArray tAdjoint, INDArray regularization) {
         this.augStateFlat = augStateFlat;
         this.z = z;
         this.zAdjoint = zAdjoint;
         this.paramAdjoint = paramAdjoint;
         this.tAdjoint = tAdjoint;
+        this.regularization = regularization;
     }
 
     private static long length(long[] shape) {
@@ -79,4 +102,12 @@ public class AugmentedDynamics {
     public INDArray tAdjoint() {
         return tAdjoint;
     }
+
+    /**
+     * Returns the integral of the {@link DynamicsRegularization}
+     * @return the regularization or null if not part of the augmented state
+     */
+    public INDArray regularization() {
+        return regularization;
+    }
 }
@@ -10,6 +10,7 @@ import org.deeplearning4j.nn.graph.vertex.VertexIndices;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.linalg.workspace.WorkspacesCloseable;
 
@@ -31,6 +32,8 @@ import java.util.TreeMap;
  * -a(t) * df / dt = not used (as of now), set to 0
  * -a(t) df/dtheta = -dL / dtheta = Gradient from a backward pass through the layers of the ODE vertex (i.e. the layers of graph) wrt -epsilon.
  * </pre>
+ * If a {@link DynamicsRegularization} is used, its gradient w.r.t f is added to -a(t) before the backward pass (and
+ * an extra backward pass is done for the jacobian term) as it is an integral over the trajectory in the loss.
  *
  * @author Christian Skarby
  */
@@ -40,6 +43,8 @@ public class BackpropagateAdjoint implements FirstOrderEquation {
     private final GraphBackwardsOutput graphBackwardsOutput;
     private final FirstOrderEquation forwardPass;
     private final GraphInfo graphInfo;
+    private final DynamicsRegularization regularization;
+    private INDArray noise;
 
     @AllArgsConstructor
     public static class GraphInfo {
@@ -47,16 +52,112 @@ public class BackpropagateAdjoint implements FirstOrderEquation {
         private final INDArray1DView realGradients;
         private final LayerWorkspaceMgr workspaceMgr;
         private final boolean truncatedBPTT;
+
+        /**
+         * Set all gradients of the graph to zero
+         */
+        void clearGradients() {
+            graph.getFlattenedGradients().assign(0);
+        }
+
+        INDArray1DView realGradients() {
+            return realGradients;
+        }
+
+        LayerWorkspaceMgr workspaceMgr() {
+            return workspaceMgr;
+        }
+
+        /**
+         * Back propagate the given epsilon through the graph. Parameter gradients are added to the gradient view of
+         * the graph.
+         * @param epsilon Epsilon w.r.t the output of the graph
+         * @return Epsilons w.r.t the inputs of the graph
+         */
+        List<INDArray> backPropagate(INDArray epsilon) {
+
+            //Do backprop, in reverse topological order
+            final int[] topologicalOrder = graph.topologicalSortOrder();
+            final GraphVertex[] vertices = graph.getVertices();
+
+            vertices[topologicalOrder[topologicalOrder.length-1]].setEpsilon(epsilon);
+
+            // Normal list would be fine, except the order in which the outputs are encountered in the graph is not
+            // guaranteed to be sequential, and list.add(n, y) fails if not all elements 0,...,n-1 are already in the list
+            final Map<Integer, INDArray> outputEpsilons = new TreeMap<>();
+
+            boolean[] setVertexEpsilon = new boolean[topologicalOrder.length]; //If true: already set epsilon for this vertex; later epsilons should be *added* to the existing one, not set
+            for (int i = topologicalOrder.length - 1; i >= 0; i--) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+
+                if (current.isInputVertex()) {
+                    continue;
+                }
+
+                Pair<Gradient, INDArray[]> pair;
+                INDArray[] epsilons;
+                pair = current.doBackward(truncatedBPTT, workspaceMgr);
+                epsilons = pair.getSecond();
+
+                for (VertexIndices vertexIndices : current.getInputVertices()) {
+                    final String inputName = vertices[vertexIndices.getVertexIndex()].getVertexName();
+                    if (graph.getConfiguration().getNetworkInputs().contains(
+                            inputName)) {
+                        outputEpsilons.put(graph.getConfiguration().getNetworkInputs().indexOf(inputName),
+                                epsilons[vertexIndices.getVertexEdgeNumber()]);
+                    }
+                }
+
+                //Inputs to the current GraphVertex:
+                VertexIndices[] inputVertices = current.getInputVertices();
+
+                //Set epsilons for the vertices that provide inputs to this vertex:
+                if (inputVertices != null) {
+                    int j = 0;
+                    for (VertexIndices v : inputVertices) {
+                        GraphVertex gv = graph.getVertices()[v.getVertexIndex()];
+                        if (setVertexEpsilon[gv.getVertexIndex()]) {
+                            //This vertex: must output to multiple vertices... we want to add the epsilons here
+                            INDArray currentEps = gv.getEpsilon();
+                            gv.setEpsilon(currentEps.addi(epsilons[j++]));  //TODO is this always safe?
+                        } else {
+                            gv.setEpsilon(epsilons[j++]);
+                        }
+                        setVertexEpsilon[gv.getVertexIndex()] = true;
+                    }
+                }
+            }
+
+            return new ArrayList<>(outputEpsilons.values());
+        }
     }
 
     public BackpropagateAdjoint(
             AugmentedDynamics augmentedDynamics,
             GraphBackwardsOutput graphBackwardsOutput, FirstOrderEquation forwardPass,
             GraphInfo graphInfo) {
+        this(augmentedDynamics, graphBackwardsOutput, forwardPass, graphInfo, DynamicsRegularization.none());
+    }
+
+    public BackpropagateAdjoint(
+            AugmentedDynamics augmentedDynamics,
+            GraphBackwardsOutput graphBackwardsOutput, FirstOrderEquation forwardPass,
+            GraphInfo graphInfo,
+            DynamicsRegularization regularization) {
         this.augmentedDynamics = augmentedDynamics;
         this.graphBackwardsOutput = graphBackwardsOutput;
         this.forwardPass = forwardPass;
         this.graphInfo = graphInfo;
+        this.regularization = regularization;
+    }
+
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated in each evaluation when not
+     * regularized: a copy of the state. See {@link DynamicsRegularization#nrofStateCopies()} for the regularized case.
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies() {
+        return 1;
     }
 
     @Override
@@ -65,17 +166,25 @@ public class BackpropagateAdjoint implements FirstOrderEquation {
 
         try (WorkspacesCloseable ws = graphInfo.workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS, ArrayType.ACTIVATION_GRAD)) {
 
+            final INDArray z = augmentedDynamics.z().dup();
+
             // Note: Will also update z
-            forwardPass.calculateDerivative(augmentedDynamics.z().dup(), t, augmentedDynamics.z());
+            forwardPass.calculateDerivative(z, t, augmentedDynamics.z());
 
             // Seems like some layers let previous gradients influence their new gradients. I haven't really figured out
             // why but it seems to have a detrimental effect on the accuracy and general stability
-            graphInfo.graph.getFlattenedGradients().assign(0);
-
-            final List<INDArray> ret = backPropagate(augmentedDynamics.zAdjoint().negi());
+            graphInfo.clearGradients();
+
+            final INDArray epsilon = augmentedDynamics.zAdjoint().negi();
+            final List<INDArray> ret;
+            if (regularization.isEnabled()) {
+                ret = backPropagateRegularized(z, t, epsilon);
+            } else {
+                ret = graphInfo.backPropagate(epsilon);
+                // Note: z updated above
+                graphInfo.realGradients.assignTo(augmentedDynamics.paramAdjoint());
+            }
 
-            // Note: z updated above
-            graphInfo.realGradients.assignTo(augmentedDynamics.paramAdjoint());
             graphBackwardsOutput.update(ret, augmentedDynamics);
 
             augmentedDynamics.transferTo(fzAug);
@@ -84,60 +193,53 @@ public class BackpropagateAdjoint implements FirstOrderEquation {
         }
     }
 
-    private List<INDArray> backPropagate(INDArray epsilon) {
+    private List<INDArray> backPropagateRegularized(INDArray z, INDArray t, INDArray epsilon) {
+        final INDArray fz = augmentedDynamics.z();
+        double cost = regularization.kinetic(fz, epsilon);
 
-        //Do backprop, in reverse topological order
-        final int[] topologicalOrder = graphInfo.graph.topologicalSortOrder();
-        final GraphVertex[] vertices = graphInfo.graph.getVertices();
-
-        vertices[topologicalOrder[topologicalOrder.length-1]].setEpsilon(epsilon);
+        if (!regularization.hasJacobianTerm()) {
+            final List<INDArray> ret = graphInfo.backPropagate(epsilon);
+            graphInfo.realGradients.assignTo(augmentedDynamics.paramAdjoint());
+            setRegularization(cost);
+            return ret;
+        }
 
-        // Normal list would be fine, except the order in which the outputs are encountered in the graph is not
-        // guaranteed to be sequential, and list.add(n, y) fails if not all elements 0,...,n-1 are already in the list
-        final Map<Integer, INDArray> outputEpsilons = new TreeMap<>();
+        if (noise == null) {
+            noise = regularization.createNoise(z.shape());
+        }
 
-        boolean[] setVertexEpsilon = new boolean[topologicalOrder.length]; //If true: already set epsilon for this vertex; later epsilons should be *added* to the existing one, not set
-        for (int i = topologicalOrder.length - 1; i >= 0; i--) {
-            GraphVertex current = vertices[topologicalOrder[i]];
+        // Finite difference estimate of df/dz * noise
+        final double h = regularization.finiteDifferenceStep();
+        final INDArray jvp = forwardPass.calculateDerivative(z.add(noise.mul(h)), t, Nd4j.createUninitialized(fz.shape()));
+        jvp.subi(fz).divi(h);
+        cost += regularization.jacobian(jvp);
 
-            if (current.isInputVertex()) {
-                continue;
-            }
+        // Activations are currently from the perturbed state
+        final List<INDArray> perturbedRet = new ArrayList<>();
+        for (INDArray eps : graphInfo.backPropagate(jvp.neg())) {
+            perturbedRet.add(eps.dup());
+        }
+        final INDArray perturbedGrads = Nd4j.zeros(graphInfo.realGradients.length());
+        graphInfo.realGradients.assignTo(perturbedGrads);
+
+        // Restore activations of the unperturbed state
+        forwardPass.calculateDerivative(z, t, Nd4j.createUninitialized(fz.shape()));
+        graphInfo.clearGradients();
+        final List<INDArray> ret = graphInfo.backPropagate(epsilon.addi(jvp));
+        for (int i = 0; i < ret.size(); i++) {
+            ret.get(i).addi(perturbedRet.get(i));
+        }
+        graphInfo.realGradients.assignTo(augmentedDynamics.paramAdjoint());
+        augmentedDynamics.paramAdjoint().addi(perturbedGrads);
 
-            Pair<Gradient, INDArray[]> pair;
-            INDArray[] epsilons;
-            pair = current.doBackward(graphInfo.truncatedBPTT, graphInfo.workspaceMgr);
-            epsilons = pair.getSecond();
-
-            for (VertexIndices vertexIndices : current.getInputVertices()) {
-                final String inputName = vertices[vertexIndices.getVertexIndex()].getVertexName();
-                if (graphInfo.graph.getConfiguration().getNetworkInputs().contains(
-                        inputName)) {
-                    outputEpsilons.put(graphInfo.graph.getConfiguration().getNetworkInputs().indexOf(inputName),
-                            epsilons[vertexIndices.getVertexEdgeNumber()]);
-                }
-            }
+        setRegularization(cost);
+        return ret;
+    }
 
-            //Inputs to the current GraphVertex:
-            VertexIndices[] inputVertices = current.getInputVertices();
-
-            //Set epsilons for the vertices that provide inputs to this vertex:
-            if (inputVertices != null) {
-                int j = 0;
-                for (VertexIndices v : inputVertices) {
-                    GraphVertex gv = graphInfo.graph.getVertices()[v.getVertexIndex()];
-                    if (setVertexEpsilon[gv.getVertexIndex()]) {
-                        //This vertex: must output to multiple vertices... we want to add the epsilons here
-                        INDArray currentEps = gv.getEpsilon();
-                        gv.setEpsilon(currentEps.addi(epsilons[j++]));  //TODO is this always safe?
-                    } else {
-                        gv.setEpsilon(epsilons[j++]);
-                    }
-                    setVertexEpsilon[gv.getVertexIndex()] = true;
-                }
-            }
+    private void setRegularization(double cost) {
+        // Integrated backwards in time
+        if (augmentedDynamics.regularization() != null) {
+            augmentedDynamics.regularization().assign(-cost);
         }
-
-        return new ArrayList<>(outputEpsilons.values());
     }
 }
@@ -0,0 +1,123 @@
+package ode.vertex.impl.helper.backward;
+
+import ode.solve.api.FirstOrderEquation;
+import ode.vertex.impl.helper.forward.LogDensityDynamics;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.workspace.WorkspacesCloseable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adjoint of {@link LogDensityDynamics}. The state z of the {@link AugmentedDynamics} is the concatenation of z(t) and
+ * log p(z(t)) along dimension 1 and its adjoint is the concatenation of a_z(t) and a_logp(t) (which is constant).
+ * <br><br>
+ * With g(z) = -e^T * (f(z + h*e) - f(z)) / h being the estimate of -tr(df/dz) the adjoint dynamics are
+ * <pre>
+ * da_z/dt = -a_z * df/dz(z) - a_logp * dg/dz = -(a_z + a_logp * e / h) * df/dz(z) + a_logp * e / h * df/dz(z + h*e)
+ * </pre>
+ * and similar for the parameters. This costs one extra forward and backward pass per evaluation compared to
+ * {@link BackpropagateAdjoint}.
+ *
+ * @author Christian Skarby
+ */
+public class BackpropagateLogDensityAdjoint implements FirstOrderEquation {
+
+    private final AugmentedDynamics augmentedDynamics;
+    private final GraphBackwardsOutput graphBackwardsOutput;
+    private final FirstOrderEquation forwardPass;
+    private final BackpropagateAdjoint.GraphInfo graphInfo;
+    private final LogDensityDynamics logDensityDynamics;
+    private final INDArray noise;
+    private final double finiteDifferenceStep;
+
+    public BackpropagateLogDensityAdjoint(
+            AugmentedDynamics augmentedDynamics,
+            GraphBackwardsOutput graphBackwardsOutput,
+            FirstOrderEquation forwardPass,
+            BackpropagateAdjoint.GraphInfo graphInfo,
+            INDArray noise,
+            double finiteDifferenceStep) {
+        this.augmentedDynamics = augmentedDynamics;
+        this.graphBackwardsOutput = graphBackwardsOutput;
+        this.forwardPass = forwardPass;
+        this.graphInfo = graphInfo;
+        this.logDensityDynamics = new LogDensityDynamics(forwardPass, noise, finiteDifferenceStep);
+        this.noise = noise;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+    }
+
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated in each evaluation: copies of
+     * the state and its adjoint, the scaled noise and its copy, the perturbed state and its scaling, the derivatives of
+     * both states, a copy of the epsilons of the perturbed state and the derivative of the adjoint.
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies() {
+        return 10;
+    }
+
+    @Override
+    public INDArray calculateDerivative(INDArray zAug, INDArray t, INDArray fzAug) {
+        augmentedDynamics.updateFrom(zAug);
+
+        try (WorkspacesCloseable ws = graphInfo.workspaceMgr().notifyScopeEntered(ArrayType.ACTIVATIONS, ArrayType.ACTIVATION_GRAD)) {
+
+            final long size = augmentedDynamics.z().size(1) - 1;
+            final INDArrayIndex[] zInds = {NDArrayIndex.all(), NDArrayIndex.interval(0, size)};
+            final INDArrayIndex[] logpInds = {NDArrayIndex.all(), NDArrayIndex.point(size)};
+
+            final INDArray z = augmentedDynamics.z().get(zInds).dup();
+            final INDArray zAdjoint = augmentedDynamics.zAdjoint().get(zInds).dup();
+            final INDArray logpAdjoint = augmentedDynamics.zAdjoint().get(logpInds).dup().reshape(z.size(0), 1);
+
+            // a_logp * e / h
+            final INDArray scaledNoise = noise.mulColumnVector(logpAdjoint).divi(finiteDifferenceStep);
+
+            // Perturbed state first as epsilons from backPropagate might be invalidated by subsequent forward passes
+            final INDArray fzPerturbed = forwardPass.calculateDerivative(
+                    z.add(noise.mul(finiteDifferenceStep)),
+                    t,
+                    Nd4j.createUninitialized(z.shape()));
+            graphInfo.clearGradients();
+            final List<INDArray> perturbedRet = new ArrayList<>();
+            for (INDArray eps : graphInfo.backPropagate(scaledNoise.dup())) {
+                perturbedRet.add(eps.dup());
+            }
+            final INDArray perturbedGrads = Nd4j.zeros(graphInfo.realGradients().length());
+            graphInfo.realGradients().assignTo(perturbedGrads);
+
+            final INDArray fz = forwardPass.calculateDerivative(z, t, Nd4j.createUninitialized(z.shape()));
+            graphInfo.clearGradients();
+            final List<INDArray> ret = graphInfo.backPropagate(zAdjoint.addi(scaledNoise).negi());
+            for (int i = 0; i < ret.size(); i++) {
+                ret.get(i).addi(perturbedRet.get(i));
+            }
+
+            graphInfo.realGradients().assignTo(augmentedDynamics.paramAdjoint());
+            augmentedDynamics.paramAdjoint().addi(perturbedGrads);
+
+            // Let graphBackwardsOutput assign the adjoint (and time adjoint if applicable) of z only
+            final INDArray zAdjointDot = Nd4j.create(z.shape());
+            graphBackwardsOutput.update(ret, new AugmentedDynamics(
+                    null,
+                    null,
+                    zAdjointDot,
+                    augmentedDynamics.paramAdjoint(),
+                    augmentedDynamics.tAdjoint()));
+            augmentedDynamics.zAdjoint().get(zInds).assign(zAdjointDot);
+            augmentedDynamics.zAdjoint().get(logpInds).assign(0);
+
+            augmentedDynamics.z().get(logpInds).assign(logDensityDynamics.negativeTrace(fz, fzPerturbed));
+            augmentedDynamics.z().get(zInds).assign(fz);
+
+            augmentedDynamics.transferTo(fzAug);
+
+            return fzAug;
+        }
+    }
+}
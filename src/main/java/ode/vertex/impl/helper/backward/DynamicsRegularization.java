@@ -0,0 +1,155 @@
+package ode.vertex.impl.helper.backward;
+
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Regularization of the learned dynamics f(z(t), t) as described in https://arxiv.org/abs/2002.02798 (RNODE). Adds
+ * the integral of
+ * <pre>
+ * kineticWeight * ||f(z(t), t)||^2 + jacobianWeight * ||df/dz(t) * e||^2
+ * </pre>
+ * to the loss where e is gaussian noise which is sampled once per solve (Hutchinsons trace estimator of the squared
+ * Frobenius norm of the jacobian). The regularization is integrated alongside the adjoint state in
+ * {@link BackpropagateAdjoint} which also adds its gradient to the adjoint dynamics.
+ * <br><br>
+ * As dl4j does not do forward mode differentiation, the jacobian-vector product is estimated through finite differences
+ * which costs one extra forward pass and one extra forward and backward pass per function evaluation. The gradient of
+ * the kinetic term is exact while the gradient of the jacobian term is the gradient of the finite difference estimate
+ * and thus only approximates the gradient of the jacobian norm with an error of order finiteDifferenceStep.
+ * <br><br>
+ * The regularization is not part of the score of the model, see {@link util.listen.training.AddOdeRegularizationScore}.
+ * <br><br>
+ * The regularization is divided by the mini batch size so that the weights do not depend on it. Instances keep the
+ * score of the last backward pass and shall therefore not be shared between threads.
+ *
+ * @author Christian Skarby
+ */
+public class DynamicsRegularization {
+
+    private final double kineticWeight;
+    private final double jacobianWeight;
+    private final double finiteDifferenceStep;
+
+    private long miniBatchSize = 1;
+    private double score = 0;
+
+    /**
+     * Return a regularization which does nothing
+     * @return a new {@link DynamicsRegularization}
+     */
+    public static DynamicsRegularization none() {
+        return new DynamicsRegularization(0, 0, 1e-3);
+    }
+
+    public DynamicsRegularization(double kineticWeight, double jacobianWeight, double finiteDifferenceStep) {
+        this.kineticWeight = kineticWeight;
+        this.jacobianWeight = jacobianWeight;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+    }
+
+    /**
+     * Returns true if the regularization has any effect
+     * @return true if any weight is non-zero
+     */
+    public boolean isEnabled() {
+        return kineticWeight != 0 || jacobianWeight != 0;
+    }
+
+    boolean hasJacobianTerm() {
+        return jacobianWeight != 0;
+    }
+
+    /**
+     * Returns the number of arrays with the same shape as the state which {@link BackpropagateAdjoint} allocates in
+     * each evaluation due to the regularization. The jacobian term needs the noise, the perturbed state and its
+     * scaling, the jacobian-vector product and its negation, a copy of the epsilons of the perturbed state and the
+     * derivative of the unperturbed state.
+     * @return the number of state sized arrays
+     */
+    public long nrofStateCopies() {
+        return hasJacobianTerm() ? 7 : 0;
+    }
+
+    /**
+     * Start a new backward pass. Resets the score
+     * @param miniBatchSize Size of the whole mini batch
+     */
+    public void begin(long miniBatchSize) {
+        this.miniBatchSize = Math.max(1, miniBatchSize);
+        this.score = 0;
+    }
+
+    /**
+     * Returns the accumulated regularization since last call to {@link #begin(long)}
+     * @return the regularization score
+     */
+    public double getScore() {
+        return score;
+    }
+
+    void addScore(double score) {
+        this.score += score;
+    }
+
+    INDArray createNoise(long[] shape) {
+        // Noise is used for the whole solve so it must not be in any workspace
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            return Nd4j.randn(shape);
+        }
+    }
+
+    double finiteDifferenceStep() {
+        return finiteDifferenceStep;
+    }
+
+    /**
+     * Returns the kinetic energy cost and subtracts its gradient w.r.t f from the given epsilon
+     * @param fz Output of f(z(t), t)
+     * @param epsilon Epsilon to back propagate through f
+     * @return The kinetic energy cost
+     */
+    double kinetic(INDArray fz, INDArray epsilon) {
+        if (kineticWeight == 0) {
+            return 0;
+        }
+        final double weight = kineticWeight / miniBatchSize;
+        epsilon.subi(fz.mul(2 * weight));
+        return weight * squaredNorm(fz);
+    }
+
+    /**
+     * Returns the jacobian cost given a finite difference estimate of the jacobian-vector product and replaces it with
+     * its gradient w.r.t the finite difference (i.e. f(z + h*e) - f(z)).
+     * @param jvp Estimate of df/dz * e. Will be changed.
+     * @return The jacobian cost
+     */
+    double jacobian(INDArray jvp) {
+        final double weight = jacobianWeight / miniBatchSize;
+        final double cost = weight * squaredNorm(jvp);
+        jvp.muli(2 * weight / finiteDifferenceStep);
+        return cost;
+    }
+
+    /**
+     * Adds a weighted squared norm of the given difference to the score and replaces the difference with its gradient.
+     * Used for penalties which are not integrated, e.g. the continuity penalty of multiple shooting. Penalty is
+     * divided by the mini batch size in the same way as the regularization of the dynamics.
+     * @param weight Weight of the penalty
+     * @param diff Difference to penalize. Will be changed.
+     * @return The cost
+     */
+    double squaredPenalty(double weight, INDArray diff) {
+        final double scaledWeight = weight / miniBatchSize;
+        final double cost = scaledWeight * squaredNorm(diff);
+        diff.muli(2 * scaledWeight);
+        addScore(cost);
+        return cost;
+    }
+
+    private static double squaredNorm(INDArray array) {
+        final double norm = array.norm2Number().doubleValue();
+        return norm * norm;
+    }
+}
@@ -0,0 +1,145 @@
+package ode.vertex.impl.helper.backward;
+
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.FirstOrderSolver;
+import ode.vertex.impl.gradview.INDArray1DView;
+import ode.vertex.impl.helper.NDArrayIndexAccumulator;
+import ode.vertex.impl.helper.backward.timegrad.NoTimeGrad;
+import ode.vertex.impl.helper.backward.timegrad.TimeGrad;
+import ode.vertex.impl.helper.forward.ForwardPass;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * {@link OdeHelperBackward} for continuous normalizing flows using the adjoint method. Counterpart to
+ * {@link ode.vertex.impl.helper.forward.LogDensityStep}, i.e. expects the last output and loss gradient to be z(t1)
+ * concatenated with the change in log density along dimension 1.
+ * <br><br>
+ * Noise for the trace estimator is taken from the forward pass when given a source of it, typically
+ * {@link ode.vertex.impl.helper.forward.LogDensityStep#lastNoise()}. The gradient is then the gradient of the same
+ * estimate of the change in log density as was computed in the forward pass. Otherwise noise is sampled once per solve
+ * which gives an unbiased estimate of the gradient of the expected loss only if the loss is linear in the change in
+ * log density (which is the case for the log likelihood). Time gradients and {@link DynamicsRegularization} are not
+ * supported.
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityAdjoint implements OdeHelperBackward {
+
+    private final FirstOrderSolver solver;
+    private final INDArray time;
+    private final double finiteDifferenceStep;
+    private final Supplier<INDArray> forwardNoise;
+
+    public LogDensityAdjoint(FirstOrderSolver solver, INDArray time, double finiteDifferenceStep) {
+        this(solver, time, finiteDifferenceStep, () -> null);
+    }
+
+    /**
+     * Create a new LogDensityAdjoint which uses the same noise as the forward pass
+     * @param solver Solver to use
+     * @param time Start and end time
+     * @param finiteDifferenceStep Step size for finite difference estimate of the jacobian vector product
+     * @param forwardNoise Supplies the noise used in the last forward pass. Noise is sampled if it supplies null.
+     */
+    public LogDensityAdjoint(FirstOrderSolver solver, INDArray time, double finiteDifferenceStep, Supplier<INDArray> forwardNoise) {
+        this.solver = solver;
+        this.time = time;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+        this.forwardNoise = forwardNoise;
+        if (time.length() != 2) {
+            throw new IllegalArgumentException("time must be a vector with two elements! Was of shape: " + Arrays.toString(time.shape()) + "!");
+        }
+    }
+
+    /**
+     * Returns the number of arrays with the same shape as the augmented state which are allocated on top of what the
+     * solver allocates: the augmented state and its copy which is given as output to the solver.
+     * @return the number of augmented state sized arrays
+     */
+    public static long nrofAugmentedStateCopies() {
+        return 2;
+    }
+
+    /**
+     * Returns the number of arrays with (roughly) the same shape as the state which are allocated on top of what the
+     * {@link BackpropagateLogDensityAdjoint} allocates: the loss gradient w.r.t the state. Noise is assumed to be
+     * reused from the forward pass.
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies() {
+        return 1;
+    }
+
+    @Override
+    public INDArray[] solve(ComputationGraph graph, InputArrays input, MiscPar miscPars) {
+        final INDArray dL_dzt1 = input.getLossGradient();
+        final INDArray zt1 = input.getLastOutput();
+        final INDArray1DView realParamGrads = input.getRealGradientView();
+
+        final FirstOrderEquation forward = new ForwardPass(graph,
+                miscPars.getWsMgr(),
+                true, // Always use training as batch norm running mean and var become messed up otherwise. Same effect seen in original pytorch repo.
+                input.getGraphInputOutput());
+
+        final TimeGrad timeGrad = NoTimeGrad.factory.create();
+        final INDArray tAdjoint = timeGrad.calcTimeAdjointT1(forward, zt1, time);
+
+        final INDArray zAug = Nd4j.create(1, zt1.length() + dL_dzt1.length() + graph.numParams() + tAdjoint.length());
+        final INDArray paramAdj = Nd4j.zeros(realParamGrads.length());
+        realParamGrads.assignTo(paramAdj);
+
+        final NDArrayIndexAccumulator accumulator = new NDArrayIndexAccumulator(zAug);
+        accumulator.increment(zt1.reshape(new long[]{1, zt1.length()}))
+                .increment(dL_dzt1.reshape(new long[]{1, dL_dzt1.length()}))
+                .increment(paramAdj.reshape(new long[]{1, paramAdj.length()}))
+                .increment(tAdjoint);
+
+        final AugmentedDynamics augmentedDynamics = new AugmentedDynamics(
+                zAug,
+                dL_dzt1.shape(),
+                new long[]{realParamGrads.length()},
+                tAdjoint.shape());
+
+        final FirstOrderEquation equation = new BackpropagateLogDensityAdjoint(
+                augmentedDynamics,
+                input.getGraphInputOutput(),
+                forward,
+                new BackpropagateAdjoint.GraphInfo(graph, realParamGrads, miscPars.getWsMgr(), miscPars.isUseTruncatedBackPropTroughTime()),
+                createNoise(new long[]{zt1.size(0), zt1.size(1) - 1}),
+                finiteDifferenceStep);
+
+        final INDArray augAns = solver.integrate(equation, Nd4j.reverse(time.dup()), zAug, zAug.dup());
+
+        augmentedDynamics.updateFrom(augAns);
+
+        realParamGrads.assignFrom(augmentedDynamics.paramAdjoint());
+
+        // Change in log density always starts at 0 so there is no gradient for it
+        final INDArray zAdjoint = augmentedDynamics.zAdjoint()
+                .get(NDArrayIndex.all(), NDArrayIndex.interval(0, zt1.size(1) - 1)).dup();
+        return timeGrad.createLossGradient(zAdjoint, augmentedDynamics.tAdjoint());
+    }
+
+    /**
+     * Create noise to use for the trace estimator.
+     * @param shape Shape of the noise
+     * @return Noise from the forward pass if available, otherwise Gaussian noise with zero mean and unit variance
+     */
+    protected INDArray createNoise(long[] shape) {
+        final INDArray noise = forwardNoise.get();
+        if (noise == null) {
+            return Nd4j.randn(shape);
+        }
+        if (!Arrays.equals(noise.shape(), shape)) {
+            throw new IllegalStateException("Noise from forward pass has shape " + Arrays.toString(noise.shape())
+                    + " but expected " + Arrays.toString(shape) + "!");
+        }
+        return noise;
+    }
+}
@@ -34,6 +34,16 @@ public class MultiStepAdjoint implements OdeHelperBackward {
         assertSorted(time);
     }
 
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated on top of what each
+     * {@link SingleStepAdjoint} allocates: a copy of the loss gradient for each time step but the first.
+     * @param nrofTimeSteps Number of time steps, including the first one
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies(long nrofTimeSteps) {
+        return nrofTimeSteps - 1;
+    }
+
     private void assertSorted(INDArray time) {
         int signDiffSum = 0;
         for(int i = 0; i < time.length()-1; i++) {
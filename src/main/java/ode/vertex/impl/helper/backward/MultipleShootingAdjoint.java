@@ -0,0 +1,119 @@
+package ode.vertex.impl.helper.backward;
+
+import ode.solve.api.FirstOrderSolver;
+import ode.vertex.impl.helper.GraphInputOutput;
+import ode.vertex.impl.helper.NoTimeInput;
+import ode.vertex.impl.helper.ShootingSegments;
+import ode.vertex.impl.helper.backward.timegrad.NoMultiStepTimeGrad;
+import ode.vertex.impl.helper.backward.timegrad.NoTimeGrad;
+import ode.vertex.impl.helper.forward.SingleStep;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Arrays;
+
+/**
+ * {@link OdeHelperBackward} for {@link ode.vertex.impl.helper.forward.MultipleShooting}. All segments are solved
+ * backwards as one mini batch using {@link MultiStepAdjoint} (or {@link SingleStepAdjoint} if segments only have one
+ * time step).
+ * <br><br>
+ * A continuity penalty {@code continuityWeight * ||z_k(t_end) - s_k+1||^2} is added to the loss for every segment
+ * k but the last, where {@code z_k(t_end)} is the end of segment k and {@code s_k+1} is the initial state of segment
+ * k+1. As the end of segments is not part of the output from the forward pass, it is recomputed from the second last
+ * time step of each segment. The penalty is included in the score of the {@link DynamicsRegularization}.
+ *
+ * @author Christian Skarby
+ */
+public class MultipleShootingAdjoint implements OdeHelperBackward {
+
+    private final FirstOrderSolver solver;
+    private final ShootingSegments segments;
+    private final int shootingInputIndex;
+    private final double continuityWeight;
+
+    public MultipleShootingAdjoint(FirstOrderSolver solver, ShootingSegments segments, int shootingInputIndex, double continuityWeight) {
+        this.solver = solver;
+        this.segments = segments;
+        this.shootingInputIndex = shootingInputIndex;
+        this.continuityWeight = continuityWeight;
+    }
+
+    @Override
+    public INDArray[] solve(ComputationGraph graph, InputArrays input, MiscPar miscPars) {
+        final Pair<GraphInputOutput, INDArray> result = input.getGraphInputOutput().removeInput(shootingInputIndex);
+        final INDArray y0Segments = segments.stack(result.getFirst().y0(), ShootingSegments.toTimeFirst(result.getSecond()));
+        final long nrofShootingStates = y0Segments.size(0) - result.getFirst().y0().size(0);
+
+        final INDArray zt = ShootingSegments.toTimeFirst(input.getLastOutput());
+        final INDArray dL_dzt = ShootingSegments.toTimeFirst(input.getLossGradient());
+        final INDArray ztSegments = segments.split(zt);
+        final INDArray dL_dztSegments = segments.split(dL_dzt);
+
+        // End of all segments but the last are not part of the output. Recompute them from the second last time step.
+        final INDArray secondLast = ztSegments.get(point(ztSegments, segments.segmentLength() - 1));
+        final INDArray ends = new SingleStep(solver, segments.lastStepTime()).solve(
+                graph,
+                miscPars.getWsMgr(),
+                new NoTimeInput(new INDArray[]{rows(secondLast, 0, nrofShootingStates).dup()}),
+                true);
+
+        final INDArray dL_dends = ends.sub(rows(y0Segments, y0Segments.size(0) - nrofShootingStates, y0Segments.size(0)));
+        miscPars.getRegularization().squaredPenalty(continuityWeight, dL_dends);
+
+        final INDArray ztSegmentEnds = Nd4j.concat(0, ends, ShootingSegments.last(zt));
+        final INDArray dL_dztSegmentEnds = Nd4j.concat(0, dL_dends, ShootingSegments.last(dL_dzt));
+
+        final GraphInputOutput segmentInputOutput = new NoTimeInput(new INDArray[]{y0Segments});
+        final INDArray dL_dy0Segments;
+        if (segments.segmentLength() == 1) {
+            dL_dy0Segments = new SingleStepAdjoint(solver, segments.segmentTime(), NoTimeGrad.factory).solve(
+                    graph,
+                    new InputArrays(segmentInputOutput, ztSegmentEnds, dL_dztSegmentEnds, input.getRealGradientView()),
+                    miscPars)[0];
+            dL_dy0Segments.addi(dL_dztSegments.get(point(dL_dztSegments, 0)));
+        } else {
+            dL_dy0Segments = new MultiStepAdjoint(solver, segments.segmentTime(), NoMultiStepTimeGrad.factory).solve(
+                    graph,
+                    new InputArrays(
+                            segmentInputOutput,
+                            ShootingSegments.fromTimeFirst(Nd4j.concat(0, ztSegments, addTimeDim(ztSegmentEnds))),
+                            ShootingSegments.fromTimeFirst(Nd4j.concat(0, dL_dztSegments, addTimeDim(dL_dztSegmentEnds))),
+                            input.getRealGradientView()),
+                    miscPars)[0];
+        }
+
+        final Pair<INDArray, INDArray> dL_dy0 = segments.unstack(dL_dy0Segments);
+        // Penalty gradient w.r.t initial states of segments has opposite sign compared to gradient w.r.t ends
+        final INDArray dL_dShootingStates = dL_dy0.getSecond().subi(
+                dL_dends.reshape(dL_dy0.getSecond().shape()));
+
+        final INDArray[] gradients = new INDArray[2];
+        gradients[shootingInputIndex] = ShootingSegments.fromTimeFirst(dL_dShootingStates);
+        gradients[(shootingInputIndex + 1) % gradients.length] = dL_dy0.getFirst();
+        return gradients;
+    }
+
+    private static INDArray addTimeDim(INDArray array) {
+        final long[] shape = new long[array.rank() + 1];
+        shape[0] = 1;
+        System.arraycopy(array.shape(), 0, shape, 1, array.rank());
+        return array.reshape(shape);
+    }
+
+    private static INDArray rows(INDArray array, long from, long to) {
+        final INDArrayIndex[] indexer = point(array, 0);
+        indexer[0] = NDArrayIndex.interval(from, to);
+        return array.get(indexer);
+    }
+
+    private static INDArrayIndex[] point(INDArray array, long index) {
+        final INDArrayIndex[] indexer = new INDArrayIndex[array.rank()];
+        Arrays.fill(indexer, NDArrayIndex.all());
+        indexer[0] = NDArrayIndex.point(index);
+        return indexer;
+    }
+}
@@ -39,6 +39,11 @@ public interface OdeHelperBackward {
     class MiscPar {
         private final boolean useTruncatedBackPropTroughTime;
         private final LayerWorkspaceMgr wsMgr;
+        private final DynamicsRegularization regularization;
+
+        public MiscPar(boolean useTruncatedBackPropTroughTime, LayerWorkspaceMgr wsMgr) {
+            this(useTruncatedBackPropTroughTime, wsMgr, DynamicsRegularization.none());
+        }
     }
 
     /**
@@ -33,6 +33,15 @@ public class SingleStepAdjoint implements OdeHelperBackward {
         }
     }
 
+    /**
+     * Returns the number of arrays with the same shape as the augmented state which are allocated on top of what the
+     * solver allocates: the augmented state and its copy which is given as output to the solver.
+     * @return the number of augmented state sized arrays
+     */
+    public static long nrofAugmentedStateCopies() {
+        return 2;
+    }
+
     @Override
     public INDArray[] solve(ComputationGraph graph, InputArrays input, MiscPar miscPars) {
 
@@ -55,7 +64,10 @@ public class SingleStepAdjoint implements OdeHelperBackward {
         final TimeGrad timeGrad = timeGradFactory.create();
         final INDArray tAdjoint = timeGrad.calcTimeAdjointT1(forward, zt1, time);
 
-        final INDArray zAug = Nd4j.create(1, zt1.length() + dL_dzt1.length() + graph.numParams() + tAdjoint.length());
+        final DynamicsRegularization regularization = miscPars.getRegularization();
+        // Last element is the integral of the regularization (if used) which starts at 0
+        final long regLength = regularization.isEnabled() ? 1 : 0;
+        final INDArray zAug = Nd4j.create(1, zt1.length() + dL_dzt1.length() + graph.numParams() + tAdjoint.length() + regLength);
         final INDArray paramAdj = Nd4j.zeros(realParamGrads.length());
         realParamGrads.assignTo(paramAdj);
 
@@ -69,13 +81,15 @@ public class SingleStepAdjoint implements OdeHelperBackward {
                 zAug,
                 dL_dzt1.shape(),
                 new long[]{realParamGrads.length()},
-                tAdjoint.shape());
+                tAdjoint.shape(),
+                regularization.isEnabled());
 
         final FirstOrderEquation equation = new BackpropagateAdjoint(
                 augmentedDynamics,
                 input.getGraphInputOutput(),
                 forward,
-                new BackpropagateAdjoint.GraphInfo(graph, realParamGrads, miscPars.getWsMgr(), miscPars.isUseTruncatedBackPropTroughTime())
+                new BackpropagateAdjoint.GraphInfo(graph, realParamGrads, miscPars.getWsMgr(), miscPars.isUseTruncatedBackPropTroughTime()),
+                regularization
         );
 
         INDArray augAns = solver.integrate(equation, Nd4j.reverse(time.dup()), zAug, zAug.dup());
@@ -83,6 +97,9 @@ public class SingleStepAdjoint implements OdeHelperBackward {
         augmentedDynamics.updateFrom(augAns);
 
         realParamGrads.assignFrom(augmentedDynamics.paramAdjoint());
+        if (regularization.isEnabled()) {
+            regularization.addScore(augmentedDynamics.regularization().getDouble(0));
+        }
 
         return timeGrad.createLossGradient(augmentedDynamics.zAdjoint(), augmentedDynamics.tAdjoint());
     }
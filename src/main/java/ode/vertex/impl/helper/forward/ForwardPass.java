@@ -1,26 +1,31 @@
 package ode.vertex.impl.helper.forward;
 
-import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.BatchedFirstOrderEquation;
 import ode.vertex.impl.helper.NDArrayIndexAccumulator;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.graph.vertex.VertexIndices;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
-import org.jetbrains.annotations.Nullable;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.workspace.WorkspacesCloseable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Models forward pass through an undefined number of residual blocks as a first order differential equation.
  * See https://arxiv.org/pdf/1806.07366.pdf
+ * <br><br>
+ * Several states can be evaluated in one forward pass through {@link #calculateDerivatives(INDArray[], INDArray[], INDArray[])}
+ * in which case inputs for all states are stacked along the mini batch dimension. All states must have the same shape.
  *
  * @author Christian Skarby
  */
-public class ForwardPass implements FirstOrderEquation {
+public class ForwardPass implements BatchedFirstOrderEquation {
 
     private final ComputationGraph graph;
     private final LayerWorkspaceMgr workspaceMgr;
@@ -47,6 +52,16 @@ public class ForwardPass implements FirstOrderEquation {
         return fy;
     }
 
+    @Override
+    public INDArray[] calculateDerivatives(INDArray[] y, INDArray[] t, INDArray[] fy) {
+        graph.getConfiguration().setIterationCount(graph.getIterationCount() + y.length);
+        try (WorkspacesCloseable ws = enterIfNotOpen(ArrayType.ACTIVATIONS)) {
+            final INDArray[] inputs = input.getStackedInputsFrom(y, t);
+            evaluate(inputs, fy);
+        }
+        return fy;
+    }
+
     private WorkspacesCloseable enterIfNotOpen(ArrayType... types) {
         List<ArrayType> shallOpen = new ArrayList<>();
         for(ArrayType type: types) {
@@ -58,13 +73,20 @@ public class ForwardPass implements FirstOrderEquation {
         return workspaceMgr.notifyScopeEntered(shallOpen.toArray(new ArrayType[0]));
     }
 
-    @Nullable
-    private void evaluate(INDArray[] inputs, INDArray output) {
+    /**
+     * Evaluate the graph for the given inputs
+     * @param inputs Inputs to the graph
+     * @param outputs Arrays to put the output in. If more than one, output rows are split evenly between them in order.
+     */
+    private void evaluate(INDArray[] inputs, INDArray... outputs) {
 
         graph.setInputs(inputs);
         //TODO: Might want to have internal workspace handling to conserve memory
         final int[] topologicalOrder = graph.topologicalSortOrder();
-        final NDArrayIndexAccumulator outputAccum = new NDArrayIndexAccumulator(output);
+        final NDArrayIndexAccumulator[] outputAccums = new NDArrayIndexAccumulator[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            outputAccums[i] = new NDArrayIndexAccumulator(outputs[i]);
+        }
 
         //Do forward pass according to the topological ordering of the network
         for (int i = 0; i <= graph.getVertices().length - 1; i++) {
@@ -82,7 +104,10 @@ public class ForwardPass implements FirstOrderEquation {
             }
 
             if (inputsTo == null) {  //Output vertices may not input to any other vertices
-                outputAccum.increment(out);
+                final long rowsPerOutput = out.size(0) / outputs.length;
+                for (int j = 0; j < outputs.length; j++) {
+                    outputAccums[j].increment(outputs.length == 1 ? out : rows(out, j * rowsPerOutput, (j + 1) * rowsPerOutput));
+                }
             } else {
                 for (VertexIndices v : inputsTo) {
                     //Note that we don't have to do anything special here: the activations are always detached in
@@ -90,7 +115,9 @@ public class ForwardPass implements FirstOrderEquation {
                     int inputToIndex = v.getVertexIndex();
                     int vIdxEdge = v.getVertexEdgeNumber();
                     GraphVertex outputVertex = graph.getVertices()[inputToIndex];
-                    if (outputVertex.getInputs() == null || outputVertex.getInputs()[vIdxEdge] == null) {
+                    // Previous input can only be reused if mini batch size has not changed
+                    if (outputVertex.getInputs() == null || outputVertex.getInputs()[vIdxEdge] == null
+                            || !Arrays.equals(outputVertex.getInputs()[vIdxEdge].shape(), out.shape())) {
                         outputVertex.setInput(vIdxEdge, workspaceMgr.leverageTo(ArrayType.INPUT, out), workspaceMgr);
                     } else {
                         outputVertex.getInputs()[vIdxEdge].assign(out);
@@ -101,4 +128,10 @@ public class ForwardPass implements FirstOrderEquation {
         }
     }
 
+    private static INDArray rows(INDArray array, long from, long to) {
+        final INDArrayIndex[] indexer = new INDArrayIndex[array.rank()];
+        Arrays.fill(indexer, NDArrayIndex.all());
+        indexer[0] = NDArrayIndex.interval(from, to);
+        return array.get(indexer);
+    }
 }
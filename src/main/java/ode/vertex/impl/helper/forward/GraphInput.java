@@ -1,6 +1,7 @@
 package ode.vertex.impl.helper.forward;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 
 /**
@@ -19,6 +20,32 @@ public interface GraphInput {
      */
     INDArray[] getInputsFrom(INDArray y, INDArray t);
 
+    /**
+     * Return array of inputs for several states stacked along the mini batch dimension so that all states can be
+     * evaluated in one forward pass. Default implementation stacks each input for all states which is fine as long as
+     * all inputs have the mini batch as first dimension.
+     * @param y Current states
+     * @param t Current times, one per state
+     * @return Input arrays with all states stacked
+     */
+    default INDArray[] getStackedInputsFrom(INDArray[] y, INDArray[] t) {
+        final INDArray[][] inputs = new INDArray[y.length][];
+        for (int i = 0; i < y.length; i++) {
+            // Implementations may reuse the returned array
+            inputs[i] = getInputsFrom(y[i], t[i]).clone();
+        }
+
+        final INDArray[] stacked = new INDArray[inputs[0].length];
+        for (int inputIndex = 0; inputIndex < stacked.length; inputIndex++) {
+            final INDArray[] toStack = new INDArray[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                toStack[i] = inputs[i][inputIndex];
+            }
+            stacked[inputIndex] = Nd4j.concat(0, toStack);
+        }
+        return stacked;
+    }
+
     /**
      * Initial value for forward pass
      * @return The initial value for forward pass
@@ -26,12 +26,12 @@ public class InputStep implements OdeHelperForward {
     }
 
     @Override
-    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input) {
+    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input, boolean training) {
         Pair<? extends GraphInput, INDArray> result = input.removeInput(timeInputIndex);
         return new FixedStep(
                 solver,
                 result.getSecond(),
                 interpolateIfMultiStep)
-                .solve(graph, wsMgr, result.getFirst());
+                .solve(graph, wsMgr, result.getFirst(), training);
     }
 }
@@ -0,0 +1,102 @@
+package ode.vertex.impl.helper.forward;
+
+import ode.solve.api.BatchedFirstOrderEquation;
+import ode.solve.api.FirstOrderEquation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+/**
+ * Dynamics of a continuous normalizing flow (https://arxiv.org/abs/1810.01367). State is the concatenation of z(t) and
+ * log p(z(t)) along dimension 1 and the derivative is
+ * <pre>
+ * dz/dt = f(z(t), t)
+ * dlogp/dt = -tr(df/dz(t)) ~= -e^T * df/dz(t) * e
+ * </pre>
+ * where e is noise with zero mean and unit variance (Hutchinsons trace estimator) which shall be the same throughout a
+ * solve. As dl4j does not do forward mode differentiation the jacobian-vector product is estimated through finite
+ * differences, i.e. e^T * (f(z + h*e, t) - f(z, t)) / h, which costs one extra forward pass per evaluation instead of
+ * the D backward passes an exact trace would need. Both states may optionally be evaluated in one call if the dynamics
+ * is a {@link BatchedFirstOrderEquation}. This is off by default as f(z+h*e) and f(z) are then seen as one mini batch
+ * which changes the result of operations which depend on the whole mini batch (e.g. batch normalization in training
+ * mode).
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityDynamics implements FirstOrderEquation {
+
+    private final FirstOrderEquation dynamics;
+    private final INDArray noise;
+    private final double finiteDifferenceStep;
+    private final boolean batched;
+
+    /**
+     * Create new {@link LogDensityDynamics} which evaluates f(z+h*e) and f(z) in separate calls
+     * @param dynamics Calculates f(z(t), t)
+     * @param noise Noise for the trace estimator. Same shape as z
+     * @param finiteDifferenceStep Step size for the finite difference estimate of the jacobian-vector product
+     */
+    public LogDensityDynamics(FirstOrderEquation dynamics, INDArray noise, double finiteDifferenceStep) {
+        this(dynamics, noise, finiteDifferenceStep, false);
+    }
+
+    /**
+     * Create new {@link LogDensityDynamics}
+     * @param dynamics Calculates f(z(t), t)
+     * @param noise Noise for the trace estimator. Same shape as z
+     * @param finiteDifferenceStep Step size for the finite difference estimate of the jacobian-vector product
+     * @param batched If true, f(z+h*e) and f(z) are evaluated in one call if dynamics is a
+     *                {@link BatchedFirstOrderEquation}. Must only be used if dynamics does not depend on the whole
+     *                mini batch.
+     */
+    public LogDensityDynamics(FirstOrderEquation dynamics, INDArray noise, double finiteDifferenceStep, boolean batched) {
+        this.dynamics = dynamics;
+        this.noise = noise;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+        this.batched = batched;
+    }
+
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated in each evaluation: a copy of
+     * the state, the scaled noise, the perturbed state and the derivatives of both states.
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies() {
+        return 5;
+    }
+
+    @Override
+    public INDArray calculateDerivative(INDArray y, INDArray t, INDArray fy) {
+        final long size = y.size(1) - 1;
+        final INDArray z = y.get(NDArrayIndex.all(), NDArrayIndex.interval(0, size)).dup();
+
+        final INDArray zPerturbed = z.add(noise.mul(finiteDifferenceStep));
+        final INDArray fzPerturbed = Nd4j.createUninitialized(z.shape());
+        final INDArray fz = Nd4j.createUninitialized(z.shape());
+        if (batched && dynamics instanceof BatchedFirstOrderEquation) {
+            ((BatchedFirstOrderEquation) dynamics).calculateDerivatives(
+                    new INDArray[]{zPerturbed, z},
+                    new INDArray[]{t, t},
+                    new INDArray[]{fzPerturbed, fz});
+        } else {
+            dynamics.calculateDerivative(zPerturbed, t, fzPerturbed);
+            // Note: fz last so that activations of the graph are from the unperturbed state
+            dynamics.calculateDerivative(z, t, fz);
+        }
+
+        fy.get(NDArrayIndex.all(), NDArrayIndex.interval(0, size)).assign(fz);
+        fy.get(NDArrayIndex.all(), NDArrayIndex.point(size)).assign(negativeTrace(fz, fzPerturbed));
+        return fy;
+    }
+
+    /**
+     * Returns the estimate of -tr(df/dz), one per sample.
+     * @param fz f(z, t)
+     * @param fzPerturbed f(z + h * e, t). Will be changed.
+     * @return Estimate of the negative trace as a column vector
+     */
+    public INDArray negativeTrace(INDArray fz, INDArray fzPerturbed) {
+        return fzPerturbed.subi(fz).muli(noise).sum(1).divi(-finiteDifferenceStep);
+    }
+
+}
@@ -0,0 +1,113 @@
+package ode.vertex.impl.helper.forward;
+
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.FirstOrderSolver;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * {@link OdeHelperForward} for continuous normalizing flows. Solves {@link LogDensityDynamics} for a single time step
+ * and outputs z(t1) concatenated with the change in log density log p(z(t1)) - log p(z(t0)) along dimension 1. Noise
+ * for the trace estimator is sampled once per solve. Noise from the last solve in training mode is kept so that the
+ * backward pass can use the same noise, see {@link #lastNoise()}.
+ * <br><br>
+ * The perturbed and unperturbed states may optionally be evaluated as one mini batch when not training, see
+ * {@link LogDensityDynamics}. They are always evaluated separately when training so that layers which compute
+ * statistics over the mini batch only see the real mini batch.
+ * <br><br>
+ * Only supports 2D states, i.e. shape [miniBatchSize, size].
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityStep implements OdeHelperForward {
+
+    private final FirstOrderSolver solver;
+    private final INDArray time;
+    private final double finiteDifferenceStep;
+    private final boolean batchedInference;
+    private INDArray lastNoise;
+
+    public LogDensityStep(FirstOrderSolver solver, INDArray time, double finiteDifferenceStep) {
+        this(solver, time, finiteDifferenceStep, false);
+    }
+
+    /**
+     * Create a new LogDensityStep
+     * @param solver Solver to use
+     * @param time Start and stop time
+     * @param finiteDifferenceStep Step size for the finite difference estimate of the jacobian-vector product
+     * @param batchedInference If true, the perturbed and unperturbed states are evaluated in one call when not
+     *                         training. Must not be used if the graph computes statistics over the mini batch when not
+     *                         training, e.g. batch normalization unless
+     *                         {@link ode.vertex.conf.OdeVertex.Builder#batchNormInferenceMode(boolean)} is set
+     */
+    public LogDensityStep(FirstOrderSolver solver, INDArray time, double finiteDifferenceStep, boolean batchedInference) {
+        this.solver = solver;
+        this.time = time;
+        this.finiteDifferenceStep = finiteDifferenceStep;
+        this.batchedInference = batchedInference;
+        if (time.length() != 2) {
+            throw new IllegalArgumentException("time must be a vector with two elements! Was of shape: " + Arrays.toString(time.shape()) + "!");
+        }
+    }
+
+    /**
+     * Returns the number of arrays with (roughly) the same shape as the state which are allocated on top of what the
+     * solver and the {@link LogDensityDynamics} allocate: the noise, the augmented initial state and the output.
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies() {
+        return 3;
+    }
+
+    @Override
+    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input, boolean training) {
+        final INDArray y0 = input.y0();
+        if (y0.rank() != 2) {
+            throw new IllegalArgumentException("Only 2D states supported! Got shape " + Arrays.toString(y0.shape()) + "!");
+        }
+
+        final INDArray noise = createNoise(y0.shape());
+        if (training) {
+            lastNoise = noise;
+        }
+
+        final FirstOrderEquation equation = new LogDensityDynamics(
+                new ForwardPass(graph, wsMgr, training, input),
+                noise,
+                finiteDifferenceStep,
+                batchedInference && !training);
+
+        // Change in log density starts at 0
+        final INDArray y0Aug = Nd4j.hstack(y0, Nd4j.zeros(y0.size(0), 1));
+        final INDArray yt = Nd4j.createUninitialized(y0Aug.shape());
+        solver.integrate(equation, time, y0Aug, yt);
+
+        return yt;
+    }
+
+    /**
+     * Returns the noise used for the trace estimator in the last solve in training mode
+     * @return the noise or null if no solve in training mode has been done
+     */
+    public INDArray lastNoise() {
+        return lastNoise;
+    }
+
+    /**
+     * Create noise to use for the trace estimator.
+     * @param shape Shape of the noise
+     * @return Gaussian noise with zero mean and unit variance
+     */
+    protected INDArray createNoise(long[] shape) {
+        // Noise is reused in the backward pass so it must not be in any workspace
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            return Nd4j.randn(shape);
+        }
+    }
+}
@@ -28,13 +28,24 @@ public class MultiStep implements OdeHelperForward {
         }
     }
 
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated on top of what the solver
+     * allocates: two copies of the initial state, the solution for all but the first time step and the output which
+     * contains all time steps.
+     * @param nrofTimeSteps Number of time steps, including the first one
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies(long nrofTimeSteps) {
+        return 2 + (nrofTimeSteps - 1) + nrofTimeSteps;
+    }
+
     @Override
-    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input) {
+    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input, boolean training) {
 
         final FirstOrderEquation equation = new ForwardPass(
                 graph,
                 wsMgr,
-                true,
+                training,
                 input
         );
 
@@ -0,0 +1,52 @@
+package ode.vertex.impl.helper.forward;
+
+import ode.solve.api.FirstOrderSolver;
+import ode.vertex.impl.helper.NoTimeInput;
+import ode.vertex.impl.helper.ShootingSegments;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+/**
+ * {@link OdeHelperForward} which uses multiple shooting to solve the ODE for a sequence of time steps. The sequence
+ * is split into segments where the initial state of the first segment is the initial state of the ODE and the initial
+ * states of the other segments comes as one of the inputs. All segments are solved independently as one mini batch
+ * using {@link FixedStep}. This requires that the ODE does not depend on time.
+ * <br><br>
+ * Output is the same as for {@link MultiStep}, except that the given initial state is used for the first time step of
+ * each segment. The mismatch between the end of one segment and the initial state of the next is penalized in the
+ * backward pass.
+ *
+ * @author Christian Skarby
+ */
+public class MultipleShooting implements OdeHelperForward {
+
+    private final FirstOrderSolver solver;
+    private final ShootingSegments segments;
+    private final int shootingInputIndex;
+
+    public MultipleShooting(FirstOrderSolver solver, ShootingSegments segments, int shootingInputIndex) {
+        this.solver = solver;
+        this.segments = segments;
+        this.shootingInputIndex = shootingInputIndex;
+    }
+
+    @Override
+    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input, boolean training) {
+        final Pair<? extends GraphInput, INDArray> result = input.removeInput(shootingInputIndex);
+        final INDArray y0 = result.getFirst().y0();
+        final INDArray shootingStates = ShootingSegments.toTimeFirst(result.getSecond());
+
+        final INDArray y0Segments = segments.stack(y0, shootingStates);
+        final INDArray solution = new FixedStep(solver, segments.segmentTime(), false)
+                .solve(graph, wsMgr, new NoTimeInput(new INDArray[]{y0Segments}), training);
+
+        final INDArray solutionTimeFirst = segments.segmentLength() == 1 ?
+                Nd4j.stack(0, y0Segments, solution) :
+                ShootingSegments.toTimeFirst(solution);
+
+        return ShootingSegments.fromTimeFirst(segments.merge(solutionTimeFirst));
+    }
+}
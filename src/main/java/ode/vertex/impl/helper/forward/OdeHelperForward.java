@@ -19,5 +19,18 @@ public interface OdeHelperForward {
      * @param input Handles inputs to vertex, typically activations from previous layers
      * @return an {@link INDArray} with the solution to the ODE
      */
-    INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input);
+    default INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input) {
+        return solve(graph, wsMgr, input, true);
+    }
+
+    /**
+     * Return the solution to the ODE when assuming that a forward pass through the layers of the given graph is
+     * the derivative of the sought function.
+     * @param graph Graph of layers to do forward pass through
+     * @param wsMgr To handle workspaces for newly created arrays
+     * @param input Handles inputs to vertex, typically activations from previous layers
+     * @param training If true, layers of the graph are evaluated in training mode
+     * @return an {@link INDArray} with the solution to the ODE
+     */
+    INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input, boolean training);
 }
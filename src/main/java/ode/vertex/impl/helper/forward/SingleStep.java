@@ -28,13 +28,22 @@ public class SingleStep implements OdeHelperForward {
         }
     }
 
+    /**
+     * Returns the number of arrays with the same shape as the state which are allocated on top of what the solver
+     * allocates: the output.
+     * @return the number of state sized arrays
+     */
+    public static long nrofStateCopies() {
+        return 1;
+    }
+
     @Override
-    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input) {
+    public INDArray solve(ComputationGraph graph, LayerWorkspaceMgr wsMgr, GraphInput input, boolean training) {
 
         final FirstOrderEquation equation = new ForwardPass(
                 graph,
                 wsMgr,
-                true, // Always use training as batch norm running mean and var become messed up otherwise. Same effect seen in original pytorch repo.
+                training,
                 input
         );
 
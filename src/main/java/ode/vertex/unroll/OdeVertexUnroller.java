@@ -0,0 +1,313 @@
+package ode.vertex.unroll;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ode.solve.api.FirstOrderSolverConf;
+import ode.solve.impl.DormandPrince54Solver;
+import ode.solve.impl.util.ButcherTableu;
+import ode.vertex.conf.OdeVertex;
+import ode.vertex.conf.helper.NoTimeInputFactory;
+import ode.vertex.conf.helper.forward.FixedStep;
+import ode.vertex.conf.helper.forward.OdeHelperForward;
+import ode.vertex.impl.gradview.GradientViewSelectionFromBlacklisted;
+import ode.vertex.impl.gradview.parname.ParamNameMapping;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.graph.ScaleVertex;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.listen.step.StepGridRecorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an {@link OdeVertex} of a trained {@link ComputationGraph} into a plain {@code ComputationGraph} in which
+ * the ODE is solved by a fixed number of Runge-Kutta steps. Each function evaluation of each step is a copy of the
+ * internal graph of the {@code OdeVertex}, much like a ResNet where all residual blocks have the same weights. The
+ * step grid is typically taken from what the adaptive solver used for a set of calibration data, see
+ * {@link #calibrate(MultiDataSetIterator)}.
+ * <br><br>
+ * Note that dl4j does not support sharing of parameters between layers so each copy has its own (identical) parameters.
+ * The unrolled graph is therefore only intended for inference. Only {@code OdeVertex}es which use a {@link FixedStep}
+ * with a single time step and which do not have time as an input to the internal graph are supported.
+ *
+ * @author Christian Skarby
+ */
+public class OdeVertexUnroller {
+
+    private static final Logger log = LoggerFactory.getLogger(OdeVertexUnroller.class);
+
+    private final ComputationGraph model;
+    private final String odeVertexName;
+    private final OdeVertex odeVertex;
+    private final FixedStep forwardConf;
+    private final ButcherTableu tableu;
+    private double[] timeGrid;
+
+    /**
+     * Result of comparing the output of the unrolled graph with the output of the original graph.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class AccuracyGap {
+        private final double maxAbsError;
+        private final double meanAbsError;
+
+        @Override
+        public String toString() {
+            return "max abs error: " + maxAbsError + ", mean abs error: " + meanAbsError;
+        }
+    }
+
+    /**
+     * Create a new unroller which uses the 5th order solution of the Dormand-Prince method in each step.
+     * @param model Model which contains the {@link OdeVertex} to unroll
+     * @param odeVertexName Name of the {@code OdeVertex} to unroll
+     */
+    public OdeVertexUnroller(ComputationGraph model, String odeVertexName) {
+        this(model, odeVertexName, DormandPrince54Solver.butcherTableu());
+    }
+
+    /**
+     * Create a new unroller
+     * @param model Model which contains the {@link OdeVertex} to unroll
+     * @param odeVertexName Name of the {@code OdeVertex} to unroll
+     * @param tableu Butcher tableu of the Runge-Kutta method to use in each step
+     */
+    public OdeVertexUnroller(ComputationGraph model, String odeVertexName, ButcherTableu tableu) {
+        this.model = model;
+        this.odeVertexName = odeVertexName;
+        this.tableu = tableu;
+
+        final GraphVertex vertex = model.getConfiguration().getVertices().get(odeVertexName);
+        if (!(vertex instanceof OdeVertex)) {
+            throw new IllegalArgumentException("Vertex " + odeVertexName + " is not an OdeVertex! Was: " + vertex);
+        }
+        odeVertex = (OdeVertex) vertex;
+
+        final OdeHelperForward helper = odeVertex.getOdeInferenceConf() == null ?
+                odeVertex.getOdeForwardConf() :
+                odeVertex.getOdeInferenceConf();
+        if (!(helper instanceof FixedStep) || ((FixedStep) helper).getTime().length() != 2) {
+            throw new UnsupportedOperationException("Can only unroll OdeVertex which uses FixedStep with a single time step! Was: " + helper);
+        }
+        forwardConf = (FixedStep) helper;
+
+        if (!(odeVertex.getGraphInputOutputFactory() instanceof NoTimeInputFactory)
+                || odeVertex.getConf().getNetworkInputs().size() != 1) {
+            throw new UnsupportedOperationException("Can only unroll OdeVertex with a single input and no time input!");
+        }
+    }
+
+    /**
+     * Record the steps taken by the solver of the {@link OdeVertex} when doing inference on the given data. The grid
+     * with the largest number of steps will be used by {@link #unroll()}.
+     *
+     * @param data Calibration data
+     * @return the recorded time grid
+     */
+    public double[] calibrate(MultiDataSetIterator data) {
+        final FirstOrderSolverConf solverConf = forwardConf.getSolverConf();
+        final StepGridRecorder recorder = new StepGridRecorder();
+        solverConf.addListeners(recorder);
+        try {
+            while (data.hasNext()) {
+                model.output(data.next().getFeatures());
+            }
+        } finally {
+            solverConf.clearListeners(recorder);
+        }
+
+        final double[] normalizedGrid = recorder.getFinestGrid();
+        final double tStart = forwardConf.getTime().getDouble(0);
+        final double tEnd = forwardConf.getTime().getDouble(1);
+        timeGrid = Arrays.stream(normalizedGrid).map(frac -> tStart + frac * (tEnd - tStart)).toArray();
+
+        log.info("Recorded " + (timeGrid.length - 1) + " steps for vertex " + odeVertexName);
+        return timeGrid.clone();
+    }
+
+    /**
+     * Unroll using the time grid from {@link #calibrate(MultiDataSetIterator)}
+     *
+     * @return an unrolled {@link ComputationGraph} with the same parameters as the original model
+     */
+    public ComputationGraph unroll() {
+        if (timeGrid == null) {
+            throw new IllegalStateException("Must calibrate before unrolling!");
+        }
+        return unroll(timeGrid);
+    }
+
+    /**
+     * Unroll using the given time grid. The {@link OdeVertex} is replaced by vertices which perform one Runge-Kutta
+     * step between each consecutive pair of times in the grid. The last of these vertices has the same name as the
+     * {@code OdeVertex} so that all other vertices are unchanged.
+     *
+     * @param timeGrid Times to take steps between. First and last element must be start and end times of the ODE.
+     * @return an unrolled {@link ComputationGraph} with the same parameters as the original model
+     */
+    public ComputationGraph unroll(double[] timeGrid) {
+        if (timeGrid.length < 2) {
+            throw new IllegalArgumentException("Time grid must have at least two elements! Was: " + Arrays.toString(timeGrid));
+        }
+
+        final ComputationGraphConfiguration conf = model.getConfiguration().clone();
+        conf.getVertices().remove(odeVertexName);
+        String state = conf.getVertexInputs().remove(odeVertexName).get(0);
+
+        final Map<String, String> copyToInner = new HashMap<>();
+        final int nrofStages = nrofStages();
+        for (int step = 0; step < timeGrid.length - 1; step++) {
+            final double h = timeGrid[step + 1] - timeGrid[step];
+            final String stepName = odeVertexName + "_step" + step;
+
+            final List<String> stageOutputs = new ArrayList<>();
+            for (int stage = 0; stage < nrofStages; stage++) {
+                final String stageName = stepName + "_k" + stage;
+                final String stageInput = stage == 0 ?
+                        state :
+                        addLinearCombination(conf, stageName + "_in", state, stageOutputs, tableu.a[stage - 1], h);
+                stageOutputs.add(addFunction(conf, stageName, stageInput, copyToInner));
+            }
+
+            final String nextState = step == timeGrid.length - 2 ? odeVertexName : stepName;
+            state = addLinearCombination(conf, nextState, state, stageOutputs, tableu.b, h);
+        }
+
+        conf.setTopologicalOrder(null);
+        conf.setTopologicalOrderStr(null);
+        conf.validate();
+
+        final ComputationGraph unrolled = new ComputationGraph(conf);
+        unrolled.init();
+        copyParameters(unrolled, copyToInner);
+        return unrolled;
+    }
+
+    /**
+     * Compare the output of the original model with the output of the given unrolled model
+     * @param unrolled Unrolled model
+     * @param data Data to compare output for
+     * @return the {@link AccuracyGap} between the two models
+     */
+    public AccuracyGap accuracyGap(ComputationGraph unrolled, MultiDataSetIterator data) {
+        double maxAbsError = 0;
+        double sumAbsError = 0;
+        long nrofElements = 0;
+        while (data.hasNext()) {
+            final INDArray[] features = data.next().getFeatures();
+            final INDArray[] expected = model.output(features);
+            final INDArray[] actual = unrolled.output(features);
+            for (int i = 0; i < expected.length; i++) {
+                final INDArray absError = Transforms.abs(expected[i].sub(actual[i]));
+                maxAbsError = Math.max(maxAbsError, absError.maxNumber().doubleValue());
+                sumAbsError += absError.sumNumber().doubleValue();
+                nrofElements += absError.length();
+            }
+        }
+
+        final AccuracyGap gap = new AccuracyGap(maxAbsError, nrofElements == 0 ? 0 : sumAbsError / nrofElements);
+        log.info("Accuracy gap for unrolled vertex " + odeVertexName + ": " + gap);
+        return gap;
+    }
+
+    private int nrofStages() {
+        // Stages after the last non-zero weight are only used for error estimation
+        int nrofStages = (int) tableu.b.length();
+        while (nrofStages > 1 && tableu.b.getDouble(nrofStages - 1) == 0) {
+            nrofStages--;
+        }
+        return nrofStages;
+    }
+
+    private static String addLinearCombination(
+            ComputationGraphConfiguration conf,
+            String name,
+            String state,
+            List<String> stageOutputs,
+            INDArray coeffs,
+            double h) {
+        final List<String> toAdd = new ArrayList<>();
+        toAdd.add(state);
+        for (int i = 0; i < stageOutputs.size(); i++) {
+            final double coeff = coeffs.getDouble(i);
+            if (coeff != 0) {
+                final String scaledName = name + "_scale" + i;
+                addVertex(conf, scaledName, new ScaleVertex(h * coeff), stageOutputs.get(i));
+                toAdd.add(scaledName);
+            }
+        }
+        addVertex(conf, name, new ElementWiseVertex(ElementWiseVertex.Op.Add), toAdd.toArray(new String[0]));
+        return name;
+    }
+
+    private String addFunction(ComputationGraphConfiguration conf, String prefix, String input, Map<String, String> copyToInner) {
+        final ComputationGraphConfiguration innerConf = odeVertex.getConf();
+        final String innerInput = innerConf.getNetworkInputs().get(0);
+        final List<String> outputs = new ArrayList<>();
+        for (Map.Entry<String, GraphVertex> innerVertex : innerConf.getVertices().entrySet()) {
+            final String innerName = innerVertex.getKey();
+            final String name = prefix + "_" + innerName;
+            final GraphVertex vertex = innerVertex.getValue().clone();
+            if (vertex instanceof LayerVertex) {
+                ((LayerVertex) vertex).getLayerConf().getLayer().setLayerName(name);
+            }
+
+            final String[] inputs = innerConf.getVertexInputs().get(innerName).stream()
+                    .map(innerInputName -> innerInputName.equals(innerInput) ? input : prefix + "_" + innerInputName)
+                    .toArray(String[]::new);
+            addVertex(conf, name, vertex, inputs);
+            copyToInner.put(name, innerName);
+
+            if (innerConf.getVertexInputs().values().stream().noneMatch(vertexInputs -> vertexInputs.contains(innerName))) {
+                outputs.add(name);
+            }
+        }
+
+        if (outputs.size() == 1) {
+            return outputs.get(0);
+        }
+        final String mergeName = prefix + "_merge";
+        addVertex(conf, mergeName, new MergeVertex(), outputs.toArray(new String[0]));
+        return mergeName;
+    }
+
+    private static void addVertex(ComputationGraphConfiguration conf, String name, GraphVertex vertex, String... inputs) {
+        conf.getVertices().put(name, vertex);
+        conf.getVertexInputs().put(name, new ArrayList<>(Arrays.asList(inputs)));
+    }
+
+    private void copyParameters(ComputationGraph unrolled, Map<String, String> copyToInner) {
+        final ParamNameMapping mapping = odeVertex.getGradientViewFactory() == null ?
+                new GradientViewSelectionFromBlacklisted().paramNameMapping() :
+                odeVertex.getGradientViewFactory().paramNameMapping();
+        final Map<String, INDArray> odeParams = model.getVertex(odeVertexName).paramTable(false);
+
+        for (org.deeplearning4j.nn.graph.vertex.GraphVertex vertex : unrolled.getVertices()) {
+            final Map<String, INDArray> params = vertex.paramTable(false);
+            if (params == null) {
+                continue;
+            }
+
+            final String name = vertex.getVertexName();
+            for (Map.Entry<String, INDArray> param : params.entrySet()) {
+                final INDArray source = copyToInner.containsKey(name) ?
+                        odeParams.get(mapping.map(copyToInner.get(name), param.getKey())) :
+                        model.getVertex(name).paramTable(false).get(param.getKey());
+                param.getValue().assign(source);
+            }
+        }
+    }
+}
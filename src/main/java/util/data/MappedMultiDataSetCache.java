@@ -0,0 +1,258 @@
+package util.data;
+
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import util.random.SeededRandomFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cache of precomputed {@link MultiDataSet}s (typically one per minibatch) stored in a memory mapped file.
+ * <br><br>
+ * Batches are generated in parallel where each batch is generated from its own seed which is split from a base seed
+ * using {@link SeededRandomFactory#splitSeed(long, long)}. The content of the cache is therefore the same regardless
+ * of how many threads are used to generate it.
+ * <br><br>
+ * Note that arrays in ND4J use native memory which can not wrap a mapped file, so each array is copied once from the
+ * mapped file when the batch is read.
+ *
+ * @author Christian Skarby
+ */
+public class MappedMultiDataSetCache implements Closeable {
+
+    private static final int MAGIC = 0x4d4d4453; // "MMDS"
+    private static final int VERSION = 1;
+    private static final byte FLOAT = 0;
+    private static final byte DOUBLE = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] batches;
+
+    /**
+     * Generates one batch from a seed. Must be thread safe.
+     */
+    public interface BatchGenerator {
+
+        /**
+         * Generate the batch with the given index
+         * @param index Index of batch
+         * @param seed Random seed to use for the batch
+         * @return the generated batch
+         */
+        MultiDataSet generate(int index, long seed);
+    }
+
+    private MappedMultiDataSetCache(FileChannel channel, MappedByteBuffer[] batches) {
+        this.channel = channel;
+        this.batches = batches;
+    }
+
+    /**
+     * Generate batches in parallel and write them to the given file
+     * @param file File to write the cache to. Any existing file will be replaced
+     * @param nrofBatches Number of batches to generate
+     * @param baseSeed Seed to split per batch seeds from
+     * @param generator Generates batches
+     * @return a {@link MappedMultiDataSetCache} for the file
+     * @throws IOException if writing to the file failed
+     */
+    public static MappedMultiDataSetCache materialize(Path file, int nrofBatches, long baseSeed, BatchGenerator generator) throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer header = newBuffer(3 * Integer.BYTES + (nrofBatches + 1) * Long.BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(nrofBatches);
+            out.position(header.capacity());
+
+            // Generate in chunks so that not all batches need to be kept in memory at once
+            final int chunkSize = 4 * Runtime.getRuntime().availableProcessors();
+            header.putLong(out.position());
+            for (int chunkStart = 0; chunkStart < nrofBatches; chunkStart += chunkSize) {
+                final List<ByteBuffer> encoded = IntStream.range(chunkStart, Math.min(nrofBatches, chunkStart + chunkSize))
+                        .parallel()
+                        .mapToObj(index -> encode(generator.generate(index, SeededRandomFactory.splitSeed(baseSeed, index))))
+                        .collect(Collectors.toList());
+                for (ByteBuffer batch : encoded) {
+                    while (batch.hasRemaining()) {
+                        out.write(batch);
+                    }
+                    header.putLong(out.position());
+                }
+            }
+
+            header.flip();
+            out.position(0);
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        return open(file);
+    }
+
+    /**
+     * Open an existing cache
+     * @param file File with cache created by {@link #materialize(Path, int, long, BatchGenerator)}
+     * @return a {@link MappedMultiDataSetCache} for the file
+     * @throws IOException if reading the file failed
+     */
+    public static MappedMultiDataSetCache open(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final ByteBuffer meta = newBuffer(3 * Integer.BYTES);
+            channel.read(meta, 0);
+            meta.flip();
+            if (meta.getInt() != MAGIC || meta.getInt() != VERSION) {
+                throw new IOException("Not a cache file: " + file);
+            }
+            final int nrofBatches = meta.getInt();
+
+            final ByteBuffer offsets = newBuffer((nrofBatches + 1) * Long.BYTES);
+            channel.read(offsets, meta.capacity());
+            offsets.flip();
+
+            // One mapping per batch so that the total size of the file may exceed what a single mapping can hold
+            final MappedByteBuffer[] batches = new MappedByteBuffer[nrofBatches];
+            long start = offsets.getLong();
+            for (int i = 0; i < nrofBatches; i++) {
+                final long end = offsets.getLong();
+                batches[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                batches[i].order(ByteOrder.LITTLE_ENDIAN);
+                start = end;
+            }
+            return new MappedMultiDataSetCache(channel, batches);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of batches in the cache
+     * @return the number of batches
+     */
+    public int nrofBatches() {
+        return batches.length;
+    }
+
+    /**
+     * Read the batch with the given index
+     * @param index Index of batch
+     * @return The batch
+     */
+    public MultiDataSet get(int index) {
+        final ByteBuffer batch = batches[index].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final INDArray[] features = new INDArray[batch.getInt()];
+        final INDArray[] labels = new INDArray[batch.getInt()];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = decode(batch);
+        }
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = decode(batch);
+        }
+        return new org.nd4j.linalg.dataset.MultiDataSet(features, labels);
+    }
+
+    /**
+     * Returns a new iterator over all batches in the cache
+     * @return a new {@link MappedMultiDataSetIterator}
+     */
+    public MappedMultiDataSetIterator iterator() {
+        return new MappedMultiDataSetIterator(this);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static ByteBuffer encode(MultiDataSet mds) {
+        final INDArray[] features = mds.getFeatures();
+        final INDArray[] labels = mds.getLabels() == null ? new INDArray[0] : mds.getLabels();
+
+        long nrofBytes = 2 * Integer.BYTES;
+        for (INDArray array : features) {
+            nrofBytes += encodedSize(array);
+        }
+        for (INDArray array : labels) {
+            nrofBytes += encodedSize(array);
+        }
+        if (nrofBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Batch too large: " + nrofBytes + " bytes!");
+        }
+
+        final ByteBuffer buffer = newBuffer((int) nrofBytes);
+        buffer.putInt(features.length).putInt(labels.length);
+        for (INDArray array : features) {
+            encode(array, buffer);
+        }
+        for (INDArray array : labels) {
+            encode(array, buffer);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long encodedSize(INDArray array) {
+        return 1 + Integer.BYTES + array.rank() * Long.BYTES + array.length() * elementSize(array);
+    }
+
+    private static int elementSize(INDArray array) {
+        return array.data().dataType() == DataBuffer.Type.DOUBLE ? Double.BYTES : Float.BYTES;
+    }
+
+    private static void encode(INDArray array, ByteBuffer buffer) {
+        final boolean isDouble = array.data().dataType() == DataBuffer.Type.DOUBLE;
+        buffer.put(isDouble ? DOUBLE : FLOAT);
+        buffer.putInt(array.rank());
+        for (long dim : array.shape()) {
+            buffer.putLong(dim);
+        }
+        final INDArray contiguous = array.dup('c');
+        if (isDouble) {
+            buffer.asDoubleBuffer().put(contiguous.data().asDouble());
+            buffer.position(buffer.position() + (int) array.length() * Double.BYTES);
+        } else {
+            buffer.asFloatBuffer().put(contiguous.data().asFloat());
+            buffer.position(buffer.position() + (int) array.length() * Float.BYTES);
+        }
+    }
+
+    private static INDArray decode(ByteBuffer buffer) {
+        final boolean isDouble = buffer.get() == DOUBLE;
+        final long[] shape = new long[buffer.getInt()];
+        long length = 1;
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = buffer.getLong();
+            length *= shape[i];
+        }
+
+        if (isDouble) {
+            final double[] data = new double[(int) length];
+            buffer.asDoubleBuffer().get(data);
+            buffer.position(buffer.position() + data.length * Double.BYTES);
+            return Nd4j.create(data, shape, 'c');
+        }
+        final float[] data = new float[(int) length];
+        buffer.asFloatBuffer().get(data);
+        buffer.position(buffer.position() + data.length * Float.BYTES);
+        return Nd4j.create(data, shape, 'c');
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,81 @@
+package util.data;
+
+import org.deeplearning4j.datasets.iterator.AsyncMultiDataSetIterator;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+
+import java.util.NoSuchElementException;
+
+/**
+ * {@link MultiDataSetIterator} over the batches in a {@link MappedMultiDataSetCache}. Batches are returned in the
+ * order they were generated. Use {@link #prefetching(int)} to read batches in a background thread.
+ *
+ * @author Christian Skarby
+ */
+public class MappedMultiDataSetIterator implements MultiDataSetIterator {
+
+    private final MappedMultiDataSetCache cache;
+    private int cursor = 0;
+    private MultiDataSetPreProcessor preProcessor;
+
+    public MappedMultiDataSetIterator(MappedMultiDataSetCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns an iterator which reads batches from this iterator in a background thread
+     * @param queueSize Number of batches to prefetch
+     * @return a new prefetching {@link MultiDataSetIterator}
+     */
+    public MultiDataSetIterator prefetching(int queueSize) {
+        return new AsyncMultiDataSetIterator(this, queueSize);
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        throw new UnsupportedOperationException("Batch size is determined when cache is created!");
+    }
+
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < cache.nrofBatches();
+    }
+
+    @Override
+    public MultiDataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more batches!");
+        }
+        final MultiDataSet mds = cache.get(cursor++);
+        if (preProcessor != null) {
+            preProcessor.preProcess(mds);
+        }
+        return mds;
+    }
+}
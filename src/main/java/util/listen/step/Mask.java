@@ -1,6 +1,7 @@
 package util.listen.step;
 
 import ode.solve.api.StepListener;
+import ode.solve.conf.SolverConfig;
 import ode.solve.impl.util.SolverState;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
@@ -53,6 +54,12 @@ public class Mask implements StepListener {
         this.maskFunction = maskFunction;
     }
 
+    @Override
+    public StepListener forSolver() {
+        // Mask state is per solve
+        return new Mask(listener.forSolver(), maskFunction);
+    }
+
     @Override
     public void begin(INDArray t, INDArray y0) {
         mask = maskFunction.shallMask(t, y0);
@@ -68,10 +75,29 @@ public class Mask implements StepListener {
         }
     }
 
+    @Override
+    public void rejected(SolverState solverState, INDArray step, INDArray error) {
+        if(mask) {
+            listener.rejected(solverState, step, error);
+        }
+    }
+
     @Override
     public void done() {
         if(mask) {
             listener.done();
         }
     }
+
+    @Override
+    public boolean shouldTerminate() {
+        return mask && listener.shouldTerminate();
+    }
+
+    @Override
+    public void budgetExceeded(SolverState solverState, SolverConfig.BudgetFallback fallback) {
+        if(mask) {
+            listener.budgetExceeded(solverState, fallback);
+        }
+    }
 }
@@ -7,7 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Counts the number of steps taken
+ * Counts the number of steps taken. Thread safe so that the count can be aggregated over solvers running concurrently.
  *
  * @author Christian Skarby
  */
@@ -43,17 +43,17 @@ public class StepCounter implements StepListener {
     }
 
     @Override
-    public void begin(INDArray t, INDArray y0) {
+    public synchronized void begin(INDArray t, INDArray y0) {
         nrofSolves++;
     }
 
     @Override
-    public void step(SolverState solverState, INDArray step, INDArray error) {
+    public synchronized void step(SolverState solverState, INDArray step, INDArray error) {
         nrofSteps++;
     }
 
     @Override
-    public void done() {
+    public synchronized void done() {
         if(nrofSolves == nrToAccum) {
             consumer.accept(nrofSteps, nrofSolves);
             nrofSolves = 0;
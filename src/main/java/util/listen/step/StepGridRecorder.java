@@ -0,0 +1,85 @@
+package util.listen.step;
+
+import ode.solve.api.StepListener;
+import ode.solve.impl.util.SolverState;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the time of each accepted step of a solver. Times are normalized so that start time is 0 and end time is 1
+ * which means that grids from solves over different time intervals can be compared. Solves may be done from several
+ * threads at the same time.
+ *
+ * @author Christian Skarby
+ */
+public class StepGridRecorder implements StepListener {
+
+    private final ThreadLocal<Solve> current = new ThreadLocal<>();
+    private final List<double[]> grids = Collections.synchronizedList(new ArrayList<>());
+
+    private static class Solve {
+        private final double tStart;
+        private final double tEnd;
+        private final List<Double> grid = new ArrayList<>();
+
+        private Solve(double tStart, double tEnd) {
+            this.tStart = tStart;
+            this.tEnd = tEnd;
+            grid.add(0d);
+        }
+
+        private void add(double time) {
+            grid.add((time - tStart) / (tEnd - tStart));
+        }
+
+        private double[] toArray() {
+            return grid.stream().mapToDouble(Double::doubleValue).toArray();
+        }
+    }
+
+    @Override
+    public void begin(INDArray t, INDArray y0) {
+        current.set(new Solve(t.getDouble(0), t.getDouble(t.length() - 1)));
+    }
+
+    @Override
+    public void step(SolverState solverState, INDArray step, INDArray error) {
+        current.get().add(solverState.time().getDouble(0));
+    }
+
+    @Override
+    public void done() {
+        grids.add(current.get().toArray());
+        current.remove();
+    }
+
+    /**
+     * Returns all recorded grids
+     * @return a list with one normalized grid per solve
+     */
+    public List<double[]> getGrids() {
+        synchronized (grids) {
+            return new ArrayList<>(grids);
+        }
+    }
+
+    /**
+     * Returns the grid with the largest number of steps out of all recorded grids
+     * @return a normalized grid. First element is 0 and last element is 1
+     */
+    public double[] getFinestGrid() {
+        return getGrids().stream()
+                .max((g1, g2) -> Integer.compare(g1.length, g2.length))
+                .orElseThrow(() -> new IllegalStateException("No solves recorded!"));
+    }
+
+    /**
+     * Clear all recorded grids
+     */
+    public void clear() {
+        grids.clear();
+    }
+}
@@ -0,0 +1,162 @@
+package util.listen.step;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads files written by a {@link StepTraceRecorder}. Can export records as CSV and summarize them per phase, where a
+ * phase is the combination of recorder id and direction of the solve (e.g. forward pass or backward pass of a given
+ * vertex).
+ *
+ * @author Christian Skarby
+ */
+public class StepTraceReader {
+
+    private final List<Record> records;
+
+    /**
+     * One recorded step
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Record {
+        private final long timestampNanos;
+        private final double time;
+        private final double step;
+        private final double error;
+        private final int attempt;
+        private final int solve;
+        private final int id;
+        private final boolean accepted;
+        private final int direction;
+    }
+
+    private StepTraceReader(List<Record> records) {
+        this.records = records;
+    }
+
+    /**
+     * Read all records in the given file
+     * @param file File written by a {@link StepTraceRecorder}
+     * @return a new {@link StepTraceReader}
+     * @throws IOException if the file could not be read
+     */
+    public static StepTraceReader read(Path file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != StepTraceRecorder.MAGIC || buffer.getInt(4) != StepTraceRecorder.VERSION) {
+            throw new IOException("Not a step trace file: " + file);
+        }
+        final int recordBytes = buffer.getInt(8);
+        final int capacity = buffer.getInt(12);
+        final long writeIndex = buffer.getLong(StepTraceRecorder.WRITE_INDEX_POS);
+
+        // Oldest records have been overwritten if more records than capacity have been written
+        final List<Record> records = new ArrayList<>();
+        for (long index = Math.max(0, writeIndex - capacity); index < writeIndex; index++) {
+            final int pos = StepTraceRecorder.HEADER_BYTES + (int) (index % capacity) * recordBytes;
+            records.add(new Record(
+                    buffer.getLong(pos),
+                    buffer.getDouble(pos + 8),
+                    buffer.getDouble(pos + 16),
+                    buffer.getDouble(pos + 24),
+                    buffer.getInt(pos + 32),
+                    buffer.getInt(pos + 36),
+                    buffer.getInt(pos + 40),
+                    buffer.get(pos + 44) == 1,
+                    buffer.get(pos + 45)));
+        }
+        return new StepTraceReader(records);
+    }
+
+    /**
+     * Returns all records, oldest first
+     * @return all records
+     */
+    public List<Record> getRecords() {
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Write all records as CSV with a header row
+     * @param writer Writer to write to
+     */
+    public void writeCsv(Writer writer) {
+        final PrintWriter out = new PrintWriter(writer);
+        out.println("timestampNanos,time,step,error,attempt,solve,id,accepted,direction");
+        for (Record record : records) {
+            out.println(record.timestampNanos + "," + record.time + "," + record.step + "," + record.error + ","
+                    + record.attempt + "," + record.solve + "," + record.id + "," + record.accepted + "," + record.direction);
+        }
+        out.flush();
+    }
+
+    /**
+     * Create a summary with number of steps, acceptance rate, the solves with the most attempted steps and a histogram
+     * of the decade of the step sizes for each phase.
+     * @return summary as a string
+     */
+    public String summary() {
+        final Map<String, List<Record>> phases = new TreeMap<>();
+        for (Record record : records) {
+            phases.computeIfAbsent("id " + record.id + (record.direction > 0 ? " forward" : " backward"), key -> new ArrayList<>()).add(record);
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<Record>> phase : phases.entrySet()) {
+            final List<Record> phaseRecords = phase.getValue();
+            final long nrofAccepted = phaseRecords.stream().filter(Record::isAccepted).count();
+
+            final Map<Integer, Integer> attemptsPerSolve = new TreeMap<>();
+            final Map<Integer, Integer> histogram = new TreeMap<>();
+            for (Record record : phaseRecords) {
+                attemptsPerSolve.merge(record.solve, 1, Integer::sum);
+                histogram.merge((int) Math.floor(Math.log10(Math.abs(record.step))), 1, Integer::sum);
+            }
+
+            sb.append(phase.getKey()).append(": ")
+                    .append(phaseRecords.size()).append(" steps in ").append(attemptsPerSolve.size()).append(" solves, ")
+                    .append(String.format("%.1f%%", 100d * nrofAccepted / phaseRecords.size())).append(" accepted\n");
+
+            sb.append("  most steps:");
+            attemptsPerSolve.entrySet().stream()
+                    .sorted((e1, e2) -> Integer.compare(e2.getValue(), e1.getValue()))
+                    .limit(5)
+                    .forEach(entry -> sb.append(" solve ").append(entry.getKey()).append(" (").append(entry.getValue()).append(")"));
+            sb.append("\n");
+
+            for (Map.Entry<Integer, Integer> bin : histogram.entrySet()) {
+                sb.append(String.format("  |h| in [1e%d, 1e%d): %d%n", bin.getKey(), bin.getKey() + 1, bin.getValue()));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Print summary of a step trace file and optionally export it as CSV
+     * @param args Path to step trace file and optionally path to CSV file
+     * @throws IOException if reading or writing failed
+     */
+    public static void main(String[] args) throws IOException {
+        final StepTraceReader reader = read(Paths.get(args[0]));
+        System.out.println(reader.summary());
+        if (args.length > 1) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(args[1]))) {
+                reader.writeCsv(writer);
+            }
+        }
+    }
+}
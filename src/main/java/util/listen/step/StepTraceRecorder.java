@@ -0,0 +1,161 @@
+package util.listen.step;
+
+import ode.solve.api.StepListener;
+import ode.solve.impl.util.SolverState;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every step (accepted and rejected) taken by a solver as fixed size binary records in a memory mapped ring
+ * file. When the file is full the oldest records are overwritten. Use {@link StepTraceReader} to read the file, e.g. to
+ * find the few solves which take an unreasonable number of steps.
+ * <br><br>
+ * Each record contains a monotonic timestamp in nanoseconds (from {@link System#nanoTime()}, i.e. only meaningful
+ * relative to other records), time of the solver state (i.e. end of accepted steps and start of rejected steps), step
+ * size, estimated error, whether the step was accepted, the number of attempted steps in the solve, the direction of
+ * the solve, the index of the solve and an id of the recorder, e.g. to tell which vertex the solver belongs to. No
+ * memory is allocated when recording steps.
+ * <br><br>
+ * Concurrently running solvers (e.g. ensembles or shards) shall be given the listener from {@link #forSolver()} which
+ * keeps the counters of each solve separate. All such listeners write to the same file where each record gets its own
+ * slot through an atomic write index.
+ *
+ * @author Christian Skarby
+ */
+public class StepTraceRecorder implements StepListener, Closeable {
+
+    static final int MAGIC = 0x53545243; // "STRC"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 48;
+    static final int WRITE_INDEX_POS = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int id;
+
+    private final AtomicLong writeIndex = new AtomicLong(0);
+    private final AtomicLong publishedIndex = new AtomicLong(0);
+    private final AtomicInteger nrofSolves = new AtomicInteger(0);
+    private final PerSolver direct = new PerSolver();
+
+    /**
+     * Create a new recorder
+     * @param file File to record to. Any existing file will be overwritten
+     * @param capacity Maximum number of records in the file
+     * @param id Id to write in each record, e.g. to tell which vertex the solver belongs to
+     * @throws IOException if the file could not be created
+     */
+    public StepTraceRecorder(Path file, int capacity, int id) throws IOException {
+        this.capacity = capacity;
+        this.id = id;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_BYTES);
+        buffer.putInt(12, capacity);
+        buffer.putLong(WRITE_INDEX_POS, 0);
+    }
+
+    @Override
+    public synchronized void begin(INDArray t, INDArray y0) {
+        direct.begin(t, y0);
+    }
+
+    @Override
+    public synchronized void step(SolverState solverState, INDArray step, INDArray error) {
+        direct.step(solverState, step, error);
+    }
+
+    @Override
+    public synchronized void rejected(SolverState solverState, INDArray step, INDArray error) {
+        direct.rejected(solverState, step, error);
+    }
+
+    @Override
+    public void done() {
+        // Nothing to do
+    }
+
+    /**
+     * Returns a listener for one solver which records to the same file as this recorder
+     * @return a listener for one solver
+     */
+    @Override
+    public StepListener forSolver() {
+        return new PerSolver();
+    }
+
+    private void record(SolverState solverState, INDArray step, INDArray error, boolean accepted, int attempt, int solveIndex, byte direction) {
+        final long index = writeIndex.getAndIncrement();
+        final int pos = HEADER_BYTES + (int) (index % capacity) * RECORD_BYTES;
+        buffer.putLong(pos, System.nanoTime());
+        buffer.putDouble(pos + 8, solverState.time().getDouble(0));
+        buffer.putDouble(pos + 16, step.getDouble(0));
+        buffer.putDouble(pos + 24, error == null ? Double.NaN : error.getDouble(0));
+        buffer.putInt(pos + 32, attempt);
+        buffer.putInt(pos + 36, solveIndex);
+        buffer.putInt(pos + 40, id);
+        buffer.put(pos + 44, (byte) (accepted ? 1 : 0));
+        buffer.put(pos + 45, direction);
+
+        // Publish in order and after the record is written so that a reader never sees an index to a record which is
+        // not yet written. Other writers only need to wait for the few puts above.
+        while (publishedIndex.get() != index) {
+            Thread.yield();
+        }
+        buffer.putLong(WRITE_INDEX_POS, index + 1);
+        publishedIndex.set(index + 1);
+    }
+
+    /**
+     * Counters for the solves of one solver. Only accessed from the thread the solver currently runs in.
+     */
+    private final class PerSolver implements StepListener {
+
+        private int solveIndex = -1;
+        private int nrofAttempts = 0;
+        private byte direction = 1;
+
+        @Override
+        public void begin(INDArray t, INDArray y0) {
+            solveIndex = nrofSolves.getAndIncrement();
+            nrofAttempts = 0;
+            direction = (byte) (t.getDouble(1) >= t.getDouble(0) ? 1 : -1);
+        }
+
+        @Override
+        public void step(SolverState solverState, INDArray step, INDArray error) {
+            record(solverState, step, error, true, ++nrofAttempts, solveIndex, direction);
+        }
+
+        @Override
+        public void rejected(SolverState solverState, INDArray step, INDArray error) {
+            record(solverState, step, error, false, ++nrofAttempts, solveIndex, direction);
+        }
+
+        @Override
+        public void done() {
+            // Nothing to do
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
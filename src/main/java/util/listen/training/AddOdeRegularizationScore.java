@@ -0,0 +1,35 @@
+package util.listen.training;
+
+import ode.vertex.impl.OdeVertex;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+
+/**
+ * Adds the regularization score of all {@link OdeVertex OdeVertices} in a {@link ComputationGraph} to the score of the
+ * graph after each backward pass. Needed as dl4j only adds regularization from layers to the score.
+ * <br><br>
+ * The score is updated before {@link org.deeplearning4j.optimize.api.TrainingListener#iterationDone(Model, int, int)}
+ * so all listeners which report or watch the score see the total score.
+ *
+ * @author Christian Skarby
+ */
+public class AddOdeRegularizationScore extends BaseTrainingListener {
+
+    @Override
+    public void onBackwardPass(Model model) {
+        if (!(model instanceof ComputationGraph)) {
+            return;
+        }
+
+        final ComputationGraph graph = (ComputationGraph) model;
+        double regularizationScore = 0;
+        for (GraphVertex vertex : graph.getVertices()) {
+            if (vertex instanceof OdeVertex) {
+                regularizationScore += ((OdeVertex) vertex).regularizationScore();
+            }
+        }
+        graph.setScore(graph.score() + regularizationScore);
+    }
+}
@@ -0,0 +1,95 @@
+package util.listen.training;
+
+import ode.solve.conf.ToleranceHolder;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tightens solver tolerances when the average score of an epoch has not improved for a given number of epochs. Main
+ * use case is to start training with loose tolerances (i.e. few steps) and only spend compute on accurate solutions
+ * once training no longer makes progress with the inaccurate ones.
+ *
+ * @author Christian Skarby
+ */
+public class TightenToleranceOnPlateau extends BaseTrainingListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TightenToleranceOnPlateau.class);
+
+    private final List<ToleranceHolder> tolerances;
+    private final int patience;
+    private final double factor;
+    private final double minTolerance;
+    private final double minImprovement;
+
+    private double bestScore = Double.POSITIVE_INFINITY;
+    private int nrofEpochsWithoutImprovement = 0;
+    private double scoreSum = 0;
+    private int nrofIterations = 0;
+
+    /**
+     * Create a new listener which tightens tolerances by a factor of 10 after 2 epochs without improvement
+     * @param tolerances Tolerances to tighten
+     */
+    public TightenToleranceOnPlateau(ToleranceHolder... tolerances) {
+        this(2, 0.1, 1e-6, 0.01, tolerances);
+    }
+
+    /**
+     * Create a new listener
+     * @param patience Number of epochs without improvement before tightening
+     * @param factor Tolerances will be multiplied with this factor when tightened
+     * @param minTolerance Tolerances will not be tightened below this value
+     * @param minImprovement Minimum relative decrease of the average score for an epoch to count as an improvement
+     * @param tolerances Tolerances to tighten
+     */
+    public TightenToleranceOnPlateau(int patience, double factor, double minTolerance, double minImprovement, ToleranceHolder... tolerances) {
+        this.patience = patience;
+        this.factor = factor;
+        this.minTolerance = minTolerance;
+        this.minImprovement = minImprovement;
+        this.tolerances = Arrays.asList(tolerances);
+    }
+
+    @Override
+    public void iterationDone(Model model, int iteration, int epoch) {
+        scoreSum += model.score();
+        nrofIterations++;
+    }
+
+    @Override
+    public void onEpochEnd(Model model) {
+        if (nrofIterations == 0) {
+            return;
+        }
+
+        final double score = scoreSum / nrofIterations;
+        scoreSum = 0;
+        nrofIterations = 0;
+
+        if (Double.isInfinite(bestScore) || score < bestScore - Math.abs(bestScore) * minImprovement) {
+            bestScore = score;
+            nrofEpochsWithoutImprovement = 0;
+            return;
+        }
+
+        nrofEpochsWithoutImprovement++;
+        if (nrofEpochsWithoutImprovement >= patience) {
+            tighten();
+            nrofEpochsWithoutImprovement = 0;
+            bestScore = score;
+        }
+    }
+
+    private void tighten() {
+        for (ToleranceHolder holder : tolerances) {
+            holder.setAbsTol(Math.max(minTolerance, holder.getAbsTol() * factor));
+            holder.setRelTol(Math.max(minTolerance, holder.getRelTol() * factor));
+            log.info("Tightened tolerances to " + holder);
+        }
+    }
+}
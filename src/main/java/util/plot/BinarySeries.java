@@ -0,0 +1,152 @@
+package util.plot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Thread safe storage of the points in a series which is serialized to an append only binary file. Each point is stored
+ * as two little endian doubles (x, y). Adding a point is amortized O(1) and storing only writes the points which were
+ * added since the last time the series was stored.
+ * <br><br>
+ * Points are only appended to the backing arrays. Growing or clearing the series replaces the arrays instead of
+ * changing them, so a {@link Snapshot} can reference the arrays without copying them.
+ *
+ * @author Christian Skarby
+ */
+class BinarySeries {
+
+    private static final int POINT_BYTES = 2 * Double.BYTES;
+
+    private double[] x;
+    private double[] y;
+    private int size = 0;
+    private int nrofStored = 0;
+    private boolean rewrite = false;
+
+    BinarySeries() {
+        this(new double[16], new double[16], 0);
+    }
+
+    /**
+     * Points of the series at the time the snapshot was taken. Arrays are shared with the series and must not be
+     * changed. Only the first size elements are valid.
+     */
+    static final class Snapshot {
+        final double[] x;
+        final double[] y;
+        final int size;
+
+        private Snapshot(double[] x, double[] y, int size) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+    }
+
+    private BinarySeries(double[] x, double[] y, int size) {
+        this.x = x;
+        this.y = y;
+        this.size = size;
+    }
+
+    /**
+     * Read a series from file.
+     * @param file File to read from
+     * @return a new {@link BinarySeries} with all points in the file. Points are considered already stored.
+     * @throws IOException if reading failed
+     */
+    static BinarySeries restore(Path file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        // A partially written point at the end is ignored
+        final int size = buffer.remaining() / POINT_BYTES;
+        final double[] x = new double[Math.max(16, size)];
+        final double[] y = new double[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            x[i] = buffer.getDouble();
+            y[i] = buffer.getDouble();
+        }
+        final BinarySeries series = new BinarySeries(x, y, size);
+        series.nrofStored = size;
+        series.rewrite = buffer.hasRemaining();
+        return series;
+    }
+
+    /**
+     * Create a series from the given points. Points are considered not stored.
+     * @param xVals x values
+     * @param yVals y values
+     * @return a new {@link BinarySeries}
+     */
+    static BinarySeries of(List<? extends Number> xVals, List<? extends Number> yVals) {
+        final BinarySeries series = new BinarySeries();
+        series.addAll(xVals, yVals);
+        series.rewrite = true;
+        return series;
+    }
+
+    synchronized void add(double xVal, double yVal) {
+        if (size == x.length) {
+            x = Arrays.copyOf(x, 2 * size);
+            y = Arrays.copyOf(y, 2 * size);
+        }
+        x[size] = xVal;
+        y[size] = yVal;
+        size++;
+    }
+
+    synchronized void addAll(List<? extends Number> xVals, List<? extends Number> yVals) {
+        for (int i = 0; i < xVals.size(); i++) {
+            add(xVals.get(i).doubleValue(), yVals.get(i).doubleValue());
+        }
+    }
+
+    synchronized void clear() {
+        // Replace arrays as snapshots may still reference the old ones
+        x = new double[16];
+        y = new double[16];
+        size = 0;
+        nrofStored = 0;
+        rewrite = true;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns a snapshot of the points in the series. Does not copy the points.
+     * @return a {@link Snapshot} of the series
+     */
+    synchronized Snapshot snapshot() {
+        return new Snapshot(x, y, size);
+    }
+
+    /**
+     * Append all points which have not yet been stored to the given file
+     * @param file File to store to
+     * @throws IOException if writing failed
+     */
+    synchronized void store(Path file) throws IOException {
+        final StandardOpenOption mode = rewrite ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+        final int from = rewrite ? 0 : nrofStored;
+        final ByteBuffer buffer = ByteBuffer.allocate((size - from) * POINT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = from; i < size; i++) {
+            buffer.putDouble(x[i]).putDouble(y[i]);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        nrofStored = size;
+        rewrite = false;
+    }
+}
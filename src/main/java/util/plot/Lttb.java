@@ -0,0 +1,72 @@
+package util.plot;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a series for display, see
+ * https://skemman.is/bitstream/1946/15343/3/SS_MSthesis.pdf. Keeps the first and last points and selects one point per
+ * bucket in between such that the area of the triangle formed with the previously selected point and the average of
+ * the next bucket is maximized. Preserves the visual shape of the series much better than taking every n:th point.
+ *
+ * @author Christian Skarby
+ */
+final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Select indexes of points to display
+     * @param x x values
+     * @param y y values
+     * @param size Number of valid points in x and y
+     * @param threshold Maximum number of points to select
+     * @return Selected indexes in ascending order
+     */
+    static int[] downsample(double[] x, double[] y, int size, int threshold) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("Threshold must be at least 3! Was: " + threshold);
+        }
+        if (threshold >= size) {
+            final int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        final int[] selected = new int[threshold];
+        final double bucketSize = (size - 2) / (double) (threshold - 2);
+
+        int prev = 0;
+        selected[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average point of next bucket
+            final int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            final int nextEnd = Math.min(size, (int) Math.floor((bucket + 2) * bucketSize) + 1);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            final int nextLength = Math.max(1, nextEnd - nextStart);
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            final int start = (int) Math.floor(bucket * bucketSize) + 1;
+            final int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                final double area = Math.abs((x[prev] - avgX) * (y[i] - y[prev]) - (x[prev] - x[i]) * (avgY - y[prev]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            selected[bucket + 1] = maxIndex;
+            prev = maxIndex;
+        }
+        selected[threshold - 1] = size - 1;
+        return selected;
+    }
+}
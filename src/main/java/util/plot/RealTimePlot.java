@@ -1,16 +1,7 @@
-
 package util.plot;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.annotation.JsonTypeInfo;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import lombok.Data;
 import org.jetbrains.annotations.NotNull;
 import org.knowm.xchart.*;
 import org.knowm.xchart.style.Styler;
@@ -20,30 +11,44 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * Real time updatable plot with support for an arbitrary number of series. Can also serialize the plotted data and
- * recreate a plot from such data. Typically used for plot training/eval metrics for each iteration. Note: The amount
- * of data points per timeseries is limited to 5000 as a significant slowdown was observed for higher numbers. When 5000
- * points is reached, all even points will be removed. New points after this will be added as normal until the total hits
- * 5000 again.
+ * recreate a plot from such data. Typically used for plot training/eval metrics for each iteration.
+ * <br><br>
+ * Plotting a point only appends it to the series (amortized O(1)) and requests a redraw of the series. Redraws are
+ * done by a single renderer thread shared by all plots. Requests for a series which already has a pending redraw are
+ * coalesced with it so that there is at most one queued request per series. As a significant slowdown was observed for more than a few thousand
+ * points per series, the renderer downsamples series to at most {@value #MAX_DISPLAY_POINTS} points using
+ * Largest-Triangle-Three-Buckets. All points are kept and serialized though.
+ * <br><br>
+ * Series are serialized to append only binary files so that storing plot data only writes the points which were added
+ * since the last time the data was stored. Data serialized as json by previous versions is restored if no binary file
+ * exists.
  *
  * @author Christian Skärby
  */
 public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X, Y> {
 
+    private static final int MAX_DISPLAY_POINTS = 2000;
+
     private final String title;
     private final XYChart xyChart;
     private final SwingWrapper<XYChart> swingWrapper;
     private final String plotDir;
 
-    private final Map<String, DataXY<X, Y>> plotSeries = new HashMap<>();
+    private final Map<String, DataXY> plotSeries = new ConcurrentHashMap<>();
 
     /**
      * Factory for this class
@@ -62,116 +67,90 @@ public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X,
         }
     }
 
-    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, property = "@class")
-    @Data
-    private static class DataXY<X extends Number, Y extends Number> implements Serializable {
-
-        private static final long serialVersionUID = 7526471155622776891L;
-        private final String series;
-
-        private final List<X> xData;
-        private final List<Y> yData;
-
-        DataXY(String series) {
-            this(series, Collections.emptyList(), Collections.emptyList());
+    /**
+     * Single thread which renders all plots. Lazily started when the first redraw is requested.
+     */
+    private static class Renderer {
+
+        // Unbounded, but holds at most one request per series as requests are coalesced
+        private static final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+
+        static {
+            final Thread thread = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        queue.take().run();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, "RealTimePlotRenderer");
+            thread.setDaemon(true);
+            thread.start();
         }
 
-        DataXY(
-                @JsonProperty("series") String series,
-                @JsonProperty("xData") List<X> xData,
-                @JsonProperty("yData") List<Y> yData) {
-            this.series = series;
-            this.xData = new ArrayList<>(xData);
-            this.yData = new ArrayList<>(yData);
+        private static void offer(Runnable task) {
+            queue.offer(task);
         }
+    }
 
-        private void addPoint(X x, Y y, XYChart xyChart, SwingWrapper<XYChart> swingWrapper) {
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                xData.add(x);
-                yData.add(y);
-                if (xData.size() > 5000) {
-                    for (int i = 0; i < xData.size(); i += 2) {
-                        xData.remove(i);
-                        yData.remove(i);
-                    }
-                }
-                plotData(xyChart, swingWrapper);
-            });
-        }
+    private class DataXY {
 
-        private void addData(List<X> x, List<Y> y, XYChart xyChart, SwingWrapper<XYChart> swingWrapper) {
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                xData.addAll(x);
-                yData.addAll(y);
-                plotData(xyChart, swingWrapper);
-            });
+        private final String series;
+        private final BinarySeries data;
+        private final AtomicBoolean renderPending = new AtomicBoolean(false);
+
+        private DataXY(String series, BinarySeries data) {
+            this.series = series;
+            this.data = data;
         }
 
-        private void plotData(XYChart xyChart, SwingWrapper<XYChart> swingWrapper) {
-            if (!xyChart.getSeriesMap().containsKey(series)) {
-                xyChart.addSeries(series, new ArrayList<>(xData), new ArrayList<>(yData), null);
-            } else {
-                xyChart.updateXYSeries(series, new ArrayList<>(xData), new ArrayList<>(yData), null);
+        private void requestRender() {
+            if (renderPending.compareAndSet(false, true)) {
+                Renderer.offer(this::render);
             }
-            swingWrapper.repaintChart();
         }
 
-        private void createSeries(final XYChart xyChart, SwingWrapper<XYChart> swingWrapper) {
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                if (xData.size() == 0) {
-                    xyChart.addSeries(series, Collections.singletonList(0), Collections.singletonList(1));
-                } else {
-                    xyChart.addSeries(series, new ArrayList<>(xData), new ArrayList<>(yData));
-                }
+        private void render() {
+            // Reset before snapshot so that points added after the snapshot request a new render
+            renderPending.set(false);
+            final BinarySeries.Snapshot points = data.snapshot();
+            final List<Double> xDisplay = new ArrayList<>();
+            final List<Double> yDisplay = new ArrayList<>();
+            if (points.size == 0) {
+                // Chart does not allow empty series
+                xDisplay.add(0d);
+                yDisplay.add(1d);
+            }
+            for (int i : Lttb.downsample(points.x, points.y, points.size, MAX_DISPLAY_POINTS)) {
+                xDisplay.add(points.x[i]);
+                yDisplay.add(points.y[i]);
+            }
+            SwingUtilities.invokeLater(() -> {
+                xyChart.updateXYSeries(series, xDisplay, yDisplay, null);
                 swingWrapper.repaintChart();
             });
         }
 
-
-        private void clear() {
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                xData.clear();
-                yData.clear();
+        private void createSeries() {
+            SwingUtilities.invokeLater(() -> {
+                // Chart does not allow empty series. Point is replaced when series is rendered
+                xyChart.addSeries(series, Collections.singletonList(0), Collections.singletonList(1));
+                swingWrapper.repaintChart();
             });
-        }
-    }
-
-    private class DataXYDeserializer<X extends Number, Y extends Number> extends StdDeserializer<DataXY<X, Y>> {
-
-        public DataXYDeserializer() {
-            this(null);
-        }
-
-        public DataXYDeserializer(Class<?> vc) {
-            super(vc);
-        }
-
-        @Override
-        public DataXY<X, Y> deserialize(JsonParser jp, DeserializationContext ctxt)
-                throws IOException {
-            JsonNode node = jp.getCodec().readTree(jp);
-
-            final List<X> xData = new ArrayList<>();
-            for (JsonNode xNode : node.get("xdata")) {
-                xData.add((X) xNode.numberValue());
+            if (data.size() > 0) {
+                requestRender();
             }
-
-            final List<Y> yData = new ArrayList<>();
-            for (JsonNode xNode : node.get("ydata")) {
-                yData.add((Y) xNode.numberValue());
-            }
-            return new DataXY<>(node.get("series").asText(), xData, yData);
         }
-
     }
 
-    private static class Series implements Plot.Series {
+    private class Series implements Plot.Series {
 
-        private final XYChart chart;
         private final String label;
 
-        public Series(XYChart chart, String label) {
-            this.chart = chart;
+        public Series(String label) {
             this.label = label;
         }
 
@@ -198,7 +177,7 @@ public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X,
         }
 
         private XYSeries series() {
-            return chart.getSeriesMap().get(label);
+            return xyChart.getSeriesMap().get(label);
         }
     }
 
@@ -222,23 +201,26 @@ public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X,
 
     @Override
     public Series plotData(String label, X x, Y y) {
-        final DataXY<X, Y> data = getOrCreateSeries(label);
-        data.addPoint(x, y, xyChart, swingWrapper);
-        return new Series(xyChart, label);
+        final DataXY data = getOrCreateSeries(label);
+        data.data.add(x.doubleValue(), y.doubleValue());
+        data.requestRender();
+        return new Series(label);
     }
 
     @Override
     public Series plotData(String label, List<X> x, List<Y> y) {
-        final DataXY<X, Y> data = getOrCreateSeries(label);
-        data.addData(x, y, xyChart, swingWrapper);
-        return new Series(xyChart, label);
+        final DataXY data = getOrCreateSeries(label);
+        data.data.addAll(x, y);
+        data.requestRender();
+        return new Series(label);
     }
 
     @Override
     public Series clearData(String label) {
-        final DataXY<X, Y> data = getOrCreateSeries(label);
-        data.clear();
-        return new Series(xyChart, label);
+        final DataXY data = getOrCreateSeries(label);
+        data.data.clear();
+        data.requestRender();
+        return new Series(label);
     }
 
     @Override
@@ -251,16 +233,16 @@ public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X,
     @Override
     public Series createSeries(String label) {
         getOrCreateSeries(label);
-        return new Series(xyChart, label);
+        return new Series(label);
     }
 
     @NotNull
-    private DataXY<X, Y> getOrCreateSeries(String label) {
-        DataXY<X, Y> data = plotSeries.get(label);
+    private DataXY getOrCreateSeries(String label) {
+        DataXY data = plotSeries.get(label);
         if (data == null) {
-            data = restoreOrCreatePlotData(label);
+            data = new DataXY(label, restoreOrCreatePlotData(label));
             plotSeries.put(label, data);
-            data.createSeries(xyChart, swingWrapper);
+            data.createSeries();
         }
         return data;
     }
@@ -274,9 +256,9 @@ public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X,
 
     @Override
     public void storePlotData(String label) throws IOException {
-        DataXY<X, Y> data = plotSeries.get(label);
+        final DataXY data = plotSeries.get(label);
         if (data != null) {
-            new ObjectMapper().writeValue(new File(createFileName(label)), data);
+            data.data.store(createFilePath(label, ".bin"));
         }
     }
 
@@ -291,24 +273,34 @@ public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X,
         });
     }
 
-    private DataXY<X, Y> restoreOrCreatePlotData(String label) {
-        File dataFile = new File(createFileName(label));
-        if (dataFile.exists()) {
-            try {
-                final SimpleModule mod = new SimpleModule();
-                mod.addDeserializer(DataXY.class, new DataXYDeserializer<X, Y>());
-                final ObjectMapper mapper = new ObjectMapper().registerModule(mod);
-                return mapper.readValue(dataFile, new TypeReference<DataXY<X, Y>>() {
-                });
-            } catch (IOException e) {
-                e.printStackTrace();
+    private BinarySeries restoreOrCreatePlotData(String label) {
+        try {
+            final Path binaryFile = createFilePath(label, ".bin");
+            if (binaryFile.toFile().exists()) {
+                return BinarySeries.restore(binaryFile);
+            }
+
+            final Path jsonFile = createFilePath(label, ".plt");
+            if (jsonFile.toFile().exists()) {
+                final JsonNode node = new ObjectMapper().readTree(jsonFile.toFile());
+                final List<Number> xData = new ArrayList<>();
+                for (JsonNode xNode : node.get("xdata")) {
+                    xData.add(xNode.numberValue());
+                }
+                final List<Number> yData = new ArrayList<>();
+                for (JsonNode yNode : node.get("ydata")) {
+                    yData.add(yNode.numberValue());
+                }
+                return BinarySeries.of(xData, yData);
             }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return new DataXY<>(label);
+        return new BinarySeries();
     }
 
-    private String createFileName(String label) {
-        return plotDir + File.separator + title + "_" + label + ".plt";
+    private Path createFilePath(String label, String suffix) {
+        return Paths.get(plotDir + File.separator + title + "_" + label + suffix);
     }
 
     public static void main(String[] args) {
@@ -325,4 +317,4 @@ public class RealTimePlot<X extends Number, Y extends Number> implements Plot<X,
 //          }
 
     }
-}
\ No newline at end of file
+}
@@ -40,6 +40,20 @@ public class SeededRandomFactory extends RandomFactory {
         return super.getNewRandomInstance(base.nextLong());
     }
 
+    /**
+     * Derive a seed from a base seed and an index so that e.g. work done in parallel can use independent seeds
+     * which do not depend on which thread does the work (SplitMix64).
+     * @param seed base seed
+     * @param index index of derived seed
+     * @return a derived seed
+     */
+    public static long splitSeed(long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     /**
      * Set a base seed for all Nd4j random generators
      * @param seed base seed
@@ -0,0 +1,160 @@
+package util.save;
+
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Saves checkpoints of a {@link ComputationGraph} without stalling training for the whole serialization. Parameters
+ * and updater state are copied to a snapshot of the model which is then written to disk by a background thread.
+ * <br><br>
+ * Files are first written to a temporary file in the same directory which is then renamed so that a checkpoint is
+ * never partially written. When the same snapshot is saved to more than one file (e.g. the best and the last
+ * checkpoint), only the first file is written and the other files are hard links to it if the file system supports it.
+ * <br><br>
+ * Only one snapshot is kept, so a new checkpoint will wait for the previous one to be written. Exceptions from the
+ * background thread are thrown from the next call to {@link #save(ComputationGraph, File...)} or {@link #close()}.
+ *
+ * @author Christian Skarby
+ */
+public class AsyncCheckpointWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncCheckpointWriter.class);
+
+    private final ExecutorService executor;
+    private ComputationGraph snapshot;
+    private Future<?> pending;
+
+    public AsyncCheckpointWriter() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "CheckpointWriter");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Create a new writer
+     * @param executor Executor which writes the checkpoints. Will be shut down when this writer is closed
+     */
+    public AsyncCheckpointWriter(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Snapshot the given model and write it to the given files in the background.
+     * @param model Model to save
+     * @param files Files to save the model to
+     * @throws IOException if writing the previous checkpoint failed
+     */
+    public void save(ComputationGraph model, File... files) throws IOException {
+        if (files.length == 0) {
+            return;
+        }
+        awaitPending();
+        takeSnapshot(model);
+        pending = executor.submit(() -> {
+            write(snapshot, files);
+            return null;
+        });
+    }
+
+    /**
+     * Wait until all checkpoints have been written
+     * @throws IOException if writing a checkpoint failed
+     */
+    public void flush() throws IOException {
+        awaitPending();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitPending();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void takeSnapshot(ComputationGraph model) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            if (snapshot == null) {
+                // Buffers for parameters and updater state are allocated once and reused for all checkpoints
+                snapshot = model.clone();
+            } else {
+                snapshot.params().assign(model.params());
+                final ComputationGraphUpdater updater = model.getUpdater(false);
+                if (updater != null && updater.getStateViewArray() != null) {
+                    snapshot.getUpdater().getStateViewArray().assign(updater.getStateViewArray());
+                }
+            }
+        }
+        snapshot.getConfiguration().setIterationCount(model.getConfiguration().getIterationCount());
+        snapshot.getConfiguration().setEpochCount(model.getConfiguration().getEpochCount());
+    }
+
+    private static void write(ComputationGraph snapshot, File... files) throws IOException {
+        final Path first = files[0].toPath();
+        final Path tmp = tempFileFor(first);
+        ModelSerializer.writeModel(snapshot, tmp.toFile(), true);
+
+        for (int i = 1; i < files.length; i++) {
+            final Path link = tempFileFor(files[i].toPath());
+            try {
+                Files.createLink(link, tmp);
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("Could not create link to " + tmp + ". Copy file instead. Exception: " + e.getMessage());
+                Files.copy(tmp, link, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moveAtomic(link, files[i].toPath());
+        }
+        moveAtomic(tmp, first);
+    }
+
+    private static Path tempFileFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    private static void moveAtomic(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void awaitPending() throws IOException {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for checkpoint!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to write checkpoint!", e.getCause());
+        } finally {
+            pending = null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package examples.anode;
 
 import com.beust.jcommander.JCommander;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
@@ -9,6 +10,9 @@ import org.nd4j.linalg.indexing.conditions.GreaterThan;
 import org.nd4j.linalg.indexing.conditions.LessThan;
 import org.nd4j.linalg.primitives.Pair;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -70,6 +74,52 @@ public class AnodeToyDataSetFactoryTest {
         }
     }
 
+    /**
+     * Test that training batches read from a data set cache are generated independently and reproducibly from the
+     * configured seed
+     */
+    @Test
+    public void datasetCache() throws IOException {
+        final Path baseDir = Paths.get("src", "test", "resources", "AnodeToyDataSetFactoryTest");
+        try {
+            baseDir.toFile().mkdirs();
+            final List<DataSet> first = readCachedBatches(baseDir.resolve("first.bin"), "666");
+            final List<DataSet> second = readCachedBatches(baseDir.resolve("second.bin"), "666");
+            final List<DataSet> other = readCachedBatches(baseDir.resolve("other.bin"), "667");
+
+            assertEquals("Incorrect number of batches!", 4, first.size());
+            for (int i = 0; i < first.size(); i++) {
+                assertEquals("Incorrect batch size!", 300, first.get(i).numExamples());
+                assertEquals("Incorrect max label!", 1d, first.get(i).getLabels().maxNumber().doubleValue(), 1e-10);
+                assertEquals("Incorrect min label!", -1d, first.get(i).getLabels().minNumber().doubleValue(), 1e-10);
+                assertEquals("Batches from same seed shall be equal!", first.get(i), second.get(i));
+                assertNotEquals("Batches from different seeds shall not be equal!", first.get(i), other.get(i));
+                if (i > 0) {
+                    assertNotEquals("Batches shall not be equal!", first.get(i - 1), first.get(i));
+                }
+            }
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    private static List<DataSet> readCachedBatches(Path cacheFile, String seed) throws IOException {
+        final AnodeToyDataSetFactory factory = new AnodeToyDataSetFactory();
+        JCommander.newBuilder()
+                .addObject(factory)
+                .build().parse("-trainBatchSize", "300", "-nrofExamples", "1000", "-dataSeed", seed,
+                "-datasetCache", cacheFile.toString());
+
+        final List<DataSet> batches = new ArrayList<>();
+        try (AnodeToyDataSetFactory.DataSetIters iters = factory.create()) {
+            while (iters.getTrain().hasNext()) {
+                // Copy as the prefetching iterator reuses the memory of returned batches
+                batches.add(iters.getTrain().next().copy());
+            }
+        }
+        return batches;
+    }
+
     private static DataSet createDataSet(String... args) {
         final List<String> allArgs = new ArrayList<>(Arrays.asList(args));
         allArgs.add("-trainBatchSize");
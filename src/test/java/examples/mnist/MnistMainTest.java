@@ -10,12 +10,18 @@ import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIteratorFactory;
 import org.nd4j.linalg.factory.Nd4j;
 
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Set;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -59,6 +65,29 @@ public class MnistMainTest {
 
     }
 
+    /**
+     * Test that solver tolerances are registered through JMX when requested
+     */
+    @Test
+    public void jmxTolerances() throws Exception {
+        final Path baseDir = Paths.get("src", "test", "resources", "testMnistMainJmx");
+        final Main main = Main.parseArgs("-newModel", "-jmxTolerances", "-saveDir", baseDir.toString(), "odenet", "-stem", "conv", "-nrofKernels", "4");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final Set<ObjectName> names = server.queryNames(new ObjectName("ode.solve:type=ToleranceHolder,*"), null);
+        try {
+            assertFalse("Expected registered tolerances!", names.isEmpty());
+            for (ObjectName name : names) {
+                server.setAttribute(name, new Attribute("AbsTol", 1e-7));
+                assertEquals("Incorrect absolute tolerance!", 1e-7, (double) server.getAttribute(name, "AbsTol"), 1e-12);
+            }
+        } finally {
+            for (ObjectName name : names) {
+                server.unregisterMBean(name);
+            }
+            FileUtils.deleteDirectory(new File(baseDir.toString()));
+        }
+    }
+
     private Main runNewMain(Path baseDir, int nrofEpochs) throws IOException {
         final Main main = Main.parseArgs("-nrofEpochs", String.valueOf(nrofEpochs), "-saveDir", baseDir.toString(), "odenet", "-stem", "conv", "-nrofKernels", "4");
         main.trainFactory = new DummyDataSetIterFactory();
@@ -1,12 +1,18 @@
 package examples.spiral;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import util.data.MappedMultiDataSetCache;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 /**
  * Test cases for {@link SpiralIterator}
@@ -37,4 +43,29 @@ public class SpiralIteratorTest {
         final long[] expectedShapeTime = {1, nrofSamplesTrain};
         assertArrayEquals("Incorrect shape of time!", expectedShapeTime, mds.getFeatures(1).shape());
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that spirals can be materialized to a file and that the same seed gives the same spirals
+     */
+    @Test
+    public void materialize() throws IOException {
+        final Path baseDir = Paths.get("src", "test", "resources", "SpiralIteratorTest");
+        try {
+            baseDir.toFile().mkdirs();
+            final SpiralIterator.Generator generator = new SpiralIterator.Generator(
+                    new SpiralFactory(0, 0.3, 0, 6 * Math.PI, 1000), 0.3, 100, new Random(666));
+
+            final MappedMultiDataSetCache first = generator.materialize(baseDir.resolve("first.bin"), 3, 7, 666);
+            final MappedMultiDataSetCache second = generator.materialize(baseDir.resolve("second.bin"), 3, 7, 666);
+
+            final MultiDataSet mds = first.get(2);
+            assertArrayEquals("Incorrect shape of spiral!", new long[]{7, 2, 100}, mds.getFeatures(0).shape());
+            assertArrayEquals("Incorrect shape of time!", new long[]{1, 100}, mds.getFeatures(1).shape());
+            assertEquals("Not same spirals!", mds, second.get(2));
+            first.close();
+            second.close();
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+}
@@ -9,6 +9,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
@@ -54,16 +57,40 @@ public class SpiralMainTest {
 
     }
 
-    private Main runNewMain(Path baseDir, int nrofTrainIters) throws IOException {
-        final Main main = new Main();
-        final ModelFactory factory = Main.parseArgs(main,
+    /**
+     * Test that a model can be trained from batches in a dataset cache for more iterations than there are batches
+     */
+    @Test
+    public void datasetCache() throws IOException {
+        final Path baseDir = Paths.get("src", "test", "resources", "testSpiralMainDatasetCache");
+        try {
+            baseDir.toFile().mkdirs();
+            final int nrofTrainIters = 3;
+            final Main main = runNewMain(baseDir, nrofTrainIters,
+                    "-datasetCache", baseDir.resolve("cache.bin").toString(),
+                    "-nrofCachedBatches", "2");
+
+            final Path checkpoint = Paths.get(main.saveDir(), Main.CHECKPOINT_NAME);
+            final ComputationGraph model = ModelSerializer.restoreComputationGraph(checkpoint.toFile());
+            assertEquals("Incorrect number of iterations!", nrofTrainIters, model.getIterationCount());
+        } finally {
+            FileUtils.deleteDirectory(new File(baseDir.toString()));
+        }
+    }
+
+    private Main runNewMain(Path baseDir, int nrofTrainIters, String... extraArgs) throws IOException {
+        final List<String> args = new ArrayList<>(Arrays.asList(
                 "-nrofTrainIters", String.valueOf(nrofTrainIters),
                 "-saveDir", baseDir.toString(),
                 "-trainBatchSize", "2",
                 "-nrofTimeStepsForTraining", "10",
                 "-saveEveryNIterations", "1",
-                "-noPlot",
-                "odenet");
+                "-noPlot"));
+        args.addAll(Arrays.asList(extraArgs));
+        args.add("odenet");
+
+        final Main main = new Main();
+        final ModelFactory factory = Main.parseArgs(main, args.toArray(new String[0]));
 
         Main.createModel(main, factory);
         main.addListeners();
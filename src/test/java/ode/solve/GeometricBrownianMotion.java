@@ -0,0 +1,45 @@
+package ode.solve;
+
+import ode.solve.api.StochasticEquation;
+import ode.solve.impl.util.VirtualBrownianTree;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Test class for SDEs. Geometric brownian motion dY = mu * Y * dt + sigma * Y * dW which has the exact solution
+ * Y(t) = Y(t0) * exp((mu - sigma^2 / 2) * (t - t0) + sigma * (W(t) - W(t0)))
+ *
+ * @author Christian Skarby
+ */
+public class GeometricBrownianMotion implements StochasticEquation {
+
+    private final double mu;
+    private final double sigma;
+
+    public GeometricBrownianMotion(double mu, double sigma) {
+        this.mu = mu;
+        this.sigma = sigma;
+    }
+
+    @Override
+    public INDArray calculateDrift(INDArray y, INDArray t, INDArray fy) {
+        return fy.assign(y.mul(mu));
+    }
+
+    @Override
+    public INDArray calculateDiffusion(INDArray y, INDArray t, INDArray gy) {
+        return gy.assign(y.mul(sigma));
+    }
+
+    /**
+     * Return the exact solution for the given brownian path
+     * @param path Brownian motion
+     * @param t0 Start time
+     * @param t1 End time
+     * @param y0 Value at t0
+     * @return Y(t1)
+     */
+    public INDArray exact(VirtualBrownianTree path, double t0, double t1, INDArray y0) {
+        return Transforms.exp(path.increment(t0, t1).muli(sigma).addi((mu - sigma * sigma / 2) * (t1 - t0)), false).muli(y0);
+    }
+}
@@ -0,0 +1,87 @@
+package ode.solve.commons;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link DoubleArrayBridge}
+ *
+ * @author Christian Skarby
+ */
+public class DoubleArrayBridgeTest {
+
+    /**
+     * Test copying to and from an array of the default data type
+     */
+    @Test
+    public void copyDefault() {
+        assertRoundTrip(Nd4j.create(2, 3));
+    }
+
+    /**
+     * Test copying to and from double arrays
+     */
+    @Test
+    public void copyDouble() {
+        final DataBuffer.Type prevType = Nd4j.dataType();
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+        try {
+            assertRoundTrip(Nd4j.create(2, 3));
+        } finally {
+            Nd4j.setDataType(prevType);
+        }
+    }
+
+    /**
+     * Test copying to and from views
+     */
+    @Test
+    public void copyView() {
+        final INDArray array = Nd4j.zeros(4, 3);
+        assertRoundTrip(array.getRow(2));
+        assertEquals("Expected other rows to be untouched!", 0, array.getRow(1).amaxNumber().doubleValue(), 0);
+        assertRoundTrip(array.get(NDArrayIndex.all(), NDArrayIndex.interval(1, 3)));
+        assertRoundTrip(Nd4j.create(new long[]{2, 3}, 'f'));
+    }
+
+    /**
+     * Test that results of operations done on the array are seen when copying from it and that copied values are seen
+     * by subsequent operations on the array
+     */
+    @Test
+    public void copyAfterOp() {
+        final INDArray array = Nd4j.linspace(1, 6, 6).reshape(2, 3);
+        array.muli(2);
+
+        final double[] actual = new double[6];
+        DoubleArrayBridge.copy(array, actual);
+        assertArrayEquals("Incorrect double[] after op!", new double[]{2, 4, 6, 8, 10, 12}, actual, 1e-10);
+
+        DoubleArrayBridge.copy(new double[]{1, 2, 3, 4, 5, 6}, array);
+        array.addi(1);
+        assertEquals("Incorrect sum after op!", 27, array.sumNumber().doubleValue(), 1e-10);
+
+        DoubleArrayBridge.copy(array, actual);
+        assertArrayEquals("Incorrect round trip after op!", new double[]{2, 3, 4, 5, 6, 7}, actual, 1e-10);
+    }
+
+    private static void assertRoundTrip(INDArray array) {
+        final double[] expected = new double[(int) array.length()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i + 0.5;
+        }
+
+        DoubleArrayBridge.copy(expected, array);
+        assertArrayEquals("Incorrect array!", expected, array.dup('c').reshape(1, array.length()).toDoubleVector(), 1e-10);
+
+        final double[] actual = new double[expected.length];
+        DoubleArrayBridge.copy(array, actual);
+        assertArrayEquals("Incorrect double[]!", expected, actual, 1e-10);
+    }
+}
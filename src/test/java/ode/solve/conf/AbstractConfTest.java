@@ -1,14 +1,18 @@
 package ode.solve.conf;
 
 import ode.solve.api.FirstOrderSolverConf;
+import ode.solve.api.StepListener;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.junit.Test;
 import org.nd4j.linalg.factory.Nd4j;
 import util.listen.step.ProbeStepListener;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 
 public abstract class AbstractConfTest {
 
@@ -41,4 +45,43 @@ public abstract class AbstractConfTest {
         probeStepListener.assertWasCalled();
         probeStepListenerRemove.assertNrofCalls(0,0,0);
     }
+
+    /**
+     * Test that listeners are carried over to clones
+     */
+    @Test
+    public void listenerCallbackClone() {
+        final FirstOrderSolverConf conf = createConf();
+        final ProbeStepListener probeStepListener = new ProbeStepListener();
+        conf.addListeners(probeStepListener);
+        final ProbeEquation probeEquation = new ProbeEquation();
+        conf.clone().instantiate().integrate(probeEquation, Nd4j.linspace(0,1,2), Nd4j.zeros(1), Nd4j.create(1));
+        probeEquation.assertWasCalled();
+        probeStepListener.assertWasCalled();
+    }
+
+    /**
+     * Test that each instantiated solver gets its own listener from {@link StepListener#forSolver()}
+     */
+    @Test
+    public void listenerPerSolver() {
+        final FirstOrderSolverConf conf = createConf();
+        final List<ProbeStepListener> solverListeners = new ArrayList<>();
+        conf.addListeners(new ProbeStepListener() {
+            @Override
+            public StepListener forSolver() {
+                final ProbeStepListener solverListener = new ProbeStepListener();
+                solverListeners.add(solverListener);
+                return solverListener;
+            }
+        });
+
+        conf.instantiate().integrate(new ProbeEquation(), Nd4j.linspace(0,1,2), Nd4j.zeros(1), Nd4j.create(1));
+        conf.instantiate().integrate(new ProbeEquation(), Nd4j.linspace(0,1,2), Nd4j.zeros(1), Nd4j.create(1));
+
+        assertEquals("Incorrect number of solver listeners!", 2, solverListeners.size());
+        assertNotSame("Expected different listeners!", solverListeners.get(0), solverListeners.get(1));
+        solverListeners.get(0).assertWasCalled();
+        solverListeners.get(1).assertWasCalled();
+    }
 }
@@ -3,11 +3,15 @@ package ode.solve.conf;
 import ode.solve.CircleODE;
 import ode.solve.api.FirstOrderSolver;
 import ode.solve.api.FirstOrderSolverConf;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.io.IOException;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 
 /**
  * Test cases for {@link DormandPrince54Solver}
@@ -40,4 +44,51 @@ public class DormandPrince54SolverTest extends AbstractConfTest {
 
         assertEquals("Incorrect solution!", reference.integrate(equation, t, y0, y.dup()), test.integrate(equation, t, y0, y.dup()));
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that clones get their own tolerances which start from the current tolerances of the original
+     */
+    @Test
+    public void cloneCopiesTolerances() {
+        final DormandPrince54Solver conf = new DormandPrince54Solver();
+        conf.getTolerances().setAbsTol(1e-5);
+        final DormandPrince54Solver clone = conf.clone();
+        assertNotSame("Expected separate tolerances!", conf.getTolerances(), clone.getTolerances());
+        assertEquals("Incorrect absolute tolerance!", 1e-5, clone.getTolerances().getAbsTol(), 1e-10);
+        assertEquals("Incorrect relative tolerance!", conf.getTolerances().getRelTol(), clone.getTolerances().getRelTol(), 1e-10);
+
+        conf.getTolerances().setAbsTol(1e-7);
+        assertEquals("Clone tolerance changed!", 1e-5, clone.getTolerances().getAbsTol(), 1e-10);
+    }
+
+    /**
+     * Test that equals and hashCode does not depend on the current tolerances
+     */
+    @Test
+    public void equalsIgnoresTolerances() {
+        final DormandPrince54Solver conf = new DormandPrince54Solver();
+        final DormandPrince54Solver clone = conf.clone();
+        final int hashCode = conf.hashCode();
+
+        conf.getTolerances().setAbsTol(1e-7);
+        conf.getTolerances().setRelTol(1e-6);
+        assertEquals("Expected equal confs!", conf, clone);
+        assertEquals("Incorrect hashCode!", hashCode, conf.hashCode());
+    }
+
+    /**
+     * Test that current tolerances are serialized
+     */
+    @Test
+    public void serializeCurrentTolerances() throws IOException {
+        final DormandPrince54Solver conf = new DormandPrince54Solver(new SolverConfig(1e-3, 1e-2, 1e-10, 10));
+        conf.getTolerances().setAbsTol(1e-5);
+        conf.getTolerances().setRelTol(1e-4);
+
+        final String json = NeuralNetConfiguration.mapper().writeValueAsString(conf);
+        final DormandPrince54Solver newConf = (DormandPrince54Solver) NeuralNetConfiguration.mapper().readValue(json, FirstOrderSolverConf.class);
+        assertEquals("Incorrect absolute tolerance!", 1e-5, newConf.getTolerances().getAbsTol(), 1e-10);
+        assertEquals("Incorrect relative tolerance!", 1e-4, newConf.getTolerances().getRelTol(), 1e-10);
+        assertEquals("Incorrect config!", conf.getConfig(), newConf.getConfig());
+    }
+}
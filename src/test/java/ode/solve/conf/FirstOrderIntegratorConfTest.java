@@ -92,7 +92,7 @@ public class FirstOrderIntegratorConfTest extends AbstractConfTest {
         final FirstOrderIntegratorConf conf = new FirstOrderIntegratorConf(HighamHall54Integrator.class.getName(),
                 new SolverConfig(1, 2, 3, 4));
         assertEquals("Incorrect toString",
-                "FirstOrderIntegratorConf(config=SolverConfig(absTol=1.0, relTol=2.0, minStep=3.0, maxStep=4.0), " +
+                "FirstOrderIntegratorConf(config=SolverConfig(absTol=1.0, relTol=2.0, minStep=3.0, maxStep=4.0, maxNrofSteps=0, maxSolveTimeMs=0, budgetFallback=FIXED_GRID, nrofFallbackSteps=10), " +
                         "integratorName=org.apache.commons.math3.ode.nonstiff.HighamHall54Integrator, " +
                         "listener=ode.solve.impl.util.AggStepListener)",
                 conf.toString());
@@ -0,0 +1,276 @@
+package ode.solve.impl;
+
+import ode.solve.api.FirstOrderSolver;
+import ode.solve.api.StepListener;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.util.SolverState;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
+import util.listen.step.StepCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link AdaptiveRungeKuttaSolver}
+ *
+ * @author Christian Skarby
+ */
+public class AdaptiveRungeKuttaSolverTest {
+
+    private static DataBuffer.Type prevType;
+
+    /**
+     * Set data type to float as this is where precision of time and step control matters
+     */
+    @BeforeClass
+    public static void setDataType() {
+        prevType = Nd4j.dataType();
+        Nd4j.setDataType(DataBuffer.Type.FLOAT);
+    }
+
+    /**
+     * Reset data type back to previous value
+     */
+    @AfterClass
+    public static void resetDataType() {
+        Nd4j.setDataType(prevType);
+    }
+
+    /**
+     * Test that time does not drift when taking many small steps far from t = 0 when state is stored as float
+     */
+    @Test
+    public void manySmallStepsFloat() {
+        final FirstOrderSolver solver = new DormandPrince54Solver(new SolverConfig(1e-3, 1e-3, 1e-4, 1e-3));
+        final int[] nrofSteps = {0};
+        solver.addListener(new StepCounter(1, (steps, solves) -> nrofSteps[0] = steps));
+
+        final INDArray y0 = Nd4j.zeros(1, 1);
+        final INDArray y = solver.integrate(
+                (yi, t, fy) -> fy.assign(1),
+                Nd4j.create(new double[]{1000, 1001}),
+                y0,
+                y0.dup());
+
+        assertTrue("Expected many steps!", nrofSteps[0] >= 1000);
+        assertEquals("Incorrect solution!", 1, y.getDouble(0), 1e-4);
+    }
+
+    /**
+     * Test that the remaining interval is solved with fixed steps when the step budget is exceeded with the
+     * FIXED_GRID fallback
+     */
+    @Test
+    public void budgetFixedGrid() {
+        final SolverConfig.BudgetFallback[] fallback = {null};
+        final DormandPrince54Solver solver = new DormandPrince54Solver(
+                new SolverConfig(1e-5, 1e-5, 1e-10, 0.1).withBudget(3, 0, SolverConfig.BudgetFallback.FIXED_GRID));
+        final INDArray y = solveWithBudget(solver, fallback);
+
+        assertEquals("Incorrect fallback!", SolverConfig.BudgetFallback.FIXED_GRID, fallback[0]);
+        assertEquals("Incorrect solution!", Math.E, y.getDouble(0), 1e-4);
+        assertFalse("Expected solve not to be truncated!", solver.isTruncated());
+    }
+
+    /**
+     * Test that the configured number of fixed steps is taken when the step budget is exceeded with the FIXED_GRID
+     * fallback
+     */
+    @Test
+    public void budgetNrofFallbackSteps() {
+        final int nrofFallbackSteps = 7;
+        final FirstOrderSolver solver = new DormandPrince54Solver(new SolverConfig(1e-5, 1e-5, 1e-10, 0.1)
+                .withBudget(3, 0, SolverConfig.BudgetFallback.FIXED_GRID, nrofFallbackSteps));
+        final boolean[] exceeded = {false};
+        final int[] nrofStepsAfterExceeded = {0};
+        solver.addListener(new StepListener() {
+            @Override
+            public void begin(INDArray t, INDArray y0) {
+                // Ignore
+            }
+
+            @Override
+            public void step(SolverState solverState, INDArray step, INDArray error) {
+                if (exceeded[0]) {
+                    nrofStepsAfterExceeded[0]++;
+                }
+            }
+
+            @Override
+            public void done() {
+                // Ignore
+            }
+
+            @Override
+            public void budgetExceeded(SolverState solverState, SolverConfig.BudgetFallback fallback) {
+                exceeded[0] = true;
+            }
+        });
+
+        final INDArray y0 = Nd4j.ones(1, 1);
+        solver.integrate(
+                (yi, t, fy) -> fy.assign(yi),
+                Nd4j.create(new double[]{0, 1}),
+                y0,
+                y0.dup());
+
+        assertEquals("Incorrect number of fallback steps!", nrofFallbackSteps, nrofStepsAfterExceeded[0]);
+    }
+
+    /**
+     * Test that the steps of the FIXED_GRID fallback are taken in the step workspace so that temporaries do not pile
+     * up in the workspace for the whole solve
+     */
+    @Test
+    public void budgetFixedGridStepWorkspace() {
+        final FirstOrderSolver solver = new DormandPrince54Solver(
+                new SolverConfig(1e-5, 1e-5, 1e-10, 0.1).withBudget(3, 0, SolverConfig.BudgetFallback.FIXED_GRID));
+        final boolean[] exceeded = {false};
+        solver.addListener(new StepListener() {
+            @Override
+            public void begin(INDArray t, INDArray y0) {
+                // Ignore
+            }
+
+            @Override
+            public void step(SolverState solverState, INDArray step, INDArray error) {
+                // Ignore
+            }
+
+            @Override
+            public void done() {
+                // Ignore
+            }
+
+            @Override
+            public void budgetExceeded(SolverState solverState, SolverConfig.BudgetFallback fallback) {
+                exceeded[0] = true;
+            }
+        });
+
+        final List<String> workspaces = new ArrayList<>();
+        final INDArray y0 = Nd4j.ones(1, 1);
+        solver.integrate(
+                (yi, t, fy) -> {
+                    if (exceeded[0]) {
+                        final MemoryWorkspace ws = Nd4j.getMemoryManager().getCurrentWorkspace();
+                        workspaces.add(ws == null ? null : ws.getId());
+                    }
+                    return fy.assign(yi);
+                },
+                Nd4j.create(new double[]{0, 1}),
+                y0,
+                y0.dup());
+
+        assertTrue("Expected fallback steps!", workspaces.size() > 0);
+        for (String ws : workspaces) {
+            assertEquals("Incorrect workspace!", AdaptiveRungeKuttaSolver.class.getSimpleName() + "Step", ws);
+        }
+    }
+
+    /**
+     * Test that the state at the last accepted step is returned when the step budget is exceeded with the
+     * BEST_ESTIMATE fallback
+     */
+    @Test
+    public void budgetBestEstimate() {
+        final SolverConfig.BudgetFallback[] fallback = {null};
+        final DormandPrince54Solver solver = new DormandPrince54Solver(
+                new SolverConfig(1e-5, 1e-5, 1e-10, 0.1).withBudget(3, 0, SolverConfig.BudgetFallback.BEST_ESTIMATE));
+        final INDArray y = solveWithBudget(solver, fallback);
+
+        assertEquals("Incorrect fallback!", SolverConfig.BudgetFallback.BEST_ESTIMATE, fallback[0]);
+        assertTrue("Expected solution to be partial!", y.getDouble(0) > 1 && y.getDouble(0) < Math.exp(0.5));
+        assertTrue("Expected solve to be truncated!", solver.isTruncated());
+    }
+
+    /**
+     * Test that an exception is thrown when the step budget is exceeded with the THROW fallback
+     */
+    @Test(expected = IllegalStateException.class)
+    public void budgetThrow() {
+        solveWithBudget(SolverConfig.BudgetFallback.THROW, new SolverConfig.BudgetFallback[1]);
+    }
+
+    /**
+     * Test that solver workspaces do not grow or spill once they have been warmed up
+     */
+    @Test
+    public void noAllocationAfterWarmUp() {
+        final FirstOrderSolver solver = new DormandPrince54Solver(new SolverConfig(1e-3, 1e-3, 1e-6, 10));
+        final INDArray y0 = Nd4j.randn(new long[]{8, 16});
+
+        // Warm up
+        solveDecay(solver, y0);
+        final Nd4jWorkspace solveWs = (Nd4jWorkspace) Nd4j.getWorkspaceManager()
+                .getWorkspaceForCurrentThread(AdaptiveRungeKuttaSolver.class.getSimpleName());
+        final Nd4jWorkspace stepWs = (Nd4jWorkspace) Nd4j.getWorkspaceManager()
+                .getWorkspaceForCurrentThread(AdaptiveRungeKuttaSolver.class.getSimpleName() + "Step");
+        final long solveSize = solveWs.getCurrentSize();
+        final long stepSize = stepWs.getCurrentSize();
+
+        for (int i = 0; i < 3; i++) {
+            final INDArray y = solveDecay(solver, y0);
+            assertEquals("Incorrect solution!", 0, y.sub(y0.mul(Math.exp(-1))).amaxNumber().doubleValue(), 1e-2);
+            assertEquals("Solve workspace size changed!", solveSize, solveWs.getCurrentSize());
+            assertEquals("Step workspace size changed!", stepSize, stepWs.getCurrentSize());
+            assertEquals("Solve workspace spilled!", 0, solveWs.getSpilledSize());
+            assertEquals("Step workspace spilled!", 0, stepWs.getSpilledSize());
+        }
+    }
+
+    private static INDArray solveDecay(FirstOrderSolver solver, INDArray y0) {
+        return solver.integrate(
+                (yi, t, fy) -> fy.assign(yi.neg()),
+                Nd4j.create(new double[]{0, 1}),
+                y0,
+                y0.dup());
+    }
+
+    private static INDArray solveWithBudget(SolverConfig.BudgetFallback budgetFallback, SolverConfig.BudgetFallback[] notified) {
+        return solveWithBudget(new DormandPrince54Solver(
+                new SolverConfig(1e-5, 1e-5, 1e-10, 0.1).withBudget(3, 0, budgetFallback)), notified);
+    }
+
+    private static INDArray solveWithBudget(FirstOrderSolver solver, SolverConfig.BudgetFallback[] notified) {
+        solver.addListener(new StepListener() {
+            @Override
+            public void begin(INDArray t, INDArray y0) {
+                // Ignore
+            }
+
+            @Override
+            public void step(SolverState solverState, INDArray step, INDArray error) {
+                // Ignore
+            }
+
+            @Override
+            public void done() {
+                // Ignore
+            }
+
+            @Override
+            public void budgetExceeded(SolverState solverState, SolverConfig.BudgetFallback fallback) {
+                notified[0] = fallback;
+            }
+        });
+
+        final INDArray y0 = Nd4j.ones(1, 1);
+        return solver.integrate(
+                (yi, t, fy) -> fy.assign(yi),
+                Nd4j.create(new double[]{0, 1}),
+                y0,
+                y0.dup());
+    }
+}
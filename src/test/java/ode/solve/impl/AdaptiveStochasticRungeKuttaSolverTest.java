@@ -0,0 +1,56 @@
+package ode.solve.impl;
+
+import ode.solve.GeometricBrownianMotion;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.util.VirtualBrownianTree;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import util.listen.step.ProbeStepListener;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link AdaptiveStochasticRungeKuttaSolver}
+ *
+ * @author Christian Skarby
+ */
+public class AdaptiveStochasticRungeKuttaSolverTest {
+
+    /**
+     * Test that the solution is close to the exact solution for the same brownian path
+     */
+    @Test
+    public void integrate() {
+        final GeometricBrownianMotion gbm = new GeometricBrownianMotion(0.7, 0.5);
+        final INDArray t = Nd4j.create(new double[]{0.1, 1.1});
+        final INDArray y0 = Nd4j.linspace(1, 2, 10);
+        final VirtualBrownianTree path = new VirtualBrownianTree(0.1, 1.1, y0.shape(), 1e-5, 666);
+
+        final ProbeStepListener probe = new ProbeStepListener();
+        final AdaptiveStochasticRungeKuttaSolver solver = new AdaptiveStochasticRungeKuttaSolver(new SolverConfig(1e-3, 1e-3, 1e-5, 1));
+        solver.addListener(probe);
+        final INDArray actual = solver.integrate(gbm, path, t, y0, y0.dup());
+        final INDArray expected = gbm.exact(path, 0.1, 1.1, y0);
+
+        assertEquals("Incorrect solution!", 0, actual.sub(expected).divi(expected).amaxNumber().doubleValue(), 1e-2);
+        probe.assertWasCalled();
+    }
+
+    /**
+     * Test that the solver reduces to an ODE solver when there is no noise
+     */
+    @Test
+    public void noDiffusion() {
+        final GeometricBrownianMotion gbm = new GeometricBrownianMotion(-0.7, 0);
+        final INDArray t = Nd4j.create(new double[]{0, 2});
+        final INDArray y0 = Nd4j.linspace(1, 2, 4);
+        final VirtualBrownianTree path = new VirtualBrownianTree(0, 2, y0.shape(), 1e-5, 666);
+
+        final INDArray actual = new AdaptiveStochasticRungeKuttaSolver(new SolverConfig(1e-6, 1e-6, 1e-8, 1))
+                .integrate(gbm, path, t, y0, y0.dup());
+
+        final INDArray expected = y0.mul(Math.exp(-1.4));
+        assertEquals("Incorrect solution!", 0, actual.sub(expected).amaxNumber().doubleValue(), 1e-3);
+    }
+}
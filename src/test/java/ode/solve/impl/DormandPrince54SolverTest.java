@@ -2,6 +2,7 @@ package ode.solve.impl;
 
 import ode.solve.CircleODE;
 import ode.solve.api.FirstOrderSolver;
+import ode.solve.api.FirstOrderSolverConf;
 import ode.solve.api.StepListener;
 import ode.solve.commons.FirstOrderSolverAdapter;
 import ode.solve.conf.SolverConfig;
@@ -16,8 +17,10 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test cases for {@link DormandPrince54Solver}
@@ -63,6 +66,68 @@ public class DormandPrince54SolverTest {
         solveCircle(ts);
     }
 
+    /**
+     * Test that stages are evaluated at the correct times when the derivative is a function of time only
+     */
+    @Test
+    public void solveFunctionOfTime() {
+        final INDArray y0 = Nd4j.zeros(1, 1);
+        final INDArray actual = new DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-10, 100))
+                .integrate((y, t, fy) -> fy.assign(Math.cos(10 * t.getDouble(0))), Nd4j.create(new double[]{0, 1}), y0, y0.dup());
+
+        assertEquals("Incorrect solution!", Math.sin(10) / 10, actual.getDouble(0), 1e-8);
+    }
+
+    /**
+     * Test that solvers instantiated from the same configuration give the same result when used from several threads
+     * at the same time
+     */
+    @Test
+    public void solveFromSeveralThreads() {
+        final FirstOrderSolverConf conf = new ode.solve.conf.DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-10, 100));
+        final INDArray ts = Nd4j.create(new double[]{-0.23, 0.456});
+        final INDArray y0 = Nd4j.create(new double[]{3, -5});
+        final CircleODE equation = new CircleODE(new double[]{1.23, 4.56}, 20.666);
+
+        final INDArray expected = conf.instantiate().integrate(equation, ts, y0, Nd4j.create(1, 2));
+
+        final List<CompletableFuture<INDArray>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(CompletableFuture.supplyAsync(() ->
+                    conf.instantiate().integrate(equation, ts, y0, Nd4j.create(1, 2))));
+        }
+
+        for (CompletableFuture<INDArray> result : results) {
+            assertEquals("Incorrect solution!", expected, result.join());
+        }
+    }
+
+    /**
+     * Test that new tolerances are picked up by an already instantiated solver
+     */
+    @Test
+    public void changeTolerance() {
+        final ode.solve.conf.DormandPrince54Solver conf = new ode.solve.conf.DormandPrince54Solver(new SolverConfig(1e-2, 1e-2, 1e-10, 100));
+        final FirstOrderSolver solver = conf.instantiate();
+        final StepCounter counter = new StepCounter();
+        solver.addListener(counter);
+
+        final INDArray ts = Nd4j.create(new double[]{0, 1});
+        final INDArray y0 = Nd4j.create(new double[]{3, -5});
+        final CircleODE equation = new CircleODE(new double[]{1.23, 4.56}, 2.666);
+
+        solver.integrate(equation, ts, y0, Nd4j.create(1, 2));
+        final int nrofStepsLoose = counter.times.size();
+        counter.times.clear();
+
+        conf.getTolerances().setAbsTol(1e-8);
+        conf.getTolerances().setRelTol(1e-8);
+        solver.integrate(equation, ts, y0, Nd4j.create(1, 2));
+
+        assertTrue("Expected more steps with tighter tolerance! Loose: " + nrofStepsLoose + " tight: " + counter.times.size(),
+                nrofStepsLoose < counter.times.size());
+    }
+
     private void solveCircle(INDArray ts) {
         final CircleODE equation = new CircleODE(new double[]{1.23, 4.56}, 20.666);
 
@@ -0,0 +1,148 @@
+package ode.solve.impl;
+
+import ode.solve.CircleODE;
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.StepListener;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.util.SolverState;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link EnsembleSolver}
+ *
+ * @author Christian Skarby
+ */
+public class EnsembleSolverTest {
+
+    /**
+     * Test that solving an ensemble of {@link CircleODE}s with different frequencies gives the same result as solving
+     * each member separately
+     */
+    @Test
+    public void integrate() {
+        final int nrofMembers = 13;
+        final SolverConfig config = new SolverConfig(1e-6, 1e-6, 1e-10, 10);
+        final IntFunction<FirstOrderEquation> equations = member -> new CircleODE(new double[]{1.23, 4.56}, 0.1 * (member + 1));
+
+        final INDArray t = Nd4j.create(new double[]{0, 2});
+        final INDArray y0 = Nd4j.randn(new long[]{nrofMembers, 2});
+        final INDArray yEnsemble = Nd4j.create(nrofMembers, 2);
+
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            new EnsembleSolver(() -> new DormandPrince54Solver(config), pool, 2)
+                    .integrate(equations, t, y0, yEnsemble);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int member = 0; member < nrofMembers; member++) {
+            final INDArray ySeparate = new DormandPrince54Solver(config).integrate(
+                    equations.apply(member), t.dup(), y0.getRow(member).dup(), Nd4j.create(1, 2));
+            assertArrayEquals("Incorrect solution for member " + member + "!",
+                    ySeparate.toDoubleVector(), yEnsemble.getRow(member).toDoubleVector(), 1e-6);
+        }
+    }
+
+    /**
+     * Test that the same equation is used for all members when only one equation is given
+     */
+    @Test
+    public void integrateSameEquation() {
+        final INDArray y0 = Nd4j.linspace(1, 5, 5).reshape(5, 1);
+        final INDArray yOut = new EnsembleSolver(() -> new DormandPrince54Solver(new SolverConfig(1e-6, 1e-6, 1e-10, 10)))
+                .integrate((y, t, fy) -> fy.assign(y.neg()), Nd4j.create(new double[]{0, 1}), y0, y0.dup());
+
+        for (int member = 0; member < y0.length(); member++) {
+            assertEquals("Incorrect solution for member " + member + "!",
+                    y0.getDouble(member) * Math.exp(-1), yOut.getDouble(member), 1e-4);
+        }
+    }
+
+    /**
+     * Test that each solver of the ensemble gets its own instance of listeners which keep state per solve
+     */
+    @Test
+    public void listenerPerSolver() {
+        final int nrofMembers = 4;
+        final AtomicInteger nrofInstances = new AtomicInteger();
+        final AtomicInteger nrofSolves = new AtomicInteger();
+        final AtomicInteger nrofErrors = new AtomicInteger();
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final EnsembleSolver solver = new EnsembleSolver(() -> new DormandPrince54Solver(new SolverConfig(1e-6, 1e-6, 1e-10, 10)), pool, 1);
+            solver.addListener(new SolveSequenceListener(nrofInstances, nrofSolves, nrofErrors));
+            final INDArray y0 = Nd4j.linspace(1, nrofMembers, nrofMembers).reshape(nrofMembers, 1);
+            solver.integrate((y, t, fy) -> {
+                // Make it more likely that solves overlap in time
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return fy.assign(y.neg());
+            }, Nd4j.create(new double[]{0, 1}), y0, y0.dup());
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue("Expected one listener per solver!", nrofInstances.get() >= 2);
+        assertEquals("Incorrect number of solves!", nrofMembers, nrofSolves.get());
+        assertEquals("Listener got events from several solves at once!", 0, nrofErrors.get());
+    }
+
+    private static final class SolveSequenceListener implements StepListener {
+
+        private final AtomicInteger nrofInstances;
+        private final AtomicInteger nrofSolves;
+        private final AtomicInteger nrofErrors;
+        private boolean inSolve = false;
+
+        private SolveSequenceListener(AtomicInteger nrofInstances, AtomicInteger nrofSolves, AtomicInteger nrofErrors) {
+            this.nrofInstances = nrofInstances;
+            this.nrofSolves = nrofSolves;
+            this.nrofErrors = nrofErrors;
+        }
+
+        @Override
+        public void begin(INDArray t, INDArray y0) {
+            if (inSolve) {
+                nrofErrors.incrementAndGet();
+            }
+            inSolve = true;
+        }
+
+        @Override
+        public void step(SolverState solverState, INDArray step, INDArray error) {
+            if (!inSolve) {
+                nrofErrors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void done() {
+            if (!inSolve) {
+                nrofErrors.incrementAndGet();
+            }
+            inSolve = false;
+            nrofSolves.incrementAndGet();
+        }
+
+        @Override
+        public StepListener forSolver() {
+            nrofInstances.incrementAndGet();
+            return new SolveSequenceListener(nrofInstances, nrofSolves, nrofErrors);
+        }
+    }
+}
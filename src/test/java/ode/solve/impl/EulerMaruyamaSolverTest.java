@@ -0,0 +1,38 @@
+package ode.solve.impl;
+
+import ode.solve.GeometricBrownianMotion;
+import ode.solve.impl.util.VirtualBrownianTree;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import util.listen.step.ProbeStepListener;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link EulerMaruyamaSolver}
+ *
+ * @author Christian Skarby
+ */
+public class EulerMaruyamaSolverTest {
+
+    /**
+     * Test that the solution is close to the exact solution for the same brownian path
+     */
+    @Test
+    public void integrate() {
+        final GeometricBrownianMotion gbm = new GeometricBrownianMotion(0.7, 0.5);
+        final INDArray t = Nd4j.create(new double[]{0.1, 1.1});
+        final INDArray y0 = Nd4j.linspace(1, 2, 10);
+        final VirtualBrownianTree path = new VirtualBrownianTree(0.1, 1.1, y0.shape(), 1e-5, 666);
+
+        final ProbeStepListener probe = new ProbeStepListener();
+        final EulerMaruyamaSolver solver = new EulerMaruyamaSolver(1000);
+        solver.addListener(probe);
+        final INDArray actual = solver.integrate(gbm, path, t, y0, y0.dup());
+        final INDArray expected = gbm.exact(path, 0.1, 1.1, y0);
+
+        assertEquals("Incorrect solution!", 0, actual.sub(expected).divi(expected).amaxNumber().doubleValue(), 3e-2);
+        probe.assertNrofCalls(1, 1000, 1);
+    }
+}
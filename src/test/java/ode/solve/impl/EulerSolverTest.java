@@ -0,0 +1,40 @@
+package ode.solve.impl;
+
+import ode.solve.CircleODE;
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.conf.SolverConfig;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import util.listen.step.ProbeStepListener;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Test cases for {@link EulerSolver}
+ *
+ * @author Christian Skarby
+ */
+public class EulerSolverTest {
+
+    /**
+     * Test that a solution close to the solution of an adaptive solver is found when using many steps
+     */
+    @Test
+    public void integrate() {
+        final FirstOrderEquation circle = new CircleODE(new double[]{1.23, 4.56}, 0.5);
+        final INDArray t = Nd4j.create(new double[]{0.1, 1.3});
+        final INDArray y0 = Nd4j.create(new double[]{2, -3});
+
+        final INDArray expected = new DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-10, 10))
+                .integrate(circle, t, y0, y0.dup());
+
+        final ProbeStepListener probe = new ProbeStepListener();
+        final EulerSolver solver = new EulerSolver(1000);
+        solver.addListener(probe);
+        final INDArray actual = solver.integrate(circle, t, y0, y0.dup());
+
+        assertArrayEquals("Incorrect solution!", expected.toDoubleVector(), actual.toDoubleVector(), 1e-2);
+        probe.assertNrofCalls(1, 1000, 1);
+    }
+}
@@ -0,0 +1,135 @@
+package ode.solve.impl;
+
+import ode.solve.CircleODE;
+import ode.solve.api.FirstOrderEquation;
+import ode.solve.api.StepListener;
+import ode.solve.conf.SolverConfig;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import util.listen.step.ProbeStepListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link PararealMultiStepSolver}
+ *
+ * @author Christian Skarby
+ */
+public class PararealMultiStepSolverTest {
+
+    /**
+     * Test that solving {@link CircleODE} with Parareal gives the same result as solving each time interval in sequence
+     */
+    @Test
+    public void integrate() {
+        final int nrofSteps = 12;
+        final FirstOrderEquation circle = new CircleODE(new double[]{1.23, 4.56}, 1);
+        final SolverConfig config = new SolverConfig(1e-10, 1e-10, 1e-10, 10);
+
+        final INDArray t = Nd4j.linspace(0, 2 * Math.PI, nrofSteps);
+        final INDArray y0 = Nd4j.create(new double[]{0, 0});
+        final INDArray ySequential = Nd4j.create(nrofSteps - 1, y0.length());
+        final INDArray yParareal = Nd4j.create(nrofSteps - 1, y0.length());
+
+        new SingleSteppingMultiStepSolver(new DormandPrince54Solver(config)).integrate(circle, t, y0, ySequential);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final PararealMultiStepSolver solver = new PararealMultiStepSolver(
+                    new EulerSolver(2),
+                    () -> new DormandPrince54Solver(config),
+                    executor,
+                    1e-6,
+                    Integer.MAX_VALUE);
+            solver.integrate(circle, t, y0, yParareal);
+            assertTrue("Expected convergence!", solver.isConverged());
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int row = 0; row < ySequential.rows(); row++) {
+            assertArrayEquals("Incorrect solution!", ySequential.getRow(row).toDoubleVector(), yParareal.getRow(row).toDoubleVector(), 1e-4);
+        }
+    }
+
+    /**
+     * Test that the result is exact w.r.t the fine solver for the first intervals even if only one iteration is allowed
+     */
+    @Test
+    public void integrateOneIteration() {
+        final int nrofSteps = 5;
+        final FirstOrderEquation circle = new CircleODE(new double[]{1.23, 4.56}, 1);
+        final SolverConfig config = new SolverConfig(1e-10, 1e-10, 1e-10, 10);
+
+        final INDArray t = Nd4j.linspace(0, Math.PI, nrofSteps);
+        final INDArray y0 = Nd4j.create(new double[]{0, 0});
+        final INDArray ySequential = Nd4j.create(nrofSteps - 1, y0.length());
+        final INDArray yParareal = Nd4j.create(nrofSteps - 1, y0.length());
+
+        new SingleSteppingMultiStepSolver(new DormandPrince54Solver(config)).integrate(circle, t, y0, ySequential);
+
+        final PararealMultiStepSolver solver = new PararealMultiStepSolver(
+                new EulerSolver(1),
+                () -> new DormandPrince54Solver(config),
+                Runnable::run,
+                0,
+                1);
+        solver.integrate(circle, t, y0, yParareal);
+        assertFalse("Expected no convergence!", solver.isConverged());
+
+        assertArrayEquals("Incorrect solution!", ySequential.getRow(0).toDoubleVector(), yParareal.getRow(0).toDoubleVector(), 1e-5);
+    }
+
+    /**
+     * Test that both the coarse solver and the fine solvers notify listeners
+     */
+    @Test
+    public void listeners() {
+        final int nrofIntervals = 4;
+        final FirstOrderEquation circle = new CircleODE(new double[]{1.23, 4.56}, 1);
+        final SolverConfig config = new SolverConfig(1e-10, 1e-10, 1e-10, 10);
+
+        final INDArray t = Nd4j.linspace(0, Math.PI, nrofIntervals + 1);
+        final INDArray y0 = Nd4j.create(new double[]{0, 0});
+        final INDArray yOut = Nd4j.create(nrofIntervals, y0.length());
+
+        final PararealMultiStepSolver solver = new PararealMultiStepSolver(
+                new EulerSolver(1),
+                () -> new DormandPrince54Solver(config),
+                Runnable::run,
+                0,
+                1);
+        final int[] nrofBegin = {0};
+        final List<ProbeStepListener> instances = new ArrayList<>();
+        solver.addListener(new ProbeStepListener() {
+            @Override
+            public void begin(INDArray t, INDArray y0) {
+                nrofBegin[0]++;
+            }
+
+            @Override
+            public StepListener forSolver() {
+                final ProbeStepListener instance = new ProbeStepListener();
+                instances.add(instance);
+                return instance;
+            }
+        });
+        solver.integrate(circle, t, y0, yOut);
+
+        // Coarse solver does one initial prediction and one correction per interval
+        assertEquals("Incorrect number of coarse solves!", 2 * nrofIntervals, nrofBegin[0]);
+        assertEquals("Incorrect number of fine solvers!", nrofIntervals, instances.size());
+        for (ProbeStepListener instance : instances) {
+            instance.assertWasCalled();
+        }
+    }
+}
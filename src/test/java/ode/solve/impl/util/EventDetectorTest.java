@@ -0,0 +1,71 @@
+package ode.solve.impl.util;
+
+import ode.solve.api.FirstOrderSolver;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.DormandPrince54Solver;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link EventDetector}
+ *
+ * @author Christian Skarby
+ */
+public class EventDetectorTest {
+
+    /**
+     * Test that event times and states are found for each sample when solving dy/dt = y
+     */
+    @Test
+    public void recordEvents() {
+        final EventDetector detector = new EventDetector((y, t) -> y.sub(3));
+        final INDArray y = solve(detector, 2);
+
+        assertEquals("Incorrect event time!", Math.log(3), detector.getEventTimes()[0], 1e-4);
+        assertEquals("Incorrect event time!", Math.log(1.5), detector.getEventTimes()[1], 1e-4);
+        assertEquals("Incorrect event state!", 3, detector.getEventStates().getDouble(0), 1e-4);
+        assertEquals("Incorrect event state!", 3, detector.getEventStates().getDouble(1), 1e-4);
+        assertEquals("Incorrect solution!", Math.exp(2), y.getDouble(0), 1e-3);
+    }
+
+    /**
+     * Test that samples without events have no event time and the final state as event state
+     */
+    @Test
+    public void noEvent() {
+        final EventDetector detector = new EventDetector((y, t) -> y.sub(10));
+        final INDArray y = solve(detector, 2);
+
+        assertTrue("Expected no event!", Double.isNaN(detector.getEventTimes()[0]));
+        assertEquals("Incorrect event time!", Math.log(5), detector.getEventTimes()[1], 1e-4);
+        assertEquals("Incorrect event state!", y.getDouble(0), detector.getEventStates().getDouble(0), 1e-10);
+    }
+
+    /**
+     * Test that the solver terminates once all samples have had an event when the detector is terminal
+     */
+    @Test
+    public void terminate() {
+        final EventDetector detector = new EventDetector((y, t) -> y.sub(3), true, 1e-8);
+        final INDArray y = solve(detector, 10);
+
+        assertEquals("Incorrect event time!", Math.log(3), detector.getEventTimes()[0], 1e-4);
+        assertTrue("Expected solver to terminate early!", y.getDouble(0) < 3 * Math.exp(0.1) + 1e-4);
+    }
+
+    private static INDArray solve(EventDetector detector, double tEnd) {
+        final FirstOrderSolver solver = new DormandPrince54Solver(new SolverConfig(1e-7, 1e-7, 1e-10, 0.1));
+        solver.addListener(detector);
+
+        final INDArray y0 = Nd4j.create(new double[][]{{1}, {2}});
+        return solver.integrate(
+                (yi, t, fy) -> fy.assign(yi),
+                Nd4j.create(new double[]{0, tEnd}),
+                y0,
+                y0.dup());
+    }
+}
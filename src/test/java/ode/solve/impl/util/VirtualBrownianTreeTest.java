@@ -0,0 +1,72 @@
+package ode.solve.impl.util;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import util.random.SeededRandomFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link VirtualBrownianTree}
+ *
+ * @author Christian Skarby
+ */
+public class VirtualBrownianTreeTest {
+
+    /**
+     * Test that querying the tree in different orders gives the same result
+     */
+    @Test
+    public void consistent() {
+        final VirtualBrownianTree tree = new VirtualBrownianTree(0.5, 2, new long[]{3, 4}, 1e-4, 666);
+        final double[] times = {0.5, 1.7, 0.9, 1.234, 2};
+
+        final INDArray[] forward = new INDArray[times.length];
+        for (int i = 0; i < times.length; i++) {
+            forward[i] = tree.value(times[i]);
+        }
+
+        assertEquals("W(t0) shall be zero!", 0, forward[0].amaxNumber().doubleValue(), 1e-10);
+
+        final VirtualBrownianTree other = new VirtualBrownianTree(2, 0.5, new long[]{3, 4}, 1e-4, 666);
+        for (int i = times.length - 1; i >= 0; i--) {
+            assertArrayEquals("Incorrect value!", forward[i].ravel().toDoubleVector(), other.value(times[i]).ravel().toDoubleVector(), 1e-10);
+        }
+
+        assertArrayEquals("Incorrect increment!",
+                forward[1].sub(forward[2]).ravel().toDoubleVector(),
+                tree.increment(times[2], times[1]).ravel().toDoubleVector(), 1e-6);
+    }
+
+    /**
+     * Test that increments have the statistics of a brownian motion
+     */
+    @Test
+    public void statistics() {
+        final int nrofSamples = 20000;
+        final VirtualBrownianTree tree = new VirtualBrownianTree(0, 1, new long[]{1, nrofSamples}, 1e-3, 777);
+
+        final INDArray first = tree.increment(0.1, 0.35);
+        final INDArray second = tree.increment(0.35, 0.95);
+
+        assertEquals("Incorrect mean!", 0, first.meanNumber().doubleValue(), 0.02);
+        assertEquals("Incorrect variance!", 0.25, first.varNumber().doubleValue(), 0.02);
+        assertEquals("Incorrect variance!", 0.6, second.varNumber().doubleValue(), 0.03);
+        assertEquals("Increments shall be uncorrelated!", 0, first.mul(second).meanNumber().doubleValue(), 0.02);
+    }
+
+    /**
+     * Test that trees created with the default seed are reproducible when using a {@link SeededRandomFactory}
+     */
+    @Test
+    public void seeded() {
+        SeededRandomFactory.setNd4jSeed(123);
+        final INDArray first = new VirtualBrownianTree(0, 1, new long[]{2, 3}, 1e-3).value(0.3);
+        SeededRandomFactory.setNd4jSeed(123);
+        final INDArray second = new VirtualBrownianTree(0, 1, new long[]{2, 3}, 1e-3).value(0.3);
+
+        assertArrayEquals("Expected same values!", first.ravel().toDoubleVector(), second.ravel().toDoubleVector(), 1e-10);
+    }
+}
@@ -1,6 +1,16 @@
 package ode.vertex.conf;
 
+import ode.solve.conf.DormandPrince54Solver;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.util.SolverWorkspaces;
+import ode.vertex.conf.helper.MultipleShooting;
+import ode.vertex.conf.helper.TimeInputFactory;
+import ode.vertex.conf.helper.backward.DynamicsRegularization;
+import ode.vertex.conf.helper.backward.FixedStepAdjoint;
+import ode.vertex.conf.helper.forward.FixedStep;
+import ode.vertex.conf.helper.forward.InputStep;
 import org.deeplearning4j.nn.api.OptimizationAlgorithm;
+import org.deeplearning4j.nn.conf.CacheMode;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.graph.GraphVertex;
@@ -9,12 +19,22 @@ import org.deeplearning4j.nn.conf.layers.BatchNormalization;
 import org.deeplearning4j.nn.conf.layers.CnnLossLayer;
 import org.deeplearning4j.nn.conf.layers.Convolution2D;
 import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.deeplearning4j.nn.conf.memory.NetworkMemoryReport;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.util.ModelSerializer;
 import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.MultiDataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
 
 import java.io.File;
 import java.io.IOException;
@@ -23,6 +43,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -58,6 +80,11 @@ public class OdeVertexTest {
         final GraphVertex vertex = new OdeVertex.Builder(
                 new NeuralNetConfiguration.Builder(), "1", new BatchNormalization.Builder().nOut(3).build())
                 .addLayer("2", new ConvolutionLayer.Builder(3, 3).nOut(3).build(), "1")
+                .nrofShards(2)
+                .shardParallelism(2)
+                .odeInference(new FixedStep(new DormandPrince54Solver(new SolverConfig(1e-1, 1e-1, 1e-10, 10)), Nd4j.arange(2), true))
+                .regularization(new DynamicsRegularization(0.01, 0.02))
+                .inferenceCache(1 << 20)
                 .build();
 
         final String json = NeuralNetConfiguration.mapper().writeValueAsString(vertex);
@@ -66,6 +93,85 @@ public class OdeVertexTest {
         assertEquals("Not same!", vertex.hashCode(), newVertex.hashCode());
     }
 
+    /**
+     * Test that the memory report of the solver and the adjoint method is an upper bound of the size of the solver
+     * workspaces after one fit. Also test that it is not too pessimistic.
+     */
+    @Test
+    public void memoryReport() {
+        final int nrofInputs = 16;
+        final int batchSize = 64;
+        final INDArray time = Nd4j.linspace(0, 1, 5);
+        final InputType input = InputType.feedForward(nrofInputs);
+        final OdeVertex vertex = new OdeVertex.Builder(
+                new NeuralNetConfiguration.Builder(), "dense", new DenseLayer.Builder().nOut(nrofInputs)
+                .activation(new ActivationTanH()).build())
+                .odeForward(new FixedStep(new DormandPrince54Solver(), time, true))
+                .odeBackward(new FixedStepAdjoint(new DormandPrince54Solver(), time))
+                .build();
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.01))
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(input)
+                .addVertex("ode", vertex, "input")
+                .addLayer("output", new RnnOutputLayer.Builder()
+                        .nOut(nrofInputs)
+                        .activation(new ActivationIdentity())
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "ode")
+                .setOutputs("output")
+                .build());
+        graph.init();
+
+        // Workspaces are learned from the first cycle and might have been used by other test cases
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+        graph.fit(new MultiDataSet(
+                new INDArray[]{Nd4j.randn(new long[]{batchSize, nrofInputs})},
+                new INDArray[]{Nd4j.randn(new long[]{batchSize, nrofInputs, time.length()})}));
+
+        long measured = 0;
+        for (MemoryWorkspace ws : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread()) {
+            if (ws.getWorkspaceConfiguration() == SolverWorkspaces.getSolveConfiguration()
+                    || ws.getWorkspaceConfiguration() == SolverWorkspaces.getStepConfiguration()) {
+                measured += ws.getCurrentSize();
+            }
+        }
+        assertTrue("Expected solver workspaces to be used!", measured > 0);
+
+        final MemoryReport report = ((OdeVertex) graph.getConfiguration().getVertices().get("ode")).getMemoryReport(input);
+        final MemoryReport solverReport = ((NetworkMemoryReport) report).getLayerAndVertexReports().get(OdeVertex.SOLVER_MEMORY_REPORT_NAME);
+        assertNotNull("Expected solver memory report!", solverReport);
+
+        final long reported = solverReport.getTotalMemoryBytes(batchSize, MemoryUseMode.TRAINING, CacheMode.NONE, Nd4j.dataType());
+        assertTrue("Solver memory underestimated! Reported: " + reported + ", measured: " + measured, reported >= measured);
+        // Forward and backward passes reuse the same workspaces while the report adds them
+        assertTrue("Solver memory overestimated! Reported: " + reported + ", measured: " + measured, reported < 3 * measured);
+    }
+
+    /**
+     * Test that an exception is thrown if inference helper does not have the same number of time inputs as the forward
+     * helper
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void inferenceTimeInputsMismatch() {
+        new OdeVertex.Builder(
+                new NeuralNetConfiguration.Builder(), "1", new BatchNormalization.Builder().nOut(3).build())
+                .odeInference(new InputStep(new DormandPrince54Solver(), 1, true))
+                .build();
+    }
+
+    /**
+     * Test that an exception is thrown if multiple shooting is used when the ODE depends on time
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void multipleShootingWithTimeInput() {
+        new OdeVertex.Builder(
+                new NeuralNetConfiguration.Builder(), "1", new DenseLayer.Builder().nOut(3).build())
+                .graphInputOutputFactory(new TimeInputFactory())
+                .odeConf(new MultipleShooting(new DormandPrince54Solver(), Nd4j.linspace(0, 3, 7), 3, 1, 1))
+                .build();
+    }
+
     /**
      * Test that a model with an {@link OdeVertex} can be serialized and deserialized.
      *
@@ -0,0 +1,30 @@
+package ode.vertex.conf.helper.backward;
+
+import ode.solve.conf.DormandPrince54Solver;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.junit.Test;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+
+import static junit.framework.TestCase.assertEquals;
+
+/**
+ * Test cases for {@link LogDensityAdjoint}
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityAdjointTest {
+
+    /**
+     * Test serialization and deserialization
+     */
+    @Test
+    public void serializeDeserialize() throws IOException {
+        final OdeHelperBackward conf = new LogDensityAdjoint(new DormandPrince54Solver(), Nd4j.arange(2), 1e-4);
+        final String json = NeuralNetConfiguration.mapper().writeValueAsString(conf);
+        final OdeHelperBackward newConf = NeuralNetConfiguration.mapper().readValue(json, OdeHelperBackward.class);
+        assertEquals("Did not deserialize into the same thing!", conf, newConf);
+        assertEquals("Not same hash code of deserialized object!", conf.hashCode(), newConf.hashCode());
+    }
+}
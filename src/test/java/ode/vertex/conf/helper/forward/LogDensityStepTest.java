@@ -0,0 +1,72 @@
+package ode.vertex.conf.helper.forward;
+
+import ode.solve.conf.DormandPrince54Solver;
+import ode.vertex.conf.OdeVertex;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.impl.LossMSE;
+
+import java.io.IOException;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Test cases for {@link LogDensityStep}
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityStepTest {
+
+    /**
+     * Test serialization and deserialization
+     */
+    @Test
+    public void serializeDeserialize() throws IOException {
+        final OdeHelperForward conf = new LogDensityStep(new DormandPrince54Solver(), Nd4j.arange(2), 1e-4, true);
+        final String json = NeuralNetConfiguration.mapper().writeValueAsString(conf);
+        final OdeHelperForward newConf = NeuralNetConfiguration.mapper().readValue(json, OdeHelperForward.class);
+        assertEquals("Did not deserialize into the same thing!", conf, newConf);
+        assertEquals("Not same hash code of deserialized object!", conf.hashCode(), newConf.hashCode());
+    }
+
+    /**
+     * Test that an {@link OdeVertex} configured as a continuous normalizing flow outputs the change in log density
+     * in addition to the state and that it can be trained
+     */
+    @Test
+    public void fitFlow() {
+        final int nrofInputs = 4;
+        final OdeVertex flow = new OdeVertex.Builder(new NeuralNetConfiguration.Builder(), "dense",
+                new DenseLayer.Builder().nOut(nrofInputs).activation(new ActivationTanH()).build())
+                .odeConf(new ode.vertex.conf.helper.LogDensityStep(new DormandPrince54Solver(), Nd4j.arange(2)))
+                .build();
+        assertEquals("Incorrect output type!", InputType.feedForward(nrofInputs + 1), flow.getOutputType(0, InputType.feedForward(nrofInputs)));
+
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .updater(new Sgd(0.1))
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nrofInputs))
+                .addVertex("flow", flow, "input")
+                .addLayer("output", new OutputLayer.Builder().nOut(2).lossFunction(new LossMSE()).activation(new ActivationIdentity()).build(), "flow")
+                .setOutputs("output")
+                .build());
+        graph.init();
+
+        // Note: params of the OdeVertex are not part of graph.params() as it is not a layer
+        final INDArray paramsBefore = graph.getVertex("flow").params().dup();
+        graph.fit(new INDArray[]{Nd4j.randn(new long[]{3, nrofInputs})}, new INDArray[]{Nd4j.zeros(3, 2)});
+        assertNotEquals("Expected parameters to change!", 0, paramsBefore.sub(graph.getVertex("flow").params()).amaxNumber().doubleValue(), 1e-10);
+    }
+}
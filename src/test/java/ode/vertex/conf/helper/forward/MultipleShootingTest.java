@@ -0,0 +1,24 @@
+package ode.vertex.conf.helper.forward;
+
+import ode.solve.conf.DormandPrince54Solver;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Test cases for {@link MultipleShooting}
+ *
+ * @author Christian Skarby
+ */
+public class MultipleShootingTest extends AbstractHelperConfTest {
+
+    @Override
+    OdeHelperForward create() {
+        return new MultipleShooting(new DormandPrince54Solver(), Nd4j.linspace(0, 3, 7), 3, 1);
+    }
+
+    @Override
+    INDArray[] createInputs(INDArray input) {
+        final long[] shape = input.shape();
+        return new INDArray[]{input, Nd4j.randn(new long[]{shape[0], 2, shape[1], shape[2], shape[3]})};
+    }
+}
@@ -0,0 +1,58 @@
+package ode.vertex.impl;
+
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link ControlledVectorFieldVertex}
+ *
+ * @author Christian Skarby
+ */
+public class ControlledVectorFieldVertexTest {
+
+    /**
+     * Test that output is the matrix-vector product of the inputs
+     */
+    @Test
+    public void doForward() {
+        final INDArray vectorField = Nd4j.create(new double[][]{{1, 2, 3, 4, 5, 6}});
+        final INDArray controlDot = Nd4j.create(new double[][]{{2, -1}});
+
+        final GraphVertex vertex = new ode.vertex.conf.ControlledVectorFieldVertex().instantiate(null, "test", 1, null, false);
+        vertex.setInputs(vectorField, controlDot);
+
+        assertEquals("Incorrect output!",
+                Nd4j.create(new double[][]{{2 - 4, 4 - 5, 6 - 6}}),
+                vertex.doForward(false, LayerWorkspaceMgr.noWorkspacesImmutable()));
+    }
+
+    /**
+     * Test that epsilons are the gradients of the matrix-vector product
+     */
+    @Test
+    public void doBackward() {
+        final INDArray vectorField = Nd4j.create(new double[][]{{1, 2, 3, 4, 5, 6}});
+        final INDArray controlDot = Nd4j.create(new double[][]{{2, -1}});
+        final INDArray eps = Nd4j.create(new double[][]{{1, 10, 100}});
+
+        final GraphVertex vertex = new ControlledVectorFieldVertex(null, "test", 1);
+        vertex.setInputs(vectorField, controlDot);
+        vertex.setEpsilon(eps);
+        vertex.doForward(true, LayerWorkspaceMgr.noWorkspacesImmutable());
+        final Pair<Gradient, INDArray[]> output = vertex.doBackward(false, LayerWorkspaceMgr.noWorkspacesImmutable());
+
+        assertEquals("Incorrect epsilon!",
+                Nd4j.create(new double[][]{{2, 20, 200, -1, -10, -100}}),
+                output.getSecond()[0]);
+        assertEquals("Incorrect epsilon!",
+                Nd4j.create(new double[][]{{1 + 20 + 300, 4 + 50 + 600}}),
+                output.getSecond()[1]);
+    }
+}
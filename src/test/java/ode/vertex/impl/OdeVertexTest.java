@@ -1,8 +1,16 @@
 package ode.vertex.impl;
 
 import ode.solve.conf.DormandPrince54Solver;
+import ode.solve.conf.SolverConfig;
+import ode.vertex.conf.ControlledVectorFieldVertex;
 import ode.vertex.conf.ShapeMatchVertex;
+import ode.vertex.conf.helper.backward.DynamicsRegularization;
 import ode.vertex.conf.helper.InputStep;
+import ode.vertex.conf.helper.MultipleShooting;
+import ode.vertex.conf.helper.forward.FixedStep;
+import ode.solve.impl.util.SolverState;
+import ode.vertex.impl.helper.InferenceCache;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.graph.MergeVertex;
@@ -18,9 +26,16 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.MultiDataSet;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import util.listen.step.ProbeStepListener;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Test cases for {@link OdeVertex} (and config of the same)
@@ -253,4 +268,336 @@ public class OdeVertexTest {
                 new INDArray[]{Nd4j.repeat(Nd4j.create(new double[]{0, 1, 0}).transposei(), batchSize)}));
         assertNotEquals("Expected parameters to be updated!", before, graph.getVertex("odeVertex").params().dup());
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that the inference helper is used when not training and that the forward helper is used when training
+     */
+    @Test
+    public void inferenceHelper() {
+        final long nOut = 4;
+        final DormandPrince54Solver forwardSolver = new DormandPrince54Solver();
+        final DormandPrince54Solver inferenceSolver = new DormandPrince54Solver();
+        final ProbeStepListener forwardProbe = new ProbeStepListener();
+        final ProbeStepListener inferenceProbe = new ProbeStepListener();
+        forwardSolver.addListeners(forwardProbe);
+        inferenceSolver.addListeners(inferenceProbe);
+
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.1))
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nOut))
+                .addVertex("odeVertex", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "ode0", new DenseLayer.Builder().nOut(nOut).build())
+                        .odeForward(new FixedStep(forwardSolver, Nd4j.arange(2), true))
+                        .odeInference(new FixedStep(inferenceSolver, Nd4j.arange(2), true))
+                        .build(), "input")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).build(), "odeVertex")
+                .build());
+        graph.init();
+
+        final INDArray input = Nd4j.randn(new long[]{3, nOut});
+        graph.outputSingle(input);
+        forwardProbe.assertNrofCalls(0, 0, 0);
+        inferenceProbe.assertWasCalled();
+
+        final ProbeStepListener trainingProbe = new ProbeStepListener();
+        forwardSolver.addListeners(trainingProbe);
+        inferenceSolver.clearListeners();
+        inferenceSolver.addListeners(new ProbeStepListener() {
+            @Override
+            public void begin(INDArray t, INDArray y0) {
+                fail("Inference helper shall not be used when training!");
+            }
+        });
+        graph.fit(new DataSet(input, Nd4j.create(new double[][]{{0, 1, 0}, {1, 0, 0}, {0, 0, 1}})));
+        trainingProbe.assertWasCalled();
+    }
+
+    /**
+     * Test that an ODE block with batch normalization is evaluated in training mode when not training unless inference
+     * mode is explicitly enabled for it
+     */
+    @Test
+    public void batchNormInferenceMode() {
+        final INDArray input = Nd4j.randn(new long[]{5, 4});
+        final INDArray label = Nd4j.randn(new long[]{5, 4});
+
+        final ComputationGraph defaultGraph = createBatchNormGraph(false);
+        final ComputationGraph inferenceGraph = createBatchNormGraph(true);
+        inferenceGraph.setParams(defaultGraph.params().dup());
+        for (int i = 0; i < 3; i++) {
+            defaultGraph.fit(new DataSet(input, label));
+            inferenceGraph.fit(new DataSet(input, label));
+        }
+
+        final INDArray inferenceOutput = defaultGraph.outputSingle(false, input);
+        assertTrue("Expected finite output!", Double.isFinite(inferenceOutput.sumNumber().doubleValue()));
+        assertEquals("Expected layers to be evaluated in training mode!",
+                defaultGraph.outputSingle(true, input), inferenceOutput);
+        assertNotEquals("Expected layers to be evaluated in inference mode!",
+                inferenceGraph.outputSingle(true, input), inferenceGraph.outputSingle(false, input));
+    }
+
+    private static ComputationGraph createBatchNormGraph(boolean batchNormInferenceMode) {
+        final long nOut = 4;
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .updater(new Sgd(0.01))
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nOut))
+                .addVertex("odeVertex", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder().seed(666), "ode0", new DenseLayer.Builder().nOut(nOut).build())
+                        .addLayer("ode1", new BatchNormalization.Builder().build(), "ode0")
+                        .batchNormInferenceMode(batchNormInferenceMode)
+                        .build(), "input")
+                .setOutputs("output")
+                .addLayer("output", new LossLayer.Builder()
+                        .activation(new ActivationIdentity())
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "odeVertex")
+                .build());
+        graph.init();
+        return graph;
+    }
+
+    /**
+     * Test that a clone of a model follows tolerances changed through its own configuration but not tolerances changed
+     * on the original model
+     */
+    @Test
+    public void cloneFollowsOwnTolerances() {
+        final long nOut = 4;
+        final DormandPrince54Solver solver = new DormandPrince54Solver(new SolverConfig(1e-1, 1e-1, 1e-10, 10));
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nOut))
+                .addVertex("odeVertex", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "ode0", new DenseLayer.Builder().nOut(nOut).activation(new ActivationReLU()).build())
+                        .odeForward(new FixedStep(solver, Nd4j.create(new double[]{0, 5}), true))
+                        .build(), "input")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).build(), "odeVertex")
+                .build());
+        graph.init();
+        final ComputationGraph clone = graph.clone();
+
+        final DormandPrince54Solver cloneSolver = (DormandPrince54Solver) ((FixedStep)
+                ((ode.vertex.conf.OdeVertex) clone.getConfiguration().getVertices().get("odeVertex"))
+                        .getOdeForwardConf()).getSolverConf();
+        final int[] nrofSteps = {0};
+        cloneSolver.addListeners(new ProbeStepListener() {
+            @Override
+            public void step(SolverState solverState, INDArray step, INDArray error) {
+                nrofSteps[0]++;
+            }
+        });
+
+        final INDArray input = Nd4j.randn(new long[]{3, nOut});
+        clone.outputSingle(input);
+        final int nrofStepsLoose = nrofSteps[0];
+
+        solver.getTolerances().setAbsTol(1e-8);
+        solver.getTolerances().setRelTol(1e-8);
+        assertEquals("Incorrect absolute tolerance in clone!", 1e-1, cloneSolver.getConfig().getAbsTol(), 1e-12);
+
+        nrofSteps[0] = 0;
+        clone.outputSingle(input);
+        assertEquals("Expected same number of steps when original tolerances change!", nrofStepsLoose, nrofSteps[0]);
+
+        cloneSolver.getTolerances().setAbsTol(1e-8);
+        cloneSolver.getTolerances().setRelTol(1e-8);
+        assertEquals("Incorrect absolute tolerance in clone!", 1e-8, cloneSolver.getConfig().getAbsTol(), 1e-12);
+
+        nrofSteps[0] = 0;
+        clone.outputSingle(input);
+        assertTrue("Expected more steps with tighter tolerances! Loose: " + nrofStepsLoose + ", tight: " + nrofSteps[0],
+                nrofSteps[0] > nrofStepsLoose);
+    }
+
+    /**
+     * Test that repeated inference with the same input uses the inference cache and that the cache is not used after
+     * the parameters have changed
+     */
+    @Test
+    public void inferenceCache() {
+        final long nOut = 4;
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.1))
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nOut))
+                .addVertex("odeVertex", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "ode0", new DenseLayer.Builder().nOut(nOut).build())
+                        .inferenceCache(1 << 20)
+                        .build(), "input")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).build(), "odeVertex")
+                .build());
+        graph.init();
+
+        final InferenceCache cache = ((OdeVertex) graph.getVertex("odeVertex")).getInferenceCache();
+        final INDArray input = Nd4j.randn(new long[]{3, nOut});
+
+        final INDArray expected = graph.outputSingle(input).dup();
+        assertEquals("Incorrect output!", expected, graph.outputSingle(input));
+        assertEquals("Incorrect number of hits!", 1, cache.getNrofHits());
+
+        graph.outputSingle(input.add(1));
+        assertEquals("Incorrect number of misses!", 2, cache.getNrofMisses());
+        assertEquals("Incorrect number of entries!", 2, cache.size());
+
+        graph.fit(new DataSet(input, Nd4j.create(new double[][]{{0, 1, 0}, {1, 0, 0}, {0, 0, 1}})));
+        assertEquals("Expected empty cache after training!", 0, cache.size());
+        assertNotEquals("Expected output to change after training!", expected, graph.outputSingle(input));
+        assertEquals("Incorrect number of hits!", 1, cache.getNrofHits());
+
+        final INDArray beforeUpdate = graph.outputSingle(input).dup();
+        graph.getVertex("odeVertex").params().muli(2);
+        assertNotEquals("Expected output to change after parameter update!", beforeUpdate, graph.outputSingle(input));
+        assertEquals("Incorrect number of hits!", 2, cache.getNrofHits());
+    }
+
+    /**
+     * Test that the regularization score is available after fitting when the dynamics are regularized
+     */
+    @Test
+    public void regularization() {
+        final long nOut = 4;
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.1))
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nOut))
+                .addVertex("odeVertex", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "ode0", new DenseLayer.Builder().nOut(nOut).build())
+                        .regularization(new DynamicsRegularization(0.1, 0.1))
+                        .build(), "input")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).build(), "odeVertex")
+                .build());
+        graph.init();
+
+        final OdeVertex vertex = (OdeVertex) graph.getVertex("odeVertex");
+        assertEquals("Expected no regularization score before fitting!", 0, vertex.regularizationScore(), 1e-10);
+
+        graph.fit(new DataSet(Nd4j.randn(new long[]{3, nOut}), Nd4j.create(new double[][]{{0, 1, 0}, {1, 0, 0}, {0, 0, 1}})));
+        assertTrue("Expected positive regularization score!", vertex.regularizationScore() > 0);
+    }
+
+    /**
+     * Test that a model using multiple shooting with initial states of segments from an encoder can be fitted and
+     * that the continuity penalty is reported in the regularization score
+     */
+    @Test
+    public void fitMultipleShooting() {
+        final long nOut = 4;
+        final int nrofSegments = 3;
+        final INDArray time = Nd4j.linspace(0, 3, 7);
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.01))
+                .seed(666)
+                .graphBuilder()
+                .addInputs("z0", "observations")
+                .setInputTypes(InputType.feedForward(nOut), InputType.recurrent(nOut, nrofSegments - 1))
+                .addLayer("encoder", new LSTM.Builder().nOut(nOut).build(), "observations")
+                .addVertex("odeVertex", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "ode0", new DenseLayer.Builder().nOut(nOut).activation(new ActivationReLU()).build())
+                        .odeConf(new MultipleShooting(new DormandPrince54Solver(new SolverConfig(1e-3, 1e-3, 1e-6, 10)), time, nrofSegments, 1, 1))
+                        .build(), "z0", "encoder")
+                .setOutputs("output")
+                .addLayer("output", new RnnOutputLayer.Builder().nOut(2).activation(new ActivationIdentity())
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "odeVertex")
+                .build());
+        graph.init();
+
+        final INDArray z0 = Nd4j.randn(new long[]{5, nOut});
+        final INDArray observations = Nd4j.randn(new long[]{5, nOut, nrofSegments - 1});
+        final INDArray output = graph.output(false, z0, observations)[0];
+        assertArrayEquals("Incorrect output shape!", new long[]{5, 2, time.length()}, output.shape());
+
+        final INDArray paramsBefore = graph.params().dup();
+        graph.fit(new MultiDataSet(new INDArray[]{z0, observations}, new INDArray[]{Nd4j.randn(output.shape())}));
+
+        final OdeVertex vertex = (OdeVertex) graph.getVertex("odeVertex");
+        assertTrue("Expected positive continuity penalty!", vertex.regularizationScore() > 0);
+        assertNotEquals("Expected encoder parameters to change!",
+                paramsBefore.get(NDArrayIndex.interval(0, graph.getLayer("encoder").numParams())),
+                graph.params().get(NDArrayIndex.interval(0, graph.getLayer("encoder").numParams())));
+    }
+
+    /**
+     * Test that the solution of a controlled differential equation with constant vector field is the vector field
+     * times the change of the control path
+     */
+    @Test
+    public void controlledSolution() {
+        final long nrofHidden = 3;
+        final long nrofChannels = 2;
+        final ComputationGraph graph = new ComputationGraph(controlledGraphBuilder(nrofHidden, nrofChannels, 5)
+                .setOutputs("output")
+                .addLayer("output", new ActivationLayer.Builder().activation(new ActivationIdentity()).build(), "cde")
+                .build());
+        graph.init();
+
+        final INDArray vertexParams = graph.getVertex("cde").params();
+        final INDArray vectorField = Nd4j.linspace(-1, 1, nrofHidden * nrofChannels);
+        vertexParams.assign(0);
+        // Bias is last
+        vertexParams.get(NDArrayIndex.interval(vertexParams.length() - vectorField.length(), vertexParams.length()))
+                .assign(vectorField);
+
+        final INDArray z0 = Nd4j.randn(new long[]{4, nrofHidden});
+        final INDArray series = Nd4j.randn(new long[]{4, nrofChannels, 5});
+
+        final INDArray output = graph.output(false, z0, series)[0];
+
+        final INDArray deltaX = series.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(4))
+                .sub(series.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(0)));
+        final INDArray expected = z0.dup();
+        for (int c = 0; c < nrofChannels; c++) {
+            expected.addi(deltaX.getColumn(c).mmul(
+                    vectorField.get(NDArrayIndex.interval(c * nrofHidden, (c + 1) * nrofHidden))));
+        }
+
+        assertEquals("Incorrect solution!", 0, output.sub(expected).amaxNumber().doubleValue(), 1e-3);
+    }
+
+    /**
+     * Smoke test to see that it is possible to fit a controlled differential equation
+     */
+    @Test
+    public void fitControlled() {
+        final ComputationGraph graph = new ComputationGraph(controlledGraphBuilder(4, 3, 7)
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nOut(2).build(), "cde")
+                .build());
+        graph.init();
+
+        final INDArray before = graph.getVertex("cde").params().dup();
+        graph.fit(new MultiDataSet(
+                new INDArray[]{Nd4j.randn(new long[]{3, 4}), Nd4j.randn(new long[]{3, 3, 7})},
+                new INDArray[]{Nd4j.create(new double[][]{{0, 1}, {1, 0}, {0, 1}})}));
+        assertNotEquals("Expected parameters to be updated!", before, graph.getVertex("cde").params().dup());
+    }
+
+    private static ComputationGraphConfiguration.GraphBuilder controlledGraphBuilder(long nrofHidden, long nrofChannels, long nrofObservations) {
+        return new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.1))
+                .graphBuilder()
+                .addInputs("z0", "series")
+                .setInputTypes(InputType.feedForward(nrofHidden), InputType.recurrent(nrofChannels, nrofObservations))
+                .addVertex("cde", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "f", new DenseLayer.Builder()
+                        .nOut(nrofHidden * nrofChannels)
+                        .activation(new ActivationIdentity())
+                        .build())
+                        .addControlVertex("fdX", new ControlledVectorFieldVertex(), "f")
+                        .odeConf(new ode.vertex.conf.helper.FixedStep(
+                                new DormandPrince54Solver(new SolverConfig(1e-6, 1e-6, 1e-10, 1)),
+                                Nd4j.create(new double[]{0, 1})))
+                        .build(), "z0", "series");
+    }
+}
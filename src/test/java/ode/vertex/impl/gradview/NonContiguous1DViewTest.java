@@ -99,4 +99,44 @@ public class NonContiguous1DViewTest {
         final INDArray expected = Nd4j.create(new double[] {0,1,2,3,4,5,6,7,8,9,10,11, 17,18,19,20,21,22,23,24,25,26});
         assertEquals("Viewed array was not changed!", expected, actual);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test assignment to and from a {@link NonContiguous1DView} where added views are contiguous in the viewed array
+     */
+    @Test
+    public void assignContiguous() {
+        final INDArray toView = Nd4j.linspace(0, 9, 10);
+
+        final NonContiguous1DView view = new NonContiguous1DView();
+        view.addView(toView.get(NDArrayIndex.interval(2, 4)));
+        view.addView(toView.get(NDArrayIndex.interval(4, 8)).reshape(2, 2));
+
+        final INDArray actual = Nd4j.create(new long[] {view.length()});
+        view.assignTo(actual);
+        assertEquals("Incorrect output!", Nd4j.create(new double[] {2,3,4,5,6,7}, new long[] {6}), actual);
+
+        view.assignFrom(Nd4j.zeros(new long[] {view.length()}));
+        assertEquals("Viewed array was not changed!", Nd4j.create(new double[] {0,1,0,0,0,0,0,0,8,9}), toView);
+    }
+
+    /**
+     * Test assignment to and from a {@link NonContiguous1DView} where added views are from different arrays
+     */
+    @Test
+    public void assignDifferentArrays() {
+        final INDArray first = Nd4j.linspace(0, 3, 4);
+        final INDArray second = Nd4j.linspace(4, 7, 4);
+
+        final NonContiguous1DView view = new NonContiguous1DView();
+        view.addView(first.get(NDArrayIndex.interval(1, 3)));
+        view.addView(second.get(NDArrayIndex.interval(0, 2)));
+
+        final INDArray actual = Nd4j.create(new long[] {view.length()});
+        view.assignTo(actual);
+        assertEquals("Incorrect output!", Nd4j.create(new double[] {1,2,4,5}, new long[] {4}), actual);
+
+        view.assignFrom(Nd4j.zeros(new long[] {view.length()}));
+        assertEquals("Viewed array was not changed!", Nd4j.create(new double[] {0,0,0,3}), first);
+        assertEquals("Viewed array was not changed!", Nd4j.create(new double[] {0,0,6,7}), second);
+    }
+}
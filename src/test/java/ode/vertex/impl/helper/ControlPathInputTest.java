@@ -0,0 +1,35 @@
+package ode.vertex.impl.helper;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test cases for {@link ControlPathInput}
+ *
+ * @author Christian Skarby
+ */
+public class ControlPathInputTest {
+
+    /**
+     * Test that the same fit is reused for equal series and that a new fit is done when the series changes, also when
+     * it is the same instance
+     */
+    @Test
+    public void fitCache() {
+        final ControlPathInput.FitCache cache = new ControlPathInput.FitCache();
+        final INDArray series = Nd4j.randn(new long[]{3, 2, 6});
+
+        final NaturalCubicSpline first = cache.fit(series);
+        assertSame("Expected cached fit!", first, cache.fit(series));
+        assertSame("Expected cached fit for equal series!", first, cache.fit(series.dup()));
+
+        series.addi(1);
+        final NaturalCubicSpline changed = cache.fit(series);
+        assertNotSame("Expected new fit for changed series!", first, changed);
+        assertNotSame("Expected new fit for series of different shape!", changed, cache.fit(Nd4j.randn(new long[]{3, 2, 5})));
+    }
+}
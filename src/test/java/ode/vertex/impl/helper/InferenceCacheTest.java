@@ -0,0 +1,103 @@
+package ode.vertex.impl.helper;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link InferenceCache}
+ *
+ * @author Christian Skarby
+ */
+public class InferenceCacheTest {
+
+    /**
+     * Test that a cached output is returned for equal inputs and that it is not affected by changes to the original
+     */
+    @Test
+    public void hit() {
+        final InferenceCache cache = new InferenceCache(1 << 20);
+        final INDArray input = Nd4j.randn(new long[]{3, 4});
+        final INDArray output = Nd4j.randn(new long[]{3, 5});
+        final INDArray expected = output.dup();
+
+        assertNull("Expected cache miss!", cache.get(cache.createKey(new INDArray[]{input})));
+        cache.put(cache.createKey(new INDArray[]{input}), output);
+        output.addi(1);
+
+        assertEquals("Incorrect output!", expected, cache.get(cache.createKey(new INDArray[]{input.dup()})));
+        assertNull("Expected cache miss!", cache.get(cache.createKey(new INDArray[]{input.add(1e-3)})));
+        assertNull("Expected cache miss!", cache.get(cache.createKey(new INDArray[]{input.reshape(4, 3)})));
+        assertEquals("Incorrect number of hits!", 1, cache.getNrofHits());
+        assertEquals("Incorrect number of misses!", 3, cache.getNrofMisses());
+    }
+
+    /**
+     * Test that the least recently used entry is evicted when the cache is full
+     */
+    @Test
+    public void evictLeastRecentlyUsed() {
+        final INDArray output = Nd4j.randn(new long[]{2, 2});
+        final long entryBytes = 4 * Double.BYTES + output.length() * output.data().getElementSize();
+        final InferenceCache cache = new InferenceCache(2 * entryBytes);
+
+        final INDArray[] first = {Nd4j.create(new double[]{1, 2, 3, 4})};
+        final INDArray[] second = {Nd4j.create(new double[]{5, 6, 7, 8})};
+        final INDArray[] third = {Nd4j.create(new double[]{9, 10, 11, 12})};
+
+        cache.put(cache.createKey(first), output);
+        cache.put(cache.createKey(second), output);
+        assertEquals("Incorrect number of bytes!", 2 * entryBytes, cache.getNrofBytes());
+
+        cache.get(cache.createKey(first));
+        cache.put(cache.createKey(third), output);
+
+        assertEquals("Incorrect number of entries!", 2, cache.size());
+        assertNotNull("Expected first entry to be cached!", cache.get(cache.createKey(first)));
+        assertNull("Expected second entry to be evicted!", cache.get(cache.createKey(second)));
+        assertNotNull("Expected third entry to be cached!", cache.get(cache.createKey(third)));
+        assertEquals("Incorrect number of bytes!", 2 * entryBytes, cache.getNrofBytes());
+    }
+
+    /**
+     * Test that the cache is cleared when parameters change
+     */
+    @Test
+    public void invalidateOnParameterChange() {
+        final InferenceCache cache = new InferenceCache(1 << 20);
+        final INDArray params = Nd4j.randn(new long[]{1, 10});
+        final INDArray[] input = {Nd4j.randn(new long[]{3, 4})};
+
+        cache.checkParameters(params);
+        cache.put(cache.createKey(input), Nd4j.randn(new long[]{3, 4}));
+        cache.checkParameters(params);
+        assertEquals("Incorrect number of entries!", 1, cache.size());
+
+        params.putScalar(3, params.getDouble(3) + 0.1);
+        cache.checkParameters(params);
+        assertEquals("Expected empty cache!", 0, cache.size());
+        assertEquals("Incorrect number of bytes!", 0, cache.getNrofBytes());
+    }
+
+    /**
+     * Test that the cache is cleared when two parameters are swapped, i.e. a change which keeps e.g. sum and norm
+     */
+    @Test
+    public void invalidateOnSwappedParameters() {
+        final InferenceCache cache = new InferenceCache(1 << 20);
+        final INDArray params = Nd4j.linspace(1, 10, 10).reshape(1, 10);
+        final INDArray[] input = {Nd4j.randn(new long[]{3, 4})};
+
+        cache.checkParameters(params);
+        cache.put(cache.createKey(input), Nd4j.randn(new long[]{3, 4}));
+
+        final double first = params.getDouble(2);
+        params.putScalar(2, params.getDouble(7));
+        params.putScalar(7, first);
+        cache.checkParameters(params);
+        assertEquals("Expected empty cache!", 0, cache.size());
+        assertNull("Expected cache miss!", cache.get(cache.createKey(input)));
+    }
+}
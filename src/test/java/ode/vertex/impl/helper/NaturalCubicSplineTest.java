@@ -0,0 +1,81 @@
+package ode.vertex.impl.helper;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link NaturalCubicSpline}
+ *
+ * @author Christian Skarby
+ */
+public class NaturalCubicSplineTest {
+
+    /**
+     * Test that the spline passes through the observations
+     */
+    @Test
+    public void interpolate() {
+        final INDArray series = Nd4j.randn(new long[]{3, 2, 6});
+        final NaturalCubicSpline spline = NaturalCubicSpline.fit(series);
+
+        for (int i = 0; i < 6; i++) {
+            final INDArray expected = series.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(i));
+            assertEquals("Incorrect value at observation " + i + "!", 0,
+                    spline.value(i / 5d).sub(expected).amaxNumber().doubleValue(), 1e-5);
+        }
+    }
+
+    /**
+     * Test that the derivative and second derivative are consistent with finite differences and that the second
+     * derivative is zero at the end points
+     */
+    @Test
+    public void derivatives() {
+        final NaturalCubicSpline spline = NaturalCubicSpline.fit(Nd4j.randn(new long[]{2, 3, 5}));
+        final double h = 1e-3;
+
+        for (double s : new double[]{0.1, 0.33, 0.6, 0.8}) {
+            final INDArray fd = spline.value(s + h).sub(spline.value(s - h)).divi(2 * h);
+            assertEquals("Incorrect derivative!", 0, spline.derivative(s).sub(fd).amaxNumber().doubleValue(), 1e-2);
+
+            final INDArray fd2 = spline.derivative(s + h).sub(spline.derivative(s - h)).divi(2 * h);
+            assertEquals("Incorrect second derivative!", 0, spline.secondDerivative(s).sub(fd2).amaxNumber().doubleValue(), 1e-1);
+        }
+
+        assertEquals("Expected natural boundary!", 0, spline.secondDerivative(0).amaxNumber().doubleValue(), 1e-5);
+        assertEquals("Expected natural boundary!", 0, spline.secondDerivative(1).amaxNumber().doubleValue(), 1e-5);
+    }
+
+    /**
+     * Test that a linear series is interpolated exactly
+     */
+    @Test
+    public void linear() {
+        final INDArray series = Nd4j.linspace(0, 4, 5).reshape(1, 1, 5);
+        final NaturalCubicSpline spline = NaturalCubicSpline.fit(series);
+
+        assertEquals("Incorrect value!", 1.3, spline.value(1.3 / 4).getDouble(0), 1e-5);
+        assertEquals("Incorrect derivative!", 4, spline.derivative(0.7).getDouble(0), 1e-5);
+    }
+
+    /**
+     * Test that observation times are added as the first channel
+     */
+    @Test
+    public void withTimeChannel() {
+        final INDArray times = Nd4j.create(new double[][]{{0, 0.3, 2}, {1, 1.1, 1.5}});
+        final INDArray observations = Nd4j.randn(new long[]{2, 2, 3});
+
+        final INDArray series = NaturalCubicSpline.withTimeChannel(times, observations);
+
+        assertArrayEquals("Incorrect shape!", new long[]{2, 3, 3}, series.shape());
+        assertEquals("Incorrect times!", times, series.get(NDArrayIndex.all(), NDArrayIndex.point(0), NDArrayIndex.all()));
+        assertEquals("Incorrect observations!", observations,
+                series.get(NDArrayIndex.all(), NDArrayIndex.interval(1, 3), NDArrayIndex.all()));
+    }
+}
@@ -0,0 +1,120 @@
+package ode.vertex.impl.helper;
+
+import ode.solve.conf.DormandPrince54Solver;
+import ode.solve.conf.SolverConfig;
+import ode.vertex.conf.OdeVertex;
+import ode.vertex.conf.helper.backward.FixedStepAdjoint;
+import ode.vertex.conf.helper.forward.FixedStep;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.impl.LossMSE;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link ShardedOdeGraphHelper}
+ *
+ * @author Christian Skarby
+ */
+public class ShardedOdeGraphHelperTest {
+
+    /**
+     * Test that output and gradients are the same as when not using shards
+     */
+    @Test
+    public void sameAsUnsharded() {
+        final long nrofInputs = 5;
+        final long batchSize = 7;
+        final ComputationGraph unsharded = createGraph(nrofInputs, 1);
+        final ComputationGraph sharded = createGraph(nrofInputs, 3);
+        sharded.setParams(unsharded.params().dup());
+
+        final INDArray input = Nd4j.randn(new long[]{batchSize, nrofInputs});
+        final INDArray label = Nd4j.randn(new long[]{batchSize, 2});
+
+        final INDArray expectedOutput = unsharded.outputSingle(input);
+        final INDArray actualOutput = sharded.outputSingle(input);
+        assertEquals("Incorrect output!", expectedOutput, actualOutput);
+
+        unsharded.setInputs(input);
+        unsharded.setLabels(label);
+        unsharded.computeGradientAndScore();
+
+        sharded.setInputs(input);
+        sharded.setLabels(label);
+        sharded.computeGradientAndScore();
+
+        final INDArray expectedGrad = unsharded.getGradientsViewArray();
+        final INDArray actualGrad = sharded.getGradientsViewArray();
+        for (int i = 0; i < expectedGrad.length(); i++) {
+            assertEquals("Incorrect gradient at " + i + "!", expectedGrad.getDouble(i), actualGrad.getDouble(i), 1e-4);
+        }
+    }
+
+    /**
+     * Test that a mini batch smaller than the number of shards can be handled
+     */
+    @Test
+    public void fewerExamplesThanShards() {
+        final long nrofInputs = 4;
+        final ComputationGraph unsharded = createGraph(nrofInputs, 1);
+        final ComputationGraph sharded = createGraph(nrofInputs, 4);
+        sharded.setParams(unsharded.params().dup());
+
+        final INDArray input = Nd4j.randn(new long[]{2, nrofInputs});
+        assertEquals("Incorrect output!", unsharded.outputSingle(input), sharded.outputSingle(input));
+    }
+
+    /**
+     * Test that output is the same as when not using shards when shards are solved in a dedicated thread pool
+     */
+    @Test
+    public void dedicatedThreadPool() {
+        final long nrofInputs = 3;
+        final ComputationGraph unsharded = createGraph(nrofInputs, 1);
+        final ComputationGraph sharded = createGraph(nrofInputs, 3, 2);
+        sharded.setParams(unsharded.params().dup());
+
+        final INDArray input = Nd4j.randn(new long[]{5, nrofInputs});
+        assertEquals("Incorrect output!", unsharded.outputSingle(input), sharded.outputSingle(input));
+    }
+
+    private static ComputationGraph createGraph(long nrofInputs, int nrofShards) {
+        return createGraph(nrofInputs, nrofShards, 0);
+    }
+
+    private static ComputationGraph createGraph(long nrofInputs, int nrofShards, int shardParallelism) {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nrofInputs))
+                .addVertex("ode", new OdeVertex.Builder(new NeuralNetConfiguration.Builder(), "dense",
+                        new DenseLayer.Builder()
+                                .nOut(nrofInputs)
+                                .activation(new ActivationTanH())
+                                .build())
+                        .odeForward(new FixedStep(new DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-6, 10)), Nd4j.arange(2), true))
+                        .odeBackward(new FixedStepAdjoint(new DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-6, 10)), Nd4j.arange(2)))
+                        .nrofShards(nrofShards)
+                        .shardParallelism(shardParallelism)
+                        .build(), "input")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder()
+                        .nOut(2)
+                        .lossFunction(new LossMSE())
+                        .activation(new ActivationIdentity())
+                        .build(), "ode")
+                .build());
+        graph.init();
+        return graph;
+    }
+}
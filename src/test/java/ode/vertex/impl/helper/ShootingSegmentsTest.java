@@ -0,0 +1,42 @@
+package ode.vertex.impl.helper;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link ShootingSegments}
+ *
+ * @author Christian Skarby
+ */
+public class ShootingSegmentsTest {
+
+    /**
+     * Test that an exception is thrown if segments do not have the same time steps relative to their start
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void differentRelativeTime() {
+        new ShootingSegments(Nd4j.create(new double[]{0, 1, 2, 4, 5}), 2);
+    }
+
+    /**
+     * Test that splitting a sequence into segments and merging it back gives the original sequence
+     */
+    @Test
+    public void splitAndMerge() {
+        final ShootingSegments segments = new ShootingSegments(Nd4j.linspace(0, 6, 7), 3);
+        final INDArray timeSteps = Nd4j.linspace(1, 7 * 2 * 5, 7 * 2 * 5).reshape(7, 2, 5);
+
+        final INDArray split = segments.split(timeSteps);
+        // Segment ends comes from next segment start except for the last segment
+        final INDArray ends = Nd4j.concat(1,
+                split.get(NDArrayIndex.point(0), NDArrayIndex.interval(2, 6), NDArrayIndex.all()).reshape(1, 4, 5),
+                ShootingSegments.last(timeSteps).reshape(1, 2, 5));
+        final INDArray merged = segments.merge(Nd4j.concat(0, split, ends));
+
+        assertEquals("Incorrect merged sequence!", timeSteps, merged);
+    }
+}
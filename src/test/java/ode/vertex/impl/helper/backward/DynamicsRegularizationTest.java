@@ -0,0 +1,163 @@
+package ode.vertex.impl.helper.backward;
+
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.DormandPrince54Solver;
+import ode.vertex.conf.helper.NoTimeInputFactory;
+import ode.vertex.impl.gradview.NonContiguous1DView;
+import ode.vertex.impl.helper.GraphInputOutput;
+import ode.vertex.impl.helper.backward.timegrad.NoTimeGrad;
+import ode.vertex.impl.helper.forward.SingleStep;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link DynamicsRegularization}
+ *
+ * @author Christian Skarby
+ */
+public class DynamicsRegularizationTest {
+
+    private static DataBuffer.Type prevType;
+
+    @BeforeClass
+    public static void setDataType() {
+        prevType = Nd4j.dataType();
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+    }
+
+    @AfterClass
+    public static void resetDataType() {
+        Nd4j.setDataType(prevType);
+    }
+
+    /**
+     * Test that the parameter gradient from the kinetic energy term is the same as a numerical gradient of the score
+     */
+    @Test
+    public void kineticGradient() {
+        assertGradient(new DynamicsRegularization(0.1, 0, 1e-3));
+    }
+
+    /**
+     * Test that the parameter gradient from the jacobian term is the same as a numerical gradient of the score
+     */
+    @Test
+    public void jacobianGradient() {
+        final INDArray noise = Nd4j.randn(new long[]{3, 4});
+        assertGradient(new DynamicsRegularization(0, 0.1, 1e-3) {
+            @Override
+            INDArray createNoise(long[] shape) {
+                return noise;
+            }
+        });
+    }
+
+    /**
+     * Test that the score is the integral of the squared norm of the dynamics
+     */
+    @Test
+    public void kineticScore() {
+        final ComputationGraph graph = createGraph(4);
+        final INDArray y0 = Nd4j.randn(new long[]{3, 4});
+
+        final DynamicsRegularization regularization = new DynamicsRegularization(1, 0, 1e-3);
+        final double score = solve(graph, y0, regularization);
+
+        // Euler method with trapezoidal rule for the integral
+        final int nrofSteps = 10000;
+        final INDArray z = y0.dup();
+        double expected = 0;
+        for (int step = 0; step <= nrofSteps; step++) {
+            final INDArray fz = graph.outputSingle(z);
+            final double norm = fz.norm2Number().doubleValue();
+            expected += (step == 0 || step == nrofSteps ? 0.5 : 1) * norm * norm / nrofSteps;
+            z.addi(fz.muli(1d / nrofSteps));
+        }
+        expected /= y0.size(0);
+
+        assertEquals("Incorrect score!", expected, score, 1e-2 * expected);
+    }
+
+    /**
+     * Test that no score is given when there is no regularization
+     */
+    @Test
+    public void none() {
+        final DynamicsRegularization regularization = DynamicsRegularization.none();
+        assertTrue("Expected regularization to be disabled!", !regularization.isEnabled());
+        assertEquals("Incorrect score!", 0, solve(createGraph(4), Nd4j.randn(new long[]{3, 4}), regularization), 1e-10);
+    }
+
+    private static void assertGradient(DynamicsRegularization regularization) {
+        final ComputationGraph graph = createGraph(4);
+        final INDArray y0 = Nd4j.randn(new long[]{3, 4});
+
+        solve(graph, y0, regularization);
+        final INDArray gradient = graph.getGradientsViewArray().dup();
+        assertTrue("Expected non-zero gradient!", gradient.norm2Number().doubleValue() > 0);
+
+        final double delta = 1e-4;
+        final INDArray params = graph.params();
+        for (int i = 0; i < params.length(); i++) {
+            final double param = params.getDouble(i);
+
+            params.putScalar(i, param + delta);
+            final double scorePlus = solve(graph, y0, regularization);
+            params.putScalar(i, param - delta);
+            final double scoreMinus = solve(graph, y0, regularization);
+            params.putScalar(i, param);
+
+            final double expected = (scorePlus - scoreMinus) / (2 * delta);
+            assertEquals("Incorrect gradient for param " + i + "!", expected, gradient.getDouble(i), 1e-4 + 1e-3 * Math.abs(expected));
+        }
+    }
+
+    private static double solve(ComputationGraph graph, INDArray y0, DynamicsRegularization regularization) {
+        final INDArray time = Nd4j.create(new double[]{0, 1});
+        final GraphInputOutput graphInputOutput = new NoTimeInputFactory().create(new INDArray[]{y0});
+        final INDArray zt1 = new SingleStep(createSolver(), time)
+                .solve(graph, LayerWorkspaceMgr.noWorkspaces(), graphInputOutput, true);
+
+        graph.getGradientsViewArray().assign(0);
+        final NonContiguous1DView realGrads = new NonContiguous1DView();
+        realGrads.addView(graph.getGradientsViewArray());
+
+        regularization.begin(y0.size(0));
+        new SingleStepAdjoint(createSolver(), time, NoTimeGrad.factory).solve(
+                graph,
+                new OdeHelperBackward.InputArrays(graphInputOutput, zt1, Nd4j.zeros(zt1.shape()), realGrads),
+                new OdeHelperBackward.MiscPar(false, LayerWorkspaceMgr.noWorkspaces(), regularization));
+        return regularization.getScore();
+    }
+
+    private static DormandPrince54Solver createSolver() {
+        return new DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-10, 10));
+    }
+
+    private static ComputationGraph createGraph(int nrofInputs) {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .setInputTypes(InputType.feedForward(nrofInputs))
+                .addInputs("input")
+                .addLayer("dense", new DenseLayer.Builder().nOut(nrofInputs).activation(new ActivationTanH()).build(), "input")
+                .setOutputs("dense")
+                .build());
+        graph.init();
+        graph.initGradientsView();
+        return graph;
+    }
+}
@@ -0,0 +1,171 @@
+package ode.vertex.impl.helper.backward;
+
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.DormandPrince54Solver;
+import ode.vertex.conf.helper.NoTimeInputFactory;
+import ode.vertex.impl.gradview.NonContiguous1DView;
+import ode.vertex.impl.helper.GraphInputOutput;
+import ode.vertex.impl.helper.forward.LogDensityStep;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link LogDensityAdjoint}
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityAdjointTest {
+
+    private static DataBuffer.Type prevType;
+
+    @BeforeClass
+    public static void setDataType() {
+        prevType = Nd4j.dataType();
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+    }
+
+    @AfterClass
+    public static void resetDataType() {
+        Nd4j.setDataType(prevType);
+    }
+
+    /**
+     * Test that parameter and input gradients are the same as numerical gradients of a loss which depends on both the
+     * state and the change in log density when the same noise is used in forward and backward pass.
+     */
+    @Test
+    public void gradient() {
+        final ComputationGraph graph = createGraph(3);
+        final INDArray input = Nd4j.randn(new long[]{2, 3});
+        final INDArray noise = Nd4j.randn(new long[]{2, 3});
+        final INDArray lossWeights = Nd4j.randn(new long[]{2, 4});
+
+        final INDArray output = forward(graph, input, noise);
+        final NonContiguous1DView realGrads = new NonContiguous1DView();
+        realGrads.addView(graph.getGradientsViewArray());
+        graph.getGradientsViewArray().assign(0);
+
+        final INDArray inputGrad = new LogDensityAdjoint(createSolver(), Nd4j.create(new double[]{0, 1}), 1e-3) {
+            @Override
+            protected INDArray createNoise(long[] shape) {
+                return noise;
+            }
+        }.solve(graph,
+                new OdeHelperBackward.InputArrays(createInputOutput(input), output, lossWeights, realGrads),
+                new OdeHelperBackward.MiscPar(false, LayerWorkspaceMgr.noWorkspaces()))[0];
+
+        final INDArray paramGrad = graph.getGradientsViewArray().dup();
+        assertTrue("Expected non-zero gradient!", paramGrad.norm2Number().doubleValue() > 0);
+
+        final double delta = 1e-5;
+        final INDArray params = graph.params();
+        for (int i = 0; i < params.length(); i++) {
+            final double param = params.getDouble(i);
+            params.putScalar(i, param + delta);
+            final double lossPlus = forward(graph, input, noise).mul(lossWeights).sumNumber().doubleValue();
+            params.putScalar(i, param - delta);
+            final double lossMinus = forward(graph, input, noise).mul(lossWeights).sumNumber().doubleValue();
+            params.putScalar(i, param);
+
+            final double expected = (lossPlus - lossMinus) / (2 * delta);
+            assertEquals("Incorrect gradient for param " + i + "!", expected, paramGrad.getDouble(i), 1e-5 + 1e-3 * Math.abs(expected));
+        }
+
+        for (int i = 0; i < input.length(); i++) {
+            final double in = input.getDouble(i);
+            input.putScalar(i, in + delta);
+            final double lossPlus = forward(graph, input, noise).mul(lossWeights).sumNumber().doubleValue();
+            input.putScalar(i, in - delta);
+            final double lossMinus = forward(graph, input, noise).mul(lossWeights).sumNumber().doubleValue();
+            input.putScalar(i, in);
+
+            final double expected = (lossPlus - lossMinus) / (2 * delta);
+            assertEquals("Incorrect gradient for input " + i + "!", expected, inputGrad.getDouble(i), 1e-5 + 1e-3 * Math.abs(expected));
+        }
+    }
+
+    /**
+     * Test that the noise from the forward pass is used when the adjoint is given a {@link LogDensityStep} as source
+     * of noise.
+     */
+    @Test
+    public void noiseFromForwardPass() {
+        final ComputationGraph graph = createGraph(3);
+        final INDArray input = Nd4j.randn(new long[]{2, 3});
+        final INDArray lossWeights = Nd4j.randn(new long[]{2, 4});
+
+        final LogDensityStep forward = new LogDensityStep(createSolver(), Nd4j.create(new double[]{0, 1}), 1e-3);
+        forward.solve(graph, LayerWorkspaceMgr.noWorkspaces(), createInputOutput(input), false);
+        assertNull("Expected no noise from inference!", forward.lastNoise());
+
+        final INDArray output = forward.solve(graph, LayerWorkspaceMgr.noWorkspaces(), createInputOutput(input), true);
+        final INDArray noise = forward.lastNoise().dup();
+
+        final INDArray expected = backward(graph, input, output, lossWeights, new LogDensityAdjoint(createSolver(), Nd4j.create(new double[]{0, 1}), 1e-3) {
+            @Override
+            protected INDArray createNoise(long[] shape) {
+                return noise;
+            }
+        });
+
+        final INDArray actual = backward(graph, input, output, lossWeights,
+                new LogDensityAdjoint(createSolver(), Nd4j.create(new double[]{0, 1}), 1e-3, forward::lastNoise));
+
+        assertEquals("Incorrect gradient!", expected, actual);
+    }
+
+    private static INDArray backward(ComputationGraph graph, INDArray input, INDArray output, INDArray lossWeights, LogDensityAdjoint adjoint) {
+        final NonContiguous1DView realGrads = new NonContiguous1DView();
+        realGrads.addView(graph.getGradientsViewArray());
+        graph.getGradientsViewArray().assign(0);
+        adjoint.solve(graph,
+                new OdeHelperBackward.InputArrays(createInputOutput(input), output, lossWeights, realGrads),
+                new OdeHelperBackward.MiscPar(false, LayerWorkspaceMgr.noWorkspaces()));
+        return graph.getGradientsViewArray().dup();
+    }
+
+    private static INDArray forward(ComputationGraph graph, INDArray input, INDArray noise) {
+        return new LogDensityStep(createSolver(), Nd4j.create(new double[]{0, 1}), 1e-3) {
+            @Override
+            protected INDArray createNoise(long[] shape) {
+                return noise;
+            }
+        }.solve(graph, LayerWorkspaceMgr.noWorkspaces(), createInputOutput(input), true);
+    }
+
+    private static GraphInputOutput createInputOutput(INDArray input) {
+        return new NoTimeInputFactory().create(new INDArray[]{input.dup()});
+    }
+
+    private static DormandPrince54Solver createSolver() {
+        return new DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-10, 10));
+    }
+
+    private static ComputationGraph createGraph(int nrofInputs) {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .setInputTypes(InputType.feedForward(nrofInputs))
+                .addInputs("input")
+                .addLayer("dense", new DenseLayer.Builder().nOut(nrofInputs).activation(new ActivationTanH()).build(), "input")
+                .setOutputs("dense")
+                .build());
+        graph.init();
+        graph.initGradientsView();
+        return graph;
+    }
+}
@@ -0,0 +1,114 @@
+package ode.vertex.impl.helper.backward;
+
+import ode.solve.api.FirstOrderSolver;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.DormandPrince54Solver;
+import ode.vertex.impl.gradview.NonContiguous1DView;
+import ode.vertex.impl.helper.NoTimeInput;
+import ode.vertex.impl.helper.ShootingSegments;
+import ode.vertex.impl.helper.forward.MultipleShooting;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.distribution.ConstantDistribution;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link MultipleShootingAdjoint}
+ *
+ * @author Christian Skarby
+ */
+public class MultipleShootingAdjointTest {
+
+    /**
+     * Test that the continuity penalty and its gradients are correct when segments have multiple time steps
+     */
+    @Test
+    public void continuityPenaltyMultiStep() {
+        assertContinuityPenalty(Nd4j.linspace(0, 2, 5));
+    }
+
+    /**
+     * Test that the continuity penalty and its gradients are correct when segments have a single time step
+     */
+    @Test
+    public void continuityPenaltySingleStep() {
+        assertContinuityPenalty(Nd4j.linspace(0, 2, 3));
+    }
+
+    /**
+     * dz/dt = a * z => z(t) = z(0) * e^(a*t). With zero loss gradient from the output, only the continuity penalty
+     * w/B * (z0 * e^(a*T) - s)^2 contributes to the gradients where T is the duration of a segment.
+     */
+    private static void assertContinuityPenalty(INDArray time) {
+        final double a = 0.3;
+        final double weight = 0.7;
+        final int nrofSegments = 2;
+        final double segmentDuration = 1;
+        final ComputationGraph graph = createLinearGraph(a);
+
+        final INDArray y0 = Nd4j.create(new double[][]{{1.2}, {-0.7}});
+        final INDArray shootingStates = Nd4j.create(new double[][]{{0.3}, {0.4}}).reshape(2, 1, nrofSegments - 1);
+        final FirstOrderSolver solver = new DormandPrince54Solver(new SolverConfig(1e-8, 1e-8, 1e-10, 10));
+        final ShootingSegments segments = new ShootingSegments(time, nrofSegments);
+
+        final INDArray output = new MultipleShooting(solver, segments, 1).solve(
+                graph,
+                LayerWorkspaceMgr.noWorkspaces(),
+                new NoTimeInput(new INDArray[]{y0, shootingStates}));
+
+        final NonContiguous1DView realGrads = new NonContiguous1DView();
+        realGrads.addView(graph.getGradientsViewArray());
+        final DynamicsRegularization regularization = DynamicsRegularization.none();
+        regularization.begin(y0.size(0));
+
+        final INDArray[] gradients = new MultipleShootingAdjoint(solver, segments, 1, weight).solve(
+                graph,
+                new OdeHelperBackward.InputArrays(
+                        new NoTimeInput(new INDArray[]{y0, shootingStates}),
+                        output,
+                        Nd4j.zeros(output.shape()),
+                        realGrads),
+                new OdeHelperBackward.MiscPar(false, LayerWorkspaceMgr.noWorkspaces(), regularization));
+
+        final INDArray growth = y0.mul(Math.exp(a * segmentDuration));
+        final INDArray diff = growth.sub(shootingStates.reshape(y0.shape()));
+        final double scale = 2 * weight / y0.size(0);
+
+        assertEquals("Incorrect penalty!",
+                weight / y0.size(0) * diff.norm2Number().doubleValue() * diff.norm2Number().doubleValue(),
+                regularization.getScore(), 1e-4);
+        assertArrayEquals("Incorrect gradient for initial state!",
+                diff.mul(scale * Math.exp(a * segmentDuration)).reshape(y0.length()).toDoubleVector(),
+                gradients[0].reshape(y0.length()).toDoubleVector(), 1e-4);
+        assertArrayEquals("Incorrect gradient for initial states of segments!",
+                diff.mul(-scale).reshape(shootingStates.length()).toDoubleVector(),
+                gradients[1].reshape(shootingStates.length()).toDoubleVector(), 1e-4);
+        assertEquals("Incorrect parameter gradient!",
+                diff.mul(growth).sumNumber().doubleValue() * scale * segmentDuration,
+                graph.getGradientsViewArray().getDouble(0), 1e-4);
+    }
+
+    private static ComputationGraph createLinearGraph(double a) {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .weightInit(new ConstantDistribution(a))
+                .biasInit(0)
+                .graphBuilder()
+                .allowNoOutput(true)
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(1))
+                .addLayer("dense", new DenseLayer.Builder().nOut(1).activation(new ActivationIdentity()).build(), "input")
+                .build());
+        graph.init();
+        graph.initGradientsView();
+        return graph;
+    }
+}
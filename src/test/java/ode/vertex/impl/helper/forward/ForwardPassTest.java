@@ -1,8 +1,10 @@
 package ode.vertex.impl.helper.forward;
 
+import ode.vertex.conf.ShapeMatchVertex;
 import ode.vertex.impl.helper.NoTimeInput;
 import ode.vertex.impl.helper.TimeInput;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.DenseLayer;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -10,6 +12,7 @@ import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.junit.Test;
 import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -89,4 +92,99 @@ public class ForwardPassTest {
 
         assertEquals("Incorrect output!", expected, actual);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that evaluating several states in one call gives the same result as evaluating them one by one
+     */
+    @Test
+    public void calculateDerivatives() {
+        final long nrofInputs = 5;
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .setInputTypes(InputType.feedForward(nrofInputs))
+                .allowNoOutput(true)
+                .addInputs("input")
+                .addLayer("dense0", new DenseLayer.Builder()
+                        .nOut(7)
+                        .activation(new ActivationTanH())
+                        .build(), "input")
+                .addLayer("dense1", new DenseLayer.Builder()
+                        .nOut(nrofInputs)
+                        .activation(new ActivationIdentity())
+                        .build(), "dense0")
+                .build());
+        graph.init();
+
+        final int nrofStates = 3;
+        final INDArray[] y = new INDArray[nrofStates];
+        final INDArray[] t = new INDArray[nrofStates];
+        final INDArray[] fy = new INDArray[nrofStates];
+        for (int i = 0; i < nrofStates; i++) {
+            y[i] = Nd4j.randn(new long[]{4, nrofInputs});
+            t[i] = Nd4j.scalar(i);
+            fy[i] = Nd4j.create(y[i].shape());
+        }
+
+        final ForwardPass forwardPass = new ForwardPass(graph, LayerWorkspaceMgr.noWorkspaces(), false,
+                new NoTimeInput(new INDArray[]{y[0]}));
+        final INDArray[] actual = forwardPass.calculateDerivatives(y, t, fy);
+
+        assertEquals("Incorrect number of function evaluations!", nrofStates, graph.getIterationCount());
+        for (int i = 0; i < nrofStates; i++) {
+            // Also tests that mini batch size can change between calls
+            final INDArray expected = forwardPass.calculateDerivative(y[i], t[i], Nd4j.create(y[i].shape()));
+            assertEquals("Incorrect output for state " + i + "!", expected, actual[i]);
+        }
+    }
+
+    /**
+     * Test that evaluating several states in one call gives the same result as evaluating them one by one when time is
+     * input to the graph
+     */
+    @Test
+    public void calculateDerivativesWithTimeDependency() {
+        final long nrofInputs = 5;
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .setInputTypes(InputType.feedForward(nrofInputs), InputType.feedForward(1))
+                .allowNoOutput(true)
+                .addInputs("input", "t")
+                // Time is one scalar for the whole mini batch
+                .addVertex("merge", new ShapeMatchVertex(new MergeVertex()), "input", "t")
+                .addLayer("denseOut", new DenseLayer.Builder()
+                        .nOut(nrofInputs)
+                        .hasBias(false)
+                        .weightInit(WeightInit.ONES)
+                        .activation(new ActivationIdentity())
+                        .build(), "merge")
+                .build());
+        graph.init();
+
+        final INDArray input0 = Nd4j.arange(nrofInputs);
+        final INDArray input1 = input0.mul(-2);
+        final INDArray time = Nd4j.scalar(7.89);
+        final INDArray[] actual = new ForwardPass(graph, LayerWorkspaceMgr.noWorkspaces(), false,
+                new TimeInput(new INDArray[]{input0}))
+                .calculateDerivatives(
+                        new INDArray[]{input0, input1},
+                        new INDArray[]{time, time.dup()},
+                        new INDArray[]{input0.dup(), input1.dup()});
+
+        assertEquals("Incorrect output!",
+                Nd4j.create(input0.shape()).assign(input0.sumNumber()).addi(time.getDouble(0)), actual[0]);
+        assertEquals("Incorrect output!",
+                Nd4j.create(input1.shape()).assign(input1.sumNumber()).addi(time.getDouble(0)), actual[1]);
+    }
+
+    /**
+     * Test that states with different times can not be evaluated in one call when time is input to the graph
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void calculateDerivativesDifferentTimes() {
+        final INDArray input = Nd4j.arange(3);
+        new TimeInput(new INDArray[]{input}).getStackedInputsFrom(
+                new INDArray[]{input, input},
+                new INDArray[]{Nd4j.scalar(1), Nd4j.scalar(2)});
+    }
+}
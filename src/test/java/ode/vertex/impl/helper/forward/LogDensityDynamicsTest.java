@@ -0,0 +1,66 @@
+package ode.vertex.impl.helper.forward;
+
+import ode.solve.api.BatchedFirstOrderEquation;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link LogDensityDynamics}
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityDynamicsTest {
+
+    /**
+     * Test that the perturbed and unperturbed states are only evaluated as one mini batch when requested and that the
+     * result is the same either way
+     */
+    @Test
+    public void batchedOnlyWhenRequested() {
+        final INDArray y = Nd4j.create(new double[][]{{1, 2, 0}, {-3, 4, 0}});
+        final INDArray t = Nd4j.scalar(0.3);
+        final INDArray noise = Nd4j.create(new double[][]{{0.5, -1}, {2, 1}});
+
+        final CountingLinear unbatchedDynamics = new CountingLinear();
+        final INDArray unbatched = new LogDensityDynamics(unbatchedDynamics, noise, 1e-3)
+                .calculateDerivative(y, t, Nd4j.create(y.shape()));
+        assertEquals("Incorrect number of single calls!", 2, unbatchedDynamics.nrofSingle);
+        assertEquals("Incorrect number of batched calls!", 0, unbatchedDynamics.nrofBatched);
+
+        final CountingLinear batchedDynamics = new CountingLinear();
+        final INDArray batched = new LogDensityDynamics(batchedDynamics, noise, 1e-3, true)
+                .calculateDerivative(y, t, Nd4j.create(y.shape()));
+        assertEquals("Incorrect number of single calls!", 0, batchedDynamics.nrofSingle);
+        assertEquals("Incorrect number of batched calls!", 1, batchedDynamics.nrofBatched);
+
+        assertArrayEquals("Incorrect derivative!", unbatched.data().asDouble(), batched.data().asDouble(), 1e-10);
+        // f(z) = 2 * z gives the estimate -e^T * 2 * e where e^T * e is 1.25 and 5 for the two samples
+        assertEquals("Incorrect trace estimate!", -2 * 1.25, unbatched.getDouble(0, 2), 1e-3);
+        assertEquals("Incorrect trace estimate!", -2 * 5, unbatched.getDouble(1, 2), 1e-3);
+    }
+
+    private static class CountingLinear implements BatchedFirstOrderEquation {
+
+        private int nrofSingle = 0;
+        private int nrofBatched = 0;
+
+        @Override
+        public INDArray calculateDerivative(INDArray y, INDArray t, INDArray fy) {
+            nrofSingle++;
+            return fy.assign(y.mul(2));
+        }
+
+        @Override
+        public INDArray[] calculateDerivatives(INDArray[] y, INDArray[] t, INDArray[] fy) {
+            nrofBatched++;
+            for (int i = 0; i < y.length; i++) {
+                fy[i].assign(y[i].mul(2));
+            }
+            return fy;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ode.vertex.impl.helper.forward;
+
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.DormandPrince54Solver;
+import ode.vertex.impl.helper.NoTimeInput;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link LogDensityStep}
+ *
+ * @author Christian Skarby
+ */
+public class LogDensityStepTest {
+
+    /**
+     * Test that the state and change in log density are correct for dz/dt = a*z for which tr(df/dz) = a * size. With
+     * noise of all ones the trace estimate is exact.
+     */
+    @Test
+    public void solveExp() {
+        final double exponent = 0.5;
+        final int nrofInputs = 4;
+        final ComputationGraph graph = SingleStepTest.getSimpleExpGraph(exponent, nrofInputs);
+
+        final INDArray input = Nd4j.linspace(-1, 1, 3 * nrofInputs).reshape(3, nrofInputs);
+
+        final OdeHelperForward helper = new LogDensityStep(
+                new DormandPrince54Solver(new SolverConfig(1e-6, 1e-6, 1e-10, 100)),
+                Nd4j.linspace(0, 2, 2),
+                1e-3) {
+            @Override
+            protected INDArray createNoise(long[] shape) {
+                return Nd4j.ones(shape);
+            }
+        };
+
+        final INDArray output = helper.solve(graph, LayerWorkspaceMgr.noWorkspaces(), new NoTimeInput(new INDArray[]{input}));
+
+        assertArrayEquals("Incorrect output shape!", new long[]{3, nrofInputs + 1}, output.shape());
+        assertArrayEquals("Incorrect state!",
+                input.mul(Math.exp(2 * exponent)).data().asDouble(),
+                output.get(NDArrayIndex.all(), NDArrayIndex.interval(0, nrofInputs)).dup().data().asDouble(),
+                1e-3);
+        for (int i = 0; i < input.size(0); i++) {
+            assertEquals("Incorrect change in log density!", -2 * exponent * nrofInputs, output.getDouble(i, nrofInputs), 1e-3);
+        }
+    }
+
+    /**
+     * Test that evaluating the perturbed and unperturbed states as one mini batch gives the same output as evaluating
+     * them separately
+     */
+    @Test
+    public void batchedInference() {
+        final int nrofInputs = 3;
+        final ComputationGraph graph = SingleStepTest.getSimpleExpGraph(0.7, nrofInputs);
+        final INDArray input = Nd4j.linspace(-1, 1, 4 * nrofInputs).reshape(4, nrofInputs);
+        final INDArray noise = Nd4j.randn(input.shape());
+
+        final INDArray expected = createFixedNoiseStep(noise, false)
+                .solve(graph, LayerWorkspaceMgr.noWorkspaces(), new NoTimeInput(new INDArray[]{input}), false);
+        final INDArray actual = createFixedNoiseStep(noise, true)
+                .solve(graph, LayerWorkspaceMgr.noWorkspaces(), new NoTimeInput(new INDArray[]{input}), false);
+
+        assertArrayEquals("Incorrect output!", expected.data().asDouble(), actual.data().asDouble(), 1e-6);
+    }
+
+    private static OdeHelperForward createFixedNoiseStep(INDArray noise, boolean batchedInference) {
+        return new LogDensityStep(
+                new DormandPrince54Solver(new SolverConfig(1e-6, 1e-6, 1e-10, 100)),
+                Nd4j.linspace(0, 1, 2),
+                1e-3,
+                batchedInference) {
+            @Override
+            protected INDArray createNoise(long[] shape) {
+                return noise;
+            }
+        };
+    }
+}
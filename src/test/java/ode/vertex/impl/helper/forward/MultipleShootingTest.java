@@ -0,0 +1,90 @@
+package ode.vertex.impl.helper.forward;
+
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.DormandPrince54Solver;
+import ode.vertex.impl.helper.NoTimeInput;
+import ode.vertex.impl.helper.ShootingSegments;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Test cases for {@link MultipleShooting}
+ *
+ * @author Christian Skarby
+ */
+public class MultipleShootingTest {
+
+    /**
+     * Test that the solution is the same as the exact solution when initial states of segments are on the exact
+     * trajectory
+     */
+    @Test
+    public void solveContinuous() {
+        final double exponent = 0.34;
+        final int nrofInputs = 3;
+        final int nrofSegments = 3;
+        final INDArray time = Nd4j.linspace(0, 3, 7);
+        final INDArray y0 = Nd4j.arange(nrofInputs).addi(1).reshape(1, nrofInputs);
+        final INDArray expected = y0.transpose().mmul(Transforms.exp(time.mul(exponent)));
+
+        final INDArray shootingStates = expected.get(NDArrayIndex.all(), NDArrayIndex.interval(2, 2, 6)).dup()
+                .reshape(1, nrofInputs, nrofSegments - 1);
+
+        final INDArray actual = solve(exponent, time, nrofSegments, y0, shootingStates);
+
+        assertArrayEquals("Incorrect answer!", flat(expected), flat(actual), 1e-3);
+    }
+
+    /**
+     * Test that the initial state of each segment is used as the first time step of the segment when segments are not
+     * continuous
+     */
+    @Test
+    public void solveDiscontinuous() {
+        final double exponent = -0.56;
+        final int nrofInputs = 2;
+        final int nrofSegments = 2;
+        final INDArray time = Nd4j.linspace(0, 2, 5);
+        final INDArray y0 = Nd4j.create(new double[][]{{1, 2}, {3, 4}});
+        final INDArray shootingStates = Nd4j.create(new double[][]{{-5, 6}, {7, -8}}).reshape(2, nrofInputs, nrofSegments - 1);
+
+        final INDArray actual = solve(exponent, time, nrofSegments, y0, shootingStates);
+
+        final INDArray segmentTime = time.get(NDArrayIndex.interval(0, 3));
+        for (int batch = 0; batch < y0.size(0); batch++) {
+            final INDArray first = y0.getRow(batch).transpose().mmul(Transforms.exp(segmentTime.mul(exponent)));
+            final INDArray second = shootingStates.get(NDArrayIndex.point(batch), NDArrayIndex.all(), NDArrayIndex.point(0))
+                    .reshape(nrofInputs, 1).mmul(Transforms.exp(segmentTime.mul(exponent)));
+
+            final INDArray batchOutput = actual.get(NDArrayIndex.point(batch), NDArrayIndex.all(), NDArrayIndex.all())
+                    .reshape(nrofInputs, time.length());
+            assertArrayEquals("Incorrect first segment!",
+                    flat(first.get(NDArrayIndex.all(), NDArrayIndex.interval(0, 2))),
+                    flat(batchOutput.get(NDArrayIndex.all(), NDArrayIndex.interval(0, 2))), 1e-3);
+            assertArrayEquals("Incorrect second segment!",
+                    flat(second),
+                    flat(batchOutput.get(NDArrayIndex.all(), NDArrayIndex.interval(2, 5))), 1e-3);
+        }
+    }
+
+    private static double[] flat(INDArray array) {
+        return array.dup('c').reshape(array.length()).toDoubleVector();
+    }
+
+    private static INDArray solve(double exponent, INDArray time, int nrofSegments, INDArray y0, INDArray shootingStates) {
+        final ComputationGraph graph = SingleStepTest.getSimpleExpGraph(exponent, (int) y0.size(1));
+        final OdeHelperForward helper = new MultipleShooting(
+                new DormandPrince54Solver(new SolverConfig(1e-10, 1e-10, 1e-10, 100)),
+                new ShootingSegments(time, nrofSegments),
+                1);
+
+        return helper.solve(graph, LayerWorkspaceMgr.noWorkspaces(), new NoTimeInput(new INDArray[]{y0, shootingStates}));
+    }
+}
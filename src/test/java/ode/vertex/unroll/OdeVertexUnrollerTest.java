@@ -0,0 +1,141 @@
+package ode.vertex.unroll;
+
+import ode.solve.conf.DormandPrince54Solver;
+import ode.solve.conf.SolverConfig;
+import ode.vertex.conf.OdeVertex;
+import ode.vertex.conf.helper.InputStep;
+import ode.vertex.conf.helper.forward.FixedStep;
+import org.deeplearning4j.datasets.iterator.IteratorMultiDataSetIterator;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.Test;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.impl.LossMSE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link OdeVertexUnroller}
+ *
+ * @author Christian Skarby
+ */
+public class OdeVertexUnrollerTest {
+
+    /**
+     * Test that the unrolled graph gives (almost) the same output as the original graph
+     */
+    @Test
+    public void unroll() {
+        final long nrofInputs = 4;
+        final ComputationGraph model = createModel(nrofInputs);
+        final OdeVertexUnroller unroller = new OdeVertexUnroller(model, "ode");
+
+        final double[] grid = unroller.calibrate(createData(nrofInputs, 3, 5));
+        assertEquals("Incorrect start time!", 0, grid[0], 1e-10);
+        assertEquals("Incorrect end time!", 1, grid[grid.length - 1], 1e-6);
+
+        final ComputationGraph unrolled = unroller.unroll();
+        assertNotNull("Expected vertex with name of ode vertex!", unrolled.getVertex("ode"));
+
+        final OdeVertexUnroller.AccuracyGap gap = unroller.accuracyGap(unrolled, createData(nrofInputs, 3, 5));
+        assertTrue("Too large error: " + gap + "!", gap.getMaxAbsError() < 1e-3);
+        assertTrue("Mean larger than max: " + gap + "!", gap.getMeanAbsError() <= gap.getMaxAbsError());
+    }
+
+    /**
+     * Test that the unrolled graph gives exactly the same output as the original graph when the original graph uses
+     * the same time steps
+     */
+    @Test
+    public void unrollSameGrid() {
+        final long nrofInputs = 3;
+        final ComputationGraph model = createModel(nrofInputs);
+        final OdeVertexUnroller unroller = new OdeVertexUnroller(model, "ode");
+
+        final INDArray input = Nd4j.randn(new long[]{2, nrofInputs});
+        final List<org.nd4j.linalg.dataset.api.MultiDataSet> single = new ArrayList<>();
+        single.add(new MultiDataSet(input, Nd4j.zeros(2, 2)));
+        unroller.calibrate(new IteratorMultiDataSetIterator(single.iterator(), 2));
+
+        final ComputationGraph unrolled = unroller.unroll();
+        assertEquals("Incorrect output!", model.outputSingle(input), unrolled.outputSingle(input));
+    }
+
+    /**
+     * Test that an exception is thrown when trying to unroll before calibrating
+     */
+    @Test(expected = IllegalStateException.class)
+    public void unrollBeforeCalibrate() {
+        new OdeVertexUnroller(createModel(3), "ode").unroll();
+    }
+
+    /**
+     * Test that an exception is thrown if the vertex uses time as input
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void timeInputNotSupported() {
+        final ComputationGraph model = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .addInputs("input", "time")
+                .setInputTypes(InputType.feedForward(3), InputType.feedForward(5))
+                .addVertex("ode", new OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "ode0", new DenseLayer.Builder().nOut(3).build())
+                        .odeConf(new InputStep(new DormandPrince54Solver(), 1))
+                        .build(), "input", "time")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nOut(2).build(), "ode")
+                .build());
+        model.init();
+        new OdeVertexUnroller(model, "ode");
+    }
+
+    private static MultiDataSetIterator createData(long nrofInputs, int batchSize, int nrofBatches) {
+        final List<org.nd4j.linalg.dataset.api.MultiDataSet> data = new ArrayList<>();
+        for (int i = 0; i < nrofBatches; i++) {
+            data.add(new MultiDataSet(Nd4j.randn(new long[]{batchSize, nrofInputs}), Nd4j.zeros(batchSize, 2)));
+        }
+        return new IteratorMultiDataSetIterator(data.iterator(), batchSize);
+    }
+
+    private static ComputationGraph createModel(long nrofInputs) {
+        final ComputationGraph model = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nrofInputs))
+                .addLayer("dense", new DenseLayer.Builder().nOut(nrofInputs).build(), "input")
+                .addVertex("ode", new OdeVertex.Builder(new NeuralNetConfiguration.Builder(), "ode0",
+                        new DenseLayer.Builder()
+                                .nOut(nrofInputs)
+                                .activation(new ActivationTanH())
+                                .build())
+                        .addLayer("ode1", new DenseLayer.Builder()
+                                .nOut(nrofInputs)
+                                .activation(new ActivationIdentity())
+                                .build(), "ode0")
+                        .odeForward(new FixedStep(new DormandPrince54Solver(new SolverConfig(1e-4, 1e-4, 1e-10, 10)), Nd4j.arange(2), true))
+                        .build(), "dense")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder()
+                        .nOut(2)
+                        .lossFunction(new LossMSE())
+                        .activation(new ActivationIdentity())
+                        .build(), "ode")
+                .build());
+        model.init();
+        return model;
+    }
+}
@@ -0,0 +1,116 @@
+package util.data;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link MappedMultiDataSetCache}
+ *
+ * @author Christian Skarby
+ */
+public class MappedMultiDataSetCacheTest {
+
+    private static final Path baseDir = Paths.get("src", "test", "resources", "MappedMultiDataSetCacheTest");
+
+    /**
+     * Test that batches read from the cache are the same as the generated batches
+     */
+    @Test
+    public void materialize() throws IOException {
+        try {
+            baseDir.toFile().mkdirs();
+            final MultiDataSet[] expected = new MultiDataSet[5];
+            try (MappedMultiDataSetCache cache = MappedMultiDataSetCache.materialize(baseDir.resolve("test.bin"), expected.length, 666,
+                    (index, seed) -> {
+                        final MultiDataSet mds = generate(seed);
+                        expected[index] = mds;
+                        return mds;
+                    })) {
+                assertEquals("Incorrect number of batches!", expected.length, cache.nrofBatches());
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals("Incorrect batch " + i + "!", expected[i], cache.get(i));
+                }
+            }
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    /**
+     * Test that the same batches are generated regardless of number of threads
+     */
+    @Test
+    public void reproducible() throws IOException, InterruptedException, ExecutionException {
+        try {
+            baseDir.toFile().mkdirs();
+            final int nrofBatches = 17;
+            final ForkJoinPool singleThread = new ForkJoinPool(1);
+            final MappedMultiDataSetCache first = singleThread.submit(() ->
+                    MappedMultiDataSetCache.materialize(baseDir.resolve("first.bin"), nrofBatches, 123, (index, seed) -> generate(seed))).get();
+            singleThread.shutdown();
+            final MappedMultiDataSetCache second = MappedMultiDataSetCache.materialize(baseDir.resolve("second.bin"), nrofBatches, 123, (index, seed) -> generate(seed));
+
+            for (int i = 0; i < nrofBatches; i++) {
+                assertEquals("Incorrect batch " + i + "!", first.get(i), second.get(i));
+            }
+            assertNotEquals("Expected different batches!", first.get(0), first.get(1));
+            first.close();
+            second.close();
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    /**
+     * Test that all batches are returned by a prefetching iterator and that it can be reset
+     */
+    @Test
+    public void prefetching() throws IOException {
+        try {
+            baseDir.toFile().mkdirs();
+            final int nrofBatches = 7;
+            try (MappedMultiDataSetCache cache = MappedMultiDataSetCache.materialize(baseDir.resolve("test.bin"), nrofBatches, 1, (index, seed) -> generate(seed))) {
+                final MultiDataSetIterator iterator = cache.iterator().prefetching(3);
+                for (int epoch = 0; epoch < 2; epoch++) {
+                    int cnt = 0;
+                    while (iterator.hasNext()) {
+                        assertEquals("Incorrect batch " + cnt + "!", cache.get(cnt), iterator.next());
+                        cnt++;
+                    }
+                    assertEquals("Incorrect number of batches!", nrofBatches, cnt);
+                    iterator.reset();
+                }
+            }
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    private static MultiDataSet generate(long seed) {
+        final Random rng = new Random(seed);
+        final double[] features = new double[3 * 4];
+        final double[] labels = new double[3 * 2 * 5];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = rng.nextGaussian();
+        }
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = rng.nextGaussian();
+        }
+        return new org.nd4j.linalg.dataset.MultiDataSet(
+                new INDArray[]{Nd4j.create(features, new long[]{3, 4}, 'c'), Nd4j.ones(1, 5)},
+                new INDArray[]{Nd4j.create(labels, new long[]{3, 2, 5}, 'c')});
+    }
+}
@@ -0,0 +1,49 @@
+package util.listen.step;
+
+import ode.solve.api.StepListener;
+import ode.solve.impl.util.StateContainer;
+import org.junit.Test;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link StepGridRecorder}
+ *
+ * @author Christian Skarby
+ */
+public class StepGridRecorderTest {
+
+    /**
+     * Test that recorded grids are normalized and that the grid with most steps is the finest grid
+     */
+    @Test
+    public void recordGrids() {
+        final StepGridRecorder recorder = new StepGridRecorder();
+        final StepListener listener = recorder;
+
+        listener.begin(Nd4j.create(new double[]{2, 4}), Nd4j.zeros(1));
+        listener.step(new StateContainer(3, new double[] {0}, new double[] {0}), Nd4j.ones(1), Nd4j.zeros(1));
+        listener.step(new StateContainer(4, new double[] {0}, new double[] {0}), Nd4j.ones(1), Nd4j.zeros(1));
+        listener.done();
+
+        listener.begin(Nd4j.create(new double[]{0, 1}), Nd4j.zeros(1));
+        listener.step(new StateContainer(0.25, new double[] {0}, new double[] {0}), Nd4j.ones(1), Nd4j.zeros(1));
+        listener.step(new StateContainer(0.75, new double[] {0}, new double[] {0}), Nd4j.ones(1), Nd4j.zeros(1));
+        listener.step(new StateContainer(1, new double[] {0}, new double[] {0}), Nd4j.ones(1), Nd4j.zeros(1));
+        listener.done();
+
+        assertEquals("Incorrect number of grids!", 2, recorder.getGrids().size());
+        assertArrayEquals("Incorrect grid!", new double[]{0, 0.5, 1}, recorder.getGrids().get(0), 1e-10);
+        assertArrayEquals("Incorrect finest grid!", new double[]{0, 0.25, 0.75, 1}, recorder.getFinestGrid(), 1e-10);
+    }
+
+    /**
+     * Test that an exception is thrown if no grids have been recorded
+     */
+    @Test(expected = IllegalStateException.class)
+    public void noGrids() {
+        new StepGridRecorder().getFinestGrid();
+    }
+}
@@ -0,0 +1,142 @@
+package util.listen.step;
+
+import ode.solve.CircleODE;
+import ode.solve.conf.SolverConfig;
+import ode.solve.impl.DormandPrince54Solver;
+import ode.solve.impl.EnsembleSolver;
+import ode.solve.impl.util.StateContainer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link StepTraceRecorder} and {@link StepTraceReader}
+ *
+ * @author Christian Skarby
+ */
+public class StepTraceRecorderTest {
+
+    private static final Path baseDir = Paths.get("src", "test", "resources", "StepTraceRecorderTest");
+
+    /**
+     * Test that all steps from a forward and a backward solve are recorded
+     */
+    @Test
+    public void recordSolve() throws IOException {
+        try {
+            baseDir.toFile().mkdirs();
+            final Path file = baseDir.resolve("trace.bin");
+            final DormandPrince54Solver solver = new DormandPrince54Solver(new SolverConfig(1e-8, 1e-8, 1e-10, 10));
+            final int[] nrofSteps = {0};
+            final StepCounter counter = new StepCounter(2, (steps, solves) -> nrofSteps[0] = steps);
+            try (StepTraceRecorder recorder = new StepTraceRecorder(file, 10000, 7)) {
+                solver.addListener(recorder, counter);
+                final CircleODE equation = new CircleODE(new double[]{1.23, 4.56}, 1);
+                solver.integrate(equation, Nd4j.create(new double[]{0, 2}), Nd4j.create(new double[]{1, 0}), Nd4j.create(2));
+                solver.integrate(equation, Nd4j.create(new double[]{2, 0}), Nd4j.create(new double[]{1, 0}), Nd4j.create(2));
+            }
+
+            final List<StepTraceReader.Record> records = StepTraceReader.read(file).getRecords();
+            assertEquals("Incorrect number of accepted steps!", (long) nrofSteps[0],
+                    records.stream().filter(StepTraceReader.Record::isAccepted).count());
+
+            final StepTraceReader.Record first = records.get(0);
+            final StepTraceReader.Record last = records.get(records.size() - 1);
+            assertEquals("Incorrect id!", 7, first.getId());
+            assertEquals("Incorrect direction!", 1, first.getDirection());
+            assertEquals("Incorrect direction!", -1, last.getDirection());
+            assertEquals("Incorrect solve!", 1, last.getSolve());
+            assertEquals("Incorrect time!", 0, last.getTime(), 1e-6);
+            assertTrue("Expected negative step!", last.getStep() < 0);
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue("Timestamp not increasing!", records.get(i).getTimestampNanos() >= records.get(i - 1).getTimestampNanos());
+            }
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    /**
+     * Test that the oldest records are overwritten when the file is full and that CSV and summary are created
+     */
+    @Test
+    public void ring() throws IOException {
+        try {
+            baseDir.toFile().mkdirs();
+            final Path file = baseDir.resolve("trace.bin");
+            try (StepTraceRecorder recorder = new StepTraceRecorder(file, 5, 1)) {
+                recorder.begin(Nd4j.create(new double[]{0, 1}), Nd4j.zeros(1));
+                for (int i = 0; i < 12; i++) {
+                    final StateContainer state = new StateContainer(i, new double[]{0}, new double[]{0});
+                    if (i % 3 == 0) {
+                        recorder.rejected(state, Nd4j.scalar(0.05), Nd4j.scalar(2));
+                    } else {
+                        recorder.step(state, Nd4j.scalar(0.05), Nd4j.scalar(0.5));
+                    }
+                }
+                recorder.done();
+            }
+
+            final StepTraceReader reader = StepTraceReader.read(file);
+            final List<StepTraceReader.Record> records = reader.getRecords();
+            assertEquals("Incorrect number of records!", 5, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals("Incorrect time!", 7 + i, records.get(i).getTime(), 1e-10);
+                assertEquals("Incorrect attempt!", 8 + i, records.get(i).getAttempt());
+                assertEquals("Incorrect accepted flag!", (7 + i) % 3 != 0, records.get(i).isAccepted());
+            }
+
+            final StringWriter csv = new StringWriter();
+            reader.writeCsv(csv);
+            assertEquals("Incorrect number of lines!", 6, csv.toString().split("\n").length);
+            assertTrue("Incorrect summary: " + reader.summary(), reader.summary().contains("|h| in [1e-2, 1e-1): 5"));
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    /**
+     * Test that solves of concurrently running solvers are recorded with separate attempt counters and solve indexes
+     */
+    @Test
+    public void recordConcurrentSolves() throws IOException {
+        final int nrofMembers = 6;
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            baseDir.toFile().mkdirs();
+            final Path file = baseDir.resolve("trace.bin");
+            try (StepTraceRecorder recorder = new StepTraceRecorder(file, 100000, 3)) {
+                final EnsembleSolver solver = new EnsembleSolver(() -> new DormandPrince54Solver(new SolverConfig(1e-8, 1e-8, 1e-10, 10)), pool, 1);
+                solver.addListener(recorder);
+                final INDArray y0 = Nd4j.linspace(1, nrofMembers, nrofMembers).reshape(nrofMembers, 1);
+                solver.integrate((y, t, fy) -> fy.assign(y.neg()), Nd4j.create(new double[]{0, 1}), y0, y0.dup());
+            }
+
+            final Map<Integer, List<StepTraceReader.Record>> recordsPerSolve = StepTraceReader.read(file).getRecords().stream()
+                    .collect(Collectors.groupingBy(StepTraceReader.Record::getSolve));
+            assertEquals("Incorrect number of solves!", nrofMembers, recordsPerSolve.size());
+            for (Map.Entry<Integer, List<StepTraceReader.Record>> solve : recordsPerSolve.entrySet()) {
+                final List<StepTraceReader.Record> records = solve.getValue();
+                for (int i = 0; i < records.size(); i++) {
+                    assertEquals("Incorrect attempt in solve " + solve.getKey() + "!", i + 1, records.get(i).getAttempt());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+}
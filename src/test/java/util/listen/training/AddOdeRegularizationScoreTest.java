@@ -0,0 +1,62 @@
+package util.listen.training;
+
+import ode.vertex.conf.helper.backward.DynamicsRegularization;
+import ode.vertex.impl.OdeVertex;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.Test;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link AddOdeRegularizationScore}
+ *
+ * @author Christian Skarby
+ */
+public class AddOdeRegularizationScoreTest {
+
+    /**
+     * Test that the regularization score of an {@link OdeVertex} is added to the score of the model
+     */
+    @Test
+    public void addScore() {
+        final long nOut = 4;
+        final ComputationGraph withListener = createModel(nOut);
+        withListener.addListeners(new AddOdeRegularizationScore());
+        final ComputationGraph withoutListener = createModel(nOut);
+        withoutListener.setParams(withListener.params());
+
+        final DataSet ds = new DataSet(Nd4j.randn(new long[]{3, nOut}), Nd4j.create(new double[][]{{0, 1, 0}, {1, 0, 0}, {0, 0, 1}}));
+        withListener.fit(ds);
+        withoutListener.fit(ds);
+
+        final double regularizationScore = ((OdeVertex) withListener.getVertex("odeVertex")).regularizationScore();
+        assertTrue("Expected positive regularization score!", regularizationScore > 0);
+        assertEquals("Incorrect score!", withoutListener.score() + regularizationScore, withListener.score(), 1e-6);
+    }
+
+    private static ComputationGraph createModel(long nOut) {
+        final ComputationGraph graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.1))
+                .seed(666)
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(nOut))
+                .addVertex("odeVertex", new ode.vertex.conf.OdeVertex.Builder(
+                        new NeuralNetConfiguration.Builder(), "ode0", new DenseLayer.Builder().nOut(nOut).build())
+                        .regularization(new DynamicsRegularization(0.1, 0.1))
+                        .build(), "input")
+                .setOutputs("output")
+                .addLayer("output", new OutputLayer.Builder().nOut(3).build(), "odeVertex")
+                .build());
+        graph.init();
+        return graph;
+    }
+}
@@ -0,0 +1,70 @@
+package util.listen.training;
+
+import ode.solve.conf.ToleranceHolder;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link TightenToleranceOnPlateau}
+ *
+ * @author Christian Skarby
+ */
+public class TightenToleranceOnPlateauTest {
+
+    /**
+     * Test that tolerances are tightened after the score has not improved for the given number of epochs
+     */
+    @Test
+    public void tightenOnPlateau() {
+        final ToleranceHolder tolerances = new ToleranceHolder(1e-2, 1e-1);
+        final TightenToleranceOnPlateau listener = new TightenToleranceOnPlateau(2, 0.1, 1e-6, 0.01, tolerances);
+        final ComputationGraph model = createModel();
+
+        runEpoch(listener, model, 10);
+        runEpoch(listener, model, 5);
+        runEpoch(listener, model, 5);
+        assertEquals("Incorrect absTol!", 1e-2, tolerances.getAbsTol(), 1e-12);
+
+        runEpoch(listener, model, 5);
+        assertEquals("Incorrect absTol!", 1e-3, tolerances.getAbsTol(), 1e-12);
+        assertEquals("Incorrect relTol!", 1e-2, tolerances.getRelTol(), 1e-12);
+    }
+
+    /**
+     * Test that tolerances are not tightened below the minimum tolerance
+     */
+    @Test
+    public void minTolerance() {
+        final ToleranceHolder tolerances = new ToleranceHolder(1e-3, 1e-3);
+        final TightenToleranceOnPlateau listener = new TightenToleranceOnPlateau(1, 0.1, 1e-4, 0.01, tolerances);
+        final ComputationGraph model = createModel();
+
+        for (int i = 0; i < 5; i++) {
+            runEpoch(listener, model, 1);
+        }
+        assertEquals("Incorrect absTol!", 1e-4, tolerances.getAbsTol(), 1e-12);
+        assertEquals("Incorrect relTol!", 1e-4, tolerances.getRelTol(), 1e-12);
+    }
+
+    private static void runEpoch(TightenToleranceOnPlateau listener, ComputationGraph model, double score) {
+        model.setScore(score);
+        listener.iterationDone(model, 0, 0);
+        listener.iterationDone(model, 1, 0);
+        listener.onEpochEnd(model);
+    }
+
+    private static ComputationGraph createModel() {
+        final ComputationGraph model = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .addInputs("input")
+                .addLayer("output", new OutputLayer.Builder().nIn(1).nOut(2).build(), "input")
+                .setOutputs("output")
+                .build());
+        model.init();
+        return model;
+    }
+}
@@ -0,0 +1,97 @@
+package util.plot;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for {@link BinarySeries}
+ *
+ * @author Christian Skarby
+ */
+public class BinarySeriesTest {
+
+    private static final Path baseDir = Paths.get("src", "test", "resources", "BinarySeriesTest");
+
+    /**
+     * Test that a stored series can be restored and that only new points are appended when stored again
+     */
+    @Test
+    public void storeAndRestore() throws IOException {
+        try {
+            baseDir.toFile().mkdirs();
+            final Path file = baseDir.resolve("series.bin");
+            final BinarySeries series = new BinarySeries();
+            for (int i = 0; i < 100; i++) {
+                series.add(i, 2 * i);
+            }
+            series.store(file);
+            assertEquals("Incorrect file size!", 100 * 2 * Double.BYTES, Files.size(file));
+
+            series.addAll(Arrays.asList(100, 101), Arrays.asList(3d, 4d));
+            series.store(file);
+            assertEquals("Incorrect file size!", 102 * 2 * Double.BYTES, Files.size(file));
+
+            final BinarySeries restored = BinarySeries.restore(file);
+            assertEquals("Incorrect size!", 102, restored.size());
+            final BinarySeries.Snapshot expected = series.snapshot();
+            final BinarySeries.Snapshot actual = restored.snapshot();
+            assertArrayEquals("Incorrect x!", Arrays.copyOf(expected.x, expected.size), Arrays.copyOf(actual.x, actual.size), 1e-10);
+            assertArrayEquals("Incorrect y!", Arrays.copyOf(expected.y, expected.size), Arrays.copyOf(actual.y, actual.size), 1e-10);
+
+            restored.add(102, 5);
+            restored.store(file);
+            assertEquals("Incorrect size!", 103, BinarySeries.restore(file).size());
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    /**
+     * Test that the file is rewritten after the series is cleared
+     */
+    @Test
+    public void clear() throws IOException {
+        try {
+            baseDir.toFile().mkdirs();
+            final Path file = baseDir.resolve("series.bin");
+            final BinarySeries series = BinarySeries.of(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6));
+            series.store(file);
+            series.clear();
+            series.add(7, 8);
+            series.store(file);
+
+            final BinarySeries.Snapshot restored = BinarySeries.restore(file).snapshot();
+            assertArrayEquals("Incorrect x!", new double[]{7}, Arrays.copyOf(restored.x, restored.size), 1e-10);
+            assertArrayEquals("Incorrect y!", new double[]{8}, Arrays.copyOf(restored.y, restored.size), 1e-10);
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    /**
+     * Test that a snapshot is not affected by points added or by clearing the series after it was taken
+     */
+    @Test
+    public void snapshot() {
+        final BinarySeries series = BinarySeries.of(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6));
+        final BinarySeries.Snapshot snapshot = series.snapshot();
+
+        series.clear();
+        for (int i = 0; i < 100; i++) {
+            series.add(-i, -i);
+        }
+
+        assertEquals("Incorrect size!", 3, snapshot.size);
+        assertArrayEquals("Incorrect x!", new double[]{1, 2, 3}, Arrays.copyOf(snapshot.x, snapshot.size), 1e-10);
+        assertArrayEquals("Incorrect y!", new double[]{4, 5, 6}, Arrays.copyOf(snapshot.y, snapshot.size), 1e-10);
+    }
+}
@@ -0,0 +1,52 @@
+package util.plot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for {@link Lttb}
+ *
+ * @author Christian Skarby
+ */
+public class LttbTest {
+
+    /**
+     * Test that all points are selected when there are fewer points than the threshold
+     */
+    @Test
+    public void belowThreshold() {
+        final double[] x = {0, 1, 2, 3};
+        assertArrayEquals("Incorrect selection!", new int[]{0, 1, 2}, Lttb.downsample(x, x, 3, 10));
+    }
+
+    /**
+     * Test that first and last points are kept, that indexes are increasing and that peaks are kept
+     */
+    @Test
+    public void downsample() {
+        final int size = 10000;
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = i;
+            y[i] = Math.sin(i / 100d);
+        }
+        final int spike = 5003;
+        y[spike] = 100;
+
+        final int[] selected = Lttb.downsample(x, y, size, 100);
+        assertEquals("Incorrect number of points!", 100, selected.length);
+        assertEquals("Incorrect first point!", 0, selected[0]);
+        assertEquals("Incorrect last point!", size - 1, selected[selected.length - 1]);
+
+        boolean spikeFound = false;
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue("Indexes not increasing!", selected[i] > selected[i - 1]);
+            spikeFound |= selected[i] == spike;
+        }
+        assertTrue("Spike not selected!", spikeFound);
+    }
+}
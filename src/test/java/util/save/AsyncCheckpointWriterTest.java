@@ -0,0 +1,128 @@
+package util.save;
+
+import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.util.ModelSerializer;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for {@link AsyncCheckpointWriter}
+ *
+ * @author Christian Skarby
+ */
+public class AsyncCheckpointWriterTest {
+
+    /**
+     * Test that saved checkpoints have the parameters, updater state and iteration count of the model at the time
+     * of saving and that no temporary files are left behind
+     */
+    @Test
+    public void save() throws IOException {
+        final Path baseDir = Paths.get("src", "test", "resources", "AsyncCheckpointWriterTest");
+        final File first = Paths.get(baseDir.toString(), "first.zip").toFile();
+        final File last = Paths.get(baseDir.toString(), "last.zip").toFile();
+        final File best = Paths.get(baseDir.toString(), "best.zip").toFile();
+        try {
+            baseDir.toFile().mkdirs();
+            final ComputationGraph model = createModel();
+
+            try (AsyncCheckpointWriter writer = new AsyncCheckpointWriter()) {
+                fit(model);
+                final INDArray expectedParams = model.params().dup();
+                final INDArray expectedState = model.getUpdater().getStateViewArray().dup();
+                writer.save(model, first);
+
+                fit(model);
+                writer.flush();
+                assertCheckpoint(first, expectedParams, expectedState, 1);
+
+                writer.save(model, last, best);
+                final INDArray lastParams = model.params().dup();
+                final INDArray lastState = model.getUpdater().getStateViewArray().dup();
+                fit(model);
+                writer.flush();
+                assertCheckpoint(last, lastParams, lastState, 2);
+                assertCheckpoint(best, lastParams, lastState, 2);
+                assertTrue("Expected best checkpoint to be linked to last!", Files.isSameFile(last.toPath(), best.toPath()));
+            }
+
+            try (AsyncCheckpointWriter writer = new AsyncCheckpointWriter()) {
+                writer.save(model, last);
+            }
+            assertCheckpoint(last, model.params(), model.getUpdater().getStateViewArray(), 3);
+            assertEquals("Incorrect files!", 3, baseDir.toFile().listFiles().length);
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    /**
+     * Test that the best checkpoint is not changed when the last checkpoint is overwritten
+     */
+    @Test
+    public void overwriteLinked() throws IOException {
+        final Path baseDir = Paths.get("src", "test", "resources", "AsyncCheckpointWriterTestLinked");
+        final File last = Paths.get(baseDir.toString(), "last.zip").toFile();
+        final File best = Paths.get(baseDir.toString(), "best.zip").toFile();
+        try {
+            baseDir.toFile().mkdirs();
+            final ComputationGraph model = createModel();
+            try (AsyncCheckpointWriter writer = new AsyncCheckpointWriter()) {
+                writer.save(model, last, best);
+                final INDArray bestParams = model.params().dup();
+                final INDArray bestState = model.getUpdater().getStateViewArray().dup();
+                fit(model);
+                writer.save(model, last);
+                writer.flush();
+                assertCheckpoint(best, bestParams, bestState, 0);
+                assertCheckpoint(last, model.params(), model.getUpdater().getStateViewArray(), 1);
+                assertFalse("Expected different files!", Files.isSameFile(last.toPath(), best.toPath()));
+            }
+        } finally {
+            FileUtils.deleteDirectory(baseDir.toFile());
+        }
+    }
+
+    private static void assertCheckpoint(File file, INDArray expectedParams, INDArray expectedState, int expectedIter) throws IOException {
+        assertTrue("Checkpoint not saved!", file.exists());
+        final ComputationGraph restored = ModelSerializer.restoreComputationGraph(file, true);
+        assertEquals("Incorrect parameters!", expectedParams, restored.params());
+        assertEquals("Incorrect updater state!", expectedState, restored.getUpdater().getStateViewArray());
+        assertEquals("Incorrect iteration count!", expectedIter, restored.getIterationCount());
+    }
+
+    private static void fit(ComputationGraph model) {
+        model.fit(new DataSet(Nd4j.randn(new long[]{3, 4}), Nd4j.create(new double[][]{{0, 1}, {1, 0}, {0, 1}})));
+    }
+
+    private static ComputationGraph createModel() {
+        final ComputationGraph model = new ComputationGraph(new NeuralNetConfiguration.Builder()
+                .seed(666)
+                .updater(new Adam(0.01))
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.feedForward(4))
+                .addLayer("dense", new DenseLayer.Builder().nOut(5).build(), "input")
+                .addLayer("output", new OutputLayer.Builder().nOut(2).build(), "dense")
+                .setOutputs("output")
+                .build());
+        model.init();
+        return model;
+    }
+}